@@ -23,6 +23,8 @@ import org.mapsforgeV3.android.maps.rendertheme.rules.Closed;
 import org.mapsforgeV3.android.maps.rendertheme.rules.Rule;
 import org.mapsforgeV3.core.model.Tag;
 import org.mapsforgeV3.core.util.LRUCache;
+import org.mapsforgeV3.map.reader.TagFilter;
+import org.mapsforgeV3.map.reader.header.MapFileInfo;
 import org.xml.sax.Attributes;
 
 import java.util.ArrayList;
@@ -30,6 +32,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.WeakHashMap;
 
 /**
  * A RenderTheme defines how ways and nodes are drawn.
@@ -106,6 +109,8 @@ public class RenderTheme {
 
     // cache for rendering instructions
     private final Map<Integer, List<RenderInstruction>> mMatchingCache;
+    // filters of features for map files, valid for current rules
+    private final Map<MapFileInfo, TagFilter> mTagFilters;
 
     // list of active rules
     private Rule[] rulesList;
@@ -134,6 +139,8 @@ public class RenderTheme {
         // extra parameters
         this.mMatchingCache = Collections.synchronizedMap(
                 new LRUCache<Integer, List<RenderInstruction>>(MATCHING_CACHE_SIZE));
+        this.mTagFilters = Collections.synchronizedMap(
+                new WeakHashMap<MapFileInfo, TagFilter>());
 
         // private variables
         lastScaleStroke = 0.0f;
@@ -355,6 +362,52 @@ public class RenderTheme {
         }
     }
 
+    /**
+     * Get filter of features of a certain map file. Filter accepts only features, that may be
+     * matched by rules prepared for the current zoom level. Filter is created only once for
+     * every map file and prepared zoom level.
+     *
+     * @param mapFileInfo information about the map file
+     * @return filter or <code>null</code> if theme is not prepared for a zoom level
+     */
+    public TagFilter getTagFilter(MapFileInfo mapFileInfo) {
+        RenderTheme theme = themeOptimized;
+        if (theme == null || !theme.isPrepared()) {
+            return null;
+        }
+
+        // create filter for rules of the optimized theme
+        TagFilter tagFilter = theme.mTagFilters.get(mapFileInfo);
+        if (tagFilter == null) {
+            final Rule[] rules = theme.rulesList;
+            tagFilter = new TagFilter(mapFileInfo, new TagFilter.Matcher() {
+
+                @Override
+                public boolean mayMatchWithoutTags(boolean way) {
+                    for (Rule rule : rules) {
+                        if (rule.mayMatchWithoutTags(way)) {
+                            return true;
+                        }
+                    }
+                    return false;
+                }
+
+                @Override
+                public boolean mayMatchTag(boolean way, int key, int value, boolean anyValue) {
+                    // sub-rules are tested only if their parent rule matches
+                    for (Rule rule : rules) {
+                        if (rule.mayMatchTag(way, key, value, anyValue)) {
+                            return true;
+                        }
+                    }
+                    return false;
+                }
+            });
+            theme.mTagFilters.put(mapFileInfo, tagFilter);
+        }
+        return tagFilter;
+    }
+
     private int calculateMatchKey(Tag[] tags, byte zoomLevel, Closed closed) {
         int result = 7;
         result = 31 * result + ((closed == null) ? 0 : closed.hashCode());
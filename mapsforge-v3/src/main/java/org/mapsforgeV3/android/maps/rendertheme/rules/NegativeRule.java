@@ -26,6 +26,17 @@ class NegativeRule extends Rule {
 		this.negativeMatcher = negativeMatcher;
 	}
 
+	@Override
+	public boolean mayMatchWithoutTags(boolean way) {
+		// rule matches also features without any of its keys
+		return this.elementMatcher.matches(way ? Element.WAY : Element.NODE);
+	}
+
+	@Override
+	public boolean mayMatchTag(boolean way, int key, int value, boolean anyValue) {
+		return this.elementMatcher.matches(way ? Element.WAY : Element.NODE);
+	}
+
 	@Override
 	boolean matchesNode(Tag[] tags, byte zoomLevel) {
 		// basic checks
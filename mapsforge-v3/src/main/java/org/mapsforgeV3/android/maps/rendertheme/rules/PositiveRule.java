@@ -31,6 +31,19 @@ class PositiveRule extends Rule {
 		this.valueMatcher = valueMatcher;
 	}
 
+	@Override
+	public boolean mayMatchWithoutTags(boolean way) {
+		// at least one tag has to match the key and value matchers
+		return false;
+	}
+
+	@Override
+	public boolean mayMatchTag(boolean way, int key, int value, boolean anyValue) {
+		return this.elementMatcher.matches(way ? Element.WAY : Element.NODE)
+				&& keyMatcher.matches(key, value)
+				&& (anyValue || valueMatcher.matches(key, value));
+	}
+
 	@Override
 	boolean matchesNode(Tag[] tags, byte zoomLevel) {
 //Utils.getHandler().logW("PositiveRule", "matchNode(" + tags + ", " + zoomLevel + "), " + 
@@ -144,6 +144,25 @@ public abstract class Rule {
 		this.mSubRulesLoad.add(rule);
 	}
 
+	/**
+	 * Check if rule may match a feature, that has none of tags accepted by
+	 * {@link #mayMatchTag(boolean, int, int, boolean)}.
+	 * @param way <code>true</code> for ways, <code>false</code> for nodes
+	 * @return <code>true</code> if rule may match feature without accepted tags
+	 */
+	public abstract boolean mayMatchWithoutTags(boolean way);
+
+	/**
+	 * Check if rule may match a feature with a certain tag. Zoom level and closed state of
+	 * the feature are not tested.
+	 * @param way <code>true</code> for ways, <code>false</code> for nodes
+	 * @param key hash of the key
+	 * @param value hash of the value
+	 * @param anyValue <code>true</code> if value is not known and any value has to be expected
+	 * @return <code>true</code> if rule may match feature with the tag
+	 */
+	public abstract boolean mayMatchTag(boolean way, int key, int value, boolean anyValue);
+
 	abstract boolean matchesNode(Tag[] tags, byte zoomLevel);
 
 	abstract boolean matchesWay(Tag[] tags, byte zoomLevel, Closed closed);
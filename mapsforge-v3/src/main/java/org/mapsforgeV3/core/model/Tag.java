@@ -67,6 +67,21 @@ public class Tag {
         this.hashCodeValue = calculateHashCode();
     }
 
+    /**
+     * Create tag with a value, that is provided later by {@link #getValueAsString()}.
+     *
+     * @param keyText raw key
+     * @param key     hash of the key
+     * @param value   hash of the value, same as {@code Utils.hashTagParameter(valueText)}
+     */
+    protected Tag(String keyText, int key, int value) {
+        this.keyText = keyText;
+        this.key = key;
+        this.valueText = null;
+        this.value = value;
+        this.hashCodeValue = calculateHashCode();
+    }
+
 	@Override
 	public boolean equals(Object obj) {
 		if (this == obj) {
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforgeV3.core.util;
+
+/**
+ * Projection of geographic coordinates to pixel coordinates relative to a single tile.
+ * <p>
+ * Longitude is projected linearly. Latitude is interpolated from a small table of exactly
+ * projected values, that covers the tile and several tiles around it, so also features drawn
+ * over the edge of the tile and most of ways of the read blocks. Step of the table is computed
+ * from the curvature of the Mercator projection, so the error of the interpolation stays below
+ * {@link #getMaxError()}, that is at most {@link #MAX_ERROR} for tables of all zoom levels.
+ * Table is shortened around the tile if it would exceed its maximal size with such step.
+ * Coordinates outside of the table are projected exactly.
+ * <p>
+ * Visible area of the tile, extended by a margin, is kept in microdegrees, so features may be
+ * tested by their bounding boxes before any projection. The area is not limited to valid
+ * coordinates and longitudes do not wrap around the antimeridian, same as the projection, so
+ * the test never rejects a feature, that would be projected into the area.
+ * <p>
+ * Instance is created once per rendered tile and replaces {@code sin} and {@code log} of
+ * {@link MercatorProjection#latitudeToPixelY(double, long)} by a table lookup for every
+ * projected node.
+ */
+public final class TileProjection {
+	/**
+	 * Required maximal error of projected Y coordinates in pixels.
+	 */
+	public static final double MAX_ERROR = 0.05;
+
+	// number of tiles covered by the latitude table around the tile, ways of a single block
+	// usually span over more tiles
+	private static final int TABLE_MARGIN_TILES = 8;
+	// maximal number of intervals of the latitude table
+	private static final int TABLE_SIZE_MAX = 4096;
+	// number of radians in a single microdegree
+	private static final double RADIANS_E6 = Math.PI / 180000000.0;
+
+	private final long mapSize;
+	private final long pixelY;
+	private final double scaleX;
+	private final double offsetX;
+
+	// visible area of the tile with the margin in microdegrees
+	private final int areaTopE6;
+	private final int areaBottomE6;
+	private final int areaLeftE6;
+	private final int areaRightE6;
+
+	// latitude of the first value in the table in microdegrees
+	private final int tableLatitudeE6;
+	// covered range of latitudes in microdegrees
+	private final int tableRangeE6;
+	// inverted step between values in the table in microdegrees
+	private final double tableScale;
+	// projected Y coordinates relative to the tile
+	private final double[] tableY;
+	// error bound of the interpolation in pixels
+	private final double maxError;
+
+	/**
+	 * @param mapSize  size of the whole map in pixels
+	 * @param pixelX   X coordinate of the left edge of the tile
+	 * @param pixelY   Y coordinate of the top edge of the tile
+	 * @param tileSize size of the tile in pixels
+	 * @param margin   margin of the visible area around the tile in pixels
+	 */
+	public TileProjection(long mapSize, long pixelX, long pixelY, int tileSize, int margin) {
+		this.mapSize = mapSize;
+		this.pixelY = pixelY;
+		this.scaleX = mapSize / 360000000.0;
+		this.offsetX = mapSize / 2.0 - pixelX;
+
+		// visible area, rounded outwards
+		this.areaTopE6 = (int) Math.ceil(pixelYToLatitude(pixelY - margin) * 1000000);
+		this.areaBottomE6 = (int) Math.floor(
+				pixelYToLatitude(pixelY + tileSize + margin) * 1000000);
+		this.areaLeftE6 = (int) Math.floor((-margin - this.offsetX) / this.scaleX);
+		this.areaRightE6 = (int) Math.ceil((tileSize + margin - this.offsetX) / this.scaleX);
+
+		// latitude range of the tile and its neighbours
+		long tableMargin = (long) TABLE_MARGIN_TILES * tileSize;
+		int maxLatitudeE6 = (int) Math.min(MercatorProjection.LATITUDE_MAX * 1000000,
+				Math.ceil(pixelYToLatitude(Math.max(0, pixelY - tableMargin)) * 1000000));
+		int minLatitudeE6 = (int) Math.max(MercatorProjection.LATITUDE_MIN * 1000000,
+				Math.floor(pixelYToLatitude(Math.min(mapSize, pixelY + tileSize + tableMargin))
+						* 1000000));
+		int tableRangeE6 = Math.max(0, maxLatitudeE6 - minLatitudeE6);
+
+		// error of the linear interpolation is at most step^2 / 8 * max|y''|, where
+		// y'' = mapSize / (2 * PI) * sec(lat) * tan(lat) grows with the absolute latitude
+		double latitude = Math.max(Math.abs(maxLatitudeE6), Math.abs(minLatitudeE6)) * RADIANS_E6;
+		double curvature = mapSize / (2 * Math.PI) * Math.tan(latitude) / Math.cos(latitude)
+				* RADIANS_E6 * RADIANS_E6;
+		int step = tableRangeE6;
+		if (curvature > 0) {
+			step = (int) Math.min(step, Math.sqrt(8 * MAX_ERROR / curvature));
+		}
+		step = Math.max(1, step);
+
+		// too long table is shortened around the tile instead of increasing the step, so the
+		// error bound holds, rest of latitudes is projected exactly
+		if (tableRangeE6 > (long) step * TABLE_SIZE_MAX) {
+			int centerE6 = (int) Math.round(pixelYToLatitude(pixelY + tileSize / 2.0) * 1000000);
+			int rangeE6 = step * TABLE_SIZE_MAX;
+			minLatitudeE6 = Math.max(minLatitudeE6,
+					Math.min(centerE6 - rangeE6 / 2, maxLatitudeE6 - rangeE6));
+			tableRangeE6 = rangeE6;
+		}
+		this.tableLatitudeE6 = minLatitudeE6;
+		this.tableRangeE6 = tableRangeE6;
+		this.tableScale = 1.0 / step;
+		this.maxError = (double) step * step / 8 * curvature;
+
+		// project nodes of the table
+		int count = (this.tableRangeE6 + step - 1) / step;
+		this.tableY = new double[count + 1];
+		for (int i = 0; i <= count; i++) {
+			double sinLatitude = Math.sin((this.tableLatitudeE6 + (long) i * step) * RADIANS_E6);
+			this.tableY[i] = (0.5 - Math.log((1 + sinLatitude) / (1 - sinLatitude)) / (4 * Math.PI))
+					* mapSize - pixelY;
+		}
+	}
+
+	/**
+	 * @return maximal error of projected Y coordinates inside of the table in pixels
+	 */
+	public double getMaxError() {
+		return this.maxError;
+	}
+
+	/**
+	 * Check if a point lies in the visible area of the tile.
+	 *
+	 * @param latitudeE6  latitude in microdegrees
+	 * @param longitudeE6 longitude in microdegrees
+	 * @return {@code true} if the point is inside of the area, including its edges
+	 */
+	public boolean isVisible(int latitudeE6, int longitudeE6) {
+		return latitudeE6 <= this.areaTopE6 && latitudeE6 >= this.areaBottomE6
+				&& longitudeE6 >= this.areaLeftE6 && longitudeE6 <= this.areaRightE6;
+	}
+
+	/**
+	 * Check if a bounding box intersects the visible area of the tile.
+	 *
+	 * @param topE6    maximal latitude in microdegrees
+	 * @param bottomE6 minimal latitude in microdegrees
+	 * @param leftE6   minimal longitude in microdegrees
+	 * @param rightE6  maximal longitude in microdegrees
+	 * @return {@code true} if the bounding box intersects the area, including its edges
+	 */
+	public boolean isVisible(int topE6, int bottomE6, int leftE6, int rightE6) {
+		return topE6 >= this.areaBottomE6 && bottomE6 <= this.areaTopE6
+				&& rightE6 >= this.areaLeftE6 && leftE6 <= this.areaRightE6;
+	}
+
+	/**
+	 * @param longitudeE6 longitude in microdegrees
+	 * @return X coordinate relative to the tile
+	 */
+	public float projectX(int longitudeE6) {
+		return (float) (longitudeE6 * this.scaleX + this.offsetX);
+	}
+
+	/**
+	 * @param latitudeE6 latitude in microdegrees
+	 * @return Y coordinate relative to the tile
+	 */
+	public float projectY(int latitudeE6) {
+		int offset = latitudeE6 - this.tableLatitudeE6;
+		if (offset >= 0 && offset < this.tableRangeE6) {
+			double position = offset * this.tableScale;
+			int index = (int) position;
+			double y = this.tableY[index];
+			return (float) (y + (this.tableY[index + 1] - y) * (position - index));
+		}
+		return (float) (MercatorProjection.latitudeToPixelY(latitudeE6 / 1000000.0, this.mapSize)
+				- this.pixelY);
+	}
+
+	private double pixelYToLatitude(double y) {
+		return Math.toDegrees(Math.atan(Math.sinh(Math.PI * (1 - 2 * y / this.mapSize))));
+	}
+}
@@ -242,56 +242,57 @@ class CanvasRasterer {
 
     private void prepareWayShapePolyline(PaintContainerShape shapePaintContainer) {
         ContainerWay wayContainer = (ContainerWay) shapePaintContainer.shape;
-        float[][] coordinates = wayContainer.coordinates;
 
-        // iterate over all coordinates
-        for (float[] coordinate : coordinates) {
+        // iterate over all segments
+        for (int segment = 0; segment < wayContainer.segmentCount; segment++) {
             // make sure that the coordinates sequence is not empty
-            float[] coords = coordinate;
-            if (coords == null || coords.length <= 2) {
+            float[] coords = wayContainer.coordinates;
+            int offset = wayContainer.getSegmentOffset(segment);
+            int length = wayContainer.getSegmentLength(segment);
+            if (length <= 2) {
                 continue;
             }
 
-//			if (coords.length != 8) {
-//				continue;
-//			}
-
             // compute parallel path
             if (shapePaintContainer.vOffset != 0.0f) {
-                coords = computeParallelPath(coords, shapePaintContainer.vOffset);
+                coords = computeParallelPath(coords, offset, length, shapePaintContainer.vOffset);
+                offset = 0;
             }
 
             // iterate over lines based on curveStyle
             if (shapePaintContainer.curveStyle == CurveStyle.CUBIC) {
                 // prepare variables
-                float[] p1 = new float[]{coords[0], coords[1]};
-                float[] p2 = new float[]{0.0f, 0.0f};
-                float[] p3 = new float[]{0.0f, 0.0f};
+                float p1x = coords[offset];
+                float p1y = coords[offset + 1];
+                float p2x = 0.0f;
+                float p2y = 0.0f;
+                float p3x = 0.0f;
+                float p3y = 0.0f;
 
                 // add first point
-                this.path.moveTo(p1[0], p1[1]);
-                for (int i = 1; i < coords.length / 2; i++) {
+                this.path.moveTo(p1x, p1y);
+                for (int i = 1; i < length / 2; i++) {
                     // get ending coordinates
-                    p3[0] = coords[2 * i];
-                    p3[1] = coords[2 * i + 1];
-                    p2[0] = (p1[0] + p3[0]) / 2.0f;
-                    p2[1] = (p1[1] + p3[1]) / 2.0f;
+                    p3x = coords[offset + 2 * i];
+                    p3y = coords[offset + 2 * i + 1];
+                    p2x = (p1x + p3x) / 2.0f;
+                    p2y = (p1y + p3y) / 2.0f;
 
                     // add spline over middle point and end on 'end' point
-                    this.path.quadTo(p1[0], p1[1], p2[0], p2[1]);
+                    this.path.quadTo(p1x, p1y, p2x, p2y);
 
                     // store end point as start point for next section
-                    p1[0] = p3[0];
-                    p1[1] = p3[1];
+                    p1x = p3x;
+                    p1y = p3y;
                 }
 
                 // add last segment
-                this.path.quadTo(p2[0], p2[1], p3[0], p3[1]);
+                this.path.quadTo(p2x, p2y, p3x, p3y);
             } else {
                 // construct line
-                this.path.moveTo(coords[0], coords[1]);
-                for (int i = 1; i < coords.length / 2; i++) {
-                    this.path.lineTo(coords[2 * i], coords[2 * i + 1]);
+                this.path.moveTo(coords[offset], coords[offset + 1]);
+                for (int i = 1; i < length / 2; i++) {
+                    this.path.lineTo(coords[offset + 2 * i], coords[offset + 2 * i + 1]);
                 }
             }
         }
@@ -300,16 +301,18 @@ class CanvasRasterer {
     /**
      * Computes a polyline with distance dy parallel to given coordinates.
      * http://objectmix.com/graphics/132987-draw-parallel-polyline-algorithm-needed.html
+     *
+     * @return new array with the parallel polyline, starting at index 0
      */
-    private static float[] computeParallelPath(float[] p, float dy) {
-        int n = p.length - 2;
+    private static float[] computeParallelPath(float[] p, int offset, int length, float dy) {
+        int n = length - 2;
         float[] u = new float[n];
-        float[] h = new float[p.length];
+        float[] h = new float[length];
 
         // generate an array U[] of unity vectors of each direction
         for (int k = 0; k < n; k += 2) {
-            float c = p[k + 2] - p[k];
-            float s = p[k + 3] - p[k + 1];
+            float c = p[offset + k + 2] - p[offset + k];
+            float s = p[offset + k + 3] - p[offset + k + 1];
             float l = (float) Math.sqrt(c * c + s * s);
             if (l == 0) {
                 u[k] = 0;
@@ -321,8 +324,8 @@ class CanvasRasterer {
         }
 
         // for the start point calculate the normal
-        h[0] = p[0] - dy * u[1];
-        h[1] = p[1] + dy * u[0];
+        h[0] = p[offset] - dy * u[1];
+        h[1] = p[offset + 1] + dy * u[0];
 
         // for 1 to N-1 calculate the intersection of the offset lines
         for (int k = 2; k < n; k += 2) {
@@ -336,13 +339,13 @@ class CanvasRasterer {
             }
 
             // compute intersection values
-            h[k] = p[k] - l * (u[k + 1] + u[k - 1]);
-            h[k + 1] = p[k + 1] + l * (u[k] + u[k - 2]);
+            h[k] = p[offset + k] - l * (u[k + 1] + u[k - 1]);
+            h[k + 1] = p[offset + k + 1] + l * (u[k] + u[k - 2]);
         }
 
         // for the end point use the normal
-        h[n] = p[n] - dy * u[n - 1];
-        h[n + 1] = p[n + 1] + dy * u[n - 2];
+        h[n] = p[offset + n] - dy * u[n - 1];
+        h[n + 1] = p[offset + n + 1] + dy * u[n - 2];
 
         // return result
         return h;
@@ -14,12 +14,40 @@
  */
 package org.mapsforgeV3.map.layer.renderer;
 
+/**
+ * View of projected coordinates of a way, stored in the {@link CoordinateArena} of a tile.
+ */
 class ContainerWay implements ContainerShape {
-	
-	final float[][] coordinates;
 
-	ContainerWay(float[][] coordinates) {
+	// projected coordinates of all segments (x, y)
+	final float[] coordinates;
+	// offsets of segments in coordinates, segment ends where the next one starts
+	final int[] segmentOffsets;
+	// index of the first segment in segment offsets
+	final int segmentStart;
+	// number of segments
+	final int segmentCount;
+
+	ContainerWay(float[] coordinates, int[] segmentOffsets, int segmentStart, int segmentCount) {
 		this.coordinates = coordinates;
+		this.segmentOffsets = segmentOffsets;
+		this.segmentStart = segmentStart;
+		this.segmentCount = segmentCount;
+	}
+
+	/**
+	 * Get offset of a certain segment in coordinates.
+	 */
+	int getSegmentOffset(int segment) {
+		return this.segmentOffsets[this.segmentStart + segment];
+	}
+
+	/**
+	 * Get number of coordinates of a certain segment (two per point).
+	 */
+	int getSegmentLength(int segment) {
+		return this.segmentOffsets[this.segmentStart + segment + 1]
+				- this.segmentOffsets[this.segmentStart + segment];
 	}
 
 	@Override
@@ -0,0 +1,122 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforgeV3.map.layer.renderer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Storage for projected coordinates of all ways of a single tile.
+ * <p>
+ * Data are stored in chunks, so already allocated space never moves and containers may keep
+ * references into the arena until the tile is rendered. Chunks are kept after {@link #clear()},
+ * so arena reused for next tiles does not allocate any more memory.
+ */
+class CoordinateArena {
+
+    // default size of a single chunk
+    private static final int CHUNK_SIZE = 16 * 1024;
+
+    // chunks for coordinates
+    private final List<float[]> floatChunks;
+    // index of the current chunk for coordinates
+    private int floatChunkIndex;
+    // first free position in the current chunk for coordinates
+    private int floatPosition;
+
+    // chunks for offsets
+    private final List<int[]> intChunks;
+    // index of the current chunk for offsets
+    private int intChunkIndex;
+    // first free position in the current chunk for offsets
+    private int intPosition;
+
+    CoordinateArena() {
+        this.floatChunks = new ArrayList<>();
+        this.intChunks = new ArrayList<>();
+        clear();
+    }
+
+    /**
+     * Release all allocated space.
+     */
+    void clear() {
+        this.floatChunkIndex = -1;
+        this.floatPosition = 0;
+        this.intChunkIndex = -1;
+        this.intPosition = 0;
+    }
+
+    /**
+     * Allocate space for coordinates. Space is available in array returned by
+     * {@link #getFloats()}.
+     *
+     * @param length number of values
+     * @return offset of allocated space
+     */
+    int allocateFloats(int length) {
+        if (this.floatChunkIndex < 0
+                || this.floatPosition + length > this.floatChunks.get(this.floatChunkIndex).length) {
+            // move to the next chunk
+            this.floatChunkIndex++;
+            if (this.floatChunkIndex == this.floatChunks.size()) {
+                this.floatChunks.add(new float[Math.max(CHUNK_SIZE, length)]);
+            } else if (this.floatChunks.get(this.floatChunkIndex).length < length) {
+                this.floatChunks.set(this.floatChunkIndex, new float[length]);
+            }
+            this.floatPosition = 0;
+        }
+        int offset = this.floatPosition;
+        this.floatPosition += length;
+        return offset;
+    }
+
+    /**
+     * Get chunk with the last allocated space for coordinates.
+     */
+    float[] getFloats() {
+        return this.floatChunks.get(this.floatChunkIndex);
+    }
+
+    /**
+     * Allocate space for offsets. Space is available in array returned by {@link #getInts()}.
+     *
+     * @param length number of values
+     * @return offset of allocated space
+     */
+    int allocateInts(int length) {
+        if (this.intChunkIndex < 0
+                || this.intPosition + length > this.intChunks.get(this.intChunkIndex).length) {
+            // move to the next chunk
+            this.intChunkIndex++;
+            if (this.intChunkIndex == this.intChunks.size()) {
+                this.intChunks.add(new int[Math.max(CHUNK_SIZE, length)]);
+            } else if (this.intChunks.get(this.intChunkIndex).length < length) {
+                this.intChunks.set(this.intChunkIndex, new int[length]);
+            }
+            this.intPosition = 0;
+        }
+        int offset = this.intPosition;
+        this.intPosition += length;
+        return offset;
+    }
+
+    /**
+     * Get chunk with the last allocated space for offsets.
+     */
+    int[] getInts() {
+        return this.intChunks.get(this.intChunkIndex);
+    }
+}
@@ -34,7 +34,10 @@ import org.mapsforgeV3.core.model.GeoPoint;
 import org.mapsforgeV3.core.model.Tag;
 import org.mapsforgeV3.core.model.Tile;
 import org.mapsforgeV3.core.util.MercatorProjection;
+import org.mapsforgeV3.core.util.TileProjection;
+import org.mapsforgeV3.map.reader.FeatureVisitor;
 import org.mapsforgeV3.map.reader.MapDatabase;
+import org.mapsforgeV3.map.reader.MapDatabasePool;
 import org.mapsforgeV3.map.reader.Way;
 import org.mapsforgeV3.map.reader.header.MapFileInfo;
 
@@ -42,6 +45,7 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A DatabaseRenderer renders map tiles by reading from a {@link MapDatabase}.
@@ -63,6 +67,8 @@ public class DatabaseRenderer implements MapGenerator {
     public static final Tag TAG_NATURAL_NOSEA = new Tag("natural", "nosea");
     public static final Tag TAG_NATURAL_SEA = new Tag("natural", "sea");
     private static final byte ZOOM_MAX = 22;
+    // margin of clipped ways around the tile in pixels, added to the stroke width
+    private static final float CLIP_MARGIN = 2.0f;
 
     private static byte getValidLayer(byte layer) {
         if (layer < 0) {
@@ -86,6 +92,14 @@ public class DatabaseRenderer implements MapGenerator {
 
     // container for map databases
     private final List<MapDatabase> mapDatabases;
+    // pool limiting number of opened map files
+    private final MapDatabasePool mapDatabasePool;
+    // spatial index over bounding boxes of attached databases
+    private final MapDatabaseIndex mapDatabaseIndex;
+    // flag if index has to be rebuilt before next use
+    private boolean mapDatabaseIndexDirty;
+    // databases intersecting the currently rendered tile
+    private final List<MapDatabase> tileMapDatabases;
     // path to current "base" map
     private File mMapFile;
 
@@ -102,6 +116,17 @@ public class DatabaseRenderer implements MapGenerator {
     private float currentTextScale;
     // last used language
     private String currentLang;
+    // rendered tile with only the sea, shared by all such tiles
+    private volatile SeaTile seaTile;
+    // size of the grid for snapping of drawn ways in pixels, '0' to disable
+    private volatile float simplifyGridSize;
+    // tolerance of simplification of drawn ways in pixels, '0' to disable
+    private volatile float simplifyTolerance;
+    // flag if texts and symbols along ways are placed on simplified ways
+    private volatile boolean simplifyLabels;
+    // number of vertices of simplified ways, before and after the simplification
+    private final AtomicLong simplifyVerticesBefore;
+    private final AtomicLong simplifyVerticesAfter;
 
     /**
      * Constructs a new DatabaseRenderer.
@@ -116,6 +141,11 @@ public class DatabaseRenderer implements MapGenerator {
         this.lock = new Object();
         this.tileSize = tileSize;
         this.mapDatabases = new ArrayList<>();
+        this.mapDatabasePool = new MapDatabasePool(MapDatabasePool.DEFAULT_MAX_OPEN_FILES, true);
+        this.mapDatabaseIndex = new MapDatabaseIndex();
+        this.simplifyVerticesBefore = new AtomicLong();
+        this.simplifyVerticesAfter = new AtomicLong();
+        this.tileMapDatabases = new ArrayList<>();
 
         // set preselected render theme
         cleanup();
@@ -133,6 +163,7 @@ public class DatabaseRenderer implements MapGenerator {
         this.currentZoomLevel = 0;
         this.currentTextScale = 1.0f;
         this.currentLang = "";
+        this.seaTile = null;
     }
 
     /**
@@ -198,23 +229,37 @@ public class DatabaseRenderer implements MapGenerator {
             // store current main map file
             mMapFile = mapDatabases.get(0).getMapFile();
 
-            // read all data
-            for (int i = size - 1; i >= 0; i--) {
-                MapDatabase md = mapDatabases.get(i);
-                if (md.hasOpenFile()) {
-                    md.readMapData(mapGeneratorJob.tile, tr);
-                }
+            // select only databases that intersect the tile
+            if (mapDatabaseIndexDirty) {
+                mapDatabaseIndex.rebuild(mapDatabases);
+                mapDatabaseIndexDirty = false;
+            }
+            mapDatabaseIndex.query(mapGeneratorJob.tile, tileSize, tileSize / 4,
+                    tileMapDatabases);
 
-                // remove file if not required and at least one more file will remain
-                if (!md.isFileRequired() && mapDatabases.size() > 1) {
-                    md.closeFile();
-                    mapDatabases.remove(md);
+            // read all data
+            for (int i = tileMapDatabases.size() - 1; i >= 0; i--) {
+                MapDatabase md = tileMapDatabases.get(i);
+                boolean hadHeader = md.hasFileHeader();
+                if (mapDatabasePool.acquire(md)) {
+                    // database registered without a bounding box has now its header
+                    if (!hadHeader) {
+                        mapDatabaseIndexDirty = true;
+                    }
+                    md.readMapData(mapGeneratorJob.tile, tr,
+                            renderTheme.getTagFilter(md.getMapFileInfo()), tr.tileProjection);
                 }
             }
+            tileMapDatabases.clear();
 
             // if still empty, close tasks
             if (tr.isEmpty(true)) {
-                tr.setRequestToEmpty();
+                if (tr.isWater && mFillSeaAreas) {
+                    // only the sea is drawn
+                    tr.setRequestToSea();
+                } else {
+                    tr.setRequestToEmpty();
+                }
             }
 
             // return request
@@ -323,7 +368,7 @@ public class DatabaseRenderer implements MapGenerator {
     private MapDatabase getFirstMapDatabase() {
         synchronized (lock) {
             for (MapDatabase md : mapDatabases) {
-                if (md.hasOpenFile()) {
+                if (md.hasFileHeader()) {
                     return md;
                 }
             }
@@ -367,12 +412,15 @@ public class DatabaseRenderer implements MapGenerator {
                 mapDatabases.get(i).closeFile();
             }
             mapDatabases.clear();
+            mapDatabasePool.clear();
 
             // set base map
             if (mapDatabase != null) {
                 mMapFile = mapDatabase.getMapFile();
                 mapDatabases.add(mapDatabase);
+                mapDatabasePool.acquire(mapDatabase);
             }
+            mapDatabaseIndexDirty = true;
         }
     }
 
@@ -383,21 +431,65 @@ public class DatabaseRenderer implements MapGenerator {
                 MapDatabase map = maps.get(i);
                 if (!mapDatabases.contains(map)) {
                     mapDatabases.add(map);
+                    mapDatabasePool.acquire(map);
                     newAdded = true;
                 } else {
                     map.closeFile();
                 }
-
-                // limit maximum number of loaded maps at once
-                int maxMapDatabases = 5;
-                if (mapDatabases.size() >= maxMapDatabases) {
-                    break;
-                }
             }
+            mapDatabaseIndexDirty |= newAdded;
             return newAdded;
         }
     }
 
+    /**
+     * Set maximal number of map files opened at once. Other attached maps keep only their
+     * header and are opened again, once a rendered tile needs them. Files are released only
+     * after the currently rendered tile is finished.
+     *
+     * @param maxOpenMapDatabases maximal number of opened map files
+     */
+    public void setMaxOpenMapDatabases(int maxOpenMapDatabases) {
+        synchronized (lock) {
+            mapDatabasePool.setMaxOpenFiles(maxOpenMapDatabases);
+        }
+    }
+
+    /**
+     * Set simplification of drawn ways. Vertices are snapped to a grid and repeated vertices
+     * are removed, then vertices closer than the tolerance to the simplified way are removed.
+     * Both values are in pixels of the tile, so simplification removes more vertices at low
+     * zoom levels. Texts and symbols along ways are placed on original ways, unless allowed.
+     * Tiles, that are already being rendered, keep previous settings.
+     *
+     * @param gridSize       size of the grid, '0' to disable snapping
+     * @param tolerance      tolerance of the Douglas-Peucker algorithm, '0' to disable it
+     * @param simplifyLabels {@code true} to place texts and symbols along simplified ways
+     */
+    public void setWaySimplification(float gridSize, float tolerance, boolean simplifyLabels) {
+        this.simplifyGridSize = Math.max(0.0f, gridSize);
+        this.simplifyTolerance = Math.max(0.0f, tolerance);
+        this.simplifyLabels = simplifyLabels;
+    }
+
+    /**
+     * Get number of vertices of ways entering the simplification, summed over rendered tiles.
+     *
+     * @return number of vertices since the renderer was created
+     */
+    public long getSimplifiedVerticesBefore() {
+        return simplifyVerticesBefore.get();
+    }
+
+    /**
+     * Get number of vertices of ways left after the simplification, summed over rendered tiles.
+     *
+     * @return number of vertices since the renderer was created
+     */
+    public long getSimplifiedVerticesAfter() {
+        return simplifyVerticesAfter.get();
+    }
+
     public boolean existsMapDatabase(File file) {
         for (int i = 0, n = mapDatabases.size(); i < n; i++) {
             MapDatabase map = mapDatabases.get(i);
@@ -421,7 +513,7 @@ public class DatabaseRenderer implements MapGenerator {
     // RENDERING PART
     //*************************************************
 
-    public class TileRenderer implements RenderCallback {
+    public class TileRenderer implements RenderCallback, FeatureVisitor {
 
         // DEFINITION
 
@@ -459,6 +551,8 @@ public class DatabaseRenderer implements MapGenerator {
         private List<PaintContainerSymbol> waySymbols;
         // some crazy "ways" container
         private List<PaintContainerShape>[][] waysArray;
+        // storage for projected coordinates of ways
+        private CoordinateArena coordinateArena;
 
         // TEMP OBJECT SPECIFIC PARAMETERS
 
@@ -468,15 +562,33 @@ public class DatabaseRenderer implements MapGenerator {
         private ContainerShape mShapeContainer;
         // flag if shape container is "no sea/background"
         private boolean mShapeContainerBg;
-        // current coordinates
-        private float[][] coordinates;
+        // current way with projected coordinates
+        private ContainerWay mWayContainer;
         // are current coordinates closed
         private boolean mCoordinatesClosed;
+        // clipper of ways to the tile, lazily created
+        private WayClipper mWayClipper;
+        // current way clipped as a line, or 'null' if it is not visible
+        private ContainerWay mClippedLine;
+        // margin used for the clipped line, or '-1' if the line is not clipped yet
+        private float mClippedLineMargin;
+        // current way clipped as an area, or 'null' if it is not visible
+        private ContainerWay mClippedArea;
+        // margin used for the clipped area, or '-1' if the area is not clipped yet
+        private float mClippedAreaMargin;
+        // simplifier of drawn ways, or 'null' if simplification is disabled
+        private WaySimplifier mWaySimplifier;
+        // flag if texts and symbols along ways are placed on simplified ways
+        private boolean mSimplifyLabels;
+        // current way simplified, or 'null' if it is not simplified yet
+        private ContainerWay mSimplifiedWay;
 
         // BASIC PARAMETERS
 
         // is current tile water
         public boolean isWater;
+        // flag if tile contains only the sea
+        private boolean seaOnly;
         // rendering completed
         private boolean renderingComplete;
         // flag if rendering was completed but only with background map
@@ -489,13 +601,11 @@ public class DatabaseRenderer implements MapGenerator {
         private long cPixelX;
         private long cPixelY;
 
-        private int bboxTopE6;
-        private int bboxBottomE6;
-        private int bboxLeftE6;
-        private int bboxRightE6;
-
         // size of map in pixels in current zoom
         private long mapSize;
+        // projection of coordinates to the current tile, used also by the reader for ways,
+        // with the tile BBOX extended by a quarter of the tile
+        private TileProjection tileProjection;
 
         // COUNTERS
 
@@ -512,6 +622,8 @@ public class DatabaseRenderer implements MapGenerator {
         private int mCounterRenderWay;
         private int mCounterRenderWaySymbol;
         private int mCounterRenderWayText;
+        private int mCounterVerticesBefore;
+        private int mCounterVerticesAfter;
 
         /**
          * Construct finished empty container
@@ -540,6 +652,7 @@ public class DatabaseRenderer implements MapGenerator {
 
             // generate ways container
             this.waysArray = getWayContainerFromCache(renderTheme.getLevels());
+            this.coordinateArena = getCoordinateArenaFromCache();
 
             // basic parameters
             this.isWater = false;
@@ -550,16 +663,14 @@ public class DatabaseRenderer implements MapGenerator {
             this.cPixelX = currentMapTile.tileX * tileSize;
             this.cPixelY = currentMapTile.tileY * tileSize;
             this.mapSize = MercatorProjection.getMapSize(cZoomLevel, tileSize);
-
-            // prepare tile BBOX
-            bboxTopE6 = (int) (MercatorProjection.pixelYToLatitude(
-                    cPixelY - tileSize / 4.0, cZoomLevel, tileSize, false) * 1000000.0);
-            bboxBottomE6 = (int) (MercatorProjection.pixelYToLatitude(
-                    cPixelY + tileSize + tileSize / 4.0f, cZoomLevel, tileSize, false) * 1000000.0);
-            bboxLeftE6 = (int) (MercatorProjection.pixelXToLongitude(
-                    cPixelX - tileSize / 4.0, cZoomLevel, tileSize, false) * 1000000.0);
-            bboxRightE6 = (int) (MercatorProjection.pixelXToLongitude(
-                    cPixelX + tileSize + tileSize / 4.0f, cZoomLevel, tileSize, false) * 1000000.0);
+            this.tileProjection = new TileProjection(mapSize, cPixelX, cPixelY, tileSize,
+                    tileSize / 4);
+            float gridSize = simplifyGridSize;
+            float tolerance = simplifyTolerance;
+            if (gridSize > 0 || tolerance > 0) {
+                this.mWaySimplifier = new WaySimplifier(gridSize, tolerance);
+                this.mSimplifyLabels = simplifyLabels;
+            }
         }
 
         /**
@@ -588,6 +699,10 @@ public class DatabaseRenderer implements MapGenerator {
             this.bitmap = Utils.getHandler().getEmptyImage();
         }
 
+        private void setRequestToSea() {
+            this.seaOnly = true;
+        }
+
         /**
          * Finally start rendering. This method is already called from separate thread
          */
@@ -602,12 +717,20 @@ public class DatabaseRenderer implements MapGenerator {
             }
 
             // render tile
-            renderData();
+            if (seaOnly) {
+                renderSeaTile();
+            } else {
+                renderData();
+            }
 
             if (DEBUG) {
                 Utils.getHandler().logW(TAG, "render done!");
                 printCurrentContent();
             }
+            if (mCounterVerticesBefore > 0) {
+                simplifyVerticesBefore.addAndGet(mCounterVerticesBefore);
+                simplifyVerticesAfter.addAndGet(mCounterVerticesAfter);
+            }
 
             // clear containers in the end
             clearLists();
@@ -731,6 +854,35 @@ public class DatabaseRenderer implements MapGenerator {
             }
         }
 
+        /**
+         * Render tile, that contains only the sea. Sea tile is rendered only once for the current
+         * theme and zoom level, next sea tiles just copy it.
+         */
+        private void renderSeaTile() {
+            // tiles with extra content are always rendered
+            if (extraRenderingHandler != null
+                    || mapGeneratorJob.debugSettings.drawTileFrames
+                    || mapGeneratorJob.debugSettings.drawTileCoordinates) {
+                renderData();
+                return;
+            }
+
+            // copy already rendered sea tile
+            SeaTile seaTile = DatabaseRenderer.this.seaTile;
+            if (seaTile != null && seaTile.isValid(renderTheme, cZoomLevel)) {
+                bitmap = Utils.getHandler().getValidImage(bitmap, tileSize, tileSize);
+                new Canvas(bitmap).drawBitmap(seaTile.bitmap, 0, 0, null);
+                return;
+            }
+
+            // render the sea and keep it for next tiles
+            renderData();
+            if (bitmap != null && isStillValid()) {
+                DatabaseRenderer.this.seaTile = new SeaTile(renderTheme, cZoomLevel,
+                        bitmap.copy(bitmap.getConfig(), false));
+            }
+        }
+
         private void clearCanvas(Canvas canvas) {
             // prepare color user for clear of canvas
             int color = getBackgroundColor();
@@ -750,21 +902,19 @@ public class DatabaseRenderer implements MapGenerator {
         /**
          * Basic call to render point data (call from data loader).
          */
+        @Override
         public void renderNode(byte layer, Tag[] tags, int latitudeE6, int longitudeE6) {
             mCounterLoadedPoi++;
 
             // quick coordinates test on place
-            if (longitudeE6 < bboxLeftE6 ||
-                    longitudeE6 > bboxRightE6 ||
-                    latitudeE6 > bboxTopE6 ||
-                    latitudeE6 < bboxBottomE6) {
+            if (!tileProjection.isVisible(latitudeE6, longitudeE6)) {
                 return;
             }
 
             // now check node
             this.mCurrentLayer = waysArray[getValidLayer(layer)];
-            this.poiX = scaleLongitude(longitudeE6);
-            this.poiY = scaleLatitude(latitudeE6);
+            this.poiX = tileProjection.projectX(longitudeE6);
+            this.poiY = tileProjection.projectY(latitudeE6);
             renderTheme.matchNode(this, tags, cZoomLevel);
         }
 
@@ -773,34 +923,45 @@ public class DatabaseRenderer implements MapGenerator {
          *
          * @param way loaded data
          */
+        @Override
         public void renderWay(Way way) {
             mCounterLoadedWay++;
 
-            // quick coordinates test on place
-            if (cZoomLevel >= 15 &&
-                    (way.bboxRightE6 < bboxLeftE6 ||
-                            way.bboxLeftE6 > bboxRightE6 ||
-                            way.bboxTopE6 < bboxBottomE6 ||
-                            way.bboxBottomE6 > bboxTopE6)) {
+            // quick coordinates test on place, ways projected by the reader passed it already
+            if (!way.isProjected && !tileProjection.isVisible(way.bboxTopE6, way.bboxBottomE6,
+                    way.bboxLeftE6, way.bboxRightE6)) {
                 return;
             }
 
-            // prepare transferred coordinates
-            this.coordinates = new float[way.wayNodes.length][];
-            for (int i = 0; i < way.wayNodes.length; ++i) {
-                float[] coor = way.wayNodes[i];
-                this.coordinates[i] = new float[coor.length];
-                for (int j = 0; j < coor.length; j += 2) {
-                    this.coordinates[i][j] = scaleLongitude(coor[j]);
-                    this.coordinates[i][j + 1] = scaleLatitude(coor[j + 1]);
+            // prepare transferred coordinates, segments of way are stored one after another
+            int wayOffset = way.getSegmentOffset(0);
+            int wayLength = way.getSegmentOffset(way.segmentCount) - wayOffset;
+            int segmentStart = coordinateArena.allocateInts(way.segmentCount + 1);
+            int[] segmentOffsets = coordinateArena.getInts();
+            int offset = coordinateArena.allocateFloats(wayLength);
+            float[] coordinates = coordinateArena.getFloats();
+            int shift = offset - wayOffset;
+            for (int i = 0; i <= way.segmentCount; ++i) {
+                segmentOffsets[segmentStart + i] = way.getSegmentOffset(i) + shift;
+            }
+            float[] wayCoordinates = way.coordinates;
+            if (way.isProjected) {
+                System.arraycopy(wayCoordinates, wayOffset, coordinates, offset, wayLength);
+            } else {
+                for (int j = wayOffset, end = wayOffset + wayLength; j < end; j += 2) {
+                    coordinates[j + shift] = tileProjection.projectX((int) wayCoordinates[j]);
+                    coordinates[j + shift + 1] = tileProjection.projectY((int) wayCoordinates[j + 1]);
                 }
             }
 
             // now check way
             this.mCurrentLayer = waysArray[getValidLayer(way.layer)];
-            this.mShapeContainer = new ContainerWay(this.coordinates);
+            this.mWayContainer = new ContainerWay(coordinates, segmentOffsets,
+                    segmentStart, way.segmentCount);
+            this.mShapeContainer = mWayContainer;
+            resetDerivedShapes();
             mShapeContainerBg = way.isFillBackground;
-            mCoordinatesClosed = GeometryUtils.isClosedWay(this.coordinates[0]);
+            mCoordinatesClosed = GeometryUtils.isClosedWay(mWayContainer);
             if (mCoordinatesClosed) {
                 renderTheme.matchClosedWay(this, way.tags, cZoomLevel);
             } else {
@@ -808,14 +969,117 @@ public class DatabaseRenderer implements MapGenerator {
             }
         }
 
+        private void resetDerivedShapes() {
+            mSimplifiedWay = null;
+            mClippedLine = null;
+            mClippedLineMargin = -1.0f;
+            mClippedArea = null;
+            mClippedAreaMargin = -1.0f;
+        }
+
+        /**
+         * Get current way simplified for the current zoom level. The whole way is simplified
+         * before clipping, so all tiles draw the same vertices along their common edges.
+         *
+         * @return simplified way, or the current way if simplification is disabled
+         */
+        private ContainerWay getSimplifiedWay() {
+            if (mWaySimplifier == null) {
+                return mWayContainer;
+            }
+            if (mSimplifiedWay == null) {
+                mSimplifiedWay = mWaySimplifier.simplify(mWayContainer, coordinateArena);
+                mCounterVerticesBefore += getVertexCount(mWayContainer);
+                mCounterVerticesAfter += getVertexCount(mSimplifiedWay);
+            }
+            return mSimplifiedWay;
+        }
+
+        private int getVertexCount(ContainerWay way) {
+            return (way.getSegmentOffset(way.segmentCount) - way.getSegmentOffset(0)) / 2;
+        }
+
+        /**
+         * Get way used for placement of texts and symbols along the current way.
+         */
+        private ContainerWay getLabelWay() {
+            return mSimplifyLabels ? getSimplifiedWay() : mWayContainer;
+        }
+
+        /**
+         * Get shape of the current way simplified and clipped to the tile, extended by a margin
+         * that covers the stroke. Dashed lines and curves are not clipped, because different
+         * start of the path would change their look inside of the tile. Clipped shapes are
+         * reused for next instructions of the same way, that need the same or a smaller margin.
+         *
+         * @param area        {@code true} to clip the way as an area, {@code false} as a line
+         * @param paint       main paint of the shape
+         * @param paintBorder paint of the border, may be {@code null}
+         * @param vOffset     offset of the parallel path
+         * @param curveStyle  style of the path, may be {@code null}
+         * @return shape to draw, or 'null' if no part of the way is visible
+         */
+        private ContainerShape getClippedShape(boolean area, Paint paint, Paint paintBorder,
+                float vOffset, CurveStyle curveStyle) {
+            if (mShapeContainer != mWayContainer) {
+                return mShapeContainer;
+            }
+            ContainerWay way = getSimplifiedWay();
+            if (curveStyle == CurveStyle.CUBIC
+                    || paint.getPathEffect() != null
+                    || (paintBorder != null && paintBorder.getPathEffect() != null)) {
+                return way;
+            }
+
+            // joins of thick lines may exceed the half of the stroke width
+            float strokeWidth = paint.getStrokeWidth();
+            if (paintBorder != null) {
+                strokeWidth = Math.max(strokeWidth, paintBorder.getStrokeWidth());
+            }
+            float margin = 2 * strokeWidth + Math.abs(vOffset) + CLIP_MARGIN;
+            if (mWayClipper == null) {
+                mWayClipper = new WayClipper();
+            }
+            if (area) {
+                if (margin > mClippedAreaMargin) {
+                    mClippedArea = mWayClipper.clipArea(way,
+                            -margin, tileSize + margin, coordinateArena);
+                    mClippedAreaMargin = margin;
+                }
+                return mClippedArea;
+            }
+            if (margin > mClippedLineMargin) {
+                mClippedLine = mWayClipper.clipLine(way,
+                        -margin, tileSize + margin, coordinateArena);
+                mClippedLineMargin = margin;
+            }
+            return mClippedLine;
+        }
+
         /**
          * Prepare way (and add for rendering), that works as water background.
          */
         private void renderWaterBackground() {
             // set parameters
-            this.coordinates = new float[][]{{
-                    0, 0, tileSize, 0, tileSize, tileSize, 0, tileSize, 0, 0}};
-            this.mShapeContainer = new ContainerWay(this.coordinates);
+            int segmentStart = coordinateArena.allocateInts(2);
+            int[] segmentOffsets = coordinateArena.getInts();
+            int offset = coordinateArena.allocateFloats(10);
+            float[] coordinates = coordinateArena.getFloats();
+            segmentOffsets[segmentStart] = offset;
+            segmentOffsets[segmentStart + 1] = offset + 10;
+            coordinates[offset] = 0;
+            coordinates[offset + 1] = 0;
+            coordinates[offset + 2] = tileSize;
+            coordinates[offset + 3] = 0;
+            coordinates[offset + 4] = tileSize;
+            coordinates[offset + 5] = tileSize;
+            coordinates[offset + 6] = 0;
+            coordinates[offset + 7] = tileSize;
+            coordinates[offset + 8] = 0;
+            coordinates[offset + 9] = 0;
+            this.mWayContainer = new ContainerWay(coordinates, segmentOffsets, segmentStart, 1);
+            this.mShapeContainer = mWayContainer;
+            resetDerivedShapes();
 
             // generate tile
             renderTheme.matchClosedWay(this,
@@ -842,6 +1106,11 @@ public class DatabaseRenderer implements MapGenerator {
             }
             addWayContainerCache(waysArray);
             waysArray = null;
+            mWayContainer = null;
+            mShapeContainer = null;
+            resetDerivedShapes();
+            addCoordinateArenaCache(coordinateArena);
+            coordinateArena = null;
         }
 
         /**
@@ -862,28 +1131,8 @@ public class DatabaseRenderer implements MapGenerator {
                     "Way:" + mCounterRenderWay + ", " +
                     "WaySymbol:" + mCounterRenderWaySymbol + ", " +
                     "WayText:" + mCounterRenderWayText);
-        }
-
-        /**
-         * Converts a latitude value into an Y coordinate on the current tile.
-         *
-         * @param latitude the latitude value.
-         * @return the Y coordinate on the current tile.
-         */
-        private float scaleLatitude(float latitude) {
-            return (float) (MercatorProjection.latitudeToPixelY(latitude / 1000000.0,
-                    mapSize) - cPixelY);
-        }
-
-        /**
-         * Converts a longitude value into an X coordinate on the current tile.
-         *
-         * @param longitude the longitude value.
-         * @return the X coordinate on the current tile.
-         */
-        private float scaleLongitude(float longitude) {
-            return (float) (MercatorProjection.longitudeToPixelX(longitude / 1000000.0,
-                    mapSize) - cPixelX);
+            Utils.getHandler().logI(TAG, "Simplified: " +
+                    "Vertices:" + mCounterVerticesBefore + " -> " + mCounterVerticesAfter);
         }
 
         //*************************************************
@@ -901,9 +1150,11 @@ public class DatabaseRenderer implements MapGenerator {
             }
             mCounterRenderArea++;
 
-            // add to layer
-            this.mCurrentLayer[level].add(
-                    new PaintContainerShape(this.mShapeContainer, paint));
+            // add to layer, only the part visible on the tile
+            ContainerShape shape = getClippedShape(true, paint, null, 0.0f, null);
+            if (shape != null) {
+                this.mCurrentLayer[level].add(new PaintContainerShape(shape, paint));
+            }
         }
 
         @Override
@@ -913,7 +1164,7 @@ public class DatabaseRenderer implements MapGenerator {
                 BgRectangle bgRect, int priority, boolean forceDraw) {
             mCounterRenderAreaCaption++;
             float[] centerPosition = GeometryUtils.
-                    computeAreaCenterPosition(mCoordinatesClosed, coordinates);
+                    computeAreaCenterPosition(mCoordinatesClosed, mWayContainer);
             this.areaLabels.add(new PaintContainerPointText(
                     caption, centerPosition[0] + horOffset, centerPosition[1] + verOffset,
                     paintFill, paintStroke, bgRect, priority, forceDraw));
@@ -930,7 +1181,7 @@ public class DatabaseRenderer implements MapGenerator {
             // draw symbol
             mCounterRenderAreaSymbol++;
             float[] centerPosition = GeometryUtils.
-                    computeAreaCenterPosition(mCoordinatesClosed, coordinates);
+                    computeAreaCenterPosition(mCoordinatesClosed, mWayContainer);
             pointSymbols.add(new PaintContainerSymbol(symbol,
                     centerPosition[0] - (symbol.getWidth() >> 1),
                     centerPosition[1] - (symbol.getHeight() >> 1),
@@ -984,9 +1235,13 @@ public class DatabaseRenderer implements MapGenerator {
             // increase counter
             mCounterRenderWay++;
 
-            // container with shape
+            // container with shape, only the part visible on the tile
+            ContainerShape shape = getClippedShape(false, paintLine, paintBorder, vOffset, curveStyle);
+            if (shape == null) {
+                return;
+            }
             PaintContainerShape containerShape = new PaintContainerShape(
-                    mShapeContainer, paintLine, paintBorder, vOffset, curveStyle);
+                    shape, paintLine, paintBorder, vOffset, curveStyle);
 
             // add container to layer
             this.mCurrentLayer[level].add(containerShape);
@@ -1003,7 +1258,7 @@ public class DatabaseRenderer implements MapGenerator {
 
             // generate symbols
             WayDecorator.renderSymbol(symbolBitmap, alignCenter,
-                    repeatSymbol, this.coordinates, this.waySymbols,
+                    repeatSymbol, getLabelWay(), this.waySymbols,
                     scale, horOffset, verOffset, repeatGap);
         }
 
@@ -1017,7 +1272,7 @@ public class DatabaseRenderer implements MapGenerator {
             }
 
             // generate texts
-            WayDecorator.renderText(textKey, this.coordinates, this.wayNames, dx, dy, rotateUp,
+            WayDecorator.renderText(textKey, getLabelWay(), this.wayNames, dx, dy, rotateUp,
                     paintFill, paintStroke, bgRect);
         }
 
@@ -1102,6 +1357,30 @@ public class DatabaseRenderer implements MapGenerator {
 //        }
     }
 
+    // SHARED SEA TILE
+
+    /**
+     * Rendered tile with only the sea, valid for a certain theme and zoom level.
+     */
+    private static class SeaTile {
+
+        private final RenderTheme renderTheme;
+        private final byte zoomLevel;
+        private final Bitmap bitmap;
+
+        private SeaTile(RenderTheme renderTheme, byte zoomLevel, Bitmap bitmap) {
+            this.renderTheme = renderTheme;
+            this.zoomLevel = zoomLevel;
+            this.bitmap = bitmap;
+        }
+
+        private boolean isValid(RenderTheme renderTheme, byte zoomLevel) {
+            return this.renderTheme == renderTheme
+                    && this.zoomLevel == zoomLevel
+                    && this.bitmap != null;
+        }
+    }
+
     // CACHE WAYS CONTAINERS
 
     private static final List<List<PaintContainerShape>[][]> mCacheWayContainers =
@@ -1135,4 +1414,30 @@ public class DatabaseRenderer implements MapGenerator {
         }
         return waysArray;
     }
+
+    // CACHE COORDINATE ARENAS
+
+    private static final List<CoordinateArena> mCacheCoordinateArenas =
+            Collections.synchronizedList(new ArrayList<>());
+
+    private static void addCoordinateArenaCache(CoordinateArena arena) {
+        // add item to cache
+        if (arena == null || mCacheCoordinateArenas.size() >= 8) {
+            return;
+        }
+        arena.clear();
+        mCacheCoordinateArenas.add(arena);
+    }
+
+    private static CoordinateArena getCoordinateArenaFromCache() {
+        // get data from cache
+        synchronized (mCacheCoordinateArenas) {
+            if (mCacheCoordinateArenas.size() > 0) {
+                return mCacheCoordinateArenas.remove(mCacheCoordinateArenas.size() - 1);
+            }
+        }
+
+        // create a new arena
+        return new CoordinateArena();
+    }
 }
@@ -16,19 +16,22 @@ package org.mapsforgeV3.map.layer.renderer;
 
 final class GeometryUtils {
 
-	private float[] computeAreaCenterPosition(float[][] coordinates) {
-		return computeAreaCenterPosition(isClosedWay(coordinates[0]), coordinates);
+	private float[] computeAreaCenterPosition(ContainerWay way) {
+		return computeAreaCenterPosition(isClosedWay(way), way);
 	}
 
-	static float[] computeAreaCenterPosition(boolean coordinatesClosed, float[][] coordinates) {
+	static float[] computeAreaCenterPosition(boolean coordinatesClosed, ContainerWay way) {
+		float[] coordinates = way.coordinates;
+		int offset = way.getSegmentOffset(0);
+		int length = way.getSegmentLength(0);
 		float[] centerPosition;
-		if (coordinatesClosed || coordinates[0].length < 4) {
-			centerPosition = calculateCenterOfBoundingBox(coordinates[0]);
+		if (coordinatesClosed || length < 4) {
+			centerPosition = calculateCenterOfBoundingBox(coordinates, offset, length);
 		} else {
-			int index = (coordinates[0].length / 2) / 2 * 2;
+			int index = offset + (length / 2) / 2 * 2;
 			centerPosition = new float[] {
-					coordinates[0][index],
-					coordinates[0][index + 1]};
+					coordinates[index],
+					coordinates[index + 1]};
 		}
 		return centerPosition;
 	}
@@ -38,15 +41,19 @@ final class GeometryUtils {
 	 * 
 	 * @param coordinates
 	 *            the coordinates for which calculation should be done.
+	 * @param offset
+	 *            offset of the first coordinate.
+	 * @param length
+	 *            number of coordinates.
 	 * @return the center coordinates of the minimum bounding rectangle.
 	 */
-	static float[] calculateCenterOfBoundingBox(float[] coordinates) {
-		float longitudeMin = coordinates[0];
-		float longitudeMax = coordinates[0];
-		float latitudeMax = coordinates[1];
-		float latitudeMin = coordinates[1];
+	static float[] calculateCenterOfBoundingBox(float[] coordinates, int offset, int length) {
+		float longitudeMin = coordinates[offset];
+		float longitudeMax = coordinates[offset];
+		float latitudeMax = coordinates[offset + 1];
+		float latitudeMin = coordinates[offset + 1];
 
-		for (int i = 2; i < coordinates.length; i += 2) {
+		for (int i = offset + 2, end = offset + length; i < end; i += 2) {
 			if (coordinates[i] < longitudeMin) {
 				longitudeMin = coordinates[i];
 			} else if (coordinates[i] > longitudeMax) {
@@ -65,11 +72,14 @@ final class GeometryUtils {
 
 	/**
 	 * @param way
-	 *            the coordinates of the way.
+	 *            the way, only its first segment is tested.
 	 * @return true if the given way is closed, false otherwise.
 	 */
-	static boolean isClosedWay(float[] way) {
-		return Float.compare(way[0], way[way.length - 2]) == 0 && 
-				Float.compare(way[1], way[way.length - 1]) == 0;
+	static boolean isClosedWay(ContainerWay way) {
+		float[] coordinates = way.coordinates;
+		int start = way.getSegmentOffset(0);
+		int end = start + way.getSegmentLength(0);
+		return Float.compare(coordinates[start], coordinates[end - 2]) == 0 &&
+				Float.compare(coordinates[start + 1], coordinates[end - 1]) == 0;
 	}
 }
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforgeV3.map.layer.renderer;
+
+import org.mapsforgeV3.core.model.BoundingBox;
+import org.mapsforgeV3.core.model.Tile;
+import org.mapsforgeV3.core.util.MercatorProjection;
+import org.mapsforgeV3.map.reader.MapDatabase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Spatial index over bounding boxes of attached map databases.
+ * <p>
+ * World is split into a fixed grid of cells and every database is registered in all cells its
+ * bounding box touches, so only databases that really intersect a tile are returned for it,
+ * independently of the total number of attached maps. Index is not thread-safe, it is used only
+ * under the lock of the renderer and has to be rebuilt after every change of the databases.
+ */
+class MapDatabaseIndex {
+
+    // size of a single cell in microdegrees
+    private static final int CELL_SIZE_E6 = 5000000;
+    // number of cells in the latitude direction
+    private static final int CELLS_LAT = 180000000 / CELL_SIZE_E6;
+    // number of cells in the longitude direction
+    private static final int CELLS_LON = 360000000 / CELL_SIZE_E6;
+
+    // indexed databases
+    private final List<MapDatabase> databases;
+    // bounding boxes of databases, or 'null' for databases without a header
+    private BoundingBox[] boundingBoxes;
+    // indices of databases in every cell, ordered ascending
+    private final int[][] cells;
+    // number of databases in every cell
+    private final int[] cellSizes;
+    // indices of databases without a known bounding box
+    private int[] unbounded;
+    // number of databases without a known bounding box
+    private int unboundedSize;
+    // flags of databases already selected by the current query
+    private boolean[] selected;
+
+    MapDatabaseIndex() {
+        this.databases = new ArrayList<>();
+        this.boundingBoxes = new BoundingBox[0];
+        this.cells = new int[CELLS_LAT * CELLS_LON][];
+        this.cellSizes = new int[CELLS_LAT * CELLS_LON];
+        this.unbounded = new int[4];
+        this.selected = new boolean[0];
+    }
+
+    /**
+     * Rebuild the index for the current list of databases.
+     *
+     * @param mapDatabases attached databases
+     */
+    void rebuild(List<MapDatabase> mapDatabases) {
+        databases.clear();
+        databases.addAll(mapDatabases);
+        Arrays.fill(cellSizes, 0);
+        unboundedSize = 0;
+
+        int size = databases.size();
+        boundingBoxes = new BoundingBox[size];
+        selected = new boolean[size];
+        for (int i = 0; i < size; i++) {
+            MapDatabase md = databases.get(i);
+            if (!md.hasFileHeader()) {
+                // file may be opened later, so database has to be checked for every tile
+                unbounded = append(unbounded, unboundedSize++, i);
+                continue;
+            }
+
+            // register database in all cells of its bounding box
+            BoundingBox bbox = md.getMapFileInfo().boundingBox;
+            boundingBoxes[i] = bbox;
+            int latMin = getCellLat(bbox.minLatitudeE6);
+            int latMax = getCellLat(bbox.maxLatitudeE6);
+            int lonMin = getCellLon(bbox.minLongitudeE6);
+            int lonMax = getCellLon(bbox.maxLongitudeE6);
+            for (int lat = latMin; lat <= latMax; lat++) {
+                for (int lon = lonMin; lon <= lonMax; lon++) {
+                    int cell = lat * CELLS_LON + lon;
+                    int[] content = cells[cell];
+                    if (content == null) {
+                        content = new int[4];
+                    }
+                    cells[cell] = append(content, cellSizes[cell]++, i);
+                }
+            }
+        }
+    }
+
+    /**
+     * Find databases, whose bounding box intersects a certain tile extended by a margin, so also
+     * maps with features drawn over the edge of the tile are found.
+     *
+     * @param tile     rendered tile
+     * @param tileSize size of tiles in pixels
+     * @param margin   margin around the tile in pixels
+     * @param result   list for found databases, ordered same as during the last rebuild
+     */
+    void query(Tile tile, int tileSize, int margin, List<MapDatabase> result) {
+        result.clear();
+
+        // compute bounds of the tile with the margin, rounded outwards
+        long pixelX = tile.tileX * tileSize;
+        long pixelY = tile.tileY * tileSize;
+        int maxLat = (int) Math.ceil(MercatorProjection.pixelYToLatitude(
+                pixelY - margin, tile.zoomLevel, tileSize, false) * 1000000.0);
+        int minLat = (int) Math.floor(MercatorProjection.pixelYToLatitude(
+                pixelY + tileSize + margin, tile.zoomLevel, tileSize, false) * 1000000.0);
+        int minLon = (int) Math.floor(MercatorProjection.pixelXToLongitude(
+                pixelX - margin, tile.zoomLevel, tileSize, false) * 1000000.0);
+        int maxLon = (int) Math.ceil(MercatorProjection.pixelXToLongitude(
+                pixelX + tileSize + margin, tile.zoomLevel, tileSize, false) * 1000000.0);
+
+        // mark databases from all cells of the tile
+        int latMin = getCellLat(minLat);
+        int latMax = getCellLat(maxLat);
+        int lonMin = getCellLon(minLon);
+        int lonMax = getCellLon(maxLon);
+        boolean found = false;
+        for (int lat = latMin; lat <= latMax; lat++) {
+            for (int lon = lonMin; lon <= lonMax; lon++) {
+                int cell = lat * CELLS_LON + lon;
+                int[] content = cells[cell];
+                for (int i = 0, n = cellSizes[cell]; i < n; i++) {
+                    int index = content[i];
+                    if (selected[index]) {
+                        continue;
+                    }
+                    BoundingBox bbox = boundingBoxes[index];
+                    if (bbox.maxLatitudeE6 >= minLat && bbox.minLatitudeE6 <= maxLat
+                            && bbox.maxLongitudeE6 >= minLon && bbox.minLongitudeE6 <= maxLon) {
+                        selected[index] = true;
+                        found = true;
+                    }
+                }
+            }
+        }
+        for (int i = 0; i < unboundedSize; i++) {
+            selected[unbounded[i]] = true;
+            found = true;
+        }
+
+        // collect marked databases in the original order
+        if (found) {
+            for (int i = 0, n = databases.size(); i < n; i++) {
+                if (selected[i]) {
+                    selected[i] = false;
+                    result.add(databases.get(i));
+                }
+            }
+        }
+    }
+
+    private static int getCellLat(int latitudeE6) {
+        return clamp((latitudeE6 + 90000000) / CELL_SIZE_E6, CELLS_LAT);
+    }
+
+    private static int getCellLon(int longitudeE6) {
+        return clamp((longitudeE6 + 180000000) / CELL_SIZE_E6, CELLS_LON);
+    }
+
+    private static int clamp(int cell, int count) {
+        return Math.max(0, Math.min(count - 1, cell));
+    }
+
+    private static int[] append(int[] array, int position, int value) {
+        if (position == array.length) {
+            array = Arrays.copyOf(array, array.length * 2);
+        }
+        array[position] = value;
+        return array;
+    }
+}
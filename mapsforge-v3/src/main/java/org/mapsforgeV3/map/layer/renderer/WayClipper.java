@@ -0,0 +1,313 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforgeV3.map.layer.renderer;
+
+import java.util.Arrays;
+
+/**
+ * Clipping of projected ways to the area of the rendered tile, extended by a margin.
+ * <p>
+ * Lines are split into parts inside of the area by the Liang-Barsky algorithm, areas are
+ * clipped by the Sutherland-Hodgman algorithm, that is robust for any polygon clipped by a
+ * rectangle. Parts of areas along edges of the clip rectangle may degenerate to lines, so the
+ * margin has to be larger than a half of the stroke width, to keep them outside of the tile.
+ * Clipped coordinates are stored into the arena of the tile, original coordinates are not
+ * modified, so they may still be used for labels and symbols.
+ */
+class WayClipper {
+
+    // coordinates of the clipped way, or of the currently clipped ring
+    private float[] output;
+    // number of values in the output
+    private int outputLength;
+    // offsets of clipped segments in the output
+    private int[] outputOffsets;
+    // number of clipped segments
+    private int outputSegments;
+    // start of the currently added segment in the output
+    private int outputSegmentStart;
+    // range of the parameter of the currently clipped edge of a line
+    private final float[] edgeRange;
+    // temporary coordinates of rings between clipping by single edges
+    private float[] ring;
+    private float[] ringSwap;
+
+    WayClipper() {
+        this.output = new float[256];
+        this.outputOffsets = new int[16];
+        this.ring = new float[256];
+        this.ringSwap = new float[256];
+        this.edgeRange = new float[2];
+    }
+
+    /**
+     * Clip line to a square area.
+     *
+     * @param way   projected way
+     * @param min   minimal coordinate of the area in both axes
+     * @param max   maximal coordinate of the area in both axes
+     * @param arena storage for clipped coordinates
+     * @return clipped way, the same way if it is completely inside of the area, or 'null' if no
+     * part of the way is inside of the area
+     */
+    ContainerWay clipLine(ContainerWay way, float min, float max, CoordinateArena arena) {
+        if (isInside(way, min, max)) {
+            return way;
+        }
+
+        reset();
+        float[] coordinates = way.coordinates;
+        float[] t = this.edgeRange;
+        for (int segment = 0; segment < way.segmentCount; segment++) {
+            int offset = way.getSegmentOffset(segment);
+            int end = offset + way.getSegmentLength(segment);
+            boolean open = false;
+            for (int i = offset; i + 3 < end; i += 2) {
+                float x0 = coordinates[i];
+                float y0 = coordinates[i + 1];
+                float dx = coordinates[i + 2] - x0;
+                float dy = coordinates[i + 3] - y0;
+
+                // compute visible part of the edge (Liang-Barsky)
+                t[0] = 0.0f;
+                t[1] = 1.0f;
+                if (!clipEdge(-dx, x0 - min, t) || !clipEdge(dx, max - x0, t)
+                        || !clipEdge(-dy, y0 - min, t) || !clipEdge(dy, max - y0, t)
+                        || t[0] == t[1]) {
+                    // edge is outside or only touches the area in a single point
+                    if (open) {
+                        closeSegment();
+                        open = false;
+                    }
+                    continue;
+                }
+
+                // add visible part, continue the current part of the line if possible
+                if (!open || t[0] > 0.0f) {
+                    if (open) {
+                        closeSegment();
+                    }
+                    addPoint(x0 + t[0] * dx, y0 + t[0] * dy);
+                    open = true;
+                }
+                addPoint(x0 + t[1] * dx, y0 + t[1] * dy);
+                if (t[1] < 1.0f) {
+                    closeSegment();
+                    open = false;
+                }
+            }
+            if (open) {
+                closeSegment();
+            }
+        }
+        return store(arena);
+    }
+
+    /**
+     * Clip area to a square area. Every segment of the way is clipped as a closed ring.
+     *
+     * @param way   projected closed way
+     * @param min   minimal coordinate of the area in both axes
+     * @param max   maximal coordinate of the area in both axes
+     * @param arena storage for clipped coordinates
+     * @return clipped way, the same way if it is completely inside of the area, or 'null' if no
+     * part of the way is inside of the area
+     */
+    ContainerWay clipArea(ContainerWay way, float min, float max, CoordinateArena arena) {
+        if (isInside(way, min, max)) {
+            return way;
+        }
+
+        reset();
+        for (int segment = 0; segment < way.segmentCount; segment++) {
+            int offset = way.getSegmentOffset(segment);
+            int length = way.getSegmentLength(segment);
+            if (length < 6) {
+                continue;
+            }
+
+            // copy the ring without its closing point
+            if (this.ring.length < length + 8) {
+                this.ring = new float[2 * length + 8];
+            }
+            System.arraycopy(way.coordinates, offset, this.ring, 0, length);
+            if (this.ring[0] == this.ring[length - 2] && this.ring[1] == this.ring[length - 1]) {
+                length -= 2;
+                if (length < 6) {
+                    // less than three distinct points
+                    continue;
+                }
+            }
+
+            // clip the ring by all edges of the area (Sutherland-Hodgman)
+            length = clipRing(length, 0, min, false);
+            length = clipRing(length, 0, max, true);
+            length = clipRing(length, 1, min, false);
+            length = clipRing(length, 1, max, true);
+            if (length < 6) {
+                continue;
+            }
+
+            // store closed ring
+            for (int i = 0; i < length; i += 2) {
+                addPoint(this.ring[i], this.ring[i + 1]);
+            }
+            addPoint(this.ring[0], this.ring[1]);
+            closeSegment();
+        }
+        return store(arena);
+    }
+
+    /**
+     * Clip the ring by a single edge of the area.
+     *
+     * @param length number of values in the ring
+     * @param axis   '0' for the X axis, '1' for the Y axis
+     * @param limit  coordinate of the edge
+     * @param upper  {@code true} if coordinates has to be lower or equal to the limit
+     * @return number of values in the clipped ring
+     */
+    private int clipRing(int length, int axis, float limit, boolean upper) {
+        if (length == 0) {
+            return 0;
+        }
+        float[] input = this.ring;
+        // every edge adds at most two points
+        if (this.ringSwap.length < 2 * length) {
+            this.ringSwap = new float[2 * length];
+        }
+        float[] result = this.ringSwap;
+        int resultLength = 0;
+
+        float px = input[length - 2];
+        float py = input[length - 1];
+        boolean previousInside = isInside(axis == 0 ? px : py, limit, upper);
+        for (int i = 0; i < length; i += 2) {
+            float x = input[i];
+            float y = input[i + 1];
+            boolean inside = isInside(axis == 0 ? x : y, limit, upper);
+            if (inside != previousInside) {
+                // add intersection of the edge with the limit
+                float t = ((axis == 0 ? px : py) - limit)
+                        / ((axis == 0 ? px - x : py - y));
+                result[resultLength++] = px + t * (x - px);
+                result[resultLength++] = py + t * (y - py);
+                if (axis == 0) {
+                    result[resultLength - 2] = limit;
+                } else {
+                    result[resultLength - 1] = limit;
+                }
+            }
+            if (inside) {
+                result[resultLength++] = x;
+                result[resultLength++] = y;
+            }
+            px = x;
+            py = y;
+            previousInside = inside;
+        }
+
+        this.ringSwap = input;
+        this.ring = result;
+        return resultLength;
+    }
+
+    private static boolean isInside(float value, float limit, boolean upper) {
+        return upper ? value <= limit : value >= limit;
+    }
+
+    /**
+     * Update range of the parameter of the edge for a single edge of the area.
+     *
+     * @return {@code false} if the edge is completely outside
+     */
+    private static boolean clipEdge(float p, float q, float[] t) {
+        if (p == 0.0f) {
+            return q >= 0.0f;
+        }
+        float r = q / p;
+        if (p < 0.0f) {
+            if (r > t[1]) {
+                return false;
+            } else if (r > t[0]) {
+                t[0] = r;
+            }
+        } else {
+            if (r < t[0]) {
+                return false;
+            } else if (r < t[1]) {
+                t[1] = r;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isInside(ContainerWay way, float min, float max) {
+        float[] coordinates = way.coordinates;
+        int from = way.getSegmentOffset(0);
+        int to = way.getSegmentOffset(way.segmentCount);
+        for (int i = from; i < to; i++) {
+            float value = coordinates[i];
+            if (value < min || value > max) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void addPoint(float x, float y) {
+        if (this.outputLength + 2 > this.output.length) {
+            this.output = Arrays.copyOf(this.output, this.output.length * 2);
+        }
+        this.output[this.outputLength++] = x;
+        this.output[this.outputLength++] = y;
+    }
+
+    private void reset() {
+        this.outputLength = 0;
+        this.outputSegments = 0;
+        this.outputSegmentStart = 0;
+        this.outputOffsets[0] = 0;
+    }
+
+    private void closeSegment() {
+        if (this.outputLength - this.outputSegmentStart < 4) {
+            // drop single points
+            this.outputLength = this.outputSegmentStart;
+            return;
+        }
+        if (this.outputSegments + 2 > this.outputOffsets.length) {
+            this.outputOffsets = Arrays.copyOf(this.outputOffsets, this.outputOffsets.length * 2);
+        }
+        this.outputSegments++;
+        this.outputOffsets[this.outputSegments] = this.outputLength;
+        this.outputSegmentStart = this.outputLength;
+    }
+
+    private ContainerWay store(CoordinateArena arena) {
+        if (this.outputSegments == 0) {
+            return null;
+        }
+        int segmentStart = arena.allocateInts(this.outputSegments + 1);
+        int[] segmentOffsets = arena.getInts();
+        int offset = arena.allocateFloats(this.outputLength);
+        float[] coordinates = arena.getFloats();
+        System.arraycopy(this.output, 0, coordinates, offset, this.outputLength);
+        for (int i = 0; i <= this.outputSegments; i++) {
+            segmentOffsets[segmentStart + i] = this.outputOffsets[i] + offset;
+        }
+        return new ContainerWay(coordinates, segmentOffsets, segmentStart, this.outputSegments);
+    }
+}
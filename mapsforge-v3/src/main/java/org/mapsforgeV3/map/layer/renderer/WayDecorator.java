@@ -40,7 +40,7 @@ public final class WayDecorator {
 	public static final int SEGMENT_SAFETY_DISTANCE = (int) Utils.getHandler().getDpPixels(30.0f, false);
 
 	static void renderSymbol(Bitmap symbolBitmap, boolean alignCenter, boolean repeatSymbol, 
-			float[][] coordinates, List<PaintContainerSymbol> waySymbols,
+			ContainerWay way, List<PaintContainerSymbol> waySymbols,
 			float scale, float horOffset, float verOffset, float repeatGap) {
 //		Utils.getHandler().logD("WayDecorator", "renderSymbol(" + symbolBitmap + ", " + alignCenter + ", " +
 //				repeatSymbol + ", " + coordinates + ", " + waySymbols + ", " + scale + ", " +
@@ -48,18 +48,21 @@ public final class WayDecorator {
 		int skipPixels = (int) (horOffset * scale);
 
 		// get the first way point coordinates
-		float previousX = coordinates[0][0];
-		float previousY = coordinates[0][1];
+		float[] coordinates = way.coordinates;
+		int start = way.getSegmentOffset(0);
+		int end = start + way.getSegmentLength(0);
+		float previousX = coordinates[start];
+		float previousY = coordinates[start + 1];
 		int imgWidth = (int) (symbolBitmap.getWidth() * scale);
 		
 		// draw the symbol on each way segment
 		float segmentLengthRemaining;
 		float segmentSkipPercentage;
 		float symbolAngle;
-		for (int i = 2; i < coordinates[0].length; i += 2) {
+		for (int i = start + 2; i < end; i += 2) {
 			// get the current way point coordinates
-			float currentX = coordinates[0][i];
-			float currentY = coordinates[0][i + 1];
+			float currentX = coordinates[i];
+			float currentY = coordinates[i + 1];
 
 			// calculate the length of the current segment (Euclidian distance)
 			float diffX = currentX - previousX;
@@ -109,7 +112,7 @@ public final class WayDecorator {
 		}
 	}
 
-	static void renderText(String textKey, float[][] coordinates,
+	static void renderText(String textKey, ContainerWay way,
 			List<PaintContainerWayText> wayNames, float horOffset, float verOffset, boolean rotateUp,
 			Paint paintFill, Paint paintStroke, BgRectangle bgRect) {
 		// calculate the way name length plus some margin of safety
@@ -119,14 +122,17 @@ public final class WayDecorator {
 		int skipPixels = 0;
 
 		// get the first way point coordinates
-		float previousX = coordinates[0][0];
-		float previousY = coordinates[0][1];
+		float[] coordinates = way.coordinates;
+		int start = way.getSegmentOffset(0);
+		int end = start + way.getSegmentLength(0);
+		float previousX = coordinates[start];
+		float previousY = coordinates[start + 1];
 
 		// find way segments long enough to draw the way name on them
-		for (int i = 2; i < coordinates[0].length; i += 2) {
+		for (int i = start + 2; i < end; i += 2) {
 			// get the current way point coordinates
-			float currentX = coordinates[0][i];
-			float currentY = coordinates[0][i + 1];
+			float currentX = coordinates[i];
+			float currentY = coordinates[i + 1];
 
 			// calculate the length of the current segment (Euclidian distance)
 			float diffX = currentX - previousX;
@@ -0,0 +1,246 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforgeV3.map.layer.renderer;
+
+import java.util.Arrays;
+
+/**
+ * Simplification of projected ways, that removes vertices not visible at the current zoom.
+ * <p>
+ * Vertices are first snapped to a grid in pixels and repeated vertices are removed, then
+ * optionally the Douglas-Peucker algorithm removes vertices closer than a tolerance to the
+ * simplified line. First and last vertex of every segment are always kept, so closed rings
+ * stay closed. Segments, that would collapse to a single point or to a ring without area,
+ * are kept without a change, so small features do not disappear.
+ */
+class WaySimplifier {
+
+    // size of the grid in pixels, or '0' to only remove repeated vertices
+    private final float gridSize;
+    // squared tolerance of the Douglas-Peucker algorithm, or '0' to skip it
+    private final float toleranceSq;
+
+    // coordinates of the simplified way
+    private float[] output;
+    // number of values in the output
+    private int outputLength;
+    // offsets of simplified segments in the output
+    private int[] outputOffsets;
+    // flags of kept vertices of the current segment
+    private boolean[] keep;
+    // stack of ranges processed by the Douglas-Peucker algorithm
+    private int[] stack;
+
+    /**
+     * Create simplifier.
+     *
+     * @param gridSize  size of the grid in pixels, or '0' to disable snapping
+     * @param tolerance tolerance of the Douglas-Peucker algorithm in pixels, or '0' to disable it
+     */
+    WaySimplifier(float gridSize, float tolerance) {
+        this.gridSize = gridSize;
+        this.toleranceSq = tolerance * tolerance;
+        this.output = new float[256];
+        this.outputOffsets = new int[16];
+        this.keep = new boolean[128];
+        this.stack = new int[64];
+    }
+
+    /**
+     * Simplify way.
+     *
+     * @param way   projected way
+     * @param arena storage for simplified coordinates
+     * @return simplified way, or the same way if no vertex was changed or removed
+     */
+    ContainerWay simplify(ContainerWay way, CoordinateArena arena) {
+        float[] coordinates = way.coordinates;
+        this.outputLength = 0;
+        this.outputOffsets = ensureCapacity(this.outputOffsets, way.segmentCount + 1);
+        this.outputOffsets[0] = 0;
+        for (int segment = 0; segment < way.segmentCount; segment++) {
+            int offset = way.getSegmentOffset(segment);
+            int end = offset + way.getSegmentLength(segment);
+            simplifySegment(coordinates, offset, end);
+            this.outputOffsets[segment + 1] = this.outputLength;
+        }
+
+        int length = way.getSegmentOffset(way.segmentCount) - way.getSegmentOffset(0);
+        if (this.gridSize == 0 && this.outputLength == length) {
+            return way;
+        }
+        return store(way.segmentCount, arena);
+    }
+
+    private void simplifySegment(float[] coordinates, int offset, int end) {
+        int start = this.outputLength;
+        this.output = ensureCapacity(this.output, start + end - offset);
+        float[] out = this.output;
+        int length = start;
+
+        // snap vertices to the grid and remove repeated vertices
+        for (int i = offset; i + 1 < end; i += 2) {
+            float x = snap(coordinates[i]);
+            float y = snap(coordinates[i + 1]);
+            if (length > start && out[length - 2] == x && out[length - 1] == y) {
+                continue;
+            }
+            out[length++] = x;
+            out[length++] = y;
+        }
+
+        // rings need at least three different vertices, lines two
+        boolean closed = end - offset >= 4
+                && coordinates[offset] == coordinates[end - 2]
+                && coordinates[offset + 1] == coordinates[end - 1];
+        int minLength = closed ? 8 : 4;
+        if (length - start < minLength) {
+            copySegment(coordinates, offset, end, start);
+            return;
+        }
+
+        if (this.toleranceSq > 0 && length - start > 4) {
+            length = douglasPeucker(start, length, minLength);
+        }
+        this.outputLength = length;
+    }
+
+    /**
+     * Remove vertices of the segment closer than the tolerance to the simplified line. Kept
+     * vertices are moved to the start of the segment. Segment is not changed, if less than the
+     * minimal number of values would be kept.
+     *
+     * @return end of the simplified segment in the output
+     */
+    private int douglasPeucker(int start, int end, int minLength) {
+        int count = (end - start) / 2;
+        if (this.keep.length < count) {
+            this.keep = new boolean[Math.max(count, this.keep.length * 2)];
+        }
+        boolean[] keep = this.keep;
+        Arrays.fill(keep, 0, count, false);
+        keep[0] = true;
+        keep[count - 1] = true;
+
+        float[] out = this.output;
+        int stackSize = 0;
+        this.stack[stackSize++] = 0;
+        this.stack[stackSize++] = count - 1;
+        while (stackSize > 0) {
+            int last = this.stack[--stackSize];
+            int first = this.stack[--stackSize];
+            float x0 = out[start + 2 * first];
+            float y0 = out[start + 2 * first + 1];
+            float dx = out[start + 2 * last] - x0;
+            float dy = out[start + 2 * last + 1] - y0;
+            float lengthSq = dx * dx + dy * dy;
+
+            // find vertex with the largest distance from the segment between first and last
+            float maxDistanceSq = this.toleranceSq;
+            int index = -1;
+            for (int i = first + 1; i < last; i++) {
+                float px = out[start + 2 * i] - x0;
+                float py = out[start + 2 * i + 1] - y0;
+                // distance from the segment, vertices going back are not hidden by the line
+                float t = lengthSq == 0 ? 0 : (px * dx + py * dy) / lengthSq;
+                if (t > 1) {
+                    t = 1;
+                } else if (t < 0) {
+                    t = 0;
+                }
+                float ex = px - t * dx;
+                float ey = py - t * dy;
+                float distanceSq = ex * ex + ey * ey;
+                if (distanceSq > maxDistanceSq) {
+                    maxDistanceSq = distanceSq;
+                    index = i;
+                }
+            }
+            if (index < 0) {
+                continue;
+            }
+
+            keep[index] = true;
+            this.stack = ensureCapacity(this.stack, stackSize + 4);
+            if (index - first > 1) {
+                this.stack[stackSize++] = first;
+                this.stack[stackSize++] = index;
+            }
+            if (last - index > 1) {
+                this.stack[stackSize++] = index;
+                this.stack[stackSize++] = last;
+            }
+        }
+
+        // keep the segment unchanged if it would collapse
+        int kept = 0;
+        for (int i = 0; i < count; i++) {
+            if (keep[i]) {
+                kept++;
+            }
+        }
+        if (2 * kept < minLength) {
+            return end;
+        }
+
+        // compact kept vertices
+        int length = start;
+        for (int i = 0; i < count; i++) {
+            if (keep[i]) {
+                out[length++] = out[start + 2 * i];
+                out[length++] = out[start + 2 * i + 1];
+            }
+        }
+        return length;
+    }
+
+    private float snap(float value) {
+        if (this.gridSize == 0) {
+            return value;
+        }
+        return Math.round(value / this.gridSize) * this.gridSize;
+    }
+
+    private void copySegment(float[] coordinates, int offset, int end, int start) {
+        System.arraycopy(coordinates, offset, this.output, start, end - offset);
+        this.outputLength = start + end - offset;
+    }
+
+    private ContainerWay store(int segmentCount, CoordinateArena arena) {
+        int segmentStart = arena.allocateInts(segmentCount + 1);
+        int[] segmentOffsets = arena.getInts();
+        int offset = arena.allocateFloats(this.outputLength);
+        float[] coordinates = arena.getFloats();
+        System.arraycopy(this.output, 0, coordinates, offset, this.outputLength);
+        for (int i = 0; i <= segmentCount; i++) {
+            segmentOffsets[segmentStart + i] = this.outputOffsets[i] + offset;
+        }
+        return new ContainerWay(coordinates, segmentOffsets, segmentStart, segmentCount);
+    }
+
+    private static float[] ensureCapacity(float[] array, int length) {
+        if (array.length >= length) {
+            return array;
+        }
+        return Arrays.copyOf(array, Math.max(length, array.length * 2));
+    }
+
+    private static int[] ensureCapacity(int[] array, int length) {
+        if (array.length >= length) {
+            return array;
+        }
+        return Arrays.copyOf(array, Math.max(length, array.length * 2));
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforgeV3.map.reader;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Reads of all planned blocks of a single query, issued at once on an I/O executor.
+ * <p>
+ * Planned blocks are split into the same ranges as for sequential reading and every range is read
+ * into its own buffer by the executor. Ranges are then handed to the read buffer strictly in the
+ * order of the plan, so blocks are decoded in the same order as before, while reads of following
+ * blocks overlap the decoding. Buffers are owned by the {@link QueryCursor} and reused by next
+ * queries of the same thread.
+ */
+class AsyncBlockReads {
+
+    // number of prepared ranges
+    private int size;
+    // index of the next range handed to the read buffer
+    private int next;
+    // index of the first block of every range
+    private int[] rangeFrom;
+    // index after the last block of every range
+    private int[] rangeTo;
+    // size of every range in bytes
+    private int[] rangeSizes;
+    // buffers for data of ranges
+    private byte[][] buffers;
+    // running reads of ranges
+    private final List<FutureTask<Boolean>> reads;
+
+    AsyncBlockReads() {
+        this.rangeFrom = new int[8];
+        this.rangeTo = new int[8];
+        this.rangeSizes = new int[8];
+        this.buffers = new byte[8][];
+        this.reads = new ArrayList<>(Collections.<FutureTask<Boolean>>nCopies(8, null));
+    }
+
+    /**
+     * Split blocks of the plan, that are not available in the cache of decoded blocks,
+     * into ranges read by a single read.
+     *
+     * @param plan    planned blocks
+     * @param maxGap  maximal number of unused bytes between two blocks of a range
+     * @param maxSize maximal size of a range in bytes
+     * @return number of ranges
+     */
+    int prepare(BlockPlan plan, int maxGap, int maxSize) {
+        this.size = 0;
+        this.next = 0;
+        for (int i = 0, n = plan.size(); i < n; ) {
+            if (plan.getDecodedBlock(i) != null) {
+                i++;
+                continue;
+            }
+            int to = plan.getRangeEnd(i, maxGap, maxSize);
+            ensureCapacity(this.size + 1);
+            this.rangeFrom[this.size] = i;
+            this.rangeTo[this.size] = to;
+            this.rangeSizes[this.size] = plan.getRangeSize(i, to);
+            this.size++;
+            i = to;
+        }
+        return this.size;
+    }
+
+    /**
+     * Start reads of all prepared ranges.
+     *
+     * @param executor     executor for reads
+     * @param fileChannel  channel of the map file
+     * @param startAddress absolute position of the sub-file in the map file
+     * @param plan         planned blocks
+     */
+    void start(Executor executor, final FileChannel fileChannel, long startAddress,
+            BlockPlan plan) {
+        for (int i = 0; i < this.size; i++) {
+            final int length = this.rangeSizes[i];
+            if (length > ReadBuffer.MAXIMUM_BUFFER_SIZE) {
+                // range is too large, it fails same as the sequential read
+                FutureTask<Boolean> read = new FutureTask<>(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() {
+                        return false;
+                    }
+                });
+                read.run();
+                this.reads.set(i, read);
+                continue;
+            }
+            if (this.buffers[i] == null || this.buffers[i].length < length) {
+                this.buffers[i] = new byte[length];
+            }
+            final byte[] buffer = this.buffers[i];
+            final long position = startAddress + plan.getBlockPointer(this.rangeFrom[i]);
+            FutureTask<Boolean> read = new FutureTask<>(new Callable<Boolean>() {
+                @Override
+                public Boolean call() throws IOException {
+                    return ReadBuffer.readFully(fileChannel,
+                            ByteBuffer.wrap(buffer, 0, length), position);
+                }
+            });
+            this.reads.set(i, read);
+            executor.execute(read);
+        }
+    }
+
+    /**
+     * Wait for the next range and set its data as the content of the read buffer.
+     *
+     * @param readBuffer buffer for decoding of blocks
+     * @param from       index of the first block of the range, used only for validation
+     * @return index after the last block of the range, or '-1' if reading failed
+     * @throws IOException if an error occurs while reading the file
+     */
+    int next(ReadBuffer readBuffer, int from) throws IOException {
+        if (this.next >= this.size || this.rangeFrom[this.next] != from) {
+            return -1;
+        }
+        int range = this.next++;
+        try {
+            if (!this.reads.get(range).get()) {
+                return -1;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return -1;
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+        readBuffer.setLoadedData(this.buffers[range], this.rangeSizes[range]);
+        return this.rangeTo[range];
+    }
+
+    /**
+     * Wait for all reads, also for those not used after a failure, so buffers may be reused.
+     * Reads are not cancelled, because a cancelled read may still write into its buffer.
+     */
+    void finish() {
+        boolean interrupted = false;
+        for (int i = 0; i < this.size; i++) {
+            FutureTask<Boolean> read = this.reads.set(i, null);
+            while (read != null) {
+                try {
+                    read.get();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    break;
+                }
+            }
+        }
+        this.size = 0;
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (this.rangeFrom.length < capacity) {
+            int length = Math.max(capacity, this.rangeFrom.length * 2);
+            this.rangeFrom = Arrays.copyOf(this.rangeFrom, length);
+            this.rangeTo = Arrays.copyOf(this.rangeTo, length);
+            this.rangeSizes = Arrays.copyOf(this.rangeSizes, length);
+            this.buffers = Arrays.copyOf(this.buffers, length);
+            while (this.reads.size() < length) {
+                this.reads.add(null);
+            }
+        }
+    }
+}
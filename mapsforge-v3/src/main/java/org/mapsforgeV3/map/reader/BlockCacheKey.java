@@ -17,24 +17,24 @@ package org.mapsforgeV3.map.reader;
 import org.mapsforgeV3.map.reader.header.SubFileParameter;
 
 /**
- * An immutable container class which is the key for the index cache.
+ * An immutable container class which is the key for the cache of decoded blocks.
  */
-class IndexCacheEntryKey {
+class BlockCacheKey {
+	private final long blockNumber;
 	private final int hashCodeValue;
-	private final long indexBlockNumber;
 	private final SubFileParameter subFileParameter;
 
 	/**
 	 * Creates an immutable key to be stored in a map.
-	 * 
+	 *
 	 * @param subFileParameter
-	 *            the parameters of the map file.
-	 * @param indexBlockNumber
-	 *            the number of the index block.
+	 *            the parameters of the sub-file.
+	 * @param blockNumber
+	 *            the number of the block in the sub-file.
 	 */
-	IndexCacheEntryKey(SubFileParameter subFileParameter, long indexBlockNumber) {
+	BlockCacheKey(SubFileParameter subFileParameter, long blockNumber) {
 		this.subFileParameter = subFileParameter;
-		this.indexBlockNumber = indexBlockNumber;
+		this.blockNumber = blockNumber;
 		this.hashCodeValue = calculateHashCode();
 	}
 
@@ -42,16 +42,13 @@ class IndexCacheEntryKey {
 	public boolean equals(Object obj) {
 		if (this == obj) {
 			return true;
-		} else if (!(obj instanceof IndexCacheEntryKey)) {
+		} else if (!(obj instanceof BlockCacheKey)) {
 			return false;
 		}
-		IndexCacheEntryKey other = (IndexCacheEntryKey) obj;
-		if (this.subFileParameter == null && other.subFileParameter != null) {
-			return false;
-		} else if (this.subFileParameter != null && !this.subFileParameter.equals(other.subFileParameter)) {
-			return false;
-		} else return this.indexBlockNumber == other.indexBlockNumber;
-    }
+		BlockCacheKey other = (BlockCacheKey) obj;
+		return this.blockNumber == other.blockNumber
+				&& this.subFileParameter.equals(other.subFileParameter);
+	}
 
 	@Override
 	public int hashCode() {
@@ -63,8 +60,8 @@ class IndexCacheEntryKey {
 	 */
 	private int calculateHashCode() {
 		int result = 7;
-		result = 31 * result + ((this.subFileParameter == null) ? 0 : this.subFileParameter.hashCode());
-		result = 31 * result + (int) (this.indexBlockNumber ^ (this.indexBlockNumber >>> 32));
+		result = 31 * result + this.subFileParameter.hashCode();
+		result = 31 * result + (int) (this.blockNumber ^ (this.blockNumber >>> 32));
 		return result;
 	}
 }
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforgeV3.map.reader;
+
+import java.util.Arrays;
+
+/**
+ * List of non-empty blocks needed for a single query, in order of processing.
+ * <p>
+ * Plan is prepared from the index before any block is read, so blocks stored close to each
+ * other in the file may be loaded by a single read.
+ */
+class BlockPlan {
+
+    // number of planned blocks
+    private int size;
+    // numbers of blocks in the sub-file
+    private long[] blockNumbers;
+    // offsets of blocks relative to the start of the sub-file
+    private long[] blockPointers;
+    // sizes of blocks in bytes
+    private int[] blockSizes;
+    // blocks available in the cache of decoded blocks
+    private DecodedBlock[] decodedBlocks;
+
+    BlockPlan() {
+        this.blockNumbers = new long[16];
+        this.blockPointers = new long[16];
+        this.blockSizes = new int[16];
+        this.decodedBlocks = new DecodedBlock[16];
+    }
+
+    /**
+     * Remove all planned blocks.
+     */
+    void clear() {
+        Arrays.fill(this.decodedBlocks, 0, this.size, null);
+        this.size = 0;
+    }
+
+    /**
+     * Add block to the end of the plan.
+     *
+     * @param blockNumber  number of the block in the sub-file
+     * @param blockPointer offset of the block relative to the start of the sub-file
+     * @param blockSize    size of the block in bytes
+     * @param decodedBlock block from the cache of decoded blocks, may be {@code null}
+     */
+    void add(long blockNumber, long blockPointer, int blockSize, DecodedBlock decodedBlock) {
+        if (this.size == this.blockNumbers.length) {
+            int capacity = this.size * 2;
+            this.blockNumbers = Arrays.copyOf(this.blockNumbers, capacity);
+            this.blockPointers = Arrays.copyOf(this.blockPointers, capacity);
+            this.blockSizes = Arrays.copyOf(this.blockSizes, capacity);
+            this.decodedBlocks = Arrays.copyOf(this.decodedBlocks, capacity);
+        }
+        this.blockNumbers[this.size] = blockNumber;
+        this.blockPointers[this.size] = blockPointer;
+        this.blockSizes[this.size] = blockSize;
+        this.decodedBlocks[this.size] = decodedBlock;
+        this.size++;
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    long getBlockNumber(int index) {
+        return this.blockNumbers[index];
+    }
+
+    long getBlockPointer(int index) {
+        return this.blockPointers[index];
+    }
+
+    int getBlockSize(int index) {
+        return this.blockSizes[index];
+    }
+
+    DecodedBlock getDecodedBlock(int index) {
+        return this.decodedBlocks[index];
+    }
+
+    /**
+     * @return number of planned blocks not available in the cache of decoded blocks
+     */
+    int getUndecodedCount() {
+        int count = 0;
+        for (int i = 0; i < this.size; i++) {
+            if (this.decodedBlocks[i] == null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Find the range of blocks that may be loaded together with the certain block by a single
+     * read. Range continues over following blocks, which start after the end of the previous block
+     * in a distance of at most {@code maxGap} bytes. Blocks available in the cache of decoded
+     * blocks are not loaded, they only count as a gap.
+     *
+     * @param from    index of the first block of the range
+     * @param maxGap  maximal number of unused bytes between two blocks of the range
+     * @param maxSize maximal size of the whole range in bytes
+     * @return index after the last block of the range
+     */
+    int getRangeEnd(int from, int maxGap, int maxSize) {
+        long rangeStart = this.blockPointers[from];
+        long rangeEnd = rangeStart + this.blockSizes[from];
+        int to = from + 1;
+        for (int i = from + 1; i < this.size; i++) {
+            if (this.decodedBlocks[i] != null) {
+                continue;
+            }
+            long blockStart = this.blockPointers[i];
+            long blockEnd = blockStart + this.blockSizes[i];
+            if (blockStart < rangeEnd || blockStart - rangeEnd > maxGap
+                    || blockEnd - rangeStart > maxSize) {
+                break;
+            }
+            rangeEnd = blockEnd;
+            to = i + 1;
+        }
+        return to;
+    }
+
+    /**
+     * Get size of the range of blocks.
+     *
+     * @param from index of the first block of the range
+     * @param to   index after the last block of the range
+     * @return size of the range in bytes
+     */
+    int getRangeSize(int from, int to) {
+        return (int) (this.blockPointers[to - 1] + this.blockSizes[to - 1] - this.blockPointers[from]);
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforgeV3.map.reader;
+
+import org.mapsforgeV3.core.model.BoundingBox;
+import org.mapsforgeV3.core.model.Tag;
+
+/**
+ * Visitor passing only features that intersect a certain bounding box to the target visitor.
+ */
+class BoundingBoxFilter implements FeatureVisitor {
+
+    // area of the query
+    private final BoundingBox boundingBox;
+    // receiver of accepted features
+    private final FeatureVisitor visitor;
+
+    BoundingBoxFilter(BoundingBox boundingBox, FeatureVisitor visitor) {
+        this.boundingBox = boundingBox;
+        this.visitor = visitor;
+    }
+
+    @Override
+    public void renderNode(byte layer, Tag[] tags, int latitudeE6, int longitudeE6) {
+        if (latitudeE6 >= boundingBox.minLatitudeE6 && latitudeE6 <= boundingBox.maxLatitudeE6
+                && longitudeE6 >= boundingBox.minLongitudeE6
+                && longitudeE6 <= boundingBox.maxLongitudeE6) {
+            visitor.renderNode(layer, tags, latitudeE6, longitudeE6);
+        }
+    }
+
+    @Override
+    public void renderWay(Way way) {
+        if (way.bboxTopE6 >= boundingBox.minLatitudeE6 && way.bboxBottomE6 <= boundingBox.maxLatitudeE6
+                && way.bboxRightE6 >= boundingBox.minLongitudeE6
+                && way.bboxLeftE6 <= boundingBox.maxLongitudeE6) {
+            visitor.renderWay(way);
+        }
+    }
+}
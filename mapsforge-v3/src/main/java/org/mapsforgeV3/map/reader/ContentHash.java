@@ -0,0 +1,75 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforgeV3.map.reader;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Stable 64-bit hash (FNV-1a) of the content of map files.
+ * <p>
+ * Hashes are computed only from data stored in the file, so the same content gives the same hash
+ * in every run and in every version of the map file.
+ */
+final class ContentHash {
+
+    /**
+     * Initial value of every hash.
+     */
+    static final long INITIAL = 0xcbf29ce484222325L;
+
+    private static final long PRIME = 0x100000001b3L;
+
+    static long update(long hash, byte value) {
+        return (hash ^ (value & 0xff)) * PRIME;
+    }
+
+    static long update(long hash, long value) {
+        for (int i = 0; i < 8; i++) {
+            hash = update(hash, (byte) (value >>> (i * 8)));
+        }
+        return hash;
+    }
+
+    static long update(long hash, String value) {
+        if (value == null) {
+            return update(hash, -1L);
+        }
+        hash = update(hash, (long) value.length());
+        for (int i = 0, n = value.length(); i < n; i++) {
+            char c = value.charAt(i);
+            hash = update(hash, (byte) (c >>> 8));
+            hash = update(hash, (byte) c);
+        }
+        return hash;
+    }
+
+    static long update(long hash, byte[] data, int offset, int length) {
+        for (int i = offset, end = offset + length; i < end; i++) {
+            hash = (hash ^ (data[i] & 0xff)) * PRIME;
+        }
+        return hash;
+    }
+
+    static long update(long hash, ByteBuffer data, int offset, int length) {
+        for (int i = offset, end = offset + length; i < end; i++) {
+            hash = (hash ^ (data.get(i) & 0xff)) * PRIME;
+        }
+        return hash;
+    }
+
+    private ContentHash() {
+        throw new IllegalStateException();
+    }
+}
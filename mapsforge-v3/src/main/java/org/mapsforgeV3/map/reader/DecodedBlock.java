@@ -0,0 +1,508 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforgeV3.map.reader;
+
+import org.mapsforgeV3.core.model.Tag;
+import org.mapsforgeV3.core.util.TileProjection;
+
+import java.util.Arrays;
+
+/**
+ * Immutable decoded content of a single block.
+ * <p>
+ * Block is decoded for all zoom levels of its sub-file and without the tile bitmask filter.
+ * Features are stored in the same order as in the file, so data for any query may be replayed
+ * with help of the cumulative counts from the zoom table. Tag IDs and optional features are kept
+ * as well, so every replay may skip features rejected by the tag filter of its query. A block
+ * decoded by a {@link Builder#queryOnly} builder may be replayed only for its own query.
+ * <p>
+ * Tags of stored features are shared by all replays, so receivers of data must not modify them.
+ * Coordinates of ways are kept in exact microdegrees and every replay converts them into arenas
+ * of the cursor.
+ */
+class DecodedBlock {
+
+    // approximate size of an object header and of an array header in bytes
+    private static final int OBJECT_OVERHEAD = 16;
+    // approximate size of a tag created for a single feature, without text of its value
+    private static final int FEATURE_TAG_SIZE = 64;
+
+    /**
+     * Flag of a feature with a name.
+     */
+    static final int FEATURE_NAME = 0x01;
+    /**
+     * Flag of a feature with a house number.
+     */
+    static final int FEATURE_HOUSE_NUMBER = 0x02;
+    /**
+     * Flag of a POI with an elevation or a way with a reference.
+     */
+    static final int FEATURE_ELEVATION_OR_REF = 0x04;
+
+    // cumulative number of POIs on every row of the zoom table
+    private final int[] zoomTablePois;
+    // cumulative number of ways on every row of the zoom table
+    private final int[] zoomTableWays;
+
+    // layers of POIs
+    private final byte[] poiLayers;
+    // coordinates of POIs (latitude, longitude)
+    private final int[] poiCoordinates;
+    // tags of POIs
+    private final Tag[][] poiTags;
+    // index of the first tag ID of POIs in tag IDs
+    private final int[] poiTagIdStarts;
+    // number of tag IDs of POIs
+    private final byte[] poiTagIdCounts;
+    // flags of optional features of POIs
+    private final byte[] poiFeatures;
+
+    // index of the way in the block, every way data block is stored as an own entry
+    private final int[] wayIndices;
+    // tile bitmask of ways
+    private final short[] wayTileBitmasks;
+    // layers of ways
+    private final byte[] wayLayers;
+    // position of labels (latitude, longitude)
+    private final int[] wayLabels;
+    // bounding boxes of ways (top, bottom, left, right)
+    private final int[] wayBBoxes;
+    // flags if ways are just a background
+    private final boolean[] wayFillBackground;
+    // tags of ways
+    private final Tag[][] wayTags;
+    // index of the first tag ID of ways in tag IDs
+    private final int[] wayTagIdStarts;
+    // number of tag IDs of ways
+    private final byte[] wayTagIdCounts;
+    // flags of optional features of ways
+    private final byte[] wayFeatures;
+    // index of the first segment of ways in segment offsets
+    private final int[] waySegmentStarts;
+    // number of segments of ways
+    private final int[] waySegmentCounts;
+    // offsets of all segments in coordinates, segment ends where the next one starts
+    private final int[] segmentOffsets;
+    // coordinates of all ways in microdegrees (longitude, latitude)
+    private final int[] coordinates;
+    // tag IDs of all features
+    private final int[] tagIds;
+
+    // approximate size of the block in memory
+    final long sizeInBytes;
+
+    private DecodedBlock(Builder builder) {
+        this.zoomTablePois = builder.zoomTablePois;
+        this.zoomTableWays = builder.zoomTableWays;
+        this.poiLayers = Arrays.copyOf(builder.poiLayers, builder.poiCount);
+        this.poiCoordinates = Arrays.copyOf(builder.poiCoordinates, builder.poiCount * 2);
+        this.poiTags = Arrays.copyOf(builder.poiTags, builder.poiCount);
+        this.poiTagIdStarts = Arrays.copyOf(builder.poiTagIdStarts, builder.poiCount);
+        this.poiTagIdCounts = Arrays.copyOf(builder.poiTagIdCounts, builder.poiCount);
+        this.poiFeatures = Arrays.copyOf(builder.poiFeatures, builder.poiCount);
+        this.wayIndices = Arrays.copyOf(builder.wayIndices, builder.wayCount);
+        this.wayTileBitmasks = Arrays.copyOf(builder.wayTileBitmasks, builder.wayCount);
+        this.wayLayers = Arrays.copyOf(builder.wayLayers, builder.wayCount);
+        this.wayLabels = Arrays.copyOf(builder.wayLabels, builder.wayCount * 2);
+        this.wayBBoxes = Arrays.copyOf(builder.wayBBoxes, builder.wayCount * 4);
+        this.wayFillBackground = Arrays.copyOf(builder.wayFillBackground, builder.wayCount);
+        this.wayTags = Arrays.copyOf(builder.wayTags, builder.wayCount);
+        this.wayTagIdStarts = Arrays.copyOf(builder.wayTagIdStarts, builder.wayCount);
+        this.wayTagIdCounts = Arrays.copyOf(builder.wayTagIdCounts, builder.wayCount);
+        this.wayFeatures = Arrays.copyOf(builder.wayFeatures, builder.wayCount);
+        this.waySegmentStarts = Arrays.copyOf(builder.waySegmentStarts, builder.wayCount);
+        this.waySegmentCounts = Arrays.copyOf(builder.waySegmentCounts, builder.wayCount);
+        this.segmentOffsets = Arrays.copyOf(builder.segmentOffsets, builder.segmentCount + 1);
+        this.coordinates = Arrays.copyOf(builder.coordinates, builder.coordinatesLength);
+        this.tagIds = Arrays.copyOf(builder.tagIds, builder.tagIdsLength);
+        this.sizeInBytes = builder.sizeInBytes
+                + 22 * OBJECT_OVERHEAD
+                + 8L * this.zoomTablePois.length
+                + 19L * this.poiLayers.length
+                + 48L * this.wayIndices.length
+                + 4L * this.segmentOffsets.length
+                + 4L * this.coordinates.length
+                + 4L * this.tagIds.length;
+    }
+
+    /**
+     * Send POIs valid for a certain zoom table row to the renderer. POIs rejected by the tag
+     * filter of the query are skipped.
+     *
+     * @param zoomTableRow    row of the zoom table
+     * @param queryParameters parameters of the current query
+     * @param tr              renderer
+     * @return number of POIs on the row
+     */
+    int replayPois(int zoomTableRow, QueryParameters queryParameters, FeatureVisitor tr) {
+        TagFilter tagFilter = queryParameters.tagFilter;
+        boolean filter = tagFilter != null && tagFilter.isFilteringPois();
+        int numberOfPois = this.zoomTablePois[zoomTableRow];
+        for (int i = 0; i < numberOfPois; i++) {
+            if (filter && !isPoiAccepted(i, tagFilter)) {
+                continue;
+            }
+            tr.renderNode(this.poiLayers[i], this.poiTags[i],
+                    this.poiCoordinates[2 * i], this.poiCoordinates[2 * i + 1]);
+        }
+        return numberOfPois;
+    }
+
+    /**
+     * Send ways valid for a certain zoom table row and tile bitmask to the renderer.
+     *
+     * Coordinates are projected to pixels of the tile, if the query defines the projection. Ways
+     * outside of the projected tile and ways rejected by the tag filter of the query are skipped,
+     * but still counted as sent.
+     *
+     * @param zoomTableRow    row of the zoom table
+     * @param queryParameters parameters of the current query
+     * @param cursor          cursor with the container used for sending ways
+     * @param tr              renderer
+     * @return number of sent ways
+     */
+    int replayWays(int zoomTableRow, QueryParameters queryParameters, QueryCursor cursor,
+            FeatureVisitor tr) {
+        Way way = cursor.way;
+        TileProjection tileProjection = queryParameters.tileProjection;
+        TagFilter tagFilter = queryParameters.tagFilter;
+        boolean filter = tagFilter != null && tagFilter.isFilteringWays();
+        int numberOfWays = this.zoomTableWays[zoomTableRow];
+        int validWays = 0;
+        for (int i = 0, n = this.wayIndices.length; i < n && this.wayIndices[i] < numberOfWays; i++) {
+            // check if the way is inside the requested tile
+            if (queryParameters.useTileBitmask
+                    && (queryParameters.queryTileBitmask & this.wayTileBitmasks[i]) == 0) {
+                continue;
+            }
+
+            // skip ways, that may not be matched by any rule
+            if (filter && !isWayAccepted(i, tagFilter)) {
+                validWays++;
+                continue;
+            }
+
+            // skip ways not visible in the tile before their projection
+            if (tileProjection != null && !tileProjection.isVisible(
+                    this.wayBBoxes[4 * i], this.wayBBoxes[4 * i + 1],
+                    this.wayBBoxes[4 * i + 2], this.wayBBoxes[4 * i + 3])) {
+                cursor.culledWays++;
+                validWays++;
+                continue;
+            }
+
+            // prepare way
+            way.set(this.wayLayers[i], this.wayLabels[2 * i], this.wayLabels[2 * i + 1]);
+            way.tags = this.wayTags[i];
+            way.segmentCount = this.waySegmentCounts[i];
+            setCoordinates(i, tileProjection, cursor, way);
+            way.bboxTopE6 = this.wayBBoxes[4 * i];
+            way.bboxBottomE6 = this.wayBBoxes[4 * i + 1];
+            way.bboxLeftE6 = this.wayBBoxes[4 * i + 2];
+            way.bboxRightE6 = this.wayBBoxes[4 * i + 3];
+            way.isFillBackground = this.wayFillBackground[i];
+
+            // finally render way
+            tr.renderWay(way);
+            validWays++;
+        }
+        return validWays;
+    }
+
+    private boolean isPoiAccepted(int i, TagFilter tagFilter) {
+        for (int j = this.poiTagIdStarts[i], n = j + this.poiTagIdCounts[i]; j < n; j++) {
+            if (tagFilter.acceptsPoiTag(this.tagIds[j])) {
+                return true;
+            }
+        }
+        int features = this.poiFeatures[i];
+        return tagFilter.acceptsPoiFeatures((features & FEATURE_NAME) != 0,
+                (features & FEATURE_HOUSE_NUMBER) != 0,
+                (features & FEATURE_ELEVATION_OR_REF) != 0);
+    }
+
+    private boolean isWayAccepted(int i, TagFilter tagFilter) {
+        for (int j = this.wayTagIdStarts[i], n = j + this.wayTagIdCounts[i]; j < n; j++) {
+            if (tagFilter.acceptsWayTag(this.tagIds[j])) {
+                return true;
+            }
+        }
+        int features = this.wayFeatures[i];
+        return tagFilter.acceptsWayFeatures((features & FEATURE_NAME) != 0,
+                (features & FEATURE_HOUSE_NUMBER) != 0,
+                (features & FEATURE_ELEVATION_OR_REF) != 0);
+    }
+
+    /**
+     * Copy coordinates of a certain way into arenas of the cursor and set them to the way.
+     *
+     * @param tileProjection if defined, coordinates are projected to pixels of the tile
+     */
+    private void setCoordinates(int i, TileProjection tileProjection, QueryCursor cursor,
+            Way way) {
+        int segmentStart = this.waySegmentStarts[i];
+        int segmentCount = this.waySegmentCounts[i];
+        int from = this.segmentOffsets[segmentStart];
+        int to = this.segmentOffsets[segmentStart + segmentCount];
+        int[] segmentOffsets = cursor.getWaySegmentOffsets(segmentCount + 1);
+        for (int segment = 0; segment <= segmentCount; segment++) {
+            segmentOffsets[segment] = this.segmentOffsets[segmentStart + segment] - from;
+        }
+        float[] coordinates = cursor.getWayCoordinates(to - from);
+        if (tileProjection != null) {
+            for (int j = from; j < to; j += 2) {
+                coordinates[j - from] = tileProjection.projectX(this.coordinates[j]);
+                coordinates[j - from + 1] = tileProjection.projectY(this.coordinates[j + 1]);
+            }
+        } else {
+            for (int j = from; j < to; j++) {
+                coordinates[j - from] = this.coordinates[j];
+            }
+        }
+        way.coordinates = coordinates;
+        way.isProjected = tileProjection != null;
+        way.segmentOffsets = segmentOffsets;
+        way.segmentStart = 0;
+    }
+
+    /**
+     * Collector of decoded features. Builder may be reused for more blocks.
+     */
+    static class Builder {
+
+        private int[] zoomTablePois;
+        private int[] zoomTableWays;
+
+        private int poiCount;
+        private byte[] poiLayers = new byte[16];
+        private int[] poiCoordinates = new int[32];
+        private Tag[][] poiTags = new Tag[16][];
+        private int[] poiTagIdStarts = new int[16];
+        private byte[] poiTagIdCounts = new byte[16];
+        private byte[] poiFeatures = new byte[16];
+
+        private int wayCount;
+        private int[] wayIndices = new int[16];
+        private short[] wayTileBitmasks = new short[16];
+        private byte[] wayLayers = new byte[16];
+        private int[] wayLabels = new int[32];
+        private int[] wayBBoxes = new int[64];
+        private boolean[] wayFillBackground = new boolean[16];
+        private Tag[][] wayTags = new Tag[16][];
+        private int[] wayTagIdStarts = new int[16];
+        private byte[] wayTagIdCounts = new byte[16];
+        private byte[] wayFeatures = new byte[16];
+        private int[] waySegmentStarts = new int[16];
+        private int[] waySegmentCounts = new int[16];
+
+        private int segmentCount;
+        private int[] segmentOffsets = new int[32];
+        private int coordinatesLength;
+        private int[] coordinates = new int[1024];
+        private int tagIdsLength;
+        private int[] tagIds = new int[64];
+
+        private long sizeInBytes;
+
+        /**
+         * Flag if only features of the query, that decodes the block, are collected. Zoom levels
+         * above the query and ways outside of its tile are skipped, features rejected by its tag
+         * filter are kept without optional features and coordinates.
+         */
+        boolean queryOnly;
+
+        /**
+         * Prepare builder for a new block.
+         *
+         * @param zoomTable cumulative zoom table of the block
+         */
+        void reset(int[][] zoomTable) {
+            this.zoomTablePois = new int[zoomTable.length];
+            this.zoomTableWays = new int[zoomTable.length];
+            for (int row = 0; row < zoomTable.length; row++) {
+                this.zoomTablePois[row] = zoomTable[row][0];
+                this.zoomTableWays[row] = zoomTable[row][1];
+            }
+
+            // clear references from the previous block
+            Arrays.fill(this.poiTags, 0, this.poiCount, null);
+            Arrays.fill(this.wayTags, 0, this.wayCount, null);
+            this.poiCount = 0;
+            this.wayCount = 0;
+            this.segmentCount = 0;
+            this.coordinatesLength = 0;
+            this.tagIdsLength = 0;
+            this.sizeInBytes = 0;
+        }
+
+        /**
+         * Add a single POI.
+         *
+         * @param tagIds   IDs of tags of the POI from the header
+         * @param tagCount number of tag IDs
+         * @param features flags of optional features of the POI
+         */
+        void addPoi(byte layer, Tag[] tags, int latitudeE6, int longitudeE6, int[] tagIds,
+                int tagCount, int features) {
+            if (this.poiCount == this.poiLayers.length) {
+                int capacity = this.poiCount * 2;
+                this.poiLayers = Arrays.copyOf(this.poiLayers, capacity);
+                this.poiCoordinates = Arrays.copyOf(this.poiCoordinates, capacity * 2);
+                this.poiTags = Arrays.copyOf(this.poiTags, capacity);
+                this.poiTagIdStarts = Arrays.copyOf(this.poiTagIdStarts, capacity);
+                this.poiTagIdCounts = Arrays.copyOf(this.poiTagIdCounts, capacity);
+                this.poiFeatures = Arrays.copyOf(this.poiFeatures, capacity);
+            }
+            this.poiTagIdStarts[this.poiCount] = addTagIds(tagIds, tagCount);
+            this.poiTagIdCounts[this.poiCount] = (byte) tagCount;
+            this.poiFeatures[this.poiCount] = (byte) features;
+            this.poiLayers[this.poiCount] = layer;
+            this.poiCoordinates[2 * this.poiCount] = latitudeE6;
+            this.poiCoordinates[2 * this.poiCount + 1] = longitudeE6;
+            // arrays of tags are reused by the decoder and tags may point to its buffer
+            this.poiTags[this.poiCount] = copyTags(tags);
+            this.poiCount++;
+            this.sizeInBytes += getTagsSize(tags);
+        }
+
+        /**
+         * Add a single way data block.
+         *
+         * @param way      decoded way, its coordinates are ignored
+         * @param wayNodes decoded coordinates of the way in microdegrees, with the same segment
+         *                 offsets as the way
+         * @param tagIds   IDs of tags of the way from the header
+         * @param tagCount number of tag IDs
+         * @param features flags of optional features of the way
+         */
+        void addWay(int wayIndex, int tileBitmask, Way way, int[] wayNodes, int[] tagIds,
+                int tagCount, int features) {
+            if (this.wayCount == this.wayIndices.length) {
+                int capacity = this.wayCount * 2;
+                this.wayIndices = Arrays.copyOf(this.wayIndices, capacity);
+                this.wayTileBitmasks = Arrays.copyOf(this.wayTileBitmasks, capacity);
+                this.wayLayers = Arrays.copyOf(this.wayLayers, capacity);
+                this.wayLabels = Arrays.copyOf(this.wayLabels, capacity * 2);
+                this.wayBBoxes = Arrays.copyOf(this.wayBBoxes, capacity * 4);
+                this.wayFillBackground = Arrays.copyOf(this.wayFillBackground, capacity);
+                this.wayTags = Arrays.copyOf(this.wayTags, capacity);
+                this.wayTagIdStarts = Arrays.copyOf(this.wayTagIdStarts, capacity);
+                this.wayTagIdCounts = Arrays.copyOf(this.wayTagIdCounts, capacity);
+                this.wayFeatures = Arrays.copyOf(this.wayFeatures, capacity);
+                this.waySegmentStarts = Arrays.copyOf(this.waySegmentStarts, capacity);
+                this.waySegmentCounts = Arrays.copyOf(this.waySegmentCounts, capacity);
+            }
+            int i = this.wayCount;
+            this.wayIndices[i] = wayIndex;
+            this.wayTileBitmasks[i] = (short) tileBitmask;
+            this.wayLayers[i] = way.layer;
+            this.wayLabels[2 * i] = way.latitudeE6;
+            this.wayLabels[2 * i + 1] = way.longitudeE6;
+            this.wayBBoxes[4 * i] = way.bboxTopE6;
+            this.wayBBoxes[4 * i + 1] = way.bboxBottomE6;
+            this.wayBBoxes[4 * i + 2] = way.bboxLeftE6;
+            this.wayBBoxes[4 * i + 3] = way.bboxRightE6;
+            this.wayFillBackground[i] = way.isFillBackground;
+            this.wayTagIdCounts[i] = (byte) tagCount;
+            this.wayFeatures[i] = (byte) features;
+            this.wayCount++;
+
+            // tags are shared by all way data blocks of a single way, arrays of tags are
+            // reused by the decoder
+            if (i > 0 && this.wayIndices[i - 1] == wayIndex) {
+                this.wayTags[i] = this.wayTags[i - 1];
+                this.wayTagIdStarts[i] = this.wayTagIdStarts[i - 1];
+            } else {
+                this.wayTags[i] = copyTags(way.tags);
+                this.wayTagIdStarts[i] = addTagIds(tagIds, tagCount);
+                this.sizeInBytes += getTagsSize(way.tags);
+            }
+
+            // copy coordinates of all segments
+            if (this.segmentCount + way.segmentCount + 1 > this.segmentOffsets.length) {
+                this.segmentOffsets = Arrays.copyOf(this.segmentOffsets,
+                        Math.max(this.segmentCount + way.segmentCount + 1, this.segmentOffsets.length * 2));
+            }
+            this.waySegmentStarts[i] = this.segmentCount;
+            this.waySegmentCounts[i] = way.segmentCount;
+            for (int segment = 0; segment < way.segmentCount; segment++) {
+                int length = way.getSegmentLength(segment);
+                if (this.coordinatesLength + length > this.coordinates.length) {
+                    this.coordinates = Arrays.copyOf(this.coordinates,
+                            Math.max(this.coordinatesLength + length, this.coordinates.length * 2));
+                }
+                System.arraycopy(wayNodes, way.getSegmentOffset(segment),
+                        this.coordinates, this.coordinatesLength, length);
+                this.segmentOffsets[this.segmentCount] = this.coordinatesLength;
+                this.coordinatesLength += length;
+                this.segmentCount++;
+            }
+            this.segmentOffsets[this.segmentCount] = this.coordinatesLength;
+        }
+
+        /**
+         * Create immutable block from collected features.
+         *
+         * @return decoded block
+         */
+        DecodedBlock build() {
+            return new DecodedBlock(this);
+        }
+
+        /**
+         * Append tag IDs of a feature.
+         *
+         * @return index of the first appended tag ID
+         */
+        private int addTagIds(int[] tagIds, int tagCount) {
+            int start = this.tagIdsLength;
+            if (start + tagCount > this.tagIds.length) {
+                this.tagIds = Arrays.copyOf(this.tagIds,
+                        Math.max(start + tagCount, this.tagIds.length * 2));
+            }
+            System.arraycopy(tagIds, 0, this.tagIds, start, tagCount);
+            this.tagIdsLength += tagCount;
+            return start;
+        }
+
+        /**
+         * Copy tags, so they are independent of the decoder.
+         */
+        private static Tag[] copyTags(Tag[] tags) {
+            Tag[] copy = new Tag[tags.length];
+            for (int i = 0; i < tags.length; i++) {
+                Tag tag = tags[i];
+                copy[i] = tag instanceof LazyTag ? ((LazyTag) tag).toTag() : tag;
+            }
+            return copy;
+        }
+
+        private static long getTagsSize(Tag[] tags) {
+            long size = OBJECT_OVERHEAD + 4L * tags.length;
+            for (Tag tag : tags) {
+                // tags with texts are created for every feature, others are shared from the header
+                String value = tag.getValueAsString();
+                if (value != null && (tag.key == MapDatabase.TAG_KEY_NAME
+                        || tag.key == MapDatabase.TAG_KEY_HOUSE_NUMBER
+                        || tag.key == MapDatabase.TAG_KEY_REF
+                        || tag.key == MapDatabase.TAG_KEY_ELE)) {
+                    size += FEATURE_TAG_SIZE + 2L * value.length();
+                }
+            }
+            return size;
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforgeV3.map.reader;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache for decoded blocks with LRU policy, limited by the approximate size of stored blocks.
+ * <p>
+ * Cache is thread-safe.
+ */
+class DecodedBlockCache {
+
+    // cached blocks in access order
+    private final LinkedHashMap<BlockCacheKey, DecodedBlock> map;
+    // maximal size of all blocks in bytes
+    private final long capacity;
+    // current size of all blocks in bytes
+    private long size;
+
+    /**
+     * @param capacity maximal size of all cached blocks in bytes.
+     */
+    DecodedBlockCache(long capacity) {
+        this.map = new LinkedHashMap<>(16, 0.75f, true);
+        this.capacity = capacity;
+    }
+
+    /**
+     * @return maximal size of all cached blocks in bytes.
+     */
+    long getCapacity() {
+        return this.capacity;
+    }
+
+    /**
+     * Get cached block.
+     *
+     * @param key key of the block
+     * @return cached block or {@code null} if block is not cached
+     */
+    synchronized DecodedBlock get(BlockCacheKey key) {
+        return this.map.get(key);
+    }
+
+    /**
+     * Store decoded block in the cache and remove least recently used blocks over the capacity.
+     *
+     * @param key   key of the block
+     * @param block decoded block
+     */
+    synchronized void put(BlockCacheKey key, DecodedBlock block) {
+        // do not flush the whole cache because of a single huge block
+        if (block.sizeInBytes > this.capacity / 2) {
+            return;
+        }
+
+        DecodedBlock previous = this.map.put(key, block);
+        if (previous != null) {
+            this.size -= previous.sizeInBytes;
+        }
+        this.size += block.sizeInBytes;
+
+        // remove blocks over the limit
+        Iterator<Map.Entry<BlockCacheKey, DecodedBlock>> iterator = this.map.entrySet().iterator();
+        while (this.size > this.capacity && iterator.hasNext()) {
+            this.size -= iterator.next().getValue().sizeInBytes;
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Remove all cached blocks.
+     */
+    synchronized void clear() {
+        this.map.clear();
+        this.size = 0;
+    }
+}
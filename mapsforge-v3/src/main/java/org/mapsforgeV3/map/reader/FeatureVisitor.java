@@ -0,0 +1,43 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforgeV3.map.reader;
+
+import org.mapsforgeV3.core.model.Tag;
+
+/**
+ * Receiver of features read from a {@link MapDatabase}.
+ * <p>
+ * Tags and way geometry are reused by the reader, so they are valid only during the callback.
+ * Receivers that need them later have to copy them.
+ */
+public interface FeatureVisitor {
+
+    /**
+     * Receive a single POI.
+     *
+     * @param layer       layer of the POI
+     * @param tags        tags of the POI
+     * @param latitudeE6  latitude of the POI in microdegrees
+     * @param longitudeE6 longitude of the POI in microdegrees
+     */
+    void renderNode(byte layer, Tag[] tags, int latitudeE6, int longitudeE6);
+
+    /**
+     * Receive a single way.
+     *
+     * @param way container of the way
+     */
+    void renderWay(Way way);
+}
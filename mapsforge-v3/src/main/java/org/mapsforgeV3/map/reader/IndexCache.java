@@ -14,19 +14,27 @@
  */
 package org.mapsforgeV3.map.reader;
 
-import org.mapsforgeV3.core.util.LRUCache;
 import org.mapsforgeV3.map.reader.header.SubFileParameter;
 
 import java.io.IOException;
-import java.io.RandomAccessFile;
-import java.util.Collections;
-import java.util.Map;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 
 /**
- * A cache for database index blocks with a fixed size and LRU policy.
+ * A cache for database index blocks with a fixed size.
+ * <p>
+ * Index blocks are stored in an open-addressing table keyed by a primitive key, that packs the
+ * sub-file id with the index block number. Stored entries are immutable, so lookups run without
+ * any lock and without allocation. Only insertion of newly read blocks is synchronized. When the
+ * probed part of the table is full, a CLOCK policy (second chance for recently used entries)
+ * selects the entry to replace.
+ * <p>
+ * Alternatively, the whole index of small sub-files may be preloaded into memory, see
+ * {@link #preloadIndexes(SubFileParameter[])}.
  */
 class IndexCache {
 	/**
@@ -36,34 +44,137 @@ class IndexCache {
 
 	private static final Logger LOGGER = Logger.getLogger(IndexCache.class.getName());
 
+	/**
+	 * Maximum number of index entries of a sub-file, which may be preloaded into memory (4 MB).
+	 */
+	private static final int MAX_PRELOADED_INDEX_ENTRIES = 512 * 1024;
+
+	/**
+	 * Maximum number of probed slots for a single key.
+	 */
+	private static final int MAX_PROBES = 8;
+
 	/**
 	 * Maximum size in bytes of one index block.
 	 */
 	private static final int SIZE_OF_INDEX_BLOCK = INDEX_ENTRIES_PER_BLOCK * SubFileParameter.BYTES_PER_INDEX_ENTRY;
 
-//	private final Map<IndexCacheEntryKey, byte[]> map;
-	private final Map<IndexCacheEntryKey, byte[]> map;
-	private final RandomAccessFile randomAccessFile;
+	/**
+	 * An immutable cached index block.
+	 */
+	private static final class Entry {
+		// packed sub-file id and index block number
+		final long key;
+		// decoded index entries
+		final long[] indexEntries;
+		// flag if entry was used since the last pass of the clock
+		boolean referenced;
+
+		Entry(long key, long[] indexEntries) {
+			this.key = key;
+			this.indexEntries = indexEntries;
+			this.referenced = true;
+		}
+	}
+
+	private final AtomicReferenceArray<Entry> table;
+	private final int mask;
+	private volatile FileChannel fileChannel;
+	// whole preloaded indexes, by sub-file id
+	private final AtomicReferenceArray<long[]> preloadedIndexes;
 
 	/**
-	 * @param randomAccessFile
+	 * @param fileChannel
 	 *            the map file from which the index should be read and cached.
 	 * @param capacity
 	 *            the maximum number of entries in the cache.
 	 * @throws IllegalArgumentException
 	 *             if the capacity is negative.
 	 */
-	IndexCache(RandomAccessFile randomAccessFile, int capacity) {
-		this.randomAccessFile = randomAccessFile;
-		this.map = Collections.synchronizedMap(
-				new LRUCache<IndexCacheEntryKey, byte[]>(capacity));
+	IndexCache(FileChannel fileChannel, int capacity) {
+		if (capacity < 0) {
+			throw new IllegalArgumentException("capacity must not be negative: " + capacity);
+		}
+		this.fileChannel = fileChannel;
+
+		// keep the table at most half full, so probing stays short
+		int tableSize = Integer.highestOneBit(Math.max(capacity, MAX_PROBES) * 2 - 1) << 1;
+		this.table = new AtomicReferenceArray<>(tableSize);
+		this.mask = tableSize - 1;
+		this.preloadedIndexes = new AtomicReferenceArray<>(Byte.MAX_VALUE + 1);
+	}
+
+	/**
+	 * Set the channel for next reads, after the map file was opened again. Cached entries are
+	 * kept, so the file has to be the same.
+	 *
+	 * @param fileChannel
+	 *            the newly opened map file.
+	 */
+	void setFileChannel(FileChannel fileChannel) {
+		this.fileChannel = fileChannel;
 	}
 
 	/**
 	 * Destroy the cache at the end of its lifetime.
 	 */
-	void destroy() {
-		this.map.clear();
+	synchronized void destroy() {
+		for (int i = 0, n = this.table.length(); i < n; i++) {
+			this.table.set(i, null);
+		}
+		for (int i = 0, n = this.preloadedIndexes.length(); i < n; i++) {
+			this.preloadedIndexes.set(i, null);
+		}
+	}
+
+	/**
+	 * Read whole indexes of the given sub-files into memory, so following lookups are served
+	 * without reading of the file. Sub-files with too large index are skipped.
+	 *
+	 * @param subFileParameters
+	 *            the parameters of the sub-files.
+	 */
+	void preloadIndexes(SubFileParameter[] subFileParameters) {
+		for (SubFileParameter subFileParameter : subFileParameters) {
+			if (subFileParameter.numberOfBlocks > MAX_PRELOADED_INDEX_ENTRIES
+					|| this.preloadedIndexes.get(subFileParameter.subFileId) != null) {
+				continue;
+			}
+
+			long[] index = readIndex(subFileParameter);
+			if (index == null) {
+				return;
+			}
+			this.preloadedIndexes.set(subFileParameter.subFileId, index);
+		}
+	}
+
+	private long[] readIndex(SubFileParameter subFileParameter) {
+		try {
+			long[] index = new long[(int) subFileParameter.numberOfBlocks];
+			ByteBuffer buffer = ByteBuffer.allocate(SIZE_OF_INDEX_BLOCK * INDEX_ENTRIES_PER_BLOCK);
+			byte[] data = buffer.array();
+			for (int i = 0; i < index.length; ) {
+				// read next chunk of the index
+				int entries = Math.min(index.length - i, INDEX_ENTRIES_PER_BLOCK * INDEX_ENTRIES_PER_BLOCK);
+				buffer.clear();
+				buffer.limit(entries * SubFileParameter.BYTES_PER_INDEX_ENTRY);
+				if (!ReadBuffer.readFully(this.fileChannel, buffer, subFileParameter.indexStartAddress
+						+ (long) i * SubFileParameter.BYTES_PER_INDEX_ENTRY)) {
+					LOGGER.warning("reading the index has failed");
+					return null;
+				}
+
+				// decode entries
+				for (int j = 0; j < entries; j++, i++) {
+					index[i] = Deserializer.getFiveBytesLong(data, j * SubFileParameter.BYTES_PER_INDEX_ENTRY);
+				}
+			}
+			return index;
+		} catch (IOException e) {
+			LOGGER.log(Level.SEVERE, null, e);
+			return null;
+		}
 	}
 
 	/**
@@ -76,48 +187,95 @@ class IndexCache {
 	 *            the number of the block in the map file.
 	 * @return the index entry or -1 if the block number is invalid.
 	 */
-	synchronized long getIndexEntry(SubFileParameter subFileParameter, long blockNumber) {
-		try {
-			// check if the block number is out of bounds
-			if (blockNumber >= subFileParameter.numberOfBlocks) {
-				return -1;
-			}
+	long getIndexEntry(SubFileParameter subFileParameter, long blockNumber) {
+		// check if the block number is out of bounds
+		if (blockNumber >= subFileParameter.numberOfBlocks) {
+			return -1;
+		}
+
+		// check for preloaded index
+		long[] index = this.preloadedIndexes.get(subFileParameter.subFileId);
+		if (index != null) {
+			return index[(int) blockNumber];
+		}
 
-			// calculate the index block number
-			long indexBlockNumber = blockNumber / INDEX_ENTRIES_PER_BLOCK;
+		// calculate the index block number and the key for this request
+		long indexBlockNumber = blockNumber / INDEX_ENTRIES_PER_BLOCK;
+		long key = ((long) subFileParameter.subFileId << 48) | indexBlockNumber;
+		int indexEntryInBlock = (int) (blockNumber % INDEX_ENTRIES_PER_BLOCK);
 
-			// create the cache entry key for this request
-			IndexCacheEntryKey indexCacheEntryKey = new IndexCacheEntryKey(subFileParameter, indexBlockNumber);
+		// check for cached index block
+		int slot = hash(key);
+		for (int probe = 0; probe < MAX_PROBES; probe++) {
+			Entry entry = this.table.get((slot + probe) & this.mask);
+			if (entry != null && entry.key == key) {
+				entry.referenced = true;
+				return entry.indexEntries[indexEntryInBlock];
+			}
+		}
 
-			// check for cached index block
-			byte[] indexBlock = this.map.get(indexCacheEntryKey);
-			if (indexBlock == null) {
-				// cache miss, seek to the correct index block in the file and read it
-				long indexBlockPosition = subFileParameter.indexStartAddress + indexBlockNumber * SIZE_OF_INDEX_BLOCK;
+		// cache miss, read the correct index block from the file
+		long[] indexEntries = readIndexBlock(subFileParameter, indexBlockNumber);
+		if (indexEntries == null) {
+			return -1;
+		}
+		put(key, indexEntries);
+		return indexEntries[indexEntryInBlock];
+	}
 
-				int remainingIndexSize = (int) (subFileParameter.indexEndAddress - indexBlockPosition);
-				int indexBlockSize = Math.min(SIZE_OF_INDEX_BLOCK, remainingIndexSize);
-				indexBlock = new byte[indexBlockSize];
+	private long[] readIndexBlock(SubFileParameter subFileParameter, long indexBlockNumber) {
+		try {
+			long indexBlockPosition = subFileParameter.indexStartAddress + indexBlockNumber * SIZE_OF_INDEX_BLOCK;
 
-				this.randomAccessFile.seek(indexBlockPosition);
-				if (this.randomAccessFile.read(indexBlock, 0, indexBlockSize) != indexBlockSize) {
-					LOGGER.warning("reading the current index block has failed");
-					return -1;
-				}
+			int remainingIndexSize = (int) (subFileParameter.indexEndAddress - indexBlockPosition);
+			int indexBlockSize = Math.min(SIZE_OF_INDEX_BLOCK, remainingIndexSize);
+			byte[] indexBlock = new byte[indexBlockSize];
 
-				// put the index block in the map
-				this.map.put(indexCacheEntryKey, indexBlock);
+			if (!ReadBuffer.readFully(this.fileChannel, ByteBuffer.wrap(indexBlock), indexBlockPosition)) {
+				LOGGER.warning("reading the current index block has failed");
+				return null;
 			}
 
-			// calculate the address of the index entry inside the index block
-			long indexEntryInBlock = blockNumber % INDEX_ENTRIES_PER_BLOCK;
-			int addressInIndexBlock = (int) (indexEntryInBlock * SubFileParameter.BYTES_PER_INDEX_ENTRY);
-
-			// return the real index entry
-			return Deserializer.getFiveBytesLong(indexBlock, addressInIndexBlock);
+			// decode all entries of the block
+			long[] indexEntries = new long[indexBlockSize / SubFileParameter.BYTES_PER_INDEX_ENTRY];
+			for (int i = 0; i < indexEntries.length; i++) {
+				indexEntries[i] = Deserializer.getFiveBytesLong(indexBlock,
+						i * SubFileParameter.BYTES_PER_INDEX_ENTRY);
+			}
+			return indexEntries;
 		} catch (IOException e) {
 			LOGGER.log(Level.SEVERE, null, e);
-			return -1;
+			return null;
+		}
+	}
+
+	private synchronized void put(long key, long[] indexEntries) {
+		int slot = hash(key);
+
+		// use an empty slot or the slot with the same key (read by another thread in the meantime)
+		for (int probe = 0; probe < MAX_PROBES; probe++) {
+			int index = (slot + probe) & this.mask;
+			Entry entry = this.table.get(index);
+			if (entry == null || entry.key == key) {
+				this.table.set(index, new Entry(key, indexEntries));
+				return;
+			}
+		}
+
+		// replace the first entry not used since the last pass, clear flags of the passed entries
+		for (int probe = 0; probe < 2 * MAX_PROBES; probe++) {
+			int index = (slot + probe % MAX_PROBES) & this.mask;
+			Entry entry = this.table.get(index);
+			if (!entry.referenced || probe == 2 * MAX_PROBES - 1) {
+				this.table.set(index, new Entry(key, indexEntries));
+				return;
+			}
+			entry.referenced = false;
 		}
 	}
+
+	private int hash(long key) {
+		long hash = key * 0x9E3779B97F4A7C15L;
+		return (int) (hash >>> 40) & this.mask;
+	}
 }
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforgeV3.map.reader;
+
+import org.mapsforgeV3.core.model.Tag;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Tag with a text value (name, house number, reference), that is created as a string only
+ * when the text is really requested, usually by a caption of the render theme.
+ * <p>
+ * Hash of the value is known from the beginning, so the tag may be matched by rules of the
+ * theme as any other tag. Tag points to data of the {@link ReadBuffer}, so it is valid only
+ * during the render callback. Use {@link #toTag()} to get tag valid for a longer time.
+ */
+class LazyTag extends Tag {
+
+    // loaded data of the read buffer
+    private final byte[] data;
+    // mapped data of the read buffer, used instead of 'data' if set
+    private final ByteBuffer mappedData;
+    // offset of the encoded string in the data
+    private final int offset;
+    // length of the encoded string in bytes
+    private final int byteCount;
+    // index of the first character of the value in the decoded string
+    private final int valueStart;
+    // number of characters of the value
+    private final int valueLength;
+    // cached name the value was extracted from, or 'null'
+    private final NameCache.Entry entry;
+    // lazily created value
+    private String valueText;
+
+    LazyTag(String keyText, int key, int value, byte[] data, ByteBuffer mappedData,
+            int offset, int byteCount, int valueStart, int valueLength) {
+        super(keyText, key, value);
+        this.data = data;
+        this.mappedData = mappedData;
+        this.offset = offset;
+        this.byteCount = byteCount;
+        this.valueStart = valueStart;
+        this.valueLength = valueLength;
+        this.entry = null;
+    }
+
+    LazyTag(String keyText, int key, byte[] data, ByteBuffer mappedData,
+            int offset, int byteCount, NameCache.Entry entry) {
+        super(keyText, key, entry.valueHash);
+        this.data = data;
+        this.mappedData = mappedData;
+        this.offset = offset;
+        this.byteCount = byteCount;
+        this.valueStart = entry.valueStart;
+        this.valueLength = entry.valueLength;
+        this.entry = entry;
+    }
+
+    @Override
+    public String getValueAsString() {
+        if (this.valueText == null && this.entry != null) {
+            // value may be already created for the same name on other tile
+            this.valueText = this.entry.value;
+        }
+        if (this.valueText == null) {
+            char[] chars = new char[this.byteCount];
+            if (this.mappedData != null) {
+                ReadBuffer.decodeUTF8(this.mappedData, this.offset, this.byteCount, chars);
+            } else {
+                ReadBuffer.decodeUTF8(this.data, this.offset, this.byteCount, chars);
+            }
+            this.valueText = new String(chars, this.valueStart, this.valueLength);
+            if (this.entry != null) {
+                this.entry.value = this.valueText;
+            }
+        }
+        return this.valueText;
+    }
+
+    /**
+     * Create standard tag with the same content, independent of the read buffer.
+     *
+     * @return new tag
+     */
+    Tag toTag() {
+        return new Tag(getKeyAsString(), this.key, getValueAsString());
+    }
+
+    /**
+     * Compute hash of characters, same as {@link String#hashCode()} of a string
+     * created from them.
+     *
+     * @param chars  characters
+     * @param start  index of the first character
+     * @param length number of characters
+     * @return computed hash
+     */
+    static int hashChars(char[] chars, int start, int length) {
+        int hash = 0;
+        for (int i = start, end = start + length; i < end; i++) {
+            hash = 31 * hash + chars[i];
+        }
+        return hash;
+    }
+}
@@ -16,9 +16,12 @@ package org.mapsforgeV3.map.reader;
 
 import com.asamm.locus.mapsforge.utils.Utils;
 
+import org.mapsforgeV3.core.model.BoundingBox;
 import org.mapsforgeV3.core.model.Tag;
 import org.mapsforgeV3.core.model.Tile;
+import org.mapsforgeV3.core.util.LRUCache;
 import org.mapsforgeV3.core.util.MercatorProjection;
+import org.mapsforgeV3.core.util.TileProjection;
 import org.mapsforgeV3.map.layer.renderer.DatabaseRenderer;
 import org.mapsforgeV3.map.layer.renderer.DatabaseRenderer.TileRenderer;
 import org.mapsforgeV3.map.reader.header.FileOpenResult;
@@ -29,21 +32,52 @@ import org.mapsforgeV3.map.reader.header.SubFileParameter;
 import java.io.File;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * A class for reading binary map files.
  * <p>
- * This class is not thread-safe. Each thread should use its own instance.
+ * Reading of map data is thread-safe. Header, tag tables and index cache of the opened file are
+ * shared, while every thread decodes blocks with its own {@link QueryCursor}, using positional
+ * reads only. Opening and closing of the file must not run concurrently with reading.
  *
  * @see <a href="https://code.google.com/p/mapsforge/wiki/SpecificationBinaryMapFile">Specification</a>
  */
 public class MapDatabase {
 
+    /**
+     * Mode of loading of the index of the map file.
+     */
+    public enum IndexPreloadMode {
+        /**
+         * Index blocks are read lazily, when needed for the query.
+         */
+        NONE,
+        /**
+         * Whole index is read during opening of the file.
+         */
+        ON_OPEN,
+        /**
+         * Whole index is read by a background thread after opening of the file.
+         */
+        BACKGROUND
+    }
+
     // tag for logger
     private static final String TAG = "MapDatabase";
 
@@ -77,6 +111,34 @@ public class MapDatabase {
      */
     private static final int INDEX_CACHE_SIZE = 64;
 
+    /**
+     * Maximum number of unused bytes between two blocks, which are read together.
+     */
+    private static final int COALESCED_READ_GAP_MAX = 16 * 1024;
+
+    /**
+     * Maximum number of bytes read at once for more blocks.
+     */
+    private static final int COALESCED_READ_SIZE_MAX = 1024 * 1024;
+
+    /**
+     * Number of threads of the shared executor for asynchronous reads of blocks.
+     */
+    private static final int ASYNC_READ_THREADS = 4;
+
+    // shared executor for asynchronous reads of blocks, lazily created
+    private static ExecutorService asyncReadExecutor;
+
+    /**
+     * Minimal number of blocks to decode in a query, to use parallel decoding.
+     */
+    private static final int PARALLEL_DECODE_BLOCKS_MIN = 4;
+
+    /**
+     * Maximal number of remembered hashes of blocks, least recently used hashes are dropped.
+     */
+    private static final int BLOCK_HASH_CACHE_SIZE = 65536;
+
     /**
      * Error message for an invalid first way offset.
      */
@@ -220,6 +282,8 @@ public class MapDatabase {
     private File mapFile;
     // size of file
     private long fileSize;
+    // time of the last modification of the file
+    private long fileLastModified;
 
     // header for map file
     private MapFileHeader mapFileHeader;
@@ -228,39 +292,66 @@ public class MapDatabase {
 
     // stream for data reading
     private RandomAccessFile inputFile;
-    // improved reader for map data
-    private ReadBuffer readBuffer;
+    // channel of the opened file, shared by all cursors
+    private FileChannel fileChannel;
+    // cursors for reading of map data, one per thread
+    private volatile ThreadLocal<QueryCursor> queryCursors;
+    // flag if blocks should be read over memory-mapped file
+    private volatile boolean mUseMemoryMappedFile;
+    // flag if blocks of a query should be read asynchronously, all at once
+    private volatile boolean mUseAsyncReads;
+    // pool for parallel decoding of blocks, or 'null' if disabled
+    private volatile ForkJoinPool mDecodePool;
+    // flag if blocks without features are recognized by their size and not read
+    private volatile boolean mSkipEmptyBlocks = true;
+    // memory-mapped sub-files, lazily created
+    private final ConcurrentHashMap<SubFileParameter, MappedSubFile> mappedSubFiles;
+
+    // directory for snapshots of headers, or 'null' if disabled
+    private volatile File mHeaderSnapshotDir;
 
     // cache for database indexes
     private IndexCache databaseIndexCache;
+    // mode of loading of the index
+    private IndexPreloadMode mIndexPreloadMode;
+    // cache for decoded blocks, or 'null' if disabled
+    private volatile DecodedBlockCache decodedBlockCache;
+    // remembered hashes of content of blocks
+    private final Map<BlockCacheKey, Long> blockHashes;
+    // hash of the header content used for decoding of blocks, or '0' if not computed yet
+    private volatile long headerHash;
 
-    // private variables
-    private String signatureBlock;
-    private String signatureWay;
-    private int tileLatitude;
-    private int tileLongitude;
     // counter for checking of empty maps
-    private int emptyTilesRendered;
-
-    // counters for read data
-    private int readNodes;
-    private int readWays;
+    private final AtomicInteger emptyTilesRendered;
+    // counter of queries answered as water tiles only from the index
+    private final AtomicLong waterTileHits;
+    // counter of ways skipped as not visible in the projected tile
+    private final AtomicLong culledWays;
 
     // preferred language when extracting labels from this data store. The actual implementation is up to the
     // concrete implementation, which can also simply ignore this setting.
-    private String mPreferredLanguage;
+    private volatile String mPreferredLanguage;
+    // names already extracted in the preferred language
+    private final NameCache mNameCache;
     // defined map country code
     private String mCountryCode;
     // POI database version, or '0' if not exists
     private int mDbPoiVersion;
-    // container for loaded tags
-    private final List<Tag> tags = new ArrayList<>();
 
     /**
      * Base constructor.
      */
     public MapDatabase() {
+        mappedSubFiles = new ConcurrentHashMap<>();
+        blockHashes = Collections.synchronizedMap(
+                new LRUCache<BlockCacheKey, Long>(BLOCK_HASH_CACHE_SIZE));
+        emptyTilesRendered = new AtomicInteger();
+        waterTileHits = new AtomicLong();
+        culledWays = new AtomicLong();
+        queryCursors = new ThreadLocal<>();
+        mIndexPreloadMode = IndexPreloadMode.NONE;
         mPreferredLanguage = "";
+        mNameCache = new NameCache();
         mCountryCode = "";
         mDbPoiVersion = 0;
     }
@@ -280,21 +371,135 @@ public class MapDatabase {
             if (this.inputFile != null) {
                 this.inputFile.close();
                 this.inputFile = null;
+                this.fileChannel = null;
             }
 
-            this.readBuffer = null;
+            this.queryCursors = new ThreadLocal<>();
+            this.mappedSubFiles.clear();
+            this.mNameCache.clear();
+            this.blockHashes.clear();
+            this.headerHash = 0;
+            clearDecodedBlockCache();
         } catch (IOException e) {
             Utils.getHandler().logE(TAG, "closeFile()", e);
         }
     }
 
-    public void clearCache() {
-        if (readBuffer != null) {
-            readBuffer.deleteBuffer();
+    /**
+     * Closes only the handle of the map file. With kept caches, the parsed header, the index
+     * cache and the decoded blocks survive, so {@link #reopenFile()} only opens the file again.
+     * Otherwise the map file is closed completely by {@link #closeFile()}.
+     *
+     * @param keepCaches {@code true} to keep the header and caches of the map file
+     */
+    void releaseFile(boolean keepCaches) {
+        if (!keepCaches) {
+            closeFile();
+            return;
+        }
+
+        try {
+            if (this.inputFile != null) {
+                this.inputFile.close();
+                this.inputFile = null;
+                this.fileChannel = null;
+            }
+
+            // cursors and mapped sub-files belong to the closed channel
+            this.queryCursors = new ThreadLocal<>();
+            this.mappedSubFiles.clear();
+        } catch (IOException e) {
+            Utils.getHandler().logE(TAG, "releaseFile()", e);
+        }
+    }
+
+    /**
+     * Opens again the map file released by {@link #releaseFile(boolean)}. The file is parsed
+     * again if its header was not kept or if the file has changed in the meantime.
+     *
+     * @return {@code true} if the map file is opened
+     */
+    boolean reopenFile() {
+        if (hasOpenFile()) {
+            return true;
+        } else if (this.mapFileHeader == null) {
+            return this.mapFile != null && openFile(this.mapFile).isSuccess();
+        }
+
+        try {
+            RandomAccessFile file = new RandomAccessFile(this.mapFile, READ_ONLY_MODE);
+            if (file.length() != this.fileSize
+                    || this.mapFile.lastModified() != this.fileLastModified) {
+                file.close();
+                return openFile(this.mapFile).isSuccess();
+            }
+            this.inputFile = file;
+            this.fileChannel = file.getChannel();
+            this.databaseIndexCache.setFileChannel(this.fileChannel);
+            return true;
+        } catch (IOException e) {
+            Utils.getHandler().logE(TAG, "reopenFile(" + this.mapFile + ")", e);
+            closeFile();
+            return false;
         }
+    }
+
+    public void clearCache() {
+        // drop cursors (and their buffers) of all threads
+        queryCursors = new ThreadLocal<>();
         if (databaseIndexCache != null) {
             databaseIndexCache.destroy();
         }
+        mNameCache.clear();
+        clearDecodedBlockCache();
+    }
+
+    /**
+     * Set how the index of the map file is loaded. Preloading of the whole index into memory
+     * removes reading of index blocks for first rendered tiles. Indexes of large sub-files are
+     * always read lazily. Mode is used by next {@link #openFile(File)}.
+     *
+     * @param indexPreloadMode mode of loading of the index
+     */
+    public void setIndexPreloadMode(IndexPreloadMode indexPreloadMode) {
+        mIndexPreloadMode = indexPreloadMode != null ? indexPreloadMode : IndexPreloadMode.NONE;
+    }
+
+    /**
+     * Set maximal size of the cache for decoded blocks. Blocks stored in the cache are replayed
+     * for next tiles without reading and decoding them again, which helps mainly on zoom levels
+     * where a single block covers many tiles.
+     *
+     * @param maxSizeInBytes approximate maximal size of the cache in bytes, '0' to disable cache
+     */
+    public void setDecodedBlockCacheSize(long maxSizeInBytes) {
+        DecodedBlockCache blockCache = decodedBlockCache;
+        if (maxSizeInBytes <= 0) {
+            decodedBlockCache = null;
+        } else if (blockCache == null || blockCache.getCapacity() != maxSizeInBytes) {
+            decodedBlockCache = new DecodedBlockCache(maxSizeInBytes);
+        }
+    }
+
+    /**
+     * Set directory for snapshots of headers of map files. Header of every opened map file is
+     * stored into a small binary file, so next {@link #openFile(File)} of the same, unmodified
+     * map file loads it by a single read, without parsing of the header.
+     *
+     * @param headerSnapshotDir directory for snapshots, 'null' to disable snapshots
+     */
+    public void setHeaderSnapshotDir(File headerSnapshotDir) {
+        mHeaderSnapshotDir = headerSnapshotDir;
+    }
+
+    /**
+     * Remove all blocks from the cache of decoded blocks.
+     */
+    private void clearDecodedBlockCache() {
+        DecodedBlockCache blockCache = decodedBlockCache;
+        if (blockCache != null) {
+            blockCache.clear();
+        }
     }
 
     /**
@@ -312,6 +517,26 @@ public class MapDatabase {
         return mapFile;
     }
 
+    /**
+     * Get number of queries, that were answered as water tiles without reading of any block.
+     * Such tiles are covered only by blocks with the water flag and without any features.
+     *
+     * @return number of water tiles since the map database was created
+     */
+    public long getWaterTileHitCount() {
+        return waterTileHits.get();
+    }
+
+    /**
+     * Get number of ways skipped by queries with a projection, because their bounding box lies
+     * outside of the tile with its margin. Such ways are decoded, but never projected.
+     *
+     * @return number of skipped ways since the map database was created
+     */
+    public long getCulledWayCount() {
+        return culledWays.get();
+    }
+
     /**
      * Check if file is still required. It means that it was used for at least some rendered
      * tiles during last usage.
@@ -319,7 +544,82 @@ public class MapDatabase {
      * @return {@code true} if file is still needed for rendering
      */
     public boolean isFileRequired() {
-        return emptyTilesRendered < (Utils.getHandler().getScreenCategory() + 1) * 10;
+        return emptyTilesRendered.get() < (Utils.getHandler().getScreenCategory() + 1) * 10;
+    }
+
+    /**
+     * Set if map blocks should be read over memory-mapped file instead of copying every block
+     * from the file into the heap. Standard reading from the file channel is still used as a
+     * fallback in case, mapping of the file fails.
+     *
+     * @param useMemoryMappedFile {@code true} to use memory-mapped file
+     */
+    public void setMemoryMappedFile(boolean useMemoryMappedFile) {
+        mUseMemoryMappedFile = useMemoryMappedFile;
+        if (!useMemoryMappedFile) {
+            mappedSubFiles.clear();
+        }
+    }
+
+    /**
+     * Set if all blocks of a query should be read at once by a small shared I/O executor, while
+     * already loaded blocks are decoded. Blocks are still decoded in the same order, so the
+     * result does not change. Useful on storage with a high latency of reads. Has no effect
+     * for reading over memory-mapped file.
+     *
+     * @param useAsyncReads {@code true} to read blocks asynchronously
+     */
+    public void setAsyncReads(boolean useAsyncReads) {
+        mUseAsyncReads = useAsyncReads;
+    }
+
+    /**
+     * Set number of threads used for decoding of blocks of a single query. With more threads,
+     * blocks of queries touching many blocks (low zoom levels) are read and decoded by workers
+     * in parallel and features are then sent to the renderer in the original order of blocks,
+     * so the result does not change.
+     *
+     * @param threads number of threads, '1' or less to decode blocks in the calling thread
+     */
+    public void setDecodeThreads(int threads) {
+        ForkJoinPool decodePool = mDecodePool;
+        if (threads <= 1) {
+            mDecodePool = null;
+        } else if (decodePool == null || decodePool.getParallelism() != threads) {
+            mDecodePool = new ForkJoinPool(threads);
+        } else {
+            return;
+        }
+        if (decodePool != null) {
+            decodePool.shutdown();
+        }
+    }
+
+    /**
+     * Set if blocks without features should be recognized by their size in the index and skipped
+     * without reading. Tiles covered only by such blocks with the water flag are then answered
+     * from the index. Disabled only by tests, to compare results with reading of all blocks.
+     *
+     * @param skipEmptyBlocks {@code true} to skip empty blocks
+     */
+    void setSkipEmptyBlocks(boolean skipEmptyBlocks) {
+        mSkipEmptyBlocks = skipEmptyBlocks;
+    }
+
+    /**
+     * Get shared executor for asynchronous reads of blocks.
+     *
+     * @return executor with daemon threads
+     */
+    private static synchronized Executor getAsyncReadExecutor() {
+        if (asyncReadExecutor == null) {
+            asyncReadExecutor = Executors.newFixedThreadPool(ASYNC_READ_THREADS, runnable -> {
+                Thread thread = new Thread(runnable, "MapDatabase-io");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return asyncReadExecutor;
     }
 
     // LANGUAGE
@@ -334,6 +634,66 @@ public class MapDatabase {
         if (mPreferredLanguage != null && mPreferredLanguage.length() == 0) {
             mPreferredLanguage = null;
         }
+
+        // cached names and blocks contain names in the previous language
+        mNameCache.clear();
+        clearDecodedBlockCache();
+    }
+
+    /**
+     * Read tag with a text value. String is only decoded to a reused buffer, to compute hash of
+     * the value, instance of the string is created later if the value is really needed.
+     *
+     * @param cursor          cursor of the current thread
+     * @param keyText         raw key of the tag
+     * @param key             hash of the key
+     * @param extractLanguage {@code true} to extract name in the preferred language
+     * @return tag or {@code null} if value is not valid
+     */
+    private Tag readTextTag(QueryCursor cursor, String keyText, int key, boolean extractLanguage) {
+        // skip the string in the buffer
+        ReadBuffer readBuffer = cursor.readBuffer;
+        int byteCount = readBuffer.readUnsignedInt();
+        int offset = readBuffer.skipUTF8EncodedString(byteCount);
+        if (offset < 0) {
+            return null;
+        }
+
+        // use name already extracted on one of previous tiles
+        String lang = mPreferredLanguage;
+        int rawHash = 0;
+        if (extractLanguage) {
+            rawHash = readBuffer.hashBytes(offset, byteCount);
+            NameCache.Entry entry = mNameCache.get(readBuffer, offset, byteCount, rawHash, lang);
+            if (entry != null) {
+                return readBuffer.newLazyTag(keyText, key, offset, byteCount, entry);
+            }
+        }
+
+        // decode characters
+        char[] chars = cursor.getChars(byteCount);
+        int valueStart = 0;
+        int valueLength = readBuffer.decodeUTF8EncodedString(offset, byteCount, chars);
+        if (!extractLanguage) {
+            return readBuffer.newLazyTag(keyText, key, offset, byteCount, valueStart, valueLength,
+                    LazyTag.hashChars(chars, valueStart, valueLength));
+        }
+
+        // extract name and store it for next tiles
+        long range = extract(cursor, chars, valueLength, lang);
+        if (range < 0) {
+            return null;
+        }
+        valueStart = (int) (range >>> 32);
+        valueLength = (int) range;
+        int valueHash = LazyTag.hashChars(chars, valueStart, valueLength);
+        NameCache.Entry entry = mNameCache.put(readBuffer, offset, byteCount, rawHash, lang,
+                valueStart, valueLength, valueHash);
+        if (entry != null) {
+            return readBuffer.newLazyTag(keyText, key, offset, byteCount, entry);
+        }
+        return readBuffer.newLazyTag(keyText, key, offset, byteCount, valueStart, valueLength,
+                valueHash);
     }
 
     /**
@@ -341,22 +701,37 @@ public class MapDatabase {
      * Example multilingual string: "Base\ren\bEnglish\rjp\bJapan\rzh_py\bPin-yin".
      * <p/>
      * Use '\r' delimiter among names and '\b' delimiter between each language and name.
+     * Result is same as splitting of the string by {@link String#split(String)}, but no
+     * objects are created.
+     *
+     * @param cursor cursor of the current thread
+     * @param chars  characters of the multilingual string
+     * @param length number of characters
+     * @param lang   preferred language
+     * @return start (upper 32 bits) and length (lower 32 bits) of the extracted name, or '-1'
+     * if the string is empty
      */
-    private String extract(String s) {
+    private long extract(QueryCursor cursor, char[] chars, int length, String lang) {
         // check string
-        if (s == null || s.trim().isEmpty()) {
-            return null;
+        boolean empty = true;
+        for (int i = 0; i < length; i++) {
+            if (chars[i] > ' ') {
+                empty = false;
+                break;
+            }
+        }
+        if (empty) {
+            return -1;
         }
 
         // prepare data
-        String lang = mPreferredLanguage;
-        String[] langNames = s.split("\r", 0);
+        int[] parts = cursor.labelParts;
+        int firstEnd = indexOf(chars, 0, length, '\r');
 
         // handle preferred language
         if (lang == null) {
-            String[] langName = langNames[0].split("\b", 0);
-            if (langName.length == 1) {
-                return langName[0];
+            if (split(chars, 0, firstEnd, parts) == 1) {
+                return range(parts[0], parts[1]);
             }
 
             // set english as default
@@ -364,37 +739,109 @@ public class MapDatabase {
         }
 
         // check possible languages
-        String fallback = null;
-        for (int i = 1; i < langNames.length; i++) {
-            String[] langName = langNames[i].split("\b", 0);
-            if (langName.length != 2) {
+        boolean langComposite = lang.indexOf('-') >= 0 || lang.indexOf('_') >= 0;
+        String langLower = null;
+        long fallback = -1;
+        for (int start = firstEnd + 1; start < length; ) {
+            int end = indexOf(chars, start, length, '\r');
+            int count = split(chars, start, end, parts);
+            start = end + 1;
+            if (count != 2) {
                 continue;
             }
 
             // Perfect match
-            if (langName[0].equalsIgnoreCase(lang)) {
-                return langName[1];
+            if (equalsIgnoreCase(chars, parts[0], parts[1], lang)) {
+                return range(parts[2], parts[3]);
             }
 
             // Fall back to base, e.g. zh-min-lan -> zh
-            if (fallback == null &&
-                    !langName[0].contains("-") &&
-                    (lang.contains("-") || lang.contains("_")) &&
-                    lang.toLowerCase(Locale.ENGLISH).startsWith(langName[0].toLowerCase(Locale.ENGLISH))) {
-                fallback = langName[1];
+            if (fallback == -1 && langComposite &&
+                    indexOf(chars, parts[0], parts[1], '-') == parts[1]) {
+                if (langLower == null) {
+                    langLower = lang.toLowerCase(Locale.ENGLISH);
+                }
+                if (langLower.startsWith(
+                        new String(chars, parts[0], parts[1] - parts[0]).toLowerCase(Locale.ENGLISH))) {
+                    fallback = range(parts[2], parts[3]);
+                }
             }
         }
 
         // return best default value
-        if (fallback != null && fallback.length() > 0) {
+        if (fallback != -1 && (int) fallback > 0) {
             return fallback;
         }
-        String[] langName = langNames[0].split("\b", 0);
-        if (langName.length == 2) {
-            return langName[1];
+        if (split(chars, 0, firstEnd, parts) == 2) {
+            return range(parts[2], parts[3]);
         } else {
-            return langNames[0];
+            return range(0, firstEnd);
+        }
+    }
+
+    private static long range(int start, int end) {
+        return ((long) start << 32) | (end - start);
+    }
+
+    private static int indexOf(char[] chars, int start, int end, char c) {
+        for (int i = start; i < end; i++) {
+            if (chars[i] == c) {
+                return i;
+            }
+        }
+        return end;
+    }
+
+    /**
+     * Split characters by '\b' delimiter, with same result as {@link String#split(String)}.
+     *
+     * @param chars characters
+     * @param start index of the first character
+     * @param end   index after the last character
+     * @param parts bounds of the first two parts (start, end, start, end)
+     * @return number of parts
+     */
+    private static int split(char[] chars, int start, int end, int[] parts) {
+        int count = 0;
+        int nonEmptyCount = 0;
+        int partStart = start;
+        while (true) {
+            int partEnd = indexOf(chars, partStart, end, '\b');
+            if (count < 2) {
+                parts[2 * count] = partStart;
+                parts[2 * count + 1] = partEnd;
+            }
+            count++;
+            if (partEnd > partStart) {
+                nonEmptyCount = count;
+            }
+            if (partEnd == end) {
+                break;
+            }
+            partStart = partEnd + 1;
+        }
+
+        // string without delimiter is returned as it is, otherwise trailing empty parts are removed
+        return count == 1 ? 1 : nonEmptyCount;
+    }
+
+    private static boolean equalsIgnoreCase(char[] chars, int start, int end, String text) {
+        if (end - start != text.length()) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            char c1 = chars[i];
+            char c2 = text.charAt(i - start);
+            if (c1 == c2) {
+                continue;
+            }
+            char u1 = Character.toUpperCase(c1);
+            char u2 = Character.toUpperCase(c2);
+            if (u1 != u2 && Character.toLowerCase(u1) != Character.toLowerCase(u2)) {
+                return false;
+            }
         }
+        return true;
     }
 
     // COUNTRY CODE
@@ -450,6 +897,13 @@ public class MapDatabase {
         return this.inputFile != null;
     }
 
+    /**
+     * @return true if the header of a map file is available, even if its handle is released.
+     */
+    public boolean hasFileHeader() {
+        return this.mapFileHeader != null;
+    }
+
     /**
      * Opens the given map file, reads its header data and validates them.
      *
@@ -478,12 +932,14 @@ public class MapDatabase {
 
             // open the file in read only mode
             this.inputFile = new RandomAccessFile(mapFile, READ_ONLY_MODE);
-            this.fileSize = this.inputFile.length();
+            this.fileChannel = this.inputFile.getChannel();
+            this.fileSize = this.fileChannel.size();
+            this.fileLastModified = mapFile.lastModified();
 
-            this.readBuffer = new ReadBuffer(this.inputFile);
-            this.mapFileHeader = new MapFileHeader();
-            this.mapFileHeader.readHeader(this.readBuffer, this.fileSize);
+            this.mapFileHeader = readHeader(mapFile);
             this.mapFileDebug = this.mapFileHeader.getMapFileInfo().debugFile;
+            this.databaseIndexCache = new IndexCache(this.fileChannel, INDEX_CACHE_SIZE);
+            preloadIndex();
             return FileOpenResult.SUCCESS;
         } catch (Exception e) {
             Utils.getHandler().logE(TAG, "openFile(" + mapFile + ")", e);
@@ -493,6 +949,64 @@ public class MapDatabase {
         }
     }
 
+    /**
+     * Read header of the opened map file, from its snapshot if possible.
+     *
+     * @param mapFile the opened map file
+     * @return loaded header
+     * @throws IOException if header can't be read
+     */
+    private MapFileHeader readHeader(File mapFile) throws IOException {
+        MapFileHeader header = new MapFileHeader();
+        File snapshotDir = mHeaderSnapshotDir;
+        if (snapshotDir == null) {
+            header.readHeader(new ReadBuffer(this.fileChannel), this.fileSize);
+            return header;
+        }
+
+        // snapshot is valid only for the same version of the file
+        File snapshotFile = new File(snapshotDir, mapFile.getName() + "." +
+                Integer.toHexString(mapFile.getAbsolutePath().hashCode()) + ".header");
+        long lastModified = this.fileLastModified;
+        if (header.readSnapshot(snapshotFile, this.fileSize, lastModified)) {
+            return header;
+        }
+
+        // parse header from the file and store it for next time
+        header.readHeader(new ReadBuffer(this.fileChannel), this.fileSize);
+        try {
+            if (snapshotDir.isDirectory() || snapshotDir.mkdirs()) {
+                header.writeSnapshot(snapshotFile, this.fileSize, lastModified);
+            }
+        } catch (IOException e) {
+            Utils.getHandler().logW(TAG, "readHeader(" + mapFile + "), " +
+                    "unable to write snapshot: " + e.getMessage());
+        }
+        return header;
+    }
+
+    /**
+     * Preload whole index of the opened file, based on the selected mode.
+     */
+    private void preloadIndex() {
+        final IndexCache indexCache = this.databaseIndexCache;
+        final SubFileParameter[] subFileParameters = this.mapFileHeader.getSubFileParameters();
+        switch (mIndexPreloadMode) {
+            case ON_OPEN:
+                indexCache.preloadIndexes(subFileParameters);
+                break;
+            case BACKGROUND:
+                Thread thread = new Thread(() -> indexCache.preloadIndexes(subFileParameters),
+                        "MapDatabase-index");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                thread.start();
+                break;
+            default:
+                break;
+        }
+    }
+
     /**
      * Reads all map data for the area covered by the given tile at the tile zoom level.
      *
@@ -500,22 +1014,68 @@ public class MapDatabase {
      * @return the read map data.
      */
     public void readMapData(Tile tile, TileRenderer tr) {
-        try {
-            // prepare cache
-            if (this.databaseIndexCache == null) {
-                this.databaseIndexCache = new IndexCache(this.inputFile, INDEX_CACHE_SIZE);
-            }
+        readMapData(tile, tr, null);
+    }
+
+    /**
+     * Reads map data for the area covered by the given tile at the tile zoom level. Features
+     * not accepted by the filter are skipped without decoding.
+     *
+     * @param tile      defines area and zoom level of read map data
+     * @param tr        renderer of the read data
+     * @param tagFilter filter of features by tags, or {@code null} to read all features
+     */
+    public void readMapData(Tile tile, TileRenderer tr, TagFilter tagFilter) {
+        readMapData(tile, tr, tagFilter, null);
+    }
+
+    /**
+     * Reads map data for the area covered by the given tile at the tile zoom level. With the
+     * projection, coordinates of ways are projected to pixels of the tile already while decoding,
+     * see {@link Way#isProjected}.
+     *
+     * @param tile           defines area and zoom level of read map data
+     * @param tr             renderer of the read data
+     * @param tagFilter      filter of features by tags, or {@code null} to read all features
+     * @param tileProjection projection to pixels of the tile, or {@code null} to read ways
+     *                       in microdegrees
+     */
+    public void readMapData(Tile tile, TileRenderer tr, TagFilter tagFilter,
+            TileProjection tileProjection) {
+        if (readTile(tile, tr, tagFilter, tileProjection)) {
+            tr.isWater = true;
+        }
+    }
 
+    /**
+     * Reads map data of a single tile, same as
+     * {@link #readMapData(Tile, TileRenderer, TagFilter, TileProjection)}, but features are sent
+     * to any visitor and the water flag of the tile is returned.
+     *
+     * @param visitor receiver of the read features
+     * @return {@code true} if the whole tile is covered by water blocks
+     */
+    boolean readTile(Tile tile, FeatureVisitor visitor, TagFilter tagFilter,
+            TileProjection tileProjection) {
+        QueryCursor cursor = getQueryCursor();
+        cursor.readNodes = 0;
+        cursor.readWays = 0;
+        cursor.culledWays = 0;
+        try {
             // define parameters
             QueryParameters queryParameters = new QueryParameters();
             queryParameters.queryZoomLevel = this.mapFileHeader.getQueryZoomLevel(tile.zoomLevel);
+            if (tagFilter != null && tagFilter.isValidFor(this.mapFileHeader.getMapFileInfo())) {
+                queryParameters.tagFilter = tagFilter;
+            }
+            queryParameters.tileProjection = tileProjection;
 
             // get and check the sub-file for the query zoom level
             SubFileParameter subFileParameter = this.mapFileHeader.
                     getSubFileParameter(queryParameters.queryZoomLevel);
             if (subFileParameter == null) {
                 Utils.getHandler().logW(TAG, "no sub-file for zoom level: " + queryParameters.queryZoomLevel);
-                return;
+                return false;
             }
 
             // calculate tiles
@@ -523,192 +1083,1190 @@ public class MapDatabase {
             QueryCalculations.calculateBlocks(queryParameters, subFileParameter);
 
             // read data
-            readNodes = 0;
-            readWays = 0;
-            processBlocks(queryParameters, subFileParameter, tr);
+            return processBlocks(cursor, queryParameters, subFileParameter, visitor);
         } catch (IOException e) {
             Utils.getHandler().logE(TAG, "readMapData(" + tile + ")", e);
+            return false;
         } finally {
-            if (readNodes == 0 && readWays == 0) {
-                emptyTilesRendered++;
+            culledWays.addAndGet(cursor.culledWays);
+            if (cursor.readNodes == 0 && cursor.readWays == 0) {
+                emptyTilesRendered.incrementAndGet();
             } else {
-                emptyTilesRendered = 0;
+                emptyTilesRendered.set(0);
             }
         }
     }
 
     /**
-     * Logs the debug signatures of the current way and block.
+     * Reads map data for a group of tiles, usually neighbouring tiles of a single metatile.
+     * Blocks needed by more tiles are read and decoded only once and their features are sent
+     * to renderers of all tiles they cover, filtered by the tile bitmask of every tile. Tiles
+     * with different zoom levels are read one by one.
+     *
+     * @param tiles     tiles to read
+     * @param renderers renderers of the read data, one for every tile in the same order
+     * @throws IllegalArgumentException if number of tiles and renderers differs
      */
-    private void logDebugSignatures() {
-        if (mapFileDebug) {
-            Utils.getHandler().logW(TAG, DEBUG_SIGNATURE_WAY + this.signatureWay);
-            Utils.getHandler().logW(TAG, DEBUG_SIGNATURE_BLOCK + this.signatureBlock);
-        }
+    public void readMapData(List<Tile> tiles, List<TileRenderer> renderers) {
+        readMapData(tiles, renderers, null, null);
     }
 
-    // HANDLE DATA
-
-    private void processBlocks(QueryParameters queryParameters,
-            SubFileParameter subFileParameter,
-            TileRenderer tr) throws IOException {
-        boolean queryIsWater = true;
-        boolean queryReadWaterInfo = false;
+    /**
+     * Reads map data for a group of tiles, same as {@link #readMapData(List, List)}. Features
+     * of every tile are filtered and projected same as by
+     * {@link #readMapData(Tile, TileRenderer, TagFilter, TileProjection)}.
+     *
+     * @param tiles           tiles to read
+     * @param renderers       renderers of the read data, one for every tile in the same order
+     * @param tagFilter       filter of features by tags, or {@code null} to read all features
+     * @param tileProjections projections to pixels of tiles in the same order, or {@code null}
+     *                        to read ways of all tiles in microdegrees
+     * @throws IllegalArgumentException if number of tiles, renderers or projections differs
+     */
+    public void readMapData(List<Tile> tiles, List<TileRenderer> renderers, TagFilter tagFilter,
+            List<TileProjection> tileProjections) {
+        boolean[] water = readTiles(tiles, renderers, tagFilter, tileProjections);
+        for (int i = 0; i < water.length; i++) {
+            if (water[i]) {
+                renderers.get(i).isWater = true;
+            }
+        }
+    }
 
-        // read and process all blocks from top to bottom and from left to right
-        for (long row = queryParameters.fromBlockY; row <= queryParameters.toBlockY; ++row) {
-            for (long column = queryParameters.fromBlockX; column <= queryParameters.toBlockX; ++column) {
+    /**
+     * Reads map data of a group of tiles, same as
+     * {@link #readMapData(List, List, TagFilter, List)}, but features are sent to any visitors
+     * and water flags of tiles are returned.
+     *
+     * @param visitors receivers of the read features, one for every tile in the same order
+     * @return for every tile {@code true} if the whole tile is covered by water blocks
+     */
+    boolean[] readTiles(List<Tile> tiles, List<? extends FeatureVisitor> visitors,
+            TagFilter tagFilter, List<TileProjection> tileProjections) {
+        int size = tiles.size();
+        if (size != visitors.size()
+                || (tileProjections != null && size != tileProjections.size())) {
+            throw new IllegalArgumentException("number of tiles, renderers and projections differs: "
+                    + size + ", " + visitors.size() + ", "
+                    + (tileProjections == null ? size : tileProjections.size()));
+        }
+        boolean[] water = new boolean[size];
 
-                // calculate the actual block number of the needed block in the file
-                long blockNumber = row * subFileParameter.blocksWidth + column;
+        // group may be read at once only for a single zoom level
+        boolean sameZoomLevel = true;
+        for (int i = 1; i < size; i++) {
+            sameZoomLevel &= tiles.get(i).zoomLevel == tiles.get(0).zoomLevel;
+        }
+        if (size <= 1 || !sameZoomLevel) {
+            for (int i = 0; i < size; i++) {
+                water[i] = readTile(tiles.get(i), visitors.get(i), tagFilter,
+                        tileProjections == null ? null : tileProjections.get(i));
+            }
+            return water;
+        }
 
-                // get the current index entry
-                long currentBlockIndexEntry = this.databaseIndexCache.getIndexEntry(subFileParameter, blockNumber);
+        QueryCursor cursor = getQueryCursor();
+        cursor.culledWays = 0;
+        int[] readFeatures = new int[size];
+        try {
+            // get and check the sub-file for the query zoom level
+            byte queryZoomLevel = this.mapFileHeader.getQueryZoomLevel(tiles.get(0).zoomLevel);
+            SubFileParameter subFileParameter = this.mapFileHeader.
+                    getSubFileParameter(queryZoomLevel);
+            if (subFileParameter == null) {
+                Utils.getHandler().logW(TAG, "no sub-file for zoom level: " + queryZoomLevel);
+                return water;
+            }
+            if (tagFilter != null && !tagFilter.isValidFor(this.mapFileHeader.getMapFileInfo())) {
+                tagFilter = null;
+            }
 
-                // check if the current query would still return a water tile
-                if (queryIsWater) {
-                    // check the water flag of the current block in its index entry
-                    queryIsWater &= (currentBlockIndexEntry & BITMASK_INDEX_WATER) != 0;
-                    queryReadWaterInfo = true;
-                }
+            // calculate blocks of every tile
+            QueryParameters[] queries = new QueryParameters[size];
+            int blocksCount = 0;
+            for (int i = 0; i < size; i++) {
+                QueryParameters queryParameters = new QueryParameters();
+                queryParameters.queryZoomLevel = queryZoomLevel;
+                queryParameters.tagFilter = tagFilter;
+                queryParameters.tileProjection = tileProjections == null
+                        ? null : tileProjections.get(i);
+                QueryCalculations.calculateBaseTiles(queryParameters, tiles.get(i), subFileParameter);
+                QueryCalculations.calculateBlocks(queryParameters, subFileParameter);
+                queries[i] = queryParameters;
+                blocksCount += Math.max(0, queryParameters.toBlockX - queryParameters.fromBlockX + 1)
+                        * Math.max(0, queryParameters.toBlockY - queryParameters.fromBlockY + 1);
+            }
 
-                // get and check the current block pointer
-                long currentBlockPointer = currentBlockIndexEntry & BITMASK_INDEX_OFFSET;
-                if (currentBlockPointer < 1 || currentBlockPointer > subFileParameter.subFileSize) {
-                    Utils.getHandler().logW(TAG, "invalid current block pointer: " + currentBlockPointer);
-                    Utils.getHandler().logW(TAG, "subFileSize: " + subFileParameter.subFileSize);
-                    return;
+            // union of all blocks, ordered from top to bottom and from left to right
+            long[] blockNumbers = new long[blocksCount];
+            int count = 0;
+            for (QueryParameters queryParameters : queries) {
+                for (long row = queryParameters.fromBlockY; row <= queryParameters.toBlockY; ++row) {
+                    for (long column = queryParameters.fromBlockX; column <= queryParameters.toBlockX; ++column) {
+                        blockNumbers[count++] = row * subFileParameter.blocksWidth + column;
+                    }
                 }
+            }
+            Arrays.sort(blockNumbers);
 
-                long nextBlockPointer;
-                // check if the current block is the last block in the file
-                if (blockNumber + 1 == subFileParameter.numberOfBlocks) {
-                    // set the next block pointer to the end of the file
-                    nextBlockPointer = subFileParameter.subFileSize;
+            // read data
+            processTileGroup(cursor, queries, visitors, readFeatures, water,
+                    subFileParameter, blockNumbers);
+        } catch (IOException e) {
+            Utils.getHandler().logE(TAG, "readMapData(" + tiles + ")", e);
+        } finally {
+            culledWays.addAndGet(cursor.culledWays);
+            for (int i = 0; i < size; i++) {
+                if (readFeatures[i] == 0) {
+                    emptyTilesRendered.incrementAndGet();
                 } else {
-                    // get and check the next block pointer
-                    nextBlockPointer = this.databaseIndexCache.getIndexEntry(subFileParameter, blockNumber + 1)
-                            & BITMASK_INDEX_OFFSET;
-                    if (nextBlockPointer < 1 || nextBlockPointer > subFileParameter.subFileSize) {
-                        Utils.getHandler().logW(TAG, "invalid next block pointer: " + nextBlockPointer);
-                        Utils.getHandler().logW(TAG, "sub-file size: " + subFileParameter.subFileSize);
-                        return;
-                    }
+                    emptyTilesRendered.set(0);
                 }
-
-                // calculate the size of the current block
-                int currentBlockSize = (int) (nextBlockPointer - currentBlockPointer);
-                if (currentBlockSize < 0) {
-                    Utils.getHandler().logW(TAG, "current block size must not be negative: " + currentBlockSize);
-                    return;
-                } else if (currentBlockSize == 0) {
-                    // the current block is empty, continue with the next block
+            }
+        }
+        return water;
+    }
+
+    /**
+     * Read and decode every block of the group once and send its features to all tiles. Water
+     * flags of tiles are evaluated same as by {@link #processBlocks}.
+     *
+     * @param cursor           cursor of the current thread
+     * @param queries          parameters of queries of all tiles
+     * @param visitors         receivers of features of all tiles
+     * @param readFeatures     container for numbers of features sent to every tile
+     * @param water            container for water flags of all tiles
+     * @param subFileParameter parameters of the sub-file
+     * @param blockNumbers     sorted numbers of blocks of all tiles, may contain duplicates
+     * @throws IOException if an error occurs while reading the file
+     */
+    private void processTileGroup(QueryCursor cursor, QueryParameters[] queries,
+            List<? extends FeatureVisitor> visitors, int[] readFeatures, boolean[] water,
+            SubFileParameter subFileParameter, long[] blockNumbers) throws IOException {
+        DecodedBlockCache blockCache = this.decodedBlockCache;
+        int emptyBlockSize = getEmptyBlockSize(subFileParameter);
+
+        // prepare list of all distinct blocks
+        // invalid index, process only already planned blocks and skip water flags
+        boolean planComplete = true;
+        BlockPlan plan = cursor.blockPlan;
+        plan.clear();
+        for (int i = 0; i < blockNumbers.length; i++) {
+            long blockNumber = blockNumbers[i];
+            if (i > 0 && blockNumber == blockNumbers[i - 1]) {
+                continue;
+            }
+            long blockIndexEntry = this.databaseIndexCache.getIndexEntry(subFileParameter, blockNumber);
+            if (!planBlock(plan, subFileParameter, blockNumber, blockIndexEntry,
+                    emptyBlockSize, blockCache)) {
+                planComplete = false;
+                break;
+            }
+        }
+
+        // tiles covered by water only, answered from the index if none of their blocks is read
+        boolean[] queryIsWater = new boolean[queries.length];
+        if (planComplete) {
+            for (int i = 0; i < queries.length; i++) {
+                queryIsWater[i] = isWaterQuery(queries[i], subFileParameter);
+                if (queryIsWater[i] && !isQueryPlanned(plan, queries[i], subFileParameter)) {
+                    waterTileHits.incrementAndGet();
+                }
+            }
+        }
+
+        // the whole group is covered by empty blocks and no block has to be read
+        if (planComplete && plan.size() == 0) {
+            for (int i = 0; i < queries.length; i++) {
+                water[i] = queryIsWater[i];
+            }
+            return;
+        }
+
+        // read and decode all planned blocks, then send them to all tiles
+        int zoomTableRow = queries[0].queryZoomLevel - subFileParameter.zoomLevelMin;
+        int rangeEnd = 0;
+        long rangeStart = 0;
+        for (int i = 0, n = plan.size(); i < n; i++) {
+            long blockNumber = plan.getBlockNumber(i);
+
+            // find tiles covered by the block
+            long row = blockNumber / subFileParameter.blocksWidth;
+            long column = blockNumber % subFileParameter.blocksWidth;
+            int coveredTiles = 0;
+            int coveredTile = -1;
+            for (int j = 0; j < queries.length; j++) {
+                if (isBlockInQuery(queries[j], row, column)) {
+                    coveredTiles++;
+                    coveredTile = j;
+                }
+            }
+
+            DecodedBlock block = plan.getDecodedBlock(i);
+            if (block == null) {
+                // read the current block into the buffer, together with following blocks if possible
+                if (i >= rangeEnd) {
+                    rangeEnd = readBlocks(cursor, subFileParameter, plan, i);
+                    if (rangeEnd < 0) {
+                        Utils.getHandler().logW(TAG, "reading current block has failed: " + plan.getBlockSize(i));
+                        return;
+                    }
+                    rangeStart = plan.getBlockPointer(i);
+                }
+                cursor.readBuffer.setBlock((int) (plan.getBlockPointer(i) - rangeStart), plan.getBlockSize(i));
+                setBlockPosition(cursor, subFileParameter, blockNumber);
+
+                // block of a single tile is processed directly, if it is not cached
+                if (blockCache == null && coveredTiles == 1) {
+                    cursor.readNodes = 0;
+                    cursor.readWays = 0;
+                    try {
+                        processBlock(cursor, queries[coveredTile], subFileParameter,
+                                visitors.get(coveredTile), null);
+                    } catch (IndexOutOfBoundsException e) {
+                        Utils.getHandler().logE(TAG, "", e);
+                    }
+                    readFeatures[coveredTile] += cursor.readNodes + cursor.readWays;
                     continue;
-                } else if (currentBlockSize > ReadBuffer.MAXIMUM_BUFFER_SIZE) {
-                    // the current block is too large, continue with the next block
-                    Utils.getHandler().logW(TAG, "current block size too large: " + currentBlockSize);
+                }
+
+                // decode the whole block once for all tiles
+                block = decodeBlock(cursor, queries[0], subFileParameter);
+                if (block == null) {
                     continue;
-                } else if (currentBlockPointer + currentBlockSize > this.fileSize) {
-                    Utils.getHandler().logW(TAG, "current block largher than file size: " + currentBlockSize);
-                    return;
                 }
+                if (blockCache != null) {
+                    blockCache.put(new BlockCacheKey(subFileParameter, blockNumber), block);
+                }
+            }
 
-                // seek to the current block in the map file
-                this.inputFile.seek(subFileParameter.startAddress + currentBlockPointer);
+            // send features to all tiles covered by the block
+            for (int j = 0; j < queries.length; j++) {
+                QueryParameters queryParameters = queries[j];
+                if (!isBlockInQuery(queryParameters, row, column)) {
+                    continue;
+                }
+                FeatureVisitor visitor = visitors.get(j);
+                readFeatures[j] += block.replayPois(zoomTableRow, queryParameters, visitor);
+                readFeatures[j] += block.replayWays(zoomTableRow, queryParameters, cursor, visitor);
+            }
+        }
 
-                // read the current block into the buffer
-                if (!this.readBuffer.readFromFile(currentBlockSize)) {
-                    // skip the current block
-                    Utils.getHandler().logW(TAG, "reading current block has failed: " + currentBlockSize);
-                    return;
+        // the group is finished, was the water flag set for all blocks of a tile?
+        for (int i = 0; i < queries.length; i++) {
+            water[i] = queryIsWater[i];
+        }
+    }
+
+    private static boolean isBlockInQuery(QueryParameters queryParameters, long row, long column) {
+        return row >= queryParameters.fromBlockY && row <= queryParameters.toBlockY
+                && column >= queryParameters.fromBlockX && column <= queryParameters.toBlockX;
+    }
+
+    /**
+     * @return {@code true} if any block of the query has to be read or replayed
+     */
+    private static boolean isQueryPlanned(BlockPlan plan, QueryParameters queryParameters,
+            SubFileParameter subFileParameter) {
+        for (int i = 0, n = plan.size(); i < n; i++) {
+            long blockNumber = plan.getBlockNumber(i);
+            if (isBlockInQuery(queryParameters, blockNumber / subFileParameter.blocksWidth,
+                    blockNumber % subFileParameter.blocksWidth)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check if all blocks of a query have the water flag in their index entries, same as
+     * while planning blocks of a single tile in {@link #processBlocks}.
+     *
+     * @param queryParameters  parameters of the query
+     * @param subFileParameter parameters of the sub-file
+     * @return {@code true} if the query area is covered by water only
+     * @throws IOException if an error occurs while reading the index
+     */
+    private boolean isWaterQuery(QueryParameters queryParameters,
+            SubFileParameter subFileParameter) throws IOException {
+        if (queryParameters.fromBlockX > queryParameters.toBlockX
+                || queryParameters.fromBlockY > queryParameters.toBlockY) {
+            return false;
+        }
+        for (long row = queryParameters.fromBlockY; row <= queryParameters.toBlockY; ++row) {
+            for (long column = queryParameters.fromBlockX; column <= queryParameters.toBlockX; ++column) {
+                long blockNumber = row * subFileParameter.blocksWidth + column;
+                if ((this.databaseIndexCache.getIndexEntry(subFileParameter, blockNumber)
+                        & BITMASK_INDEX_WATER) == 0) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads all features of a certain area, independently of tiles. Features are streamed to
+     * the visitor block by block, so memory usage does not depend on the size of the area.
+     * Blocks are found by the index, ways outside of the area are skipped by the tile bitmask
+     * of every block and only features intersecting the area are sent to the visitor.
+     * <p>
+     * Unlike reading of tiles, the tile bitmask is used also up to the base zoom level. Bitmask
+     * of a way describes its geometry in the base tile, that is the same in all rows of the zoom
+     * table, while ways crossing the base tile are stored in blocks of all tiles they intersect.
+     * Tiles up to the base zoom level cover whole blocks, so they just do not need the bitmask.
+     *
+     * @param boundingBox area of the query
+     * @param zoomLevel   zoom level defining the detail of features
+     * @param visitor     receiver of features
+     */
+    public void query(BoundingBox boundingBox, byte zoomLevel, FeatureVisitor visitor) {
+        QueryCursor cursor = getQueryCursor();
+        try {
+            // get and check the sub-file for the query zoom level
+            QueryParameters queryParameters = new QueryParameters();
+            queryParameters.queryZoomLevel = this.mapFileHeader.getQueryZoomLevel(zoomLevel);
+            SubFileParameter subFileParameter = this.mapFileHeader.
+                    getSubFileParameter(queryParameters.queryZoomLevel);
+            if (subFileParameter == null) {
+                Utils.getHandler().logW(TAG, "no sub-file for zoom level: " + queryParameters.queryZoomLevel);
+                return;
+            }
+
+            // calculate base tiles and blocks of the area
+            byte baseZoomLevel = subFileParameter.baseZoomLevel;
+            int tileSize = subFileParameter.tilePixelSize;
+            queryParameters.fromBaseTileX = MercatorProjection.longitudeToTileX(
+                    boundingBox.minLongitudeE6 / 1000000.0, baseZoomLevel, tileSize);
+            queryParameters.toBaseTileX = MercatorProjection.longitudeToTileX(
+                    boundingBox.maxLongitudeE6 / 1000000.0, baseZoomLevel, tileSize);
+            queryParameters.fromBaseTileY = MercatorProjection.latitudeToTileY(
+                    boundingBox.maxLatitudeE6 / 1000000.0, baseZoomLevel, tileSize);
+            queryParameters.toBaseTileY = MercatorProjection.latitudeToTileY(
+                    boundingBox.minLatitudeE6 / 1000000.0, baseZoomLevel, tileSize);
+            QueryCalculations.calculateBlocks(queryParameters, subFileParameter);
+
+            // sub-tiles of the tile bitmask covered by the area
+            byte subZoomLevel = (byte) (baseZoomLevel + 2);
+            long fromSubTileX = MercatorProjection.longitudeToTileX(
+                    boundingBox.minLongitudeE6 / 1000000.0, subZoomLevel, tileSize);
+            long toSubTileX = MercatorProjection.longitudeToTileX(
+                    boundingBox.maxLongitudeE6 / 1000000.0, subZoomLevel, tileSize);
+            long fromSubTileY = MercatorProjection.latitudeToTileY(
+                    boundingBox.maxLatitudeE6 / 1000000.0, subZoomLevel, tileSize);
+            long toSubTileY = MercatorProjection.latitudeToTileY(
+                    boundingBox.minLatitudeE6 / 1000000.0, subZoomLevel, tileSize);
+
+            // process blocks row by row, so reads of a single row may be coalesced
+            FeatureVisitor filter = new BoundingBoxFilter(boundingBox, visitor);
+            DecodedBlockCache blockCache = this.decodedBlockCache;
+            int emptyBlockSize = getEmptyBlockSize(subFileParameter);
+            int zoomTableRow = queryParameters.queryZoomLevel - subFileParameter.zoomLevelMin;
+            BlockPlan plan = cursor.blockPlan;
+            for (long row = queryParameters.fromBlockY; row <= queryParameters.toBlockY; ++row) {
+                plan.clear();
+                for (long column = queryParameters.fromBlockX; column <= queryParameters.toBlockX; ++column) {
+                    long blockNumber = row * subFileParameter.blocksWidth + column;
+                    long blockIndexEntry = this.databaseIndexCache.getIndexEntry(subFileParameter, blockNumber);
+                    if (!planBlock(plan, subFileParameter, blockNumber, blockIndexEntry,
+                            emptyBlockSize, blockCache)) {
+                        return;
+                    }
+                }
+
+                int rangeEnd = 0;
+                long rangeStart = 0;
+                for (int i = 0, n = plan.size(); i < n; i++) {
+                    long blockNumber = plan.getBlockNumber(i);
+
+                    // use tile bitmask, if the area does not cover the whole block
+                    long baseTileX = subFileParameter.boundaryTileLeft + blockNumber % subFileParameter.blocksWidth;
+                    long baseTileY = subFileParameter.boundaryTileTop + blockNumber / subFileParameter.blocksWidth;
+                    queryParameters.queryTileBitmask = getTileBitmask(baseTileX, baseTileY,
+                            fromSubTileX, toSubTileX, fromSubTileY, toSubTileY);
+                    queryParameters.useTileBitmask = queryParameters.queryTileBitmask != 0xffff;
+
+                    // replay the current block from the cache
+                    DecodedBlock block = plan.getDecodedBlock(i);
+                    if (block != null) {
+                        block.replayPois(zoomTableRow, queryParameters, filter);
+                        block.replayWays(zoomTableRow, queryParameters, cursor, filter);
+                        continue;
+                    }
+
+                    // read the current block into the buffer, together with following blocks if possible
+                    if (i >= rangeEnd) {
+                        rangeEnd = readBlocks(cursor, subFileParameter, plan, i);
+                        if (rangeEnd < 0) {
+                            Utils.getHandler().logW(TAG, "reading current block has failed: " + plan.getBlockSize(i));
+                            return;
+                        }
+                        rangeStart = plan.getBlockPointer(i);
+                    }
+                    cursor.readBuffer.setBlock((int) (plan.getBlockPointer(i) - rangeStart), plan.getBlockSize(i));
+                    setBlockPosition(cursor, subFileParameter, blockNumber);
+                    try {
+                        processBlock(cursor, queryParameters, subFileParameter, filter, null);
+                    } catch (IndexOutOfBoundsException e) {
+                        Utils.getHandler().logE(TAG, "", e);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            Utils.getHandler().logE(TAG, "query(" + boundingBox + ")", e);
+        }
+    }
+
+    /**
+     * Compute the tile bitmask of sub-tiles of a certain base tile, that are covered by an area.
+     * Bitmask contains 4x4 sub-tiles ordered from top to bottom and from left to right, starting
+     * by the highest bit.
+     *
+     * @return bitmask of covered sub-tiles
+     */
+    private static int getTileBitmask(long baseTileX, long baseTileY,
+            long fromSubTileX, long toSubTileX, long fromSubTileY, long toSubTileY) {
+        int bitmask = 0;
+        for (int y = 0; y < 4; y++) {
+            long subTileY = baseTileY * 4 + y;
+            if (subTileY < fromSubTileY || subTileY > toSubTileY) {
+                continue;
+            }
+            for (int x = 0; x < 4; x++) {
+                long subTileX = baseTileX * 4 + x;
+                if (subTileX >= fromSubTileX && subTileX <= toSubTileX) {
+                    bitmask |= 0x8000 >>> (y * 4 + x);
+                }
+            }
+        }
+        return bitmask;
+    }
+
+    // CONTENT HASHES
+
+    /**
+     * Compute hash of all data read by {@link #readMapData(Tile, TileRenderer)} for a certain
+     * tile. The hash combines the raw content and water flags of all blocks of the query, their
+     * positions and the part of the header needed for decoding, so it is stable between two
+     * versions of the map file as long as the input of the tile is not changed. Renderer caches
+     * may keep tiles whose input hash is the same for the new version of the map.
+     * <p>
+     * If the tile needs only a part of the block, the whole block is hashed, so any change of
+     * the block changes hashes of all its tiles.
+     *
+     * @param tile tile to compute hash for
+     * @return hash of the input of the tile, or '0' if the hash can't be computed
+     */
+    public long getTileInputHash(Tile tile) {
+        MapFileHeader header = this.mapFileHeader;
+        if (header == null) {
+            return 0;
+        }
+
+        try {
+            QueryParameters queryParameters = new QueryParameters();
+            queryParameters.queryZoomLevel = header.getQueryZoomLevel(tile.zoomLevel);
+            long hash = ContentHash.update(getHeaderHash(), queryParameters.queryZoomLevel);
+            SubFileParameter subFileParameter = header.
+                    getSubFileParameter(queryParameters.queryZoomLevel);
+            if (subFileParameter == null) {
+                return hash;
+            }
+            hash = ContentHash.update(hash, subFileParameter.baseZoomLevel);
+            hash = ContentHash.update(hash, subFileParameter.zoomLevelMin);
+            hash = ContentHash.update(hash, subFileParameter.zoomLevelMax);
+
+            // hash all blocks of the query together with their position
+            QueryCalculations.calculateBaseTiles(queryParameters, tile, subFileParameter);
+            QueryCalculations.calculateBlocks(queryParameters, subFileParameter);
+            for (long row = queryParameters.fromBlockY; row <= queryParameters.toBlockY; ++row) {
+                for (long column = queryParameters.fromBlockX; column <= queryParameters.toBlockX; ++column) {
+                    long blockNumber = row * subFileParameter.blocksWidth + column;
+                    BlockCacheKey key = new BlockCacheKey(subFileParameter, blockNumber);
+                    Long blockHash = this.blockHashes.get(key);
+                    if (blockHash == null) {
+                        blockHash = computeBlockHash(subFileParameter, blockNumber);
+                        this.blockHashes.put(key, blockHash);
+                    }
+                    hash = ContentHash.update(hash, subFileParameter.boundaryTileLeft + column);
+                    hash = ContentHash.update(hash, subFileParameter.boundaryTileTop + row);
+                    hash = ContentHash.update(hash, blockHash);
                 }
+            }
+            return hash;
+        } catch (IOException e) {
+            Utils.getHandler().logE(TAG, "getTileInputHash(" + tile + ")", e);
+            return 0;
+        }
+    }
 
-                // calculate the top-left coordinates of the underlying tile
-                double tileLatitudeDeg = MercatorProjection.tileYToLatitude(
-                        subFileParameter.boundaryTileTop + row,
-                        subFileParameter.baseZoomLevel,
-                        subFileParameter.tilePixelSize);
-                double tileLongitudeDeg = MercatorProjection.tileXToLongitude(
-                        subFileParameter.boundaryTileLeft + column,
-                        subFileParameter.baseZoomLevel,
-                        subFileParameter.tilePixelSize);
-                this.tileLatitude = (int) (tileLatitudeDeg * 1000000);
-                this.tileLongitude = (int) (tileLongitudeDeg * 1000000);
-
-                try {
-                    processBlock(queryParameters, subFileParameter, tr);
-                } catch (ArrayIndexOutOfBoundsException e) {
-                    Utils.getHandler().logE(TAG, "", e);
+    /**
+     * Compute hash of the header content, that is used for decoding of all blocks.
+     *
+     * @return hash of the header
+     */
+    long getHeaderHash() {
+        long hash = this.headerHash;
+        if (hash == 0) {
+            MapFileInfo mapFileInfo = this.mapFileHeader.getMapFileInfo();
+            hash = ContentHash.update(ContentHash.INITIAL, mapFileInfo.tilePixelSize);
+            hash = ContentHash.update(hash, mapFileInfo.debugFile ? 1 : 0);
+            hash = ContentHash.update(hash, mapFileInfo.languagesPreference);
+            hash = updateTagsHash(hash, mapFileInfo.poiTags);
+            hash = updateTagsHash(hash, mapFileInfo.wayTags);
+            this.headerHash = hash;
+        }
+        return hash;
+    }
+
+    private static long updateTagsHash(long hash, Tag[] tags) {
+        hash = ContentHash.update(hash, tags.length);
+        for (Tag tag : tags) {
+            hash = ContentHash.update(hash, tag.getKeyAsString());
+            hash = ContentHash.update(hash, tag.getValueAsString());
+        }
+        return hash;
+    }
+
+    /**
+     * Get query zoom level used for tiles of a certain zoom level.
+     *
+     * @param zoomLevel zoom level of tiles
+     * @return query zoom level
+     */
+    byte getQueryZoomLevel(byte zoomLevel) {
+        return this.mapFileHeader.getQueryZoomLevel(zoomLevel);
+    }
+
+    /**
+     * Get sub-file read by queries of a certain zoom level.
+     *
+     * @param queryZoomLevel query zoom level
+     * @return parameters of the sub-file, or 'null' if there is no sub-file
+     */
+    SubFileParameter getSubFileParameter(byte queryZoomLevel) {
+        return this.mapFileHeader.getSubFileParameter(queryZoomLevel);
+    }
+
+    /**
+     * Compute hash of the raw content and the water flag of a certain block. Content of invalid
+     * blocks, that are never read by queries, is not hashed.
+     *
+     * @param subFileParameter parameters of the sub-file
+     * @param blockNumber      number of the block in the sub-file
+     * @return hash of the block
+     * @throws IOException if an error occurs while reading the file
+     */
+    long computeBlockHash(SubFileParameter subFileParameter, long blockNumber) throws IOException {
+        QueryCursor cursor = getQueryCursor();
+        long blockIndexEntry = this.databaseIndexCache.getIndexEntry(subFileParameter, blockNumber);
+        long hash = ContentHash.update(ContentHash.INITIAL,
+                (blockIndexEntry & BITMASK_INDEX_WATER) != 0 ? 1 : 0);
+
+        // compute position and size of the block
+        long blockPointer = blockIndexEntry & BITMASK_INDEX_OFFSET;
+        long nextBlockPointer = subFileParameter.subFileSize;
+        if (blockNumber + 1 < subFileParameter.numberOfBlocks) {
+            nextBlockPointer = this.databaseIndexCache.getIndexEntry(subFileParameter, blockNumber + 1)
+                    & BITMASK_INDEX_OFFSET;
+        }
+        long blockSize = nextBlockPointer - blockPointer;
+        if (blockPointer < 1 || blockPointer > subFileParameter.subFileSize
+                || nextBlockPointer > subFileParameter.subFileSize
+                || blockSize < 0 || blockSize > ReadBuffer.MAXIMUM_BUFFER_SIZE
+                || blockPointer + blockSize > this.fileSize) {
+            return ContentHash.update(hash, -1L);
+        }
+        hash = ContentHash.update(hash, blockSize);
+
+        // hash the raw content of the block
+        if (!mUseMemoryMappedFile
+                || !readMappedBlock(cursor, subFileParameter, blockPointer, (int) blockSize)) {
+            if (!cursor.readBuffer.readFromFile(subFileParameter.startAddress + blockPointer,
+                    (int) blockSize)) {
+                throw new IOException("unable to read block: " + blockNumber);
+            }
+        }
+        return cursor.readBuffer.hashBlock(hash);
+    }
+
+    /**
+     * Get cursor for reading of map data in the current thread.
+     *
+     * @return cursor of the current thread
+     */
+    private QueryCursor getQueryCursor() {
+        ThreadLocal<QueryCursor> cursors = this.queryCursors;
+        QueryCursor cursor = cursors.get();
+        if (cursor == null || cursor.fileChannel != this.fileChannel) {
+            cursor = new QueryCursor(this.fileChannel);
+            cursors.set(cursor);
+        }
+        return cursor;
+    }
+
+    /**
+     * Logs the debug signatures of the current way and block.
+     */
+    private void logDebugSignatures(QueryCursor cursor) {
+        if (mapFileDebug) {
+            Utils.getHandler().logW(TAG, DEBUG_SIGNATURE_WAY + cursor.signatureWay);
+            Utils.getHandler().logW(TAG, DEBUG_SIGNATURE_BLOCK + cursor.signatureBlock);
+        }
+    }
+
+    // HANDLE DATA
+
+    /**
+     * Read and process all blocks of the query.
+     *
+     * @return {@code true} if all blocks of the query have the water flag and were processed
+     */
+    private boolean processBlocks(QueryCursor cursor, QueryParameters queryParameters,
+            SubFileParameter subFileParameter,
+            FeatureVisitor tr) throws IOException {
+        boolean queryIsWater = true;
+        boolean queryReadWaterInfo = false;
+        boolean planComplete = true;
+        DecodedBlockCache blockCache = this.decodedBlockCache;
+        int emptyBlockSize = getEmptyBlockSize(subFileParameter);
+
+        // prepare list of all blocks from top to bottom and from left to right
+        BlockPlan plan = cursor.blockPlan;
+        plan.clear();
+        plan:
+        for (long row = queryParameters.fromBlockY; row <= queryParameters.toBlockY; ++row) {
+            for (long column = queryParameters.fromBlockX; column <= queryParameters.toBlockX; ++column) {
+
+                // calculate the actual block number of the needed block in the file
+                long blockNumber = row * subFileParameter.blocksWidth + column;
+
+                // get the current index entry
+                long currentBlockIndexEntry = this.databaseIndexCache.getIndexEntry(subFileParameter, blockNumber);
+
+                // check if the current query would still return a water tile
+                if (queryIsWater) {
+                    // check the water flag of the current block in its index entry
+                    queryIsWater &= (currentBlockIndexEntry & BITMASK_INDEX_WATER) != 0;
+                    queryReadWaterInfo = true;
+                }
+
+                // add the block to the plan
+                // invalid index, process only already planned blocks and skip the water flag
+                if (!planBlock(plan, subFileParameter, blockNumber, currentBlockIndexEntry,
+                        emptyBlockSize, blockCache)) {
+                    planComplete = false;
+                    break plan;
                 }
             }
         }
 
+        // the whole tile is covered by water and no block has to be read
+        if (planComplete && plan.size() == 0 && queryIsWater && queryReadWaterInfo) {
+            waterTileHits.incrementAndGet();
+            return true;
+        }
+
+        // decode blocks in parallel, if there is enough of them
+        ForkJoinPool decodePool = mDecodePool;
+        if (decodePool != null && plan.getUndecodedCount() >= PARALLEL_DECODE_BLOCKS_MIN) {
+            boolean processed = processPlannedBlocksParallel(cursor, queryParameters,
+                    subFileParameter, tr, decodePool);
+            return processed && planComplete && queryIsWater && queryReadWaterInfo;
+        }
+
+        // start reads of all blocks at once, if it is worth it
+        AsyncBlockReads asyncReads = null;
+        if (mUseAsyncReads && !mUseMemoryMappedFile) {
+            if (cursor.asyncReads == null) {
+                cursor.asyncReads = new AsyncBlockReads();
+            }
+            if (cursor.asyncReads.prepare(plan,
+                    COALESCED_READ_GAP_MAX, COALESCED_READ_SIZE_MAX) > 1) {
+                asyncReads = cursor.asyncReads;
+                asyncReads.start(getAsyncReadExecutor(), cursor.fileChannel,
+                        subFileParameter.startAddress, plan);
+            }
+        }
+        boolean processed;
+        try {
+            processed = processPlannedBlocks(cursor, queryParameters, subFileParameter, tr,
+                    asyncReads);
+        } finally {
+            if (asyncReads != null) {
+                asyncReads.finish();
+            }
+        }
+
         // the query is finished, was the water flag set for all blocks?
-        if (queryIsWater && queryReadWaterInfo) {
-            tr.isWater = true;
+        return processed && planComplete && queryIsWater && queryReadWaterInfo;
+    }
+
+    /**
+     * Read and process all blocks of the plan prepared in the query cursor. Blocks are read and
+     * decoded by workers of the pool, only a limited number of blocks ahead of the currently
+     * processed block, and replayed in the original order.
+     *
+     * @param cursor           cursor of the current thread
+     * @param queryParameters  parameters of the query
+     * @param subFileParameter parameters of the sub-file
+     * @param tr               renderer of the read data
+     * @param decodePool       pool for decoding of blocks
+     * @return {@code false} if reading of a block has failed and the query was stopped
+     * @throws IOException if an error occurs while reading the file
+     */
+    private boolean processPlannedBlocksParallel(QueryCursor cursor, final QueryParameters queryParameters,
+            final SubFileParameter subFileParameter, FeatureVisitor tr, ForkJoinPool decodePool)
+            throws IOException {
+        DecodedBlockCache blockCache = this.decodedBlockCache;
+        // blocks not kept by the cache are decoded only for this query, with its filters
+        final boolean queryOnly = blockCache == null;
+        BlockPlan plan = cursor.blockPlan;
+        int n = plan.size();
+        int window = decodePool.getParallelism() * 2;
+        List<ForkJoinTask<DecodedBlock>> tasks =
+                new ArrayList<>(Collections.<ForkJoinTask<DecodedBlock>>nCopies(n, null));
+        int submitted = 0;
+        try {
+            for (int i = 0; i < n; i++) {
+                // keep workers busy with following blocks
+                for (; submitted < n && submitted <= i + window; submitted++) {
+                    if (plan.getDecodedBlock(submitted) == null) {
+                        final long blockNumber = plan.getBlockNumber(submitted);
+                        final long blockPointer = plan.getBlockPointer(submitted);
+                        final int blockSize = plan.getBlockSize(submitted);
+                        tasks.set(submitted, decodePool.submit(() -> decodeBlockInWorker(
+                                queryParameters, subFileParameter, blockNumber, blockPointer, blockSize,
+                                queryOnly)));
+                    }
+                }
+
+                long blockNumber = plan.getBlockNumber(i);
+                DecodedBlock block = plan.getDecodedBlock(i);
+                if (block == null) {
+                    block = tasks.get(i).join();
+                    tasks.set(i, null);
+                    if (block == null) {
+                        // decoding failed, process only this block the standard way
+                        if (!readBlock(cursor, subFileParameter, plan.getBlockPointer(i), plan.getBlockSize(i))) {
+                            Utils.getHandler().logW(TAG, "reading current block has failed: " + plan.getBlockSize(i));
+                            return false;
+                        }
+                        setBlockPosition(cursor, subFileParameter, blockNumber);
+                        try {
+                            processBlock(cursor, queryParameters, subFileParameter, tr, null);
+                        } catch (IndexOutOfBoundsException e) {
+                            Utils.getHandler().logE(TAG, "", e);
+                        }
+                        continue;
+                    }
+                    if (blockCache != null) {
+                        blockCache.put(new BlockCacheKey(subFileParameter, blockNumber), block);
+                    }
+                }
+                replayBlock(cursor, block, queryParameters, subFileParameter, tr);
+            }
+            return true;
+        } finally {
+            // workers use own cursors, so unused blocks may be simply dropped
+            for (ForkJoinTask<DecodedBlock> task : tasks) {
+                if (task != null) {
+                    task.cancel(false);
+                }
+            }
         }
+    }
 
+    /**
+     * Read and decode a single block in a worker thread, with the cursor of the worker.
+     *
+     * @param queryOnly {@code true} to decode only features of the query, see
+     *                  {@link DecodedBlock.Builder#queryOnly}
+     * @return decoded block or {@code null} if reading or decoding failed
+     */
+    private DecodedBlock decodeBlockInWorker(QueryParameters queryParameters,
+            SubFileParameter subFileParameter, long blockNumber, long blockPointer, int blockSize,
+            boolean queryOnly) {
+        QueryCursor cursor = getQueryCursor();
+        try {
+            if (!readBlock(cursor, subFileParameter, blockPointer, blockSize)) {
+                return null;
+            }
+        } catch (IOException e) {
+            Utils.getHandler().logE(TAG, "decodeBlockInWorker(" + blockNumber + ")", e);
+            return null;
+        }
+        setBlockPosition(cursor, subFileParameter, blockNumber);
+        return decodeBlock(cursor, queryParameters, subFileParameter, queryOnly);
     }
 
-    private void processBlock(QueryParameters queryParameters, SubFileParameter subFileParameter,
-            TileRenderer tr) {
-        if (!processBlockSignature()) {
-            return;
+    /**
+     * Add a certain block to the plan, if it contains any features.
+     *
+     * @param plan             planned blocks
+     * @param subFileParameter parameters of the sub-file
+     * @param blockNumber      number of the block in the sub-file
+     * @param blockIndexEntry  index entry of the block
+     * @param emptyBlockSize   maximal size of a block without features
+     * @param blockCache       cache of decoded blocks, or 'null' if disabled
+     * @return {@code false} if the index is not valid and planning should stop
+     * @throws IOException if an error occurs while reading the index
+     */
+    private boolean planBlock(BlockPlan plan, SubFileParameter subFileParameter, long blockNumber,
+            long blockIndexEntry, int emptyBlockSize, DecodedBlockCache blockCache)
+            throws IOException {
+        // get and check the current block pointer
+        long currentBlockPointer = blockIndexEntry & BITMASK_INDEX_OFFSET;
+        if (currentBlockPointer < 1 || currentBlockPointer > subFileParameter.subFileSize) {
+            Utils.getHandler().logW(TAG, "invalid current block pointer: " + currentBlockPointer);
+            Utils.getHandler().logW(TAG, "subFileSize: " + subFileParameter.subFileSize);
+            return false;
+        }
+
+        long nextBlockPointer;
+        // check if the current block is the last block in the file
+        if (blockNumber + 1 == subFileParameter.numberOfBlocks) {
+            // set the next block pointer to the end of the file
+            nextBlockPointer = subFileParameter.subFileSize;
+        } else {
+            // get and check the next block pointer
+            nextBlockPointer = this.databaseIndexCache.getIndexEntry(subFileParameter, blockNumber + 1)
+                    & BITMASK_INDEX_OFFSET;
+            if (nextBlockPointer < 1 || nextBlockPointer > subFileParameter.subFileSize) {
+                Utils.getHandler().logW(TAG, "invalid next block pointer: " + nextBlockPointer);
+                Utils.getHandler().logW(TAG, "sub-file size: " + subFileParameter.subFileSize);
+                return false;
+            }
+        }
+
+        // calculate the size of the current block
+        int currentBlockSize = (int) (nextBlockPointer - currentBlockPointer);
+        if (currentBlockSize < 0) {
+            Utils.getHandler().logW(TAG, "current block size must not be negative: " + currentBlockSize);
+            return false;
+        } else if (currentBlockSize <= emptyBlockSize) {
+            // the current block is empty, only zoom table without features fits into
+            // it, continue with the next block
+            return true;
+        } else if (currentBlockSize > ReadBuffer.MAXIMUM_BUFFER_SIZE) {
+            // the current block is too large, continue with the next block
+            Utils.getHandler().logW(TAG, "current block size too large: " + currentBlockSize);
+            return true;
+        } else if (currentBlockPointer + currentBlockSize > this.fileSize) {
+            Utils.getHandler().logW(TAG, "current block largher than file size: " + currentBlockSize);
+            return false;
+        }
+
+        // check the cache of decoded blocks
+        DecodedBlock block = null;
+        if (blockCache != null) {
+            block = blockCache.get(new BlockCacheKey(subFileParameter, blockNumber));
+        }
+        plan.add(blockNumber, currentBlockPointer, currentBlockSize, block);
+        return true;
+    }
+
+    /**
+     * Read and process all blocks of the plan prepared in the query cursor.
+     *
+     * @param cursor           cursor of the current thread
+     * @param queryParameters  parameters of the query
+     * @param subFileParameter parameters of the sub-file
+     * @param tr               renderer of the read data
+     * @param asyncReads       already started reads of blocks, or 'null' to read blocks here
+     * @return {@code false} if reading of a block has failed and the query was stopped
+     * @throws IOException if an error occurs while reading the file
+     */
+    private boolean processPlannedBlocks(QueryCursor cursor, QueryParameters queryParameters,
+            SubFileParameter subFileParameter, FeatureVisitor tr,
+            AsyncBlockReads asyncReads) throws IOException {
+        DecodedBlockCache blockCache = this.decodedBlockCache;
+        BlockPlan plan = cursor.blockPlan;
+
+        // read and process all planned blocks
+        int rangeEnd = 0;
+        long rangeStart = 0;
+        for (int i = 0, n = plan.size(); i < n; i++) {
+            long blockNumber = plan.getBlockNumber(i);
+
+            // replay the current block from the cache
+            DecodedBlock block = plan.getDecodedBlock(i);
+            if (block != null) {
+                replayBlock(cursor, block, queryParameters, subFileParameter, tr);
+                continue;
+            }
+
+            // read the current block into the buffer, together with following blocks if possible
+            if (i >= rangeEnd) {
+                rangeEnd = asyncReads != null
+                        ? asyncReads.next(cursor.readBuffer, i)
+                        : readBlocks(cursor, subFileParameter, plan, i);
+                if (rangeEnd < 0) {
+                    // skip the current block
+                    Utils.getHandler().logW(TAG, "reading current block has failed: " + plan.getBlockSize(i));
+                    return false;
+                }
+                rangeStart = plan.getBlockPointer(i);
+            }
+            cursor.readBuffer.setBlock((int) (plan.getBlockPointer(i) - rangeStart), plan.getBlockSize(i));
+            setBlockPosition(cursor, subFileParameter, blockNumber);
+
+            // decode the whole block into the cache
+            if (blockCache != null) {
+                block = decodeBlock(cursor, queryParameters, subFileParameter);
+                if (block != null) {
+                    blockCache.put(new BlockCacheKey(subFileParameter, blockNumber), block);
+                    replayBlock(cursor, block, queryParameters, subFileParameter, tr);
+                    continue;
+                }
+
+                // decoding failed, process the block the standard way
+                cursor.readBuffer.setBufferPosition(0);
+            }
+
+            try {
+                processBlock(cursor, queryParameters, subFileParameter, tr, null);
+            } catch (IndexOutOfBoundsException e) {
+                Utils.getHandler().logE(TAG, "", e);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Set the top-left coordinates of the base tile of a certain block into the cursor.
+     *
+     * @param cursor           cursor of the current thread
+     * @param subFileParameter parameters of the sub-file
+     * @param blockNumber      number of the block in the sub-file
+     */
+    private static void setBlockPosition(QueryCursor cursor, SubFileParameter subFileParameter,
+            long blockNumber) {
+        // calculate the top-left coordinates of the underlying tile
+        double tileLatitudeDeg = MercatorProjection.tileYToLatitude(
+                subFileParameter.boundaryTileTop + blockNumber / subFileParameter.blocksWidth,
+                subFileParameter.baseZoomLevel,
+                subFileParameter.tilePixelSize);
+        double tileLongitudeDeg = MercatorProjection.tileXToLongitude(
+                subFileParameter.boundaryTileLeft + blockNumber % subFileParameter.blocksWidth,
+                subFileParameter.baseZoomLevel,
+                subFileParameter.tilePixelSize);
+        cursor.tileLatitude = (int) (tileLatitudeDeg * 1000000);
+        cursor.tileLongitude = (int) (tileLongitudeDeg * 1000000);
+    }
+
+    /**
+     * Get maximal size of a block without features. Such block contains only the zoom table
+     * with zero counts of features and the offset of the first way.
+     *
+     * @param subFileParameter parameters of the sub-file
+     * @return size of the empty block in bytes, or '-1' if empty blocks are not skipped
+     */
+    private int getEmptyBlockSize(SubFileParameter subFileParameter) {
+        if (!mSkipEmptyBlocks) {
+            return -1;
+        }
+        // every count in the zoom table and the first way offset take at least one byte
+        int size = 2 * (subFileParameter.zoomLevelMax - subFileParameter.zoomLevelMin + 1) + 1;
+        if (mapFileDebug) {
+            size += SIGNATURE_LENGTH_BLOCK;
+        }
+        return size;
+    }
+
+    /**
+     * Read a certain planned block into the read buffer of the cursor. Following planned blocks,
+     * stored close enough in the file, are read by the same read.
+     *
+     * @param cursor           cursor of the current thread
+     * @param subFileParameter parameters of the sub-file
+     * @param plan             planned blocks
+     * @param from             index of the block to read
+     * @return index after the last read block, or '-1' if reading failed
+     * @throws IOException if an error occurs while reading the file
+     */
+    private int readBlocks(QueryCursor cursor, SubFileParameter subFileParameter,
+            BlockPlan plan, int from) throws IOException {
+        long blockPointer = plan.getBlockPointer(from);
+
+        // use memory-mapped file if possible, blocks are then available without reading
+        if (mUseMemoryMappedFile
+                && readMappedBlock(cursor, subFileParameter, blockPointer, plan.getBlockSize(from))) {
+            return from + 1;
+        }
+
+        // read the whole range of blocks from its position in the map file
+        int to = plan.getRangeEnd(from, COALESCED_READ_GAP_MAX, COALESCED_READ_SIZE_MAX);
+        if (!cursor.readBuffer.readFromFile(subFileParameter.startAddress + blockPointer,
+                plan.getRangeSize(from, to))) {
+            return -1;
+        }
+        return to;
+    }
+
+    /**
+     * Read a single block into the read buffer of the cursor, without following blocks.
+     *
+     * @param cursor           cursor of the current thread
+     * @param subFileParameter parameters of the sub-file
+     * @param blockPointer     offset of the block relative to the start of the sub-file
+     * @param blockSize        size of the block in bytes
+     * @return {@code true} if the block is ready in the buffer
+     * @throws IOException if an error occurs while reading the file
+     */
+    private boolean readBlock(QueryCursor cursor, SubFileParameter subFileParameter,
+            long blockPointer, int blockSize) throws IOException {
+        return (mUseMemoryMappedFile
+                && readMappedBlock(cursor, subFileParameter, blockPointer, blockSize))
+                || cursor.readBuffer.readFromFile(subFileParameter.startAddress + blockPointer, blockSize);
+    }
+
+    /**
+     * Prepare content of a certain block in the read buffer of the cursor, directly from the
+     * memory-mapped file.
+     *
+     * @param cursor           cursor of the current thread
+     * @param subFileParameter parameters of the sub-file
+     * @param blockPointer     offset of the block relative to the start of the sub-file
+     * @param blockSize        size of the block in bytes
+     * @return {@code true} if the block is ready in the buffer, {@code false} if mapping of
+     * the file is not possible
+     */
+    private boolean readMappedBlock(QueryCursor cursor, SubFileParameter subFileParameter,
+            long blockPointer, int blockSize) {
+        MappedSubFile mappedSubFile = this.mappedSubFiles.get(subFileParameter);
+        if (mappedSubFile == null) {
+            MappedSubFile newMappedSubFile = new MappedSubFile(cursor.fileChannel, subFileParameter);
+            mappedSubFile = this.mappedSubFiles.putIfAbsent(subFileParameter, newMappedSubFile);
+            if (mappedSubFile == null) {
+                mappedSubFile = newMappedSubFile;
+            }
+        }
+        return mappedSubFile.readBlock(cursor.readBuffer, blockPointer, blockSize);
+    }
+
+    /**
+     * Decode the whole block in the read buffer, for all zoom levels.
+     *
+     * @return decoded block or {@code null} if block is not valid
+     */
+    private DecodedBlock decodeBlock(QueryCursor cursor, QueryParameters queryParameters,
+            SubFileParameter subFileParameter) {
+        return decodeBlock(cursor, queryParameters, subFileParameter, false);
+    }
+
+    /**
+     * Decode the block in the read buffer.
+     *
+     * @param queryOnly {@code true} to decode only features of the query, see
+     *                  {@link DecodedBlock.Builder#queryOnly}
+     * @return decoded block or {@code null} if block is not valid
+     */
+    private DecodedBlock decodeBlock(QueryCursor cursor, QueryParameters queryParameters,
+            SubFileParameter subFileParameter, boolean queryOnly) {
+        if (cursor.blockBuilder == null) {
+            cursor.blockBuilder = new DecodedBlock.Builder();
+        }
+        cursor.blockBuilder.queryOnly = queryOnly;
+        try {
+            if (processBlock(cursor, queryParameters, subFileParameter, null, cursor.blockBuilder)) {
+                return cursor.blockBuilder.build();
+            }
+        } catch (IndexOutOfBoundsException e) {
+            Utils.getHandler().logE(TAG, "", e);
         }
+        return null;
+    }
+
+    /**
+     * Send content of the decoded block, valid for the current query, to the renderer.
+     */
+    private void replayBlock(QueryCursor cursor, DecodedBlock block, QueryParameters queryParameters,
+            SubFileParameter subFileParameter, FeatureVisitor tr) {
+        int zoomTableRow = queryParameters.queryZoomLevel - subFileParameter.zoomLevelMin;
+        cursor.readNodes = block.replayPois(zoomTableRow, queryParameters, tr);
+        cursor.readWays = block.replayWays(zoomTableRow, queryParameters, cursor, tr);
+    }
 
-        int[][] zoomTable = readZoomTable(subFileParameter);
+    /**
+     * Process block in the read buffer.
+     *
+     * @param builder if defined, all features of the block, without filtering by the query, are
+     *                collected into the builder instead of sending them to the renderer, or
+     *                only features of the query if {@link DecodedBlock.Builder#queryOnly} is set
+     * @return {@code true} if the whole block was processed successfully
+     */
+    private boolean processBlock(QueryCursor cursor, QueryParameters queryParameters,
+            SubFileParameter subFileParameter, FeatureVisitor tr, DecodedBlock.Builder builder) {
+        if (!processBlockSignature(cursor)) {
+            return false;
+        }
+
+        int[][] zoomTable = readZoomTable(cursor, subFileParameter);
         if (zoomTable == null) {
-            return;
+            return false;
         }
         int zoomTableRow = queryParameters.queryZoomLevel - subFileParameter.zoomLevelMin;
+        if (builder != null) {
+            builder.reset(zoomTable);
+            if (!builder.queryOnly) {
+                // collect features of all zoom levels
+                zoomTableRow = zoomTable.length - 1;
+            }
+        }
         int poisOnQueryZoomLevel = zoomTable[zoomTableRow][0];
         int waysOnQueryZoomLevel = zoomTable[zoomTableRow][1];
 
         // get the relative offset to the first stored way in the block
-        int firstWayOffset = this.readBuffer.readUnsignedInt();
+        int firstWayOffset = cursor.readBuffer.readUnsignedInt();
         if (firstWayOffset < 0) {
             Utils.getHandler().logW(TAG, INVALID_FIRST_WAY_OFFSET + firstWayOffset);
             if (mapFileDebug) {
-                Utils.getHandler().logW(TAG, DEBUG_SIGNATURE_BLOCK + this.signatureBlock);
+                Utils.getHandler().logW(TAG, DEBUG_SIGNATURE_BLOCK + cursor.signatureBlock);
             }
-            return;
+            return false;
         }
 
         // add the current buffer position to the relative first way offset
-        firstWayOffset += this.readBuffer.getBufferPosition();
-        if (firstWayOffset > this.readBuffer.getBufferSize()) {
+        firstWayOffset += cursor.readBuffer.getBufferPosition();
+        if (firstWayOffset > cursor.readBuffer.getBufferSize()) {
             Utils.getHandler().logW(TAG, INVALID_FIRST_WAY_OFFSET + firstWayOffset);
             if (mapFileDebug) {
-                Utils.getHandler().logW(TAG, DEBUG_SIGNATURE_BLOCK + this.signatureBlock);
+                Utils.getHandler().logW(TAG, DEBUG_SIGNATURE_BLOCK + cursor.signatureBlock);
             }
-            return;
+            return false;
         }
 
         // attempt to read points
-        boolean resPois = processPOIs(poisOnQueryZoomLevel, tr);
+        boolean resPois = processPOIs(cursor, queryParameters, poisOnQueryZoomLevel, tr, builder);
         if (!resPois) {
-            return;
+            return false;
+        }
+        if (builder == null) {
+            cursor.readNodes = poisOnQueryZoomLevel;
         }
-        readNodes = poisOnQueryZoomLevel;
 
         // finished reading POIs, check if the current buffer position is valid
-        if (this.readBuffer.getBufferPosition() > firstWayOffset) {
-            Utils.getHandler().logW(TAG, "invalid buffer position: " + this.readBuffer.getBufferPosition());
+        if (cursor.readBuffer.getBufferPosition() > firstWayOffset) {
+            Utils.getHandler().logW(TAG, "invalid buffer position: " + cursor.readBuffer.getBufferPosition());
             if (mapFileDebug) {
-                Utils.getHandler().logW(TAG, DEBUG_SIGNATURE_BLOCK + this.signatureBlock);
+                Utils.getHandler().logW(TAG, DEBUG_SIGNATURE_BLOCK + cursor.signatureBlock);
             }
-            return;
+            return false;
         }
 
         // move the pointer to the first way
-        this.readBuffer.setBufferPosition(firstWayOffset);
+        cursor.readBuffer.setBufferPosition(firstWayOffset);
 
         // finally handle a ways
-        int resWays = processWays(queryParameters, waysOnQueryZoomLevel, tr);
+        int resWays = processWays(cursor, queryParameters, waysOnQueryZoomLevel, tr, builder);
         if (resWays < 0) {
-            return;
+            return false;
+        }
+        if (builder == null) {
+            cursor.readWays = resWays;
         }
-        readWays = resWays;
+        return true;
     }
 
     /**
@@ -716,19 +2274,19 @@ public class MapDatabase {
      *
      * @return true if the block signature could be processed successfully, false otherwise.
      */
-    private boolean processBlockSignature() {
+    private boolean processBlockSignature(QueryCursor cursor) {
         if (mapFileDebug) {
             // get and check the block signature
-            this.signatureBlock = this.readBuffer.readUTF8EncodedString(SIGNATURE_LENGTH_BLOCK);
-            if (!this.signatureBlock.startsWith("###TileStart")) {
-                Utils.getHandler().logW(TAG, "invalid block signature: " + this.signatureBlock);
+            cursor.signatureBlock = cursor.readBuffer.readUTF8EncodedString(SIGNATURE_LENGTH_BLOCK);
+            if (!cursor.signatureBlock.startsWith("###TileStart")) {
+                Utils.getHandler().logW(TAG, "invalid block signature: " + cursor.signatureBlock);
                 return false;
             }
         }
         return true;
     }
 
-    private int[][] readZoomTable(SubFileParameter subFileParameter) {
+    private int[][] readZoomTable(QueryCursor cursor, SubFileParameter subFileParameter) {
         int rows = subFileParameter.zoomLevelMax - subFileParameter.zoomLevelMin + 1;
         int[][] zoomTable = new int[rows][2];
 //Logger.d(TAG, "readZoomTable(), rows:" + rows);
@@ -736,19 +2294,19 @@ public class MapDatabase {
         int cumulatedNumberOfWays = 0;
 
         for (int row = 0; row < rows; ++row) {
-            cumulatedNumberOfPois += this.readBuffer.readUnsignedInt();
-            cumulatedNumberOfWays += this.readBuffer.readUnsignedInt();
+            cumulatedNumberOfPois += cursor.readBuffer.readUnsignedInt();
+            cumulatedNumberOfWays += cursor.readBuffer.readUnsignedInt();
 
 //			if (cumulatedNumberOfPois < 0 || cumulatedNumberOfPois > MAXIMUM_ZOOM_TABLE_OBJECTS) {
 //				Utils.getHandler().logW(TAG, "invalid cumulated number of POIs in row " + row + ' ' + cumulatedNumberOfPois);
 //				if (mapFileDebug) {
-//					Utils.getHandler().logW(TAG, DEBUG_SIGNATURE_BLOCK + this.signatureBlock);
+//					Utils.getHandler().logW(TAG, DEBUG_SIGNATURE_BLOCK + cursor.signatureBlock);
 //				}
 //				return null;
 //			} else if (cumulatedNumberOfWays < 0 || cumulatedNumberOfWays > MAXIMUM_ZOOM_TABLE_OBJECTS) {
 //				Utils.getHandler().logW(TAG, "invalid cumulated number of ways in row " + row + ' ' + cumulatedNumberOfWays);
 //				if (mapFileDebug) {
-//					Utils.getHandler().logW(TAG, DEBUG_SIGNATURE_BLOCK + this.signatureBlock);
+//					Utils.getHandler().logW(TAG, DEBUG_SIGNATURE_BLOCK + cursor.signatureBlock);
 //				}
 //				return null;
 //			}
@@ -762,28 +2320,31 @@ public class MapDatabase {
 
     // HANDLE POIS
 
-    private boolean processPOIs(int numberOfPois, TileRenderer tr) {
+    private boolean processPOIs(QueryCursor cursor, QueryParameters queryParameters,
+            int numberOfPois, FeatureVisitor tr, DecodedBlock.Builder builder) {
         Tag[] poiTags = this.mapFileHeader.getMapFileInfo().poiTags;
+        TagFilter tagFilter = builder == null || builder.queryOnly ? queryParameters.tagFilter : null;
+        boolean filter = tagFilter != null && tagFilter.isFilteringPois();
         String signaturePoi = null;
         for (int elementCounter = numberOfPois; elementCounter != 0; --elementCounter) {
             if (mapFileDebug) {
                 // get and check the POI signature
-                signaturePoi = this.readBuffer.readUTF8EncodedString(SIGNATURE_LENGTH_POI);
+                signaturePoi = cursor.readBuffer.readUTF8EncodedString(SIGNATURE_LENGTH_POI);
                 if (!signaturePoi.startsWith("***POIStart")) {
                     Utils.getHandler().logW(TAG, "invalid POI signature: " + signaturePoi);
-                    Utils.getHandler().logW(TAG, DEBUG_SIGNATURE_BLOCK + this.signatureBlock);
+                    Utils.getHandler().logW(TAG, DEBUG_SIGNATURE_BLOCK + cursor.signatureBlock);
                     return false;
                 }
             }
 
             // get the POI latitude offset (VBE-S)
-            int latitude = this.tileLatitude + this.readBuffer.readSignedInt();
+            int latitude = cursor.tileLatitude + cursor.readBuffer.readSignedInt();
 
             // get the POI longitude offset (VBE-S)
-            int longitude = this.tileLongitude + this.readBuffer.readSignedInt();
+            int longitude = cursor.tileLongitude + cursor.readBuffer.readSignedInt();
 
             // get the special byte which encodes multiple flags
-            byte specialByte = this.readBuffer.readByte();
+            byte specialByte = cursor.readBuffer.readByte();
 
             // bit 1-4 represent the layer
             byte layer = (byte) ((specialByte & POI_LAYER_BITMASK) >>> POI_LAYER_SHIFT);
@@ -791,54 +2352,93 @@ public class MapDatabase {
             byte numberOfTags = (byte) (specialByte & POI_NUMBER_OF_TAGS_BITMASK);
 
             // get the tag IDs (VBE-U)
-            tags.clear();
+            cursor.tags.clear();
+            boolean accepted = !filter;
             for (byte tagIndex = numberOfTags; tagIndex != 0; --tagIndex) {
-                int tagId = this.readBuffer.readUnsignedInt();
+                int tagId = cursor.readBuffer.readUnsignedInt();
                 if (tagId < 0 || tagId >= poiTags.length) {
                     Utils.getHandler().logW(TAG, "invalid POI tag ID: " + tagId);
                     if (mapFileDebug) {
                         Utils.getHandler().logW(TAG, DEBUG_SIGNATURE_POI + signaturePoi);
-                        Utils.getHandler().logW(TAG, DEBUG_SIGNATURE_BLOCK + this.signatureBlock);
+                        Utils.getHandler().logW(TAG, DEBUG_SIGNATURE_BLOCK + cursor.signatureBlock);
                     }
                     return false;
                 }
-                tags.add(poiTags[tagId]);
+                accepted = accepted || tagFilter.acceptsPoiTag(tagId);
+                cursor.tags.add(poiTags[tagId]);
+                cursor.tagIds[numberOfTags - tagIndex] = tagId;
             }
 
             // get the feature bitmask (1 byte)
-            byte featureByte = this.readBuffer.readByte();
+            byte featureByte = cursor.readBuffer.readByte();
 
             // bit 1-3 enable optional features
             boolean featureName = (featureByte & POI_FEATURE_NAME) != 0;
             boolean featureHouseNumber = (featureByte & POI_FEATURE_HOUSE_NUMBER) != 0;
             boolean featureElevation = (featureByte & POI_FEATURE_ELEVATION) != 0;
 
+            // skip optional features of the POI, that may not be matched by any rule
+            if (!accepted && !tagFilter.acceptsPoiFeatures(
+                    featureName, featureHouseNumber, featureElevation)) {
+                if (featureName) {
+                    cursor.readBuffer.skipUTF8EncodedString(cursor.readBuffer.readUnsignedInt());
+                }
+                if (featureHouseNumber) {
+                    cursor.readBuffer.skipUTF8EncodedString(cursor.readBuffer.readUnsignedInt());
+                }
+                if (featureElevation) {
+                    cursor.readBuffer.readSignedInt();
+                }
+                if (builder != null) {
+                    // keep the POI without optional features, so its replay rejects it as well
+                    builder.addPoi(layer, cursor.tags.toArray(cursor.getTagArray(cursor.tags.size())),
+                            latitude, longitude, cursor.tagIds, numberOfTags,
+                            getFeatures(featureName, featureHouseNumber, featureElevation));
+                }
+                continue;
+            }
+
             // check if the POI has a name
             if (featureName) {
-                String name = extract(readBuffer.readUTF8EncodedString());
+                Tag name = readTextTag(cursor, TAG_KEY_NAME_RAW, TAG_KEY_NAME, true);
                 if (name != null) {
-                    tags.add(new Tag(TAG_KEY_NAME_RAW, TAG_KEY_NAME, name));
+                    cursor.tags.add(name);
                 }
             }
 
             // check if the POI has a house number
             if (featureHouseNumber) {
-                tags.add(new Tag(TAG_KEY_HOUSE_NUMBER_RAW, TAG_KEY_HOUSE_NUMBER,
-                        readBuffer.readUTF8EncodedString()));
+                Tag houseNumber = readTextTag(cursor, TAG_KEY_HOUSE_NUMBER_RAW, TAG_KEY_HOUSE_NUMBER, false);
+                if (houseNumber != null) {
+                    cursor.tags.add(houseNumber);
+                }
             }
 
             // check if the POI has an elevation
             if (featureElevation) {
-                tags.add(new Tag(TAG_KEY_ELE_RAW, TAG_KEY_ELE,
-                        Integer.toString(readBuffer.readSignedInt())));
+                cursor.tags.add(new Tag(TAG_KEY_ELE_RAW, TAG_KEY_ELE,
+                        Integer.toString(cursor.readBuffer.readSignedInt())));
+            }
+            Tag[] tagsA = cursor.tags.toArray(cursor.getTagArray(cursor.tags.size()));
+            if (builder != null) {
+                builder.addPoi(layer, tagsA, latitude, longitude, cursor.tagIds, numberOfTags,
+                        getFeatures(featureName, featureHouseNumber, featureElevation));
+            } else {
+                tr.renderNode(layer, tagsA, latitude, longitude);
             }
-            Tag[] tagsA = new Tag[tags.size()];
-            tags.toArray(tagsA);
-            tr.renderNode(layer, tagsA, latitude, longitude);
         }
         return true;
     }
 
+    /**
+     * Flags of optional features of a POI or a way, stored in decoded blocks.
+     */
+    private static int getFeatures(boolean name, boolean houseNumber, boolean elevationOrRef) {
+        return (name ? DecodedBlock.FEATURE_NAME : 0)
+                | (houseNumber ? DecodedBlock.FEATURE_HOUSE_NUMBER : 0)
+                | (elevationOrRef ? DecodedBlock.FEATURE_ELEVATION_OR_REF : 0);
+    }
+
     // HANDLE WAYS
 
     // comparator for tags
@@ -848,61 +2448,65 @@ public class MapDatabase {
     /**
      * Process all ways for a block.
      *
+     * @param cursor          cursor of the current thread
      * @param queryParameters ?
      * @param numberOfWays    number of ways in block
      * @param tr              rendered handler
+     * @param builder         if defined, all ways are collected into the builder without the
+     *                        tile bitmask filter, unless the builder is query only
      * @return number of valid ways in block or '-1' in case of any problem
      */
-    private int processWays(QueryParameters queryParameters, int numberOfWays, TileRenderer tr) {
+    private int processWays(QueryCursor cursor, QueryParameters queryParameters,
+            int numberOfWays, FeatureVisitor tr, DecodedBlock.Builder builder) {
         Tag[] wayTags = this.mapFileHeader.getMapFileInfo().wayTags;
+        TagFilter tagFilter = builder == null || builder.queryOnly ? queryParameters.tagFilter : null;
+        TileProjection tileProjection = builder == null ? queryParameters.tileProjection : null;
+        boolean filter = tagFilter != null && tagFilter.isFilteringWays();
 
         // container for a way
         int validWays = 0;
-        Way way = new Way();
+        Way way = cursor.way;
 
         // handle all ways
         for (int elementCounter = numberOfWays; elementCounter != 0; --elementCounter) {
             if (mapFileDebug) {
                 // get and check the way signature
-                this.signatureWay = this.readBuffer.readUTF8EncodedString(SIGNATURE_LENGTH_WAY);
-                if (!this.signatureWay.startsWith("---WayStart")) {
-                    Utils.getHandler().logW(TAG, "invalid way signature: " + this.signatureWay);
-                    Utils.getHandler().logW(TAG, DEBUG_SIGNATURE_BLOCK + this.signatureBlock);
+                cursor.signatureWay = cursor.readBuffer.readUTF8EncodedString(SIGNATURE_LENGTH_WAY);
+                if (!cursor.signatureWay.startsWith("---WayStart")) {
+                    Utils.getHandler().logW(TAG, "invalid way signature: " + cursor.signatureWay);
+                    Utils.getHandler().logW(TAG, DEBUG_SIGNATURE_BLOCK + cursor.signatureBlock);
                     return -1;
                 }
             }
 
             // prepare container
             way.prepareToNewStep();
-            tags.clear();
+            cursor.tags.clear();
 
             // get the size of the way (VBE-U)
-            int wayDataSize = this.readBuffer.readUnsignedInt();
+            int wayDataSize = cursor.readBuffer.readUnsignedInt();
             if (wayDataSize < 0) {
                 Utils.getHandler().logW(TAG, "invalid way data size: " + wayDataSize +
                         ", amount:" + numberOfWays + ", index:" + elementCounter);
                 if (mapFileDebug) {
-                    Utils.getHandler().logW(TAG, DEBUG_SIGNATURE_BLOCK + this.signatureBlock);
+                    Utils.getHandler().logW(TAG, DEBUG_SIGNATURE_BLOCK + cursor.signatureBlock);
                 }
                 return -1;
             }
-
-            if (queryParameters.useTileBitmask) {
-                // get the way tile bitmask (2 bytes)
-                int tileBitmask = this.readBuffer.readShort();
-                // check if the way is inside the requested tile
-                if ((queryParameters.queryTileBitmask & tileBitmask) == 0) {
-                    // skip the rest of the way and continue with the next way
-                    this.readBuffer.skipBytes(wayDataSize - 2);
-                    continue;
-                }
-            } else {
-                // ignore the way tile bitmask (2 bytes)
-                this.readBuffer.skipBytes(2);
+            int wayDataStart = cursor.readBuffer.getBufferPosition();
+
+            // get the way tile bitmask (2 bytes)
+            int tileBitmask = cursor.readBuffer.readShort();
+            // check if the way is inside the requested tile
+            if ((builder == null || builder.queryOnly) && queryParameters.useTileBitmask
+                    && (queryParameters.queryTileBitmask & tileBitmask) == 0) {
+                // skip the rest of the way and continue with the next way
+                cursor.readBuffer.skipBytes(wayDataSize - 2);
+                continue;
             }
 
             // get the special byte which encodes multiple flags
-            byte specialByte = this.readBuffer.readByte();
+            byte specialByte = cursor.readBuffer.readByte();
 
             // bit 1-4 represent the layer
             byte layer = (byte) ((specialByte & WAY_LAYER_BITMASK) >>> WAY_LAYER_SHIFT);
@@ -911,21 +2515,21 @@ public class MapDatabase {
             byte numberOfTags = (byte) (specialByte & WAY_NUMBER_OF_TAGS_BITMASK);
 
             // add all tags to way
+            boolean accepted = !filter;
             for (byte tagIndex = numberOfTags; tagIndex != 0; --tagIndex) {
-                int tagId = this.readBuffer.readUnsignedInt();
+                int tagId = cursor.readBuffer.readUnsignedInt();
                 if (tagId < 0 || tagId >= wayTags.length) {
                     Utils.getHandler().logW(TAG, "invalid way tag ID: " + tagId);
-                    logDebugSignatures();
+                    logDebugSignatures(cursor);
                     return -1;
                 }
-                tags.add(wayTags[tagId]);
+                accepted = accepted || tagFilter.acceptsWayTag(tagId);
+                cursor.tags.add(wayTags[tagId]);
+                cursor.tagIds[numberOfTags - tagIndex] = tagId;
             }
 
-            // sort tags so comparing of ways match
-            Collections.sort(tags, tagsComparator);
-
             // get the feature bitmask (1 byte)
-            byte featureByte = this.readBuffer.readByte();
+            byte featureByte = cursor.readBuffer.readByte();
 
             // bit 1-6 enable optional features
             boolean featureName = (featureByte & WAY_FEATURE_NAME) != 0;
@@ -935,60 +2539,97 @@ public class MapDatabase {
             boolean featureWayDataBlocksByte = (featureByte & WAY_FEATURE_DATA_BLOCKS_BYTE) != 0;
             boolean featureWayDoubleDeltaEncoding = (featureByte & WAY_FEATURE_DOUBLE_DELTA_ENCODING) != 0;
 
+            // skip the rest of the way, that may not be matched by any rule
+            if (!accepted && !tagFilter.acceptsWayFeatures(featureName, featureHouseNumber, featureRef)) {
+                cursor.readBuffer.setBufferPosition(wayDataStart + wayDataSize);
+                if (builder != null) {
+                    // keep the way without coordinates, so its replay rejects and counts it as well
+                    way.set(layer, 0, 0);
+                    way.tags = cursor.tags.toArray(cursor.getTagArray(cursor.tags.size()));
+                    builder.addWay(numberOfWays - elementCounter, tileBitmask, way,
+                            cursor.getCoordinates(0), cursor.tagIds, numberOfTags,
+                            getFeatures(featureName, featureHouseNumber, featureRef));
+                }
+
+                // way still counts as read data of the tile
+                validWays += 1;
+                continue;
+            }
+
+            // sort tags so comparing of ways match
+            Collections.sort(cursor.tags, tagsComparator);
+
             // check if the way has a name
             if (featureName) {
-                String name = extract(readBuffer.readUTF8EncodedString());
+                Tag name = readTextTag(cursor, TAG_KEY_NAME_RAW, TAG_KEY_NAME, true);
                 if (name != null) {
-                    tags.add(new Tag(TAG_KEY_NAME_RAW, TAG_KEY_NAME, name));
+                    cursor.tags.add(name);
                 }
             }
 
             // check if the way has a house number
             if (featureHouseNumber) {
-                tags.add(new Tag(TAG_KEY_HOUSE_NUMBER_RAW, TAG_KEY_HOUSE_NUMBER,
-                        readBuffer.readUTF8EncodedString()));
+                Tag houseNumber = readTextTag(cursor, TAG_KEY_HOUSE_NUMBER_RAW, TAG_KEY_HOUSE_NUMBER, false);
+                if (houseNumber != null) {
+                    cursor.tags.add(houseNumber);
+                }
             }
 
             // check if the way has a reference
             if (featureRef) {
-                tags.add(new Tag(TAG_KEY_REF_RAW, TAG_KEY_REF,
-                        readBuffer.readUTF8EncodedString()));
+                Tag ref = readTextTag(cursor, TAG_KEY_REF_RAW, TAG_KEY_REF, false);
+                if (ref != null) {
+                    cursor.tags.add(ref);
+                }
             }
 
             int latitude = 0;
             int longitude = 0;
             if (featureLabelPosition) {
-                latitude = this.tileLatitude + this.readBuffer.readSignedInt();
-                longitude = this.tileLongitude + this.readBuffer.readSignedInt();
+                latitude = cursor.tileLatitude + cursor.readBuffer.readSignedInt();
+                longitude = cursor.tileLongitude + cursor.readBuffer.readSignedInt();
             }
 
-            int wayDataBlocks = readOptionalWayDataBlocksByte(featureWayDataBlocksByte);
+            int wayDataBlocks = readOptionalWayDataBlocksByte(cursor, featureWayDataBlocksByte);
             if (wayDataBlocks < 1) {
                 Utils.getHandler().logW(TAG, "invalid number of way data blocks: " + wayDataBlocks);
-                logDebugSignatures();
+                logDebugSignatures(cursor);
                 return -1;
             }
 
             // handle way
             way.set(layer, latitude, longitude);
+            Tag[] tags = cursor.tags.toArray(cursor.getTagArray(cursor.tags.size()));
             for (int wayDataBlock = 0; wayDataBlock < wayDataBlocks; ++wayDataBlock) {
-                way.wayNodes = processWayDataBlock(way, featureWayDoubleDeltaEncoding);
-                if (way.wayNodes == null || way.wayNodes.length == 0) {
+                if (!processWayDataBlock(cursor, way, featureWayDoubleDeltaEncoding,
+                        tileProjection)) {
                     return -1;
                 }
 
+                // skip way outside of the tile, it still counts as read data of the tile
+                if (isCulled(way, tileProjection)) {
+                    cursor.culledWays++;
+                    validWays += 1;
+                    continue;
+                }
+
                 // check if way is just a empty background
-                if (tags.size() == 1) {
-                    Tag tag = tags.get(0);
+                if (cursor.tags.size() == 1) {
+                    Tag tag = cursor.tags.get(0);
                     way.isFillBackground = tag.equals(DatabaseRenderer.TAG_NATURAL_WATER)
                             || tag.equals(DatabaseRenderer.TAG_NATURAL_NOSEA)
                             || tag.equals(DatabaseRenderer.TAG_NATURAL_SEA);
                 }
 
                 // finally render way
-                way.tags = new Tag[tags.size()];
-                tags.toArray(way.tags);
-                tr.renderWay(way);
+                way.tags = tags;
+                if (builder != null) {
+                    builder.addWay(numberOfWays - elementCounter, tileBitmask, way,
+                            cursor.getCoordinates(0), cursor.tagIds, numberOfTags,
+                            getFeatures(featureName, featureHouseNumber, featureRef));
+                } else {
+                    tr.renderWay(way);
+                }
 
                 // add valid way to counter
                 validWays += 1;
@@ -997,137 +2638,128 @@ public class MapDatabase {
         return validWays;
     }
 
-    private int readOptionalWayDataBlocksByte(boolean featureWayDataBlocksByte) {
+    private int readOptionalWayDataBlocksByte(QueryCursor cursor, boolean featureWayDataBlocksByte) {
         if (featureWayDataBlocksByte) {
             // get and check the number of way data blocks (VBE-U)
-            return this.readBuffer.readUnsignedInt();
+            return cursor.readBuffer.readUnsignedInt();
         }
         // only one way data block exists
         return 1;
     }
 
-    private float[][] processWayDataBlock(Way way, boolean doubleDeltaEncoding) {
+    /**
+     * Read all way coordinate blocks of a single way data block.
+     *
+     * @param tileProjection if defined, coordinates are projected to pixels of the tile, but
+     *                       only if the way is visible in the tile
+     * @return {@code true} if the way data block is valid
+     */
+    private boolean processWayDataBlock(QueryCursor cursor, Way way, boolean doubleDeltaEncoding,
+            TileProjection tileProjection) {
         // prepare way
         way.clearNodesData();
 
         // get and check the number of way coordinate blocks (VBE-U)
-        int numberOfWayCoordinateBlocks = this.readBuffer.readUnsignedInt();
+        int numberOfWayCoordinateBlocks = cursor.readBuffer.readUnsignedInt();
         if (numberOfWayCoordinateBlocks < 1 || numberOfWayCoordinateBlocks > Short.MAX_VALUE) {
             Utils.getHandler().logW(TAG, "invalid number of way coordinate blocks: " + numberOfWayCoordinateBlocks);
-            logDebugSignatures();
-            return null;
+            logDebugSignatures(cursor);
+            return false;
         }
 
-        // create the array which will store the different way coordinate blocks
-        float[][] wayCoordinates = new float[numberOfWayCoordinateBlocks][];
+        // all way coordinate blocks are decoded one after another in the arena of the cursor
+        int[] segmentOffsets = cursor.getWaySegmentOffsets(numberOfWayCoordinateBlocks + 1);
+        int[] wayNodes = null;
+        int wayNodesLength = 0;
+        segmentOffsets[0] = 0;
 
         // read the way coordinate blocks
         for (int cooBlock = 0; cooBlock < numberOfWayCoordinateBlocks; ++cooBlock) {
             // get and check the number of way nodes (VBE-U)
-            int numberOfWayNodes = this.readBuffer.readUnsignedInt();
+            int numberOfWayNodes = cursor.readBuffer.readUnsignedInt();
             if (numberOfWayNodes < 2 || numberOfWayNodes > Short.MAX_VALUE) {
                 Utils.getHandler().logW(TAG, "invalid number of way nodes: " + numberOfWayNodes +
                         ", cooBlock:" + cooBlock + ", total:" + numberOfWayCoordinateBlocks);
-                logDebugSignatures();
-                // returning null here will actually leave the tile blank as the
+                logDebugSignatures(cursor);
+                // returning false here will actually leave the tile blank as the
                 // position on the ReadBuffer will not be advanced correctly. However,
                 // it will not crash the app.
-                return null;
+                return false;
             }
 
             // each way node consists of latitude and longitude
             int wayNodesSequenceLength = numberOfWayNodes * 2;
 
-            // create the array which will store the current way segment
-            float[] waySegment = new float[wayNodesSequenceLength];
-
-            if (doubleDeltaEncoding) {
-                decodeWayNodesDoubleDelta(way, waySegment);
-            } else {
-                decodeWayNodesSingleDelta(way, waySegment);
-            }
-
-            wayCoordinates[cooBlock] = waySegment;
+            // decode all way nodes of the segment at once
+            wayNodes = cursor.getCoordinates(wayNodesLength + wayNodesSequenceLength);
+            cursor.readBuffer.readDeltaCoordinates(wayNodes, wayNodesLength, numberOfWayNodes,
+                    cursor.tileLatitude, cursor.tileLongitude, doubleDeltaEncoding);
+            wayNodesLength += wayNodesSequenceLength;
+            segmentOffsets[cooBlock + 1] = wayNodesLength;
+        }
+        way.segmentOffsets = segmentOffsets;
+        way.segmentStart = 0;
+        way.segmentCount = numberOfWayCoordinateBlocks;
+        computeBoundingBox(way, wayNodes, wayNodesLength);
+
+        // ways not visible in the tile are skipped by the caller, so they are not projected
+        if (isCulled(way, tileProjection)) {
+            return true;
         }
 
-        return wayCoordinates;
-    }
-
-    private void decodeWayNodesSingleDelta(Way way, float[] waySegment) {
-        // get the first way node latitude single-delta offset (VBE-S)
-        int wayNodeLatitude = this.tileLatitude + this.readBuffer.readSignedInt();
-
-        // get the first way node longitude single-delta offset (VBE-S)
-        int wayNodeLongitude = this.tileLongitude + this.readBuffer.readSignedInt();
-
-        // store the first way node
-        waySegment[1] = wayNodeLatitude;
-        waySegment[0] = wayNodeLongitude;
-        recomputeWayBBox(way, wayNodeLatitude, wayNodeLongitude);
-
-        for (int wayNodesIndex = 2; wayNodesIndex < waySegment.length; wayNodesIndex += 2) {
-            // get the way node latitude offset (VBE-S)
-            wayNodeLatitude = wayNodeLatitude + this.readBuffer.readSignedInt();
-
-            // get the way node longitude offset (VBE-S)
-            wayNodeLongitude = wayNodeLongitude + this.readBuffer.readSignedInt();
-
-            waySegment[wayNodesIndex + 1] = wayNodeLatitude;
-            waySegment[wayNodesIndex] = wayNodeLongitude;
-            recomputeWayBBox(way, wayNodeLatitude, wayNodeLongitude);
+        // set view into arena
+        float[] wayCoordinates = cursor.getWayCoordinates(wayNodesLength);
+        if (tileProjection != null) {
+            for (int i = 0; i < wayNodesLength; i += 2) {
+                wayCoordinates[i] = tileProjection.projectX(wayNodes[i]);
+                wayCoordinates[i + 1] = tileProjection.projectY(wayNodes[i + 1]);
+            }
+        } else {
+            for (int i = 0; i < wayNodesLength; i++) {
+                wayCoordinates[i] = wayNodes[i];
+            }
         }
+        way.coordinates = wayCoordinates;
+        way.isProjected = tileProjection != null;
+        return true;
     }
 
-    private void decodeWayNodesDoubleDelta(Way way, float[] waySegment) {
-        // get the first way node latitude offset (VBE-S)
-        int wayNodeLatitude = this.tileLatitude + this.readBuffer.readSignedInt();
-
-        // get the first way node longitude offset (VBE-S)
-        int wayNodeLongitude = this.tileLongitude + this.readBuffer.readSignedInt();
-
-        // store the first way node
-        waySegment[1] = wayNodeLatitude;
-        waySegment[0] = wayNodeLongitude;
-        recomputeWayBBox(way, wayNodeLatitude, wayNodeLongitude);
-
-        int previousSingleDeltaLatitude = 0;
-        int previousSingleDeltaLongitude = 0;
-
-        for (int wayNodesIndex = 2; wayNodesIndex < waySegment.length; wayNodesIndex += 2) {
-            // get the way node latitude double-delta offset (VBE-S)
-            int doubleDeltaLatitude = this.readBuffer.readSignedInt();
-
-            // get the way node longitude double-delta offset (VBE-S)
-            int doubleDeltaLongitude = this.readBuffer.readSignedInt();
-
-            int singleDeltaLatitude = doubleDeltaLatitude + previousSingleDeltaLatitude;
-            int singleDeltaLongitude = doubleDeltaLongitude + previousSingleDeltaLongitude;
-
-            wayNodeLatitude = wayNodeLatitude + singleDeltaLatitude;
-            wayNodeLongitude = wayNodeLongitude + singleDeltaLongitude;
-
-            // add data to way
-            waySegment[wayNodesIndex + 1] = wayNodeLatitude;
-            waySegment[wayNodesIndex] = wayNodeLongitude;
-            recomputeWayBBox(way, wayNodeLatitude, wayNodeLongitude);
-
-            previousSingleDeltaLatitude = singleDeltaLatitude;
-            previousSingleDeltaLongitude = singleDeltaLongitude;
+    private static void computeBoundingBox(Way way, int[] wayNodes, int length) {
+        int bboxTop = Integer.MIN_VALUE;
+        int bboxBottom = Integer.MAX_VALUE;
+        int bboxLeft = Integer.MAX_VALUE;
+        int bboxRight = Integer.MIN_VALUE;
+        for (int wayNodesIndex = 0; wayNodesIndex < length; wayNodesIndex += 2) {
+            int wayNodeLongitude = wayNodes[wayNodesIndex];
+            int wayNodeLatitude = wayNodes[wayNodesIndex + 1];
+            if (wayNodeLatitude < bboxBottom) {
+                bboxBottom = wayNodeLatitude;
+            }
+            if (wayNodeLatitude > bboxTop) {
+                bboxTop = wayNodeLatitude;
+            }
+            if (wayNodeLongitude < bboxLeft) {
+                bboxLeft = wayNodeLongitude;
+            }
+            if (wayNodeLongitude > bboxRight) {
+                bboxRight = wayNodeLongitude;
+            }
         }
+        way.bboxTopE6 = bboxTop;
+        way.bboxBottomE6 = bboxBottom;
+        way.bboxLeftE6 = bboxLeft;
+        way.bboxRightE6 = bboxRight;
     }
 
-    private void recomputeWayBBox(Way way, int wayNodeLatitude, int wayNodeLongitude) {
-        if (wayNodeLatitude < way.bboxBottomE6) {
-            way.bboxBottomE6 = wayNodeLatitude;
-        }
-        if (wayNodeLatitude > way.bboxTopE6) {
-            way.bboxTopE6 = wayNodeLatitude;
-        }
-        if (wayNodeLongitude < way.bboxLeftE6) {
-            way.bboxLeftE6 = wayNodeLongitude;
-        }
-        if (wayNodeLongitude > way.bboxRightE6) {
-            way.bboxRightE6 = wayNodeLongitude;
-        }
+    /**
+     * Check if the way lies outside of the area of the tile with its margin. Bounding box of
+     * the way has to be known already.
+     *
+     * @param tileProjection projection of the current tile, may be {@code null}
+     * @return {@code true} if the way is surely not visible in the tile
+     */
+    private static boolean isCulled(Way way, TileProjection tileProjection) {
+        return tileProjection != null && !tileProjection.isVisible(way.bboxTopE6,
+                way.bboxBottomE6, way.bboxLeftE6, way.bboxRightE6);
     }
 }
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforgeV3.map.reader;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * Bounded pool of opened handles of map files.
+ * <p>
+ * Many map databases may be attached at once, but only a limited number of them keeps its file
+ * opened. Database is opened lazily when a tile needs its data and if the limit is exceeded,
+ * handle of the least recently used database is released. Released databases may keep their
+ * parsed header and index cache, so opening them again is cheap.
+ */
+public class MapDatabasePool {
+
+    /**
+     * Default maximal number of opened map files.
+     */
+    public static final int DEFAULT_MAX_OPEN_FILES = 16;
+
+    // databases with an opened file, ordered from the least recently used
+    private final LinkedHashMap<MapDatabase, Boolean> openDatabases;
+    // maximal number of opened map files
+    private int maxOpenFiles;
+    // flag if released databases keep their header and caches
+    private final boolean keepCaches;
+
+    /**
+     * Create new pool.
+     *
+     * @param maxOpenFiles maximal number of opened map files
+     * @param keepCaches   {@code true} if released databases keep their header and caches
+     */
+    public MapDatabasePool(int maxOpenFiles, boolean keepCaches) {
+        this.openDatabases = new LinkedHashMap<>(16, 0.75f, true);
+        this.maxOpenFiles = Math.max(1, maxOpenFiles);
+        this.keepCaches = keepCaches;
+    }
+
+    /**
+     * Set maximal number of opened map files. Handles over the limit are released immediately.
+     *
+     * @param maxOpenFiles maximal number of opened map files
+     */
+    public synchronized void setMaxOpenFiles(int maxOpenFiles) {
+        this.maxOpenFiles = Math.max(1, maxOpenFiles);
+        releaseLeastRecentlyUsed(null);
+    }
+
+    /**
+     * Make sure the database has its map file opened, so its data may be read.
+     *
+     * @param mapDatabase required database
+     * @return {@code true} if the map file is opened
+     */
+    public synchronized boolean acquire(MapDatabase mapDatabase) {
+        if (!mapDatabase.reopenFile()) {
+            this.openDatabases.remove(mapDatabase);
+            return false;
+        }
+        this.openDatabases.put(mapDatabase, Boolean.TRUE);
+        releaseLeastRecentlyUsed(mapDatabase);
+        return true;
+    }
+
+    /**
+     * Remove database from the pool and close its map file completely.
+     *
+     * @param mapDatabase removed database
+     */
+    public synchronized void remove(MapDatabase mapDatabase) {
+        this.openDatabases.remove(mapDatabase);
+        mapDatabase.closeFile();
+    }
+
+    /**
+     * Remove all databases from the pool. Their map files are not closed.
+     */
+    public synchronized void clear() {
+        this.openDatabases.clear();
+    }
+
+    /**
+     * @return number of currently opened map files
+     */
+    public synchronized int getOpenFilesCount() {
+        return this.openDatabases.size();
+    }
+
+    private void releaseLeastRecentlyUsed(MapDatabase required) {
+        Iterator<MapDatabase> it = this.openDatabases.keySet().iterator();
+        while (this.openDatabases.size() > this.maxOpenFiles && it.hasNext()) {
+            MapDatabase mapDatabase = it.next();
+            if (mapDatabase == required) {
+                continue;
+            }
+            it.remove();
+            mapDatabase.releaseFile(this.keepCaches);
+        }
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforgeV3.map.reader;
+
+import org.mapsforgeV3.map.reader.header.FileOpenResult;
+import org.mapsforgeV3.map.reader.header.SubFileParameter;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Comparison of two versions of a map file.
+ * <p>
+ * Blocks of both files are compared by hashes of their content, same as used by
+ * {@link MapDatabase#getTileInputHash(org.mapsforgeV3.core.model.Tile)}, so reported tiles are
+ * exactly tiles whose input hash differs between both versions. If the header content or the
+ * layout of a sub-file differs, all tiles of affected zoom levels are reported.
+ */
+public class MapFileDiff {
+
+    // zoom levels compared by default from the command line
+    private static final byte ZOOM_LEVEL_MIN_DEFAULT = 0;
+    private static final byte ZOOM_LEVEL_MAX_DEFAULT = 22;
+
+    /**
+     * Rectangle of tiles of a single zoom level, that need re-rendering.
+     */
+    public static class TileRange {
+
+        /**
+         * Zoom level of tiles.
+         */
+        public final byte zoomLevel;
+
+        /**
+         * X number of the left-most tile.
+         */
+        public final long left;
+
+        /**
+         * Y number of the top-most tile.
+         */
+        public final long top;
+
+        /**
+         * X number of the right-most tile, inclusive.
+         */
+        public final long right;
+
+        /**
+         * Y number of the bottom-most tile, inclusive.
+         */
+        public final long bottom;
+
+        TileRange(byte zoomLevel, long left, long top, long right, long bottom) {
+            this.zoomLevel = zoomLevel;
+            this.left = left;
+            this.top = top;
+            this.right = right;
+            this.bottom = bottom;
+        }
+
+        @Override
+        public String toString() {
+            return "TileRange [zoomLevel=" + this.zoomLevel + ", left=" + this.left
+                    + ", top=" + this.top + ", right=" + this.right + ", bottom=" + this.bottom + "]";
+        }
+    }
+
+    /**
+     * Print tiles changed between two versions of a map file, one range per line.
+     * <p>
+     * Usage: {@code MapFileDiff <old map> <new map> [<min zoom> [<max zoom>]]}, zoom levels
+     * are compared from 0 to 22 by default.
+     *
+     * @param args command line arguments
+     * @throws IOException if any of files can't be read
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || args.length > 4) {
+            System.err.println("usage: MapFileDiff <old map> <new map> [<min zoom> [<max zoom>]]");
+            System.exit(2);
+            return;
+        }
+        byte zoomLevelMin = args.length > 2 ? Byte.parseByte(args[2]) : ZOOM_LEVEL_MIN_DEFAULT;
+        byte zoomLevelMax = args.length > 3 ? Byte.parseByte(args[3]) : ZOOM_LEVEL_MAX_DEFAULT;
+        for (TileRange range : diff(new File(args[0]), new File(args[1]),
+                zoomLevelMin, zoomLevelMax)) {
+            System.out.println(range);
+        }
+    }
+
+    /**
+     * Find tiles, that have to be rendered again after update of the map file.
+     *
+     * @param oldFile      previous version of the map file
+     * @param newFile      new version of the map file
+     * @param zoomLevelMin minimal compared zoom level of tiles
+     * @param zoomLevelMax maximal compared zoom level of tiles
+     * @return changed tiles, ordered by zoom level
+     * @throws IOException if any of files can't be read
+     */
+    public static List<TileRange> diff(File oldFile, File newFile,
+            byte zoomLevelMin, byte zoomLevelMax) throws IOException {
+        MapDatabase oldDatabase = new MapDatabase();
+        MapDatabase newDatabase = new MapDatabase();
+        try {
+            open(oldDatabase, oldFile);
+            open(newDatabase, newFile);
+            return diff(oldDatabase, newDatabase, zoomLevelMin, zoomLevelMax);
+        } finally {
+            oldDatabase.closeFile();
+            newDatabase.closeFile();
+        }
+    }
+
+    private static void open(MapDatabase mapDatabase, File mapFile) throws IOException {
+        FileOpenResult result = mapDatabase.openFile(mapFile);
+        if (!result.isSuccess()) {
+            throw new IOException("unable to open " + mapFile + ": " + result.getErrorMessage());
+        }
+    }
+
+    private static List<TileRange> diff(MapDatabase oldDatabase, MapDatabase newDatabase,
+            byte zoomLevelMin, byte zoomLevelMax) throws IOException {
+        List<TileRange> result = new ArrayList<>();
+        boolean sameHeader = oldDatabase.getHeaderHash() == newDatabase.getHeaderHash();
+
+        // changed blocks of already compared sub-files
+        Map<SubFileParameter, BitSet> changedBlocks = new HashMap<>();
+        for (int zoomLevel = zoomLevelMin; zoomLevel <= zoomLevelMax; zoomLevel++) {
+            byte zoom = (byte) zoomLevel;
+            byte oldQueryZoomLevel = oldDatabase.getQueryZoomLevel(zoom);
+            byte newQueryZoomLevel = newDatabase.getQueryZoomLevel(zoom);
+            SubFileParameter oldSubFile = oldDatabase.getSubFileParameter(oldQueryZoomLevel);
+            SubFileParameter newSubFile = newDatabase.getSubFileParameter(newQueryZoomLevel);
+            if (oldSubFile == null && newSubFile == null) {
+                continue;
+            }
+
+            // everything changed, report whole areas of both versions
+            if (!sameHeader || oldQueryZoomLevel != newQueryZoomLevel
+                    || !isSameLayout(oldSubFile, newSubFile)) {
+                addArea(result, zoom, oldSubFile);
+                addArea(result, zoom, newSubFile);
+                continue;
+            }
+
+            // compare blocks of the sub-file, only once for all its zoom levels
+            BitSet changed = changedBlocks.get(oldSubFile);
+            if (changed == null) {
+                changed = new BitSet();
+                for (long blockNumber = 0; blockNumber < oldSubFile.numberOfBlocks; blockNumber++) {
+                    if (oldDatabase.computeBlockHash(oldSubFile, blockNumber)
+                            != newDatabase.computeBlockHash(newSubFile, blockNumber)) {
+                        changed.set((int) blockNumber);
+                    }
+                }
+                changedBlocks.put(oldSubFile, changed);
+            }
+            addChangedBlocks(result, zoom, oldSubFile, changed);
+        }
+        return result;
+    }
+
+    private static boolean isSameLayout(SubFileParameter oldSubFile, SubFileParameter newSubFile) {
+        return oldSubFile != null && newSubFile != null
+                && oldSubFile.baseZoomLevel == newSubFile.baseZoomLevel
+                && oldSubFile.zoomLevelMin == newSubFile.zoomLevelMin
+                && oldSubFile.zoomLevelMax == newSubFile.zoomLevelMax
+                && oldSubFile.boundaryTileLeft == newSubFile.boundaryTileLeft
+                && oldSubFile.boundaryTileTop == newSubFile.boundaryTileTop
+                && oldSubFile.boundaryTileRight == newSubFile.boundaryTileRight
+                && oldSubFile.boundaryTileBottom == newSubFile.boundaryTileBottom;
+    }
+
+    private static void addArea(List<TileRange> result, byte zoomLevel, SubFileParameter subFile) {
+        if (subFile != null) {
+            result.add(toTileRange(zoomLevel, subFile.baseZoomLevel,
+                    subFile.boundaryTileLeft, subFile.boundaryTileTop,
+                    subFile.boundaryTileRight, subFile.boundaryTileBottom));
+        }
+    }
+
+    private static void addChangedBlocks(List<TileRange> result, byte zoomLevel,
+            SubFileParameter subFile, BitSet changed) {
+        // tiles of lower zoom levels cover more blocks, so report every tile once
+        Set<Long> reportedTiles = new HashSet<>();
+        for (int blockNumber = changed.nextSetBit(0); blockNumber >= 0;
+                blockNumber = changed.nextSetBit(blockNumber + 1)) {
+            long tileX = subFile.boundaryTileLeft + blockNumber % subFile.blocksWidth;
+            long tileY = subFile.boundaryTileTop + blockNumber / subFile.blocksWidth;
+            TileRange range = toTileRange(zoomLevel, subFile.baseZoomLevel,
+                    tileX, tileY, tileX, tileY);
+            if (zoomLevel >= subFile.baseZoomLevel
+                    || reportedTiles.add((range.left << 32) | range.top)) {
+                result.add(range);
+            }
+        }
+    }
+
+    private static TileRange toTileRange(byte zoomLevel, byte baseZoomLevel,
+            long left, long top, long right, long bottom) {
+        if (zoomLevel >= baseZoomLevel) {
+            int zoomLevelDifference = zoomLevel - baseZoomLevel;
+            return new TileRange(zoomLevel,
+                    left << zoomLevelDifference, top << zoomLevelDifference,
+                    ((right + 1) << zoomLevelDifference) - 1, ((bottom + 1) << zoomLevelDifference) - 1);
+        }
+        int zoomLevelDifference = baseZoomLevel - zoomLevel;
+        return new TileRange(zoomLevel,
+                left >>> zoomLevelDifference, top >>> zoomLevelDifference,
+                right >>> zoomLevelDifference, bottom >>> zoomLevelDifference);
+    }
+
+    private MapFileDiff() {
+        throw new IllegalStateException();
+    }
+}
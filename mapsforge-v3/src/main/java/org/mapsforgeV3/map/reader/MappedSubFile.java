@@ -0,0 +1,139 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforgeV3.map.reader;
+
+import com.asamm.locus.mapsforge.utils.Utils;
+
+import org.mapsforgeV3.map.reader.header.SubFileParameter;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Memory-mapped view of a single sub-file of the map file.
+ * <p>
+ * A single {@link MappedByteBuffer} is limited to 2 GB, so larger sub-files are mapped in
+ * overlapping windows. Windows overlap by {@link ReadBuffer#MAXIMUM_BUFFER_SIZE}, so every
+ * valid block is always fully contained in a single window. Windows are mapped lazily on
+ * first access.
+ * <p>
+ * Class is thread-safe, mapped windows are only read with absolute get methods.
+ */
+class MappedSubFile {
+
+    // tag for logger
+    private static final String TAG = "MappedSubFile";
+
+    /**
+     * Maximal size of a single mapped window.
+     */
+    private static final int WINDOW_SIZE_MAX = 1 << 30;
+
+    // channel of the opened map file
+    private final FileChannel fileChannel;
+    // absolute address of the sub-file in the map file
+    private final long startAddress;
+    // size of the sub-file in bytes
+    private final long subFileSize;
+    // distance between starts of two following windows
+    private final long windowStride;
+    // lazily mapped windows
+    private final AtomicReferenceArray<MappedByteBuffer> windows;
+    // flag if mapping failed and data should be read over the standard way
+    private volatile boolean mappingFailed;
+
+    /**
+     * Create mapped view for a certain sub-file.
+     *
+     * @param fileChannel      channel of the opened map file
+     * @param subFileParameter parameters of the sub-file
+     */
+    MappedSubFile(FileChannel fileChannel, SubFileParameter subFileParameter) {
+        this.fileChannel = fileChannel;
+        this.startAddress = subFileParameter.startAddress;
+        this.subFileSize = subFileParameter.subFileSize;
+        if (this.subFileSize <= WINDOW_SIZE_MAX) {
+            this.windowStride = this.subFileSize;
+        } else {
+            this.windowStride = WINDOW_SIZE_MAX - ReadBuffer.MAXIMUM_BUFFER_SIZE;
+        }
+        this.windows = new AtomicReferenceArray<>(
+                (int) ((this.subFileSize - 1) / this.windowStride) + 1);
+    }
+
+    /**
+     * Point the read buffer to the certain block of the sub-file. No data are copied.
+     *
+     * @param readBuffer   buffer that will decode block data
+     * @param blockPointer offset of the block relative to the start of the sub-file
+     * @param blockSize    size of the block in bytes
+     * @return {@code true} if block was mapped, {@code false} if mapping is not possible and
+     * data has to be read from the file
+     */
+    boolean readBlock(ReadBuffer readBuffer, long blockPointer, int blockSize) {
+        if (this.mappingFailed) {
+            return false;
+        }
+
+        // find the window that contains the whole block
+        int windowIndex = (int) (blockPointer / this.windowStride);
+        MappedByteBuffer window = getWindow(windowIndex);
+        if (window == null) {
+            return false;
+        }
+
+        // set block to buffer
+        int offset = (int) (blockPointer - windowIndex * this.windowStride);
+        if (offset + blockSize > window.capacity()) {
+            Utils.getHandler().logW(TAG, "block exceeds mapped window: " + blockPointer + ", " + blockSize);
+            return false;
+        }
+        readBuffer.setMappedData(window, offset, blockSize);
+        return true;
+    }
+
+    private MappedByteBuffer getWindow(int windowIndex) {
+        MappedByteBuffer window = this.windows.get(windowIndex);
+        if (window != null) {
+            return window;
+        }
+        return mapWindow(windowIndex);
+    }
+
+    private synchronized MappedByteBuffer mapWindow(int windowIndex) {
+        // window may be mapped by another thread in the meantime
+        MappedByteBuffer window = this.windows.get(windowIndex);
+        if (window != null || this.mappingFailed) {
+            return window;
+        }
+
+        // map the new window
+        try {
+            long windowStart = windowIndex * this.windowStride;
+            long windowSize = Math.min(this.subFileSize - windowStart, WINDOW_SIZE_MAX);
+            window = this.fileChannel.map(FileChannel.MapMode.READ_ONLY,
+                    this.startAddress + windowStart, windowSize);
+            this.windows.set(windowIndex, window);
+            return window;
+        } catch (IOException e) {
+            // mapping is not possible (out of address space for example), do not try it again
+            Utils.getHandler().logE(TAG, "getWindow(" + windowIndex + ")", e);
+            this.mappingFailed = true;
+            return null;
+        }
+    }
+}
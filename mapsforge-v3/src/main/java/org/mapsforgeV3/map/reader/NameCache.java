@@ -0,0 +1,135 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforgeV3.map.reader;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded cache of names extracted from multilingual strings in the preferred language.
+ * <p>
+ * Same names repeat on all neighbouring tiles, so the result of the extraction is stored under
+ * the raw encoded bytes of the multilingual string. Cache is direct-mapped, a new entry simply
+ * replaces the older one with the same slot. Entries are immutable (except the lazily created
+ * value) and remember the language they were resolved for, so lookups run without any lock.
+ */
+class NameCache {
+
+    /**
+     * Number of slots of the cache, power of two.
+     */
+    static final int SIZE = 2048;
+
+    /**
+     * Maximal length of cached strings in bytes.
+     */
+    static final int BYTES_MAX = 256;
+
+    /**
+     * Resolved name for a single multilingual string.
+     */
+    static class Entry {
+
+        // raw encoded multilingual string
+        final byte[] raw;
+        // hash of the raw bytes
+        final int rawHash;
+        // language the name was resolved for
+        final String language;
+        // index of the first character of the name in the decoded string
+        final int valueStart;
+        // number of characters of the name
+        final int valueLength;
+        // hash of the name
+        final int valueHash;
+        // created name, shared by all tags of the entry
+        volatile String value;
+
+        Entry(byte[] raw, int rawHash, String language,
+                int valueStart, int valueLength, int valueHash) {
+            this.raw = raw;
+            this.rawHash = rawHash;
+            this.language = language;
+            this.valueStart = valueStart;
+            this.valueLength = valueLength;
+            this.valueHash = valueHash;
+        }
+    }
+
+    // slots of the cache
+    private final AtomicReferenceArray<Entry> entries;
+
+    NameCache() {
+        this.entries = new AtomicReferenceArray<>(SIZE);
+    }
+
+    /**
+     * Find name resolved for a certain multilingual string.
+     *
+     * @param readBuffer buffer with the string
+     * @param offset     offset of the string in the loaded data
+     * @param byteCount  length of the string in bytes
+     * @param rawHash    hash of the string bytes
+     * @param language   current preferred language
+     * @return cached entry or {@code null} if not cached
+     */
+    Entry get(ReadBuffer readBuffer, int offset, int byteCount, int rawHash, String language) {
+        Entry entry = this.entries.get(rawHash & (SIZE - 1));
+        if (entry == null
+                || entry.rawHash != rawHash
+                || entry.raw.length != byteCount
+                || !equalsLanguage(entry.language, language)
+                || !readBuffer.equalsBytes(offset, byteCount, entry.raw)) {
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Store name resolved for a certain multilingual string.
+     *
+     * @param readBuffer  buffer with the string
+     * @param offset      offset of the string in the loaded data
+     * @param byteCount   length of the string in bytes
+     * @param rawHash     hash of the string bytes
+     * @param language    preferred language used for the extraction
+     * @param valueStart  index of the first character of the name in the decoded string
+     * @param valueLength number of characters of the name
+     * @param valueHash   hash of the name
+     * @return new entry or {@code null} if the string is too long for caching
+     */
+    Entry put(ReadBuffer readBuffer, int offset, int byteCount, int rawHash, String language,
+            int valueStart, int valueLength, int valueHash) {
+        if (byteCount > BYTES_MAX) {
+            return null;
+        }
+        Entry entry = new Entry(readBuffer.copyBytes(offset, byteCount), rawHash, language,
+                valueStart, valueLength, valueHash);
+        this.entries.set(rawHash & (SIZE - 1), entry);
+        return entry;
+    }
+
+    /**
+     * Remove all entries.
+     */
+    void clear() {
+        for (int i = 0; i < SIZE; i++) {
+            this.entries.set(i, null);
+        }
+    }
+
+    private static boolean equalsLanguage(String language1, String language2) {
+        return language1 == null ? language2 == null : language1.equals(language2);
+    }
+}
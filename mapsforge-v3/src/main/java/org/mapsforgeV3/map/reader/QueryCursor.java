@@ -0,0 +1,173 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforgeV3.map.reader;
+
+import org.mapsforgeV3.core.model.Tag;
+
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Per-thread state of queries into a shared {@link MapDatabase}.
+ * <p>
+ * Cursor owns its own read buffer and all temporary values needed during decoding of blocks,
+ * so multiple threads may read from a single opened map file at once.
+ */
+class QueryCursor {
+
+    // maximal number of tags in a reusable array
+    private static final int TAG_ARRAYS_SIZE_MAX = 32;
+
+    // channel the cursor reads from
+    final FileChannel fileChannel;
+    // buffer for data of the current block
+    final ReadBuffer readBuffer;
+    // container for loaded tags
+    final List<Tag> tags;
+    // container for loaded ways
+    final Way way;
+    // blocks planned for the current query
+    final BlockPlan blockPlan;
+    // buffer for decoded coordinates of way nodes
+    private int[] coordinates;
+    // arena for coordinates of the current way, handed to the renderer
+    private float[] wayCoordinates;
+    // arena for offsets of segments of the current way
+    private int[] waySegmentOffsets;
+    // reusable arrays of tags, indexed by the number of tags
+    private final Tag[][] tagArrays;
+    // buffer for decoded texts
+    private char[] chars;
+    // bounds of parts of the currently extracted name
+    final int[] labelParts;
+    // tag IDs of the current feature, its number of tags fits into four bits
+    final int[] tagIds;
+    // collector of decoded blocks, lazily created
+    DecodedBlock.Builder blockBuilder;
+    // reads of blocks on the I/O executor, lazily created
+    AsyncBlockReads asyncReads;
+
+    // latitude of the top-left corner of the current block
+    int tileLatitude;
+    // longitude of the top-left corner of the current block
+    int tileLongitude;
+
+    // signatures of the current block and way (debug files only)
+    String signatureBlock;
+    String signatureWay;
+
+    // counters for read data
+    int readNodes;
+    int readWays;
+    // number of ways skipped as not visible in the projected tile
+    int culledWays;
+
+    /**
+     * Create new cursor.
+     *
+     * @param fileChannel channel of the opened map file
+     */
+    QueryCursor(FileChannel fileChannel) {
+        this.fileChannel = fileChannel;
+        this.readBuffer = new ReadBuffer(fileChannel);
+        this.tags = new ArrayList<>();
+        this.way = new Way();
+        this.blockPlan = new BlockPlan();
+        this.coordinates = new int[256];
+        this.wayCoordinates = new float[1024];
+        this.waySegmentOffsets = new int[16];
+        this.tagArrays = new Tag[TAG_ARRAYS_SIZE_MAX + 1][];
+        this.chars = new char[256];
+        this.labelParts = new int[4];
+        this.tagIds = new int[16];
+    }
+
+    /**
+     * Get buffer for decoded coordinates of way nodes. Content up to the required length is
+     * preserved if the buffer has to grow.
+     *
+     * @param length minimal required length
+     * @return buffer with at least the required length
+     */
+    int[] getCoordinates(int length) {
+        if (this.coordinates.length < length) {
+            this.coordinates = Arrays.copyOf(this.coordinates,
+                    Math.max(length, this.coordinates.length * 2));
+        }
+        return this.coordinates;
+    }
+
+    /**
+     * Get arena for coordinates of the current way. Content up to the required length is
+     * preserved if the arena has to grow.
+     *
+     * @param length minimal required length
+     * @return arena with at least the required length
+     */
+    float[] getWayCoordinates(int length) {
+        if (this.wayCoordinates.length < length) {
+            this.wayCoordinates = Arrays.copyOf(this.wayCoordinates,
+                    Math.max(length, this.wayCoordinates.length * 2));
+        }
+        return this.wayCoordinates;
+    }
+
+    /**
+     * Get arena for offsets of segments of the current way.
+     *
+     * @param length minimal required length
+     * @return arena with at least the required length
+     */
+    int[] getWaySegmentOffsets(int length) {
+        if (this.waySegmentOffsets.length < length) {
+            this.waySegmentOffsets = new int[Math.max(length, this.waySegmentOffsets.length * 2)];
+        }
+        return this.waySegmentOffsets;
+    }
+
+    /**
+     * Get array for tags of the current feature. Array is reused for next features with the
+     * same number of tags, so it is valid only during the render callback.
+     *
+     * @param size number of tags
+     * @return array with exactly required length
+     */
+    Tag[] getTagArray(int size) {
+        if (size > TAG_ARRAYS_SIZE_MAX) {
+            return new Tag[size];
+        }
+        Tag[] tags = this.tagArrays[size];
+        if (tags == null) {
+            tags = new Tag[size];
+            this.tagArrays[size] = tags;
+        }
+        return tags;
+    }
+
+    /**
+     * Get buffer for decoded texts.
+     *
+     * @param length minimal required length
+     * @return buffer with at least the required length
+     */
+    char[] getChars(int length) {
+        if (this.chars.length < length) {
+            this.chars = new char[Math.max(length, this.chars.length * 2)];
+        }
+        return this.chars;
+    }
+}
@@ -14,6 +14,8 @@
  */
 package org.mapsforgeV3.map.reader;
 
+import org.mapsforgeV3.core.util.TileProjection;
+
 class QueryParameters {
 	
 	long fromBaseTileX;
@@ -27,6 +29,10 @@ class QueryParameters {
 	long toBlockX;
 	long toBlockY;
 	boolean useTileBitmask;
+	// filter of features by tags, or 'null' to read all features
+	TagFilter tagFilter;
+	// projection of ways to pixels of the tile, or 'null' to read ways in microdegrees
+	TileProjection tileProjection;
 
 	public boolean equals(QueryParameters qp) {
 		if (fromBaseTileX != qp.fromBaseTileX) {
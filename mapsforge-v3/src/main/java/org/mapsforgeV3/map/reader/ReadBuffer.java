@@ -19,10 +19,17 @@ import com.asamm.locus.mapsforge.utils.Utils;
 import org.mapsforgeV3.core.model.Tag;
 
 import java.io.IOException;
-import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 /**
- * Reads from a {@link RandomAccessFile} into a buffer and decodes the data.
+ * Reads from a {@link FileChannel} into a buffer and decodes the data.
+ * <p>
+ * Data are read with positional reads only, so a single channel may be shared by more buffers
+ * used from different threads.
+ * <p>
+ * Alternatively, buffer may decode data directly from a memory-mapped block of the file, see
+ * {@link #setMappedData(ByteBuffer, int, int)}.
  */
 public class ReadBuffer {
 
@@ -37,11 +44,25 @@ public class ReadBuffer {
     static final int MAXIMUM_BUFFER_SIZE = 5000000;
 
     private byte[] bufferData;
+    // wrapper of the buffer data used for reading from the channel
+    private ByteBuffer bufferWrapper;
+    // absolute position in the loaded data
     private int bufferPosition;
-    private final RandomAccessFile inputFile;
-
-    ReadBuffer(RandomAccessFile inputFile) {
-        this.inputFile = inputFile;
+    private final FileChannel fileChannel;
+    // position in file for sequential reads
+    private long filePosition;
+
+    // mapped data of the current block or 'null' if data are read into the byte array
+    private ByteBuffer mappedData;
+    // absolute offset of the loaded data in the byte array or in the mapped data
+    private int dataOffset;
+    // absolute offset of the current block in the loaded data
+    private int blockOffset;
+    // size of the current block
+    private int blockSize;
+
+    ReadBuffer(FileChannel fileChannel) {
+        this.fileChannel = fileChannel;
     }
 
     /**
@@ -50,18 +71,39 @@ public class ReadBuffer {
      * @return the byte value.
      */
     public byte readByte() {
+        if (this.mappedData != null) {
+            return this.mappedData.get(this.bufferPosition++);
+        }
         return this.bufferData[this.bufferPosition++];
     }
 
     /**
      * Reads the given amount of bytes from the file into the read buffer and resets the internal buffer position. If
      * the capacity of the read buffer is too small, a larger one is created automatically.
+     * <p>
+     * Data are read sequentially, right after the end of data from the previous call.
      *
      * @param length the amount of bytes to read from the file.
      * @return true if the whole data was read successfully, false otherwise.
      * @throws IOException if an error occurs while reading the file.
      */
     public boolean readFromFile(int length) throws IOException {
+        boolean result = readFromFile(this.filePosition, length);
+        this.filePosition += length;
+        return result;
+    }
+
+    /**
+     * Reads the given amount of bytes from the certain position in the file into the read buffer and
+     * resets the internal buffer position. If the capacity of the read buffer is too small, a larger
+     * one is created automatically.
+     *
+     * @param position absolute position in the file.
+     * @param length   the amount of bytes to read from the file.
+     * @return true if the whole data was read successfully, false otherwise.
+     * @throws IOException if an error occurs while reading the file.
+     */
+    boolean readFromFile(long position, int length) throws IOException {
         // ensure that the read buffer is large enough
         if (this.bufferData == null || this.bufferData.length < length) {
             // ensure that the read buffer is not too large
@@ -70,11 +112,98 @@ public class ReadBuffer {
                 return false;
             }
             this.bufferData = new byte[length];
+            this.bufferWrapper = ByteBuffer.wrap(this.bufferData);
         }
 
         // reset the buffer position and read the data into the buffer
-        this.bufferPosition = 0;
-        return this.inputFile.read(this.bufferData, 0, length) == length;
+        this.mappedData = null;
+        this.dataOffset = 0;
+        setBlock(0, length);
+        this.bufferWrapper.clear();
+        this.bufferWrapper.limit(length);
+        return readFully(this.fileChannel, this.bufferWrapper, position);
+    }
+
+    /**
+     * Sets data already loaded from the file as the content of the read buffer and resets the
+     * internal buffer position. Data are not copied, the array is used as the buffer until next
+     * read, that does not fit into it.
+     *
+     * @param data   loaded data
+     * @param length number of valid bytes in the data
+     */
+    void setLoadedData(byte[] data, int length) {
+        if (this.bufferData != data) {
+            this.bufferData = data;
+            this.bufferWrapper = ByteBuffer.wrap(data);
+        }
+        this.mappedData = null;
+        this.dataOffset = 0;
+        setBlock(0, length);
+    }
+
+    /**
+     * Fill remaining space of the buffer with data from the certain position in the file.
+     *
+     * @param fileChannel channel to read from
+     * @param buffer      buffer to fill
+     * @param position    absolute position in the file
+     * @return true if the whole buffer was filled, false if end of file was reached
+     * @throws IOException if an error occurs while reading the file
+     */
+    static boolean readFully(FileChannel fileChannel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = fileChannel.read(buffer, position);
+            if (read < 0) {
+                return false;
+            }
+            position += read;
+        }
+        return true;
+    }
+
+    /**
+     * Sets the given block of memory-mapped data as the content of the read buffer and resets the
+     * internal buffer position. Data are not copied, all following reads decode them directly from
+     * the mapped buffer, until next call of {@link #readFromFile(long, int)}.
+     * <p>
+     * Only absolute get methods are used on the mapped buffer, so its position is never changed.
+     *
+     * @param data   mapped data
+     * @param offset absolute offset of the block in the mapped data
+     * @param length size of the block in bytes
+     */
+    void setMappedData(ByteBuffer data, int offset, int length) {
+        this.mappedData = data;
+        this.dataOffset = offset;
+        setBlock(0, length);
+    }
+
+    /**
+     * Select a single block inside of the loaded data and move buffer position to its start. This
+     * allows to load more blocks by a single read and decode them one by one. All positions of the
+     * buffer are relative to the start of the selected block.
+     *
+     * @param offset offset of the block from the start of the loaded data
+     * @param length size of the block in bytes
+     */
+    void setBlock(int offset, int length) {
+        this.blockOffset = this.dataOffset + offset;
+        this.blockSize = length;
+        this.bufferPosition = this.blockOffset;
+    }
+
+    /**
+     * Add raw content of the current block to the hash. Buffer position is not changed.
+     *
+     * @param hash current value of the hash
+     * @return updated hash
+     */
+    long hashBlock(long hash) {
+        if (this.mappedData != null) {
+            return ContentHash.update(hash, this.mappedData, this.blockOffset, this.blockSize);
+        }
+        return ContentHash.update(hash, this.bufferData, this.blockOffset, this.blockSize);
     }
 
     /**
@@ -86,6 +215,9 @@ public class ReadBuffer {
      */
     public int readInt() {
         this.bufferPosition += 4;
+        if (this.mappedData != null) {
+            return this.mappedData.getInt(this.bufferPosition - 4);
+        }
         return Deserializer.getInt(this.bufferData, this.bufferPosition - 4);
     }
 
@@ -98,6 +230,9 @@ public class ReadBuffer {
      */
     public long readLong() {
         this.bufferPosition += 8;
+        if (this.mappedData != null) {
+            return this.mappedData.getLong(this.bufferPosition - 8);
+        }
         return Deserializer.getLong(this.bufferData, this.bufferPosition - 8);
     }
 
@@ -110,6 +245,9 @@ public class ReadBuffer {
      */
     public int readShort() {
         this.bufferPosition += 2;
+        if (this.mappedData != null) {
+            return this.mappedData.getShort(this.bufferPosition - 2);
+        }
         return Deserializer.getShort(this.bufferData, this.bufferPosition - 2);
     }
 
@@ -122,6 +260,9 @@ public class ReadBuffer {
      * @return the int value.
      */
     public int readSignedInt() {
+        if (this.mappedData != null) {
+            return readSignedIntMapped();
+        }
         int variableByteDecode = 0;
         byte variableByteShift = 0;
 
@@ -148,6 +289,9 @@ public class ReadBuffer {
      * @return the int value.
      */
     public int readUnsignedInt() {
+        if (this.mappedData != null) {
+            return readUnsignedIntMapped();
+        }
         int variableByteDecode = 0;
         byte variableByteShift = 0;
 
@@ -161,6 +305,205 @@ public class ReadBuffer {
         return variableByteDecode | (this.bufferData[this.bufferPosition++] << variableByteShift);
     }
 
+    /**
+     * Converts a sequence of variable byte encoded signed ints from the read buffer, same
+     * as repeated calls of {@link #readSignedInt()}.
+     *
+     * @param dst   destination array
+     * @param off   index of the first value in the destination array
+     * @param count number of values to read
+     */
+    public void readSignedInts(int[] dst, int off, int count) {
+        if (this.mappedData != null) {
+            readSignedIntsMapped(dst, off, count);
+            return;
+        }
+        byte[] data = this.bufferData;
+        int index = this.bufferPosition;
+        for (int i = off, end = off + count; i < end; i++) {
+            int variableByteDecode = 0;
+            int variableByteShift = 0;
+
+            // check if the continuation bit is set
+            byte value = data[index++];
+            while ((value & 0x80) != 0) {
+                variableByteDecode |= (value & 0x7f) << variableByteShift;
+                variableByteShift += 7;
+                value = data[index++];
+            }
+
+            // read the six data bits from the last byte, second bit is the sign
+            variableByteDecode |= (value & 0x3f) << variableByteShift;
+            dst[i] = (value & 0x40) != 0 ? -variableByteDecode : variableByteDecode;
+        }
+        this.bufferPosition = index;
+    }
+
+    /**
+     * Decodes a whole sequence of delta encoded way nodes to absolute coordinates.
+     * <p>
+     * Every node is stored as latitude and longitude offset (VBE-S). The first node is relative
+     * to the given base coordinates, all other nodes are relative to the previous node
+     * (single-delta) or to the previous offset (double-delta).
+     *
+     * @param dst         destination array, longitude and latitude of every node are stored
+     *                    as a pair (in this order), so at least {@code off + 2 * count} values
+     * @param off         offset of the first node in the destination array
+     * @param count       number of nodes to read
+     * @param latitude    base latitude of the first node (microdegrees)
+     * @param longitude   base longitude of the first node (microdegrees)
+     * @param doubleDelta {@code true} if nodes use double-delta encoding
+     */
+    public void readDeltaCoordinates(int[] dst, int off, int count, int latitude, int longitude,
+            boolean doubleDelta) {
+        if (this.mappedData != null) {
+            readDeltaCoordinatesMapped(dst, off, count, latitude, longitude, doubleDelta);
+            return;
+        }
+        byte[] data = this.bufferData;
+        int index = this.bufferPosition;
+        int deltaLatitude = 0;
+        int deltaLongitude = 0;
+        for (int i = off, end = off + count * 2; i < end; i += 2) {
+            // get the latitude offset (VBE-S)
+            int variableByteDecode = 0;
+            int variableByteShift = 0;
+            byte value = data[index++];
+            while ((value & 0x80) != 0) {
+                variableByteDecode |= (value & 0x7f) << variableByteShift;
+                variableByteShift += 7;
+                value = data[index++];
+            }
+            variableByteDecode |= (value & 0x3f) << variableByteShift;
+            int offsetLatitude = (value & 0x40) != 0 ? -variableByteDecode : variableByteDecode;
+
+            // get the longitude offset (VBE-S)
+            variableByteDecode = 0;
+            variableByteShift = 0;
+            value = data[index++];
+            while ((value & 0x80) != 0) {
+                variableByteDecode |= (value & 0x7f) << variableByteShift;
+                variableByteShift += 7;
+                value = data[index++];
+            }
+            variableByteDecode |= (value & 0x3f) << variableByteShift;
+            int offsetLongitude = (value & 0x40) != 0 ? -variableByteDecode : variableByteDecode;
+
+            // first node is always a single-delta offset to the base coordinates
+            if (doubleDelta && i > off) {
+                deltaLatitude += offsetLatitude;
+                deltaLongitude += offsetLongitude;
+                offsetLatitude = deltaLatitude;
+                offsetLongitude = deltaLongitude;
+            }
+            latitude += offsetLatitude;
+            longitude += offsetLongitude;
+            dst[i] = longitude;
+            dst[i + 1] = latitude;
+        }
+        this.bufferPosition = index;
+    }
+
+    /**
+     * Same as {@link #readSignedInts(int[], int, int)}, but decodes directly from the mapped data.
+     */
+    private void readSignedIntsMapped(int[] dst, int off, int count) {
+        ByteBuffer data = this.mappedData;
+        int index = this.bufferPosition;
+        for (int i = off, end = off + count; i < end; i++) {
+            int variableByteDecode = 0;
+            int variableByteShift = 0;
+
+            // check if the continuation bit is set
+            byte value = data.get(index++);
+            while ((value & 0x80) != 0) {
+                variableByteDecode |= (value & 0x7f) << variableByteShift;
+                variableByteShift += 7;
+                value = data.get(index++);
+            }
+
+            // read the six data bits from the last byte, second bit is the sign
+            variableByteDecode |= (value & 0x3f) << variableByteShift;
+            dst[i] = (value & 0x40) != 0 ? -variableByteDecode : variableByteDecode;
+        }
+        this.bufferPosition = index;
+    }
+
+    /**
+     * Same as {@link #readDeltaCoordinates(int[], int, int, int, int, boolean)}, but decodes directly
+     * from the mapped data.
+     */
+    private void readDeltaCoordinatesMapped(int[] dst, int off, int count, int latitude,
+            int longitude, boolean doubleDelta) {
+        // decode raw offsets first, then accumulate them in place
+        readSignedIntsMapped(dst, off, count * 2);
+        int deltaLatitude = 0;
+        int deltaLongitude = 0;
+        for (int i = off, end = off + count * 2; i < end; i += 2) {
+            int offsetLatitude = dst[i];
+            int offsetLongitude = dst[i + 1];
+            if (doubleDelta && i > off) {
+                deltaLatitude += offsetLatitude;
+                deltaLongitude += offsetLongitude;
+                offsetLatitude = deltaLatitude;
+                offsetLongitude = deltaLongitude;
+            }
+            latitude += offsetLatitude;
+            longitude += offsetLongitude;
+            dst[i] = longitude;
+            dst[i + 1] = latitude;
+        }
+    }
+
+    /**
+     * Same as {@link #readSignedInt()}, but decodes directly from the mapped data.
+     */
+    private int readSignedIntMapped() {
+        ByteBuffer data = this.mappedData;
+        int index = this.bufferPosition;
+        int variableByteDecode = 0;
+        byte variableByteShift = 0;
+
+        // check if the continuation bit is set
+        byte value = data.get(index++);
+        while ((value & 0x80) != 0) {
+            variableByteDecode |= (value & 0x7f) << variableByteShift;
+            variableByteShift += 7;
+            value = data.get(index++);
+        }
+        this.bufferPosition = index;
+
+        // read the six data bits from the last byte
+        if ((value & 0x40) != 0) {
+            // negative
+            return -(variableByteDecode | ((value & 0x3f) << variableByteShift));
+        }
+        // positive
+        return variableByteDecode | ((value & 0x3f) << variableByteShift);
+    }
+
+    /**
+     * Same as {@link #readUnsignedInt()}, but decodes directly from the mapped data.
+     */
+    private int readUnsignedIntMapped() {
+        ByteBuffer data = this.mappedData;
+        int index = this.bufferPosition;
+        int variableByteDecode = 0;
+        byte variableByteShift = 0;
+
+        // check if the continuation bit is set
+        byte value = data.get(index++);
+        while ((value & 0x80) != 0) {
+            variableByteDecode |= (value & 0x7f) << variableByteShift;
+            variableByteShift += 7;
+            value = data.get(index++);
+        }
+        this.bufferPosition = index;
+
+        // read the seven data bits from the last byte
+        return variableByteDecode | (value << variableByteShift);
+    }
+
     /**
      * Decodes a variable amount of bytes from the read buffer to a string.
      *
@@ -177,8 +520,13 @@ public class ReadBuffer {
      * @return the UTF-8 decoded string (may be null).
      */
     public String readUTF8EncodedString(int stringLength) {
-        if (stringLength > 0 && this.bufferPosition + stringLength <= this.bufferData.length) {
+        if (stringLength > 0 && this.bufferPosition + stringLength <= this.blockOffset + this.blockSize) {
             this.bufferPosition += stringLength;
+            if (this.mappedData != null) {
+                return newStringFromBuffer(this.mappedData,
+                        this.bufferPosition - stringLength,
+                        stringLength);
+            }
             return newStringFromBytes(this.bufferData,
                     this.bufferPosition - stringLength,
                     stringLength);
@@ -187,6 +535,135 @@ public class ReadBuffer {
         return null;
     }
 
+    /**
+     * Skips a string in the read buffer, so it may be decoded later.
+     *
+     * @param stringLength the length of the string in bytes.
+     * @return offset of the string in the loaded data, or '-1' if the length is not valid.
+     */
+    int skipUTF8EncodedString(int stringLength) {
+        if (stringLength > 0 && this.bufferPosition + stringLength <= this.blockOffset + this.blockSize) {
+            this.bufferPosition += stringLength;
+            return this.bufferPosition - stringLength;
+        }
+        Utils.getHandler().logW(TAG, "invalid string length: " + stringLength);
+        return -1;
+    }
+
+    /**
+     * Decodes a string, previously skipped by {@link #skipUTF8EncodedString(int)}, to characters.
+     *
+     * @param offset    offset of the string in the loaded data
+     * @param byteCount length of the string in bytes
+     * @param dst       destination array, at least 'byteCount' long
+     * @return number of decoded characters
+     */
+    int decodeUTF8EncodedString(int offset, int byteCount, char[] dst) {
+        if (this.mappedData != null) {
+            return decodeUTF8(this.mappedData, offset, byteCount, dst);
+        }
+        return decodeUTF8(this.bufferData, offset, byteCount, dst);
+    }
+
+    /**
+     * Create tag with a value, previously skipped by {@link #skipUTF8EncodedString(int)}. Value
+     * is decoded only when requested, so the tag is valid only till next data are loaded
+     * into the buffer.
+     *
+     * @param keyText     key of the tag
+     * @param key         hash of the key
+     * @param offset      offset of the string in the loaded data
+     * @param byteCount   length of the string in bytes
+     * @param valueStart  index of the first character of the value in the decoded string
+     * @param valueLength number of characters of the value
+     * @param valueHash   hash of the value
+     * @return tag with lazily decoded value
+     */
+    LazyTag newLazyTag(String keyText, int key, int offset, int byteCount,
+            int valueStart, int valueLength, int valueHash) {
+        return new LazyTag(keyText, key, valueHash, this.bufferData, this.mappedData,
+                offset, byteCount, valueStart, valueLength);
+    }
+
+    /**
+     * Create tag with a value, previously skipped by {@link #skipUTF8EncodedString(int)}, that
+     * was already extracted from the same string before.
+     *
+     * @param keyText   key of the tag
+     * @param key       hash of the key
+     * @param offset    offset of the string in the loaded data
+     * @param byteCount length of the string in bytes
+     * @param entry     cached name of the string
+     * @return tag with lazily decoded value
+     */
+    LazyTag newLazyTag(String keyText, int key, int offset, int byteCount, NameCache.Entry entry) {
+        return new LazyTag(keyText, key, this.bufferData, this.mappedData,
+                offset, byteCount, entry);
+    }
+
+    /**
+     * Compute hash of raw bytes in the loaded data.
+     *
+     * @param offset    offset of the bytes in the loaded data
+     * @param byteCount number of bytes
+     * @return computed hash
+     */
+    int hashBytes(int offset, int byteCount) {
+        int hash = byteCount;
+        if (this.mappedData != null) {
+            for (int i = offset, end = offset + byteCount; i < end; i++) {
+                hash = 31 * hash + this.mappedData.get(i);
+            }
+        } else {
+            for (int i = offset, end = offset + byteCount; i < end; i++) {
+                hash = 31 * hash + this.bufferData[i];
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Compare raw bytes in the loaded data with the given bytes.
+     *
+     * @param offset    offset of the bytes in the loaded data
+     * @param byteCount number of bytes
+     * @param bytes     bytes to compare with
+     * @return {@code true} if bytes are same
+     */
+    boolean equalsBytes(int offset, int byteCount, byte[] bytes) {
+        if (bytes.length != byteCount) {
+            return false;
+        }
+        for (int i = 0; i < byteCount; i++) {
+            byte b = this.mappedData != null
+                    ? this.mappedData.get(offset + i)
+                    : this.bufferData[offset + i];
+            if (b != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Copy raw bytes from the loaded data.
+     *
+     * @param offset    offset of the bytes in the loaded data
+     * @param byteCount number of bytes
+     * @return new array with the bytes
+     */
+    byte[] copyBytes(int offset, int byteCount) {
+        byte[] bytes = new byte[byteCount];
+        if (this.mappedData != null) {
+            for (int i = 0; i < byteCount; i++) {
+                bytes[i] = this.mappedData.get(offset + i);
+            }
+        } else {
+            System.arraycopy(this.bufferData, offset, bytes, 0, byteCount);
+        }
+        return bytes;
+    }
+
     /**
      * Read whole tag object directly from raw data.
      *
@@ -202,26 +679,26 @@ public class ReadBuffer {
     }
 
     /**
-     * @return the current buffer position.
+     * @return the current buffer position, relative to the start of the current block.
      */
     int getBufferPosition() {
-        return this.bufferPosition;
+        return this.bufferPosition - this.blockOffset;
     }
 
     /**
-     * @return the current size of the read buffer.
+     * @return the size of the current block.
      */
     int getBufferSize() {
-        return this.bufferData.length;
+        return this.blockSize;
     }
 
     /**
      * Sets the buffer position to the given offset.
      *
-     * @param bufferPosition the buffer position.
+     * @param bufferPosition the buffer position, relative to the start of the current block.
      */
     void setBufferPosition(int bufferPosition) {
-        this.bufferPosition = bufferPosition;
+        this.bufferPosition = this.blockOffset + bufferPosition;
     }
 
     /**
@@ -238,6 +715,8 @@ public class ReadBuffer {
      */
     public void deleteBuffer() {
         this.bufferData = null;
+        this.bufferWrapper = null;
+        this.mappedData = null;
     }
 
     // OPTIMIZED CHARSET GENERATOR
@@ -251,11 +730,21 @@ public class ReadBuffer {
                     "Invalid parameters: " + data.length + ", " + offset + ", " + byteCount);
         }
 
-        char[] value;
-        int length;
+        char[] v = new char[byteCount];
+        return new String(v, 0, decodeUTF8(data, offset, byteCount, v));
+    }
 
+    /**
+     * Decodes UTF-8 encoded bytes to characters. Parameters are expected to be valid.
+     *
+     * @param data      source data
+     * @param offset    offset of the first byte
+     * @param byteCount number of bytes
+     * @param v         destination array, at least 'byteCount' long
+     * @return number of decoded characters
+     */
+    static int decodeUTF8(byte[] data, int offset, int byteCount, char[] v) {
         // We inline UTF-8, ISO-8859-1, and US-ASCII decoders for speed.
-        char[] v = new char[byteCount];
         int idx = offset;
         int last = offset + byteCount;
         int s = 0;
@@ -265,97 +754,157 @@ public class ReadBuffer {
             if ((b0 & 0x80) == 0) {
                 // 0xxxxxxx
                 // Range:  U-00000000 - U-0000007F
-                int val = b0 & 0xff;
-                v[s++] = (char) val;
-            } else if (((b0 & 0xe0) == 0xc0) || ((b0 & 0xf0) == 0xe0) ||
-                    ((b0 & 0xf8) == 0xf0) || ((b0 & 0xfc) == 0xf8) || ((b0 & 0xfe) == 0xfc)) {
-                int utfCount = 1;
-                if ((b0 & 0xf0) == 0xe0) utfCount = 2;
-                else if ((b0 & 0xf8) == 0xf0) utfCount = 3;
-                else if ((b0 & 0xfc) == 0xf8) utfCount = 4;
-                else if ((b0 & 0xfe) == 0xfc) utfCount = 5;
-
-                // 110xxxxx (10xxxxxx)+
-                // Range:  U-00000080 - U-000007FF (count == 1)
-                // Range:  U-00000800 - U-0000FFFF (count == 2)
-                // Range:  U-00010000 - U-001FFFFF (count == 3)
-                // Range:  U-00200000 - U-03FFFFFF (count == 4)
-                // Range:  U-04000000 - U-7FFFFFFF (count == 5)
-
-                if (idx + utfCount > last) {
-                    v[s++] = REPLACEMENT_CHAR;
-                    continue;
-                }
+                v[s++] = (char) (b0 & 0xff);
+                continue;
+            }
 
-                // Extract usable bits from b0
-                int val = b0 & (0x1f >> (utfCount - 1));
-                for (int i = 0; i < utfCount; ++i) {
-                    byte b = data[idx++];
-                    if ((b & 0xc0) != 0x80) {
-                        v[s++] = REPLACEMENT_CHAR;
-                        idx--; // Put the input char back
-                        continue outer;
-                    }
-                    // Push new bits in from the right side
-                    val <<= 6;
-                    val |= b & 0x3f;
-                }
+            int utfCount = getUtfCount(b0);
+            if (utfCount < 0 || idx + utfCount > last) {
+                v[s++] = REPLACEMENT_CHAR;
+                continue;
+            }
 
-                // Note: Java allows overlong char
-                // specifications To disallow, check that val
-                // is greater than or equal to the minimum
-                // value for each count:
-                //
-                // count    min value
-                // -----   ----------
-                //   1           0x80
-                //   2          0x800
-                //   3        0x10000
-                //   4       0x200000
-                //   5      0x4000000
-
-                // Allow surrogate values (0xD800 - 0xDFFF) to
-                // be specified using 3-byte UTF values only
-                if ((utfCount != 2) && (val >= 0xD800) && (val <= 0xDFFF)) {
+            // Extract usable bits from b0
+            int val = b0 & (0x1f >> (utfCount - 1));
+            for (int i = 0; i < utfCount; ++i) {
+                byte b = data[idx++];
+                if ((b & 0xc0) != 0x80) {
                     v[s++] = REPLACEMENT_CHAR;
-                    continue;
+                    idx--; // Put the input char back
+                    continue outer;
                 }
+                // Push new bits in from the right side
+                val <<= 6;
+                val |= b & 0x3f;
+            }
+            s = putCodePoint(val, utfCount, v, s);
+        }
+        return s;
+    }
 
-                // Reject chars greater than the Unicode maximum of U+10FFFF.
-                if (val > 0x10FFFF) {
-                    v[s++] = REPLACEMENT_CHAR;
-                    continue;
-                }
+    /**
+     * Same as {@link #newStringFromBytes(byte[], int, int)}, but decodes directly from the
+     * given buffer. Only absolute get methods are used, so position of the buffer is not changed.
+     */
+    static String newStringFromBuffer(ByteBuffer data, int offset, int byteCount) {
+        if ((offset | byteCount) < 0 || byteCount > data.capacity() - offset) {
+            throw new StringIndexOutOfBoundsException(
+                    "Invalid parameters: " + data.capacity() + ", " + offset + ", " + byteCount);
+        }
 
-                // Encode chars from U+10000 up as surrogate pairs
-                if (val < 0x10000) {
-                    v[s++] = (char) val;
-                } else {
-                    int x = val & 0xffff;
-                    int u = (val >> 16) & 0x1f;
-                    int w = (u - 1) & 0xffff;
-                    int hi = 0xd800 | (w << 6) | (x >> 10);
-                    int lo = 0xdc00 | (x & 0x3ff);
-                    v[s++] = (char) hi;
-                    v[s++] = (char) lo;
-                }
-            } else {
-                // Illegal values 0x8*, 0x9*, 0xa*, 0xb*, 0xfd-0xff
+        char[] v = new char[byteCount];
+        return new String(v, 0, decodeUTF8(data, offset, byteCount, v));
+    }
+
+    /**
+     * Same as {@link #decodeUTF8(byte[], int, int, char[])}, but decodes directly from the
+     * given buffer. Only reading of bytes differs, decoding of sequences is shared.
+     */
+    static int decodeUTF8(ByteBuffer data, int offset, int byteCount, char[] v) {
+        int idx = offset;
+        int last = offset + byteCount;
+        int s = 0;
+        outer:
+        while (idx < last) {
+            byte b0 = data.get(idx++);
+            if ((b0 & 0x80) == 0) {
+                // 0xxxxxxx
+                v[s++] = (char) (b0 & 0xff);
+                continue;
+            }
+
+            int utfCount = getUtfCount(b0);
+            if (utfCount < 0 || idx + utfCount > last) {
                 v[s++] = REPLACEMENT_CHAR;
+                continue;
+            }
+
+            // Extract usable bits from b0
+            int val = b0 & (0x1f >> (utfCount - 1));
+            for (int i = 0; i < utfCount; ++i) {
+                byte b = data.get(idx++);
+                if ((b & 0xc0) != 0x80) {
+                    v[s++] = REPLACEMENT_CHAR;
+                    idx--; // Put the input char back
+                    continue outer;
+                }
+                // Push new bits in from the right side
+                val <<= 6;
+                val |= b & 0x3f;
             }
+            s = putCodePoint(val, utfCount, v, s);
+        }
+        return s;
+    }
+
+    /**
+     * Get number of continuation bytes of a sequence that starts with a non-ASCII byte.
+     *
+     * @param b0 first byte of the sequence
+     * @return number of continuation bytes, or '-1' if the byte cannot start a sequence
+     */
+    private static int getUtfCount(byte b0) {
+        // 110xxxxx (10xxxxxx)+
+        // Range:  U-00000080 - U-000007FF (count == 1)
+        // Range:  U-00000800 - U-0000FFFF (count == 2)
+        // Range:  U-00010000 - U-001FFFFF (count == 3)
+        // Range:  U-00200000 - U-03FFFFFF (count == 4)
+        // Range:  U-04000000 - U-7FFFFFFF (count == 5)
+        if ((b0 & 0xe0) == 0xc0) return 1;
+        if ((b0 & 0xf0) == 0xe0) return 2;
+        if ((b0 & 0xf8) == 0xf0) return 3;
+        if ((b0 & 0xfc) == 0xf8) return 4;
+        if ((b0 & 0xfe) == 0xfc) return 5;
+        // Illegal values 0x8*, 0x9*, 0xa*, 0xb*, 0xfd-0xff
+        return -1;
+    }
+
+    /**
+     * Store a decoded sequence to the destination.
+     *
+     * @param val      decoded value
+     * @param utfCount number of continuation bytes of the sequence
+     * @param v        destination array
+     * @param s        number of characters already in the destination
+     * @return number of characters in the destination after the value
+     */
+    private static int putCodePoint(int val, int utfCount, char[] v, int s) {
+        // Note: Java allows overlong char
+        // specifications To disallow, check that val
+        // is greater than or equal to the minimum
+        // value for each count:
+        //
+        // count    min value
+        // -----   ----------
+        //   1           0x80
+        //   2          0x800
+        //   3        0x10000
+        //   4       0x200000
+        //   5      0x4000000
+
+        // Allow surrogate values (0xD800 - 0xDFFF) to
+        // be specified using 3-byte UTF values only
+        if ((utfCount != 2) && (val >= 0xD800) && (val <= 0xDFFF)) {
+            v[s++] = REPLACEMENT_CHAR;
+            return s;
         }
 
-        if (s == byteCount) {
-            // We guessed right, so we can use our temporary array as-is.
-            value = v;
-            length = s;
+        // Reject chars greater than the Unicode maximum of U+10FFFF.
+        if (val > 0x10FFFF) {
+            v[s++] = REPLACEMENT_CHAR;
+            return s;
+        }
+
+        // Encode chars from U+10000 up as surrogate pairs
+        if (val < 0x10000) {
+            v[s++] = (char) val;
         } else {
-            // Our temporary array was too big, so reallocate and copy.
-            value = new char[s];
-            length = s;
-            System.arraycopy(v, 0, value, 0, s);
+            int x = val & 0xffff;
+            int u = (val >> 16) & 0x1f;
+            int w = (u - 1) & 0xffff;
+            v[s++] = (char) (0xd800 | (w << 6) | (x >> 10));
+            v[s++] = (char) (0xdc00 | (x & 0x3ff));
         }
-        return new String(value, 0, length);
+        return s;
     }
-
 }
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforgeV3.map.reader;
+
+import org.mapsforgeV3.core.model.Tag;
+import org.mapsforgeV3.map.reader.header.MapFileInfo;
+
+/**
+ * Filter of features by their tags, valid for a single map file.
+ * <p>
+ * Filter is created by the renderer from rules of the render theme prepared for the current
+ * zoom level. Features, that have none of accepted tags, may not be matched by any rule, so
+ * {@link MapDatabase} skips them right after reading of their tag IDs, without decoding of their
+ * names and coordinates.
+ */
+public class TagFilter {
+
+    /**
+     * Decides which tags may be matched by rules of the render theme.
+     */
+    public interface Matcher {
+
+        /**
+         * Check if a feature may be matched even without any accepted tag.
+         *
+         * @param way {@code true} for ways, {@code false} for POIs
+         * @return {@code true} if features of this type can't be filtered
+         */
+        boolean mayMatchWithoutTags(boolean way);
+
+        /**
+         * Check if a feature with a certain tag may be matched.
+         *
+         * @param way      {@code true} for ways, {@code false} for POIs
+         * @param key      hash of the key
+         * @param value    hash of the value
+         * @param anyValue {@code true} if value is not known yet and any value has to be expected
+         * @return {@code true} if the tag may be matched
+         */
+        boolean mayMatchTag(boolean way, int key, int value, boolean anyValue);
+    }
+
+    // map file the filter was created for
+    private final MapFileInfo mapFileInfo;
+
+    // accepted POI tags by tag ID, or 'null' if POIs are not filtered
+    private final boolean[] poiTags;
+    // flags if POIs with a name, a house number or an elevation are accepted
+    private final boolean poiName;
+    private final boolean poiHouseNumber;
+    private final boolean poiElevation;
+
+    // accepted way tags by tag ID, or 'null' if ways are not filtered
+    private final boolean[] wayTags;
+    // flags if ways with a name, a house number or a reference are accepted
+    private final boolean wayName;
+    private final boolean wayHouseNumber;
+    private final boolean wayRef;
+
+    /**
+     * Create filter for tags of a certain map file.
+     *
+     * @param mapFileInfo information about the map file
+     * @param matcher     matcher of tags
+     */
+    public TagFilter(MapFileInfo mapFileInfo, Matcher matcher) {
+        this.mapFileInfo = mapFileInfo;
+
+        // prepare POIs
+        this.poiTags = createTags(mapFileInfo.poiTags, matcher, false);
+        this.poiName = matcher.mayMatchTag(false, MapDatabase.TAG_KEY_NAME, 0, true);
+        this.poiHouseNumber = matcher.mayMatchTag(false, MapDatabase.TAG_KEY_HOUSE_NUMBER, 0, true);
+        this.poiElevation = matcher.mayMatchTag(false, MapDatabase.TAG_KEY_ELE, 0, true);
+
+        // prepare ways
+        this.wayTags = createTags(mapFileInfo.wayTags, matcher, true);
+        this.wayName = matcher.mayMatchTag(true, MapDatabase.TAG_KEY_NAME, 0, true);
+        this.wayHouseNumber = matcher.mayMatchTag(true, MapDatabase.TAG_KEY_HOUSE_NUMBER, 0, true);
+        this.wayRef = matcher.mayMatchTag(true, MapDatabase.TAG_KEY_REF, 0, true);
+    }
+
+    private static boolean[] createTags(Tag[] tags, Matcher matcher, boolean way) {
+        if (matcher.mayMatchWithoutTags(way)) {
+            return null;
+        }
+        boolean[] accepted = new boolean[tags.length];
+        for (int i = 0; i < tags.length; i++) {
+            accepted[i] = matcher.mayMatchTag(way, tags[i].key, tags[i].value, false);
+        }
+        return accepted;
+    }
+
+    /**
+     * Check if filter was created for a certain map file.
+     *
+     * @param mapFileInfo information about the map file
+     * @return {@code true} if filter may be used for the map file
+     */
+    public boolean isValidFor(MapFileInfo mapFileInfo) {
+        return this.mapFileInfo == mapFileInfo;
+    }
+
+    /**
+     * @return {@code true} if POIs are filtered
+     */
+    boolean isFilteringPois() {
+        return this.poiTags != null;
+    }
+
+    /**
+     * @param tagId ID of the POI tag
+     * @return {@code true} if POIs with the tag are accepted
+     */
+    boolean acceptsPoiTag(int tagId) {
+        return this.poiTags == null || this.poiTags[tagId];
+    }
+
+    /**
+     * Check if POI with certain optional features is accepted.
+     *
+     * @return {@code true} if POI is accepted
+     */
+    boolean acceptsPoiFeatures(boolean name, boolean houseNumber, boolean elevation) {
+        return (name && this.poiName)
+                || (houseNumber && this.poiHouseNumber)
+                || (elevation && this.poiElevation);
+    }
+
+    /**
+     * @return {@code true} if ways are filtered
+     */
+    boolean isFilteringWays() {
+        return this.wayTags != null;
+    }
+
+    /**
+     * @param tagId ID of the way tag
+     * @return {@code true} if ways with the tag are accepted
+     */
+    boolean acceptsWayTag(int tagId) {
+        return this.wayTags == null || this.wayTags[tagId];
+    }
+
+    /**
+     * Check if way with certain optional features is accepted.
+     *
+     * @return {@code true} if way is accepted
+     */
+    boolean acceptsWayFeatures(boolean name, boolean houseNumber, boolean ref) {
+        return (name && this.wayName)
+                || (houseNumber && this.wayHouseNumber)
+                || (ref && this.wayRef);
+    }
+}
@@ -17,7 +17,11 @@ package org.mapsforgeV3.map.reader;
 import org.mapsforgeV3.core.model.Tag;
 
 /**
- * An immutable container for all data associated with a single way or area (closed way).
+ * A container for all data associated with a single way or area (closed way).
+ * <p>
+ * A single instance is reused for all ways of a query. Tags and coordinates are views into
+ * arrays shared by the reader, so they are valid only during the render callback and have to
+ * be copied if needed later.
  */
 public class Way {
 	/**
@@ -32,55 +36,105 @@ public class Way {
 	public byte layer;
 
 	/**
-	 * The tags of this way.
+	 * The tags of this way. Array is shared and reused, so content is valid only during the
+	 * render callback.
 	 */
 	public Tag[] tags;
 
 	/**
-	 * The geographical coordinates of the way nodes in the order longitude/latitude.
+	 * The geographical coordinates of the way nodes in the order longitude/latitude, for all
+	 * segments of the way. Array is shared and reused, so content is valid only during the
+	 * render callback.
 	 */
-	public float[][] wayNodes;
+	public float[] coordinates;
 
-    // bbox most top coordinate
+	/**
+	 * Flag if {@link #coordinates} are already projected to pixels relative to the rendered tile
+	 * (X/Y), instead of microdegrees.
+	 */
+	public boolean isProjected;
+
+	/**
+	 * Offsets of segments in {@link #coordinates}. Segment 'i' starts at the offset stored on
+	 * index 'segmentStart + i' and ends where the next segment starts.
+	 */
+	public int[] segmentOffsets;
+
+	/**
+	 * Index of the first segment in {@link #segmentOffsets}.
+	 */
+	public int segmentStart;
+
+	/**
+	 * Number of segments of the way.
+	 */
+	public int segmentCount;
+
+	// bbox most top coordinate
 	public int bboxTopE6;
-    // bbox most bottom coordinate
+	// bbox most bottom coordinate
 	public int bboxBottomE6;
-    // bbox most left coordinate
+	// bbox most left coordinate
 	public int bboxLeftE6;
-    // bbox most right coordinate
+	// bbox most right coordinate
 	public int bboxRightE6;
 
 	// flag if way if just background way
 	public boolean isFillBackground;
 
-    /**
-     * Default constructor.
-     */
+	/**
+	 * Default constructor.
+	 */
 	Way() {
-        prepareToNewStep();
+		prepareToNewStep();
 	}
-	
+
 	public void set(byte layer, int latitudeE6, int longitudeE6) {
 		this.layer = layer;
 		this.latitudeE6 = latitudeE6;
 		this.longitudeE6 = longitudeE6;
 	}
 
-    /**
-     * Clear content of way object so it may be reused.
-     */
-    void prepareToNewStep() {
-        latitudeE6 = 0;
-        longitudeE6 = 0;
-        layer = 0;
-        tags = null;
-
-        // clear data with coordinates
-        clearNodesData();
-    }
-	
+	/**
+	 * Clear content of way object so it may be reused.
+	 */
+	void prepareToNewStep() {
+		latitudeE6 = 0;
+		longitudeE6 = 0;
+		layer = 0;
+		tags = null;
+
+		// clear data with coordinates
+		clearNodesData();
+	}
+
+	/**
+	 * Get offset of a certain segment in {@link #coordinates}.
+	 *
+	 * @param segment index of the segment
+	 * @return offset of the first coordinate
+	 */
+	public int getSegmentOffset(int segment) {
+		return this.segmentOffsets[this.segmentStart + segment];
+	}
+
+	/**
+	 * Get number of coordinates of a certain segment (two per way node).
+	 *
+	 * @param segment index of the segment
+	 * @return number of coordinates
+	 */
+	public int getSegmentLength(int segment) {
+		return this.segmentOffsets[this.segmentStart + segment + 1]
+				- this.segmentOffsets[this.segmentStart + segment];
+	}
+
 	void clearNodesData() {
-		wayNodes = null;
+		this.coordinates = null;
+		this.isProjected = false;
+		this.segmentOffsets = null;
+		this.segmentStart = 0;
+		this.segmentCount = 0;
 		this.bboxTopE6 = Integer.MIN_VALUE;
 		this.bboxBottomE6 = Integer.MAX_VALUE;
 		this.bboxLeftE6 = Integer.MAX_VALUE;
@@ -14,14 +14,32 @@
  */
 package org.mapsforgeV3.map.reader.header;
 
+import com.asamm.locus.mapsforge.utils.Utils;
+
+import org.mapsforgeV3.core.model.BoundingBox;
+import org.mapsforgeV3.core.model.GeoPoint;
+import org.mapsforgeV3.core.model.Tag;
 import org.mapsforgeV3.map.reader.ReadBuffer;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.RandomAccessFile;
 
 /**
  * Reads and validates the header data from a binary map file.
  */
 public class MapFileHeader {
+
+	// tag for logger
+	private static final String TAG = "MapFileHeader";
+
 	/**
 	 * Maximum valid base zoom level of a sub-file.
 	 */
@@ -42,8 +60,24 @@ public class MapFileHeader {
 	 */
 	private static final char SPACE = ' ';
 
+	/**
+	 * Identifier at the beginning of a header snapshot.
+	 */
+	private static final int SNAPSHOT_MAGIC = 0x4d465348;
+
+	/**
+	 * Maximum size of a header snapshot in bytes.
+	 */
+	private static final int SNAPSHOT_SIZE_MAX = 4000000;
+
+	/**
+	 * Version of the format of header snapshots.
+	 */
+	private static final int SNAPSHOT_VERSION = 1;
+
 	private MapFileInfo mapFileInfo;
 	private SubFileParameter[] subFileParameters;
+	private SubFileParameter[] subFileParametersAll;
 	private byte zoomLevelMaximum;
 	private byte zoomLevelMinimum;
 
@@ -77,6 +111,13 @@ public class MapFileHeader {
 		return this.subFileParameters[queryZoomLevel];
 	}
 
+	/**
+	 * @return parameters of all sub-files, in order as stored in the file.
+	 */
+	public SubFileParameter[] getSubFileParameters() {
+		return this.subFileParametersAll.clone();
+	}
+
 	/**
 	 * Reads and validates the header block from the map file.
 	 * 
@@ -106,6 +147,190 @@ public class MapFileHeader {
 		this.mapFileInfo = mapFileInfoBuilder.build();
 	}
 
+	/**
+	 * Reads the header from a snapshot, previously created by
+	 * {@link #writeSnapshot(File, long, long)}. Snapshot is loaded by a single read and its
+	 * content is not validated again.
+	 *
+	 * @param snapshotFile the snapshot of the header.
+	 * @param fileSize the size of the map file in bytes.
+	 * @param lastModified the time of the last modification of the map file.
+	 * @return true if the header was read, false if the snapshot does not exist or is not valid
+	 *         for the current map file.
+	 */
+	public boolean readSnapshot(File snapshotFile, long fileSize, long lastModified) {
+		if (!snapshotFile.isFile() || snapshotFile.length() > SNAPSHOT_SIZE_MAX) {
+			return false;
+		}
+
+		try {
+			// load whole snapshot at once
+			byte[] data = new byte[(int) snapshotFile.length()];
+			RandomAccessFile file = new RandomAccessFile(snapshotFile, "r");
+			try {
+				file.readFully(data);
+			} finally {
+				file.close();
+			}
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+
+			// check validity for the current map file
+			if (in.readInt() != SNAPSHOT_MAGIC
+					|| in.readInt() != SNAPSHOT_VERSION
+					|| in.readLong() != fileSize
+					|| in.readLong() != lastModified) {
+				return false;
+			}
+
+			// read core parameters
+			MapFileInfoBuilder mapFileInfoBuilder = new MapFileInfoBuilder();
+			mapFileInfoBuilder.fileSize = fileSize;
+			mapFileInfoBuilder.fileVersion = in.readInt();
+			mapFileInfoBuilder.mapDate = in.readLong();
+			mapFileInfoBuilder.boundingBox = new BoundingBox(
+					in.readInt(), in.readInt(), in.readInt(), in.readInt());
+			mapFileInfoBuilder.tilePixelSize = in.readInt();
+			mapFileInfoBuilder.projectionName = in.readUTF();
+
+			// read optional fields
+			OptionalFields optionalFields = OptionalFields.createEmpty(in.readBoolean());
+			if (in.readBoolean()) {
+				optionalFields.startPosition = new GeoPoint(in.readInt(), in.readInt());
+			}
+			if (in.readBoolean()) {
+				optionalFields.startZoomLevel = in.readByte();
+			}
+			optionalFields.languagesPreference = readSnapshotString(in);
+			optionalFields.comment = readSnapshotString(in);
+			optionalFields.createdBy = readSnapshotString(in);
+			mapFileInfoBuilder.optionalFields = optionalFields;
+
+			// read tags
+			mapFileInfoBuilder.poiTags = readSnapshotTags(in);
+			mapFileInfoBuilder.wayTags = readSnapshotTags(in);
+
+			// read sub-files
+			byte numberOfSubFiles = in.readByte();
+			SubFileParameter[] tempSubFileParameters = new SubFileParameter[numberOfSubFiles];
+			for (byte currentSubFile = 0; currentSubFile < numberOfSubFiles; ++currentSubFile) {
+				tempSubFileParameters[currentSubFile] = createSubFileParameter(mapFileInfoBuilder,
+						currentSubFile, in.readByte(), in.readByte(), in.readByte(),
+						in.readLong(), in.readLong());
+			}
+			mapFileInfoBuilder.numberOfSubFiles = numberOfSubFiles;
+
+			// generate header info
+			setSubFileParameters(tempSubFileParameters);
+			this.mapFileInfo = mapFileInfoBuilder.build();
+			return true;
+		} catch (IOException | RuntimeException e) {
+			Utils.getHandler().logW(TAG, "readSnapshot(" + snapshotFile + "), " +
+					"invalid snapshot: " + e.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * Writes a snapshot of the already read header. Snapshot is written into a temporary file
+	 * first, so it is never read incomplete.
+	 *
+	 * @param snapshotFile the snapshot of the header.
+	 * @param fileSize the size of the map file in bytes.
+	 * @param lastModified the time of the last modification of the map file.
+	 * @throws IOException if an error occurs while writing the file.
+	 */
+	public void writeSnapshot(File snapshotFile, long fileSize, long lastModified) throws IOException {
+		File tempFile = new File(snapshotFile.getPath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(tempFile)));
+		try {
+			// validity for the map file
+			out.writeInt(SNAPSHOT_MAGIC);
+			out.writeInt(SNAPSHOT_VERSION);
+			out.writeLong(fileSize);
+			out.writeLong(lastModified);
+
+			// core parameters
+			MapFileInfo info = this.mapFileInfo;
+			out.writeInt(info.fileVersion);
+			out.writeLong(info.mapDate);
+			out.writeInt(info.boundingBox.minLatitudeE6);
+			out.writeInt(info.boundingBox.minLongitudeE6);
+			out.writeInt(info.boundingBox.maxLatitudeE6);
+			out.writeInt(info.boundingBox.maxLongitudeE6);
+			out.writeInt(info.tilePixelSize);
+			out.writeUTF(info.projectionName);
+
+			// optional fields
+			out.writeBoolean(info.debugFile);
+			out.writeBoolean(info.startPosition != null);
+			if (info.startPosition != null) {
+				out.writeInt(info.startPosition.latitudeE6);
+				out.writeInt(info.startPosition.longitudeE6);
+			}
+			out.writeBoolean(info.startZoomLevel != null);
+			if (info.startZoomLevel != null) {
+				out.writeByte(info.startZoomLevel);
+			}
+			writeSnapshotString(out, info.languagesPreference);
+			writeSnapshotString(out, info.comment);
+			writeSnapshotString(out, info.createdBy);
+
+			// tags
+			writeSnapshotTags(out, info.poiTags);
+			writeSnapshotTags(out, info.wayTags);
+
+			// sub-files
+			out.writeByte(this.subFileParametersAll.length);
+			for (SubFileParameter subFileParameter : this.subFileParametersAll) {
+				out.writeByte(subFileParameter.baseZoomLevel);
+				out.writeByte(subFileParameter.zoomLevelMin);
+				out.writeByte(subFileParameter.zoomLevelMax);
+				out.writeLong(subFileParameter.startAddress);
+				out.writeLong(subFileParameter.subFileSize);
+			}
+		} finally {
+			out.close();
+		}
+
+		// replace previous snapshot
+		if (!tempFile.renameTo(snapshotFile)) {
+			tempFile.delete();
+			throw new IOException("unable to create snapshot: " + snapshotFile);
+		}
+	}
+
+	private static String readSnapshotString(DataInput in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+	private static void writeSnapshotString(DataOutput out, String value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null) {
+			out.writeUTF(value);
+		}
+	}
+
+	private static Tag[] readSnapshotTags(DataInput in) throws IOException {
+		Tag[] tags = new Tag[in.readInt()];
+		for (int i = 0; i < tags.length; i++) {
+			// hash of the key is stored, so only hash of the value is computed
+			String keyText = in.readUTF();
+			int key = in.readInt();
+			tags[i] = new Tag(keyText, key, in.readUTF());
+		}
+		return tags;
+	}
+
+	private static void writeSnapshotTags(DataOutput out, Tag[] tags) throws IOException {
+		out.writeInt(tags.length);
+		for (Tag tag : tags) {
+			out.writeUTF(tag.getKeyAsString());
+			out.writeInt(tag.key);
+			out.writeUTF(tag.getValueAsString());
+		}
+	}
+
 	private FileOpenResult readSubFileParameters(ReadBuffer readBuffer, long fileSize,
 			MapFileInfoBuilder mapFileInfoBuilder) {
 		// get and check the number of sub-files (1 byte)
@@ -116,34 +341,26 @@ public class MapFileHeader {
 		mapFileInfoBuilder.numberOfSubFiles = numberOfSubFiles;
 
 		SubFileParameter[] tempSubFileParameters = new SubFileParameter[numberOfSubFiles];
-		this.zoomLevelMinimum = Byte.MAX_VALUE;
-		this.zoomLevelMaximum = Byte.MIN_VALUE;
 
 		// get and check the information for each sub-file
 		for (byte currentSubFile = 0; currentSubFile < numberOfSubFiles; ++currentSubFile) {
-			SubFileParameterBuilder subFileParameterBuilder = new SubFileParameterBuilder();
-			subFileParameterBuilder.tileSize = mapFileInfoBuilder.tilePixelSize;
-
 			// get and check the base zoom level (1 byte)
 			byte baseZoomLevel = readBuffer.readByte();
 			if (baseZoomLevel < 0 || baseZoomLevel > BASE_ZOOM_LEVEL_MAX) {
 				return new FileOpenResult("invalid base zooom level: " + baseZoomLevel);
 			}
-			subFileParameterBuilder.baseZoomLevel = baseZoomLevel;
 
 			// get and check the minimum zoom level (1 byte)
 			byte zoomLevelMin = readBuffer.readByte();
 			if (zoomLevelMin < 0 || zoomLevelMin > 22) {
 				return new FileOpenResult("invalid minimum zoom level: " + zoomLevelMin);
 			}
-			subFileParameterBuilder.zoomLevelMin = zoomLevelMin;
 
 			// get and check the maximum zoom level (1 byte)
 			byte zoomLevelMax = readBuffer.readByte();
 			if (zoomLevelMax < 0 || zoomLevelMax > 22) {
 				return new FileOpenResult("invalid maximum zoom level: " + zoomLevelMax);
 			}
-			subFileParameterBuilder.zoomLevelMax = zoomLevelMax;
 
 			// check for valid zoom level range
 			if (zoomLevelMin > zoomLevelMax) {
@@ -155,39 +372,60 @@ public class MapFileHeader {
 			if (startAddress < HEADER_SIZE_MIN || startAddress >= fileSize) {
 				return new FileOpenResult("invalid start address: " + startAddress);
 			}
-			subFileParameterBuilder.startAddress = startAddress;
-
-			long indexStartAddress = startAddress;
-			if (mapFileInfoBuilder.optionalFields.isDebugFile) {
-				// the sub-file has an index signature before the index
-				indexStartAddress += SIGNATURE_LENGTH_INDEX;
-			}
-			subFileParameterBuilder.indexStartAddress = indexStartAddress;
 
 			// get and check the size of the sub-file (8 bytes)
 			long subFileSize = readBuffer.readLong();
 			if (subFileSize < 1) {
 				return new FileOpenResult("invalid sub-file size: " + subFileSize);
 			}
-			subFileParameterBuilder.subFileSize = subFileSize;
-
-			subFileParameterBuilder.boundingBox = mapFileInfoBuilder.boundingBox;
 
 			// add the current sub-file to the list of sub-files
-			tempSubFileParameters[currentSubFile] = subFileParameterBuilder.build();
+			tempSubFileParameters[currentSubFile] = createSubFileParameter(mapFileInfoBuilder,
+					currentSubFile, baseZoomLevel, zoomLevelMin, zoomLevelMax, startAddress, subFileSize);
+		}
 
-			updateZoomLevelInformation(tempSubFileParameters[currentSubFile]);
+		// create and fill the lookup table for the sub-files
+		setSubFileParameters(tempSubFileParameters);
+		return FileOpenResult.SUCCESS;
+	}
+
+	private static SubFileParameter createSubFileParameter(MapFileInfoBuilder mapFileInfoBuilder,
+			byte subFileId, byte baseZoomLevel, byte zoomLevelMin, byte zoomLevelMax,
+			long startAddress, long subFileSize) {
+		SubFileParameterBuilder subFileParameterBuilder = new SubFileParameterBuilder();
+		subFileParameterBuilder.tileSize = mapFileInfoBuilder.tilePixelSize;
+		subFileParameterBuilder.subFileId = subFileId;
+		subFileParameterBuilder.baseZoomLevel = baseZoomLevel;
+		subFileParameterBuilder.zoomLevelMin = zoomLevelMin;
+		subFileParameterBuilder.zoomLevelMax = zoomLevelMax;
+		subFileParameterBuilder.startAddress = startAddress;
+
+		long indexStartAddress = startAddress;
+		if (mapFileInfoBuilder.optionalFields.isDebugFile) {
+			// the sub-file has an index signature before the index
+			indexStartAddress += SIGNATURE_LENGTH_INDEX;
+		}
+		subFileParameterBuilder.indexStartAddress = indexStartAddress;
+		subFileParameterBuilder.subFileSize = subFileSize;
+		subFileParameterBuilder.boundingBox = mapFileInfoBuilder.boundingBox;
+		return subFileParameterBuilder.build();
+	}
+
+	private void setSubFileParameters(SubFileParameter[] subFileParameters) {
+		this.zoomLevelMinimum = Byte.MAX_VALUE;
+		this.zoomLevelMaximum = Byte.MIN_VALUE;
+		for (SubFileParameter subFileParameter : subFileParameters) {
+			updateZoomLevelInformation(subFileParameter);
 		}
 
 		// create and fill the lookup table for the sub-files
+		this.subFileParametersAll = subFileParameters;
 		this.subFileParameters = new SubFileParameter[this.zoomLevelMaximum + 1];
-		for (int currentMapFile = 0; currentMapFile < numberOfSubFiles; ++currentMapFile) {
-			SubFileParameter subFileParameter = tempSubFileParameters[currentMapFile];
+		for (SubFileParameter subFileParameter : subFileParameters) {
 			for (byte zoomLevel = subFileParameter.zoomLevelMin; zoomLevel <= subFileParameter.zoomLevelMax; ++zoomLevel) {
 				this.subFileParameters[zoomLevel] = subFileParameter;
 			}
 		}
-		return FileOpenResult.SUCCESS;
 	}
 
 	private void updateZoomLevelInformation(SubFileParameter subFileParameter) {
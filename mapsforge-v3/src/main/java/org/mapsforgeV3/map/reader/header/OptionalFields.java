@@ -48,6 +48,15 @@ final class OptionalFields {
 		optionalFields.readOptionalFields(readBuffer);
 	}
 
+	/**
+	 * Create empty fields, that are filled from a snapshot of the header.
+	 * @param debugFile flag if map file is a debug file
+	 * @return new fields container
+	 */
+	static OptionalFields createEmpty(boolean debugFile) {
+		return new OptionalFields(debugFile ? (byte) HEADER_BITMASK_DEBUG : 0);
+	}
+
 	// PRIVATE PART
 
 	String comment;
@@ -100,6 +100,11 @@ public class SubFileParameter {
 	 */
 	public final byte zoomLevelMin;
 
+	/**
+	 * Index of the sub-file in the file header.
+	 */
+	public final byte subFileId;
+
 	/**
 	 * Stores the hash code of this object.
 	 */
@@ -118,6 +123,7 @@ public class SubFileParameter {
 		this.zoomLevelMin = subFileParameterBuilder.zoomLevelMin;
 		this.zoomLevelMax = subFileParameterBuilder.zoomLevelMax;
 		this.tilePixelSize = subFileParameterBuilder.tileSize;
+		this.subFileId = subFileParameterBuilder.subFileId;
 		this.hashCodeValue = calculateHashCode();
 
 		// calculate the XY numbers of the boundary tiles in this sub-file
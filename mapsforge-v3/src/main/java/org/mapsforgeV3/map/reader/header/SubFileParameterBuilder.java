@@ -22,6 +22,7 @@ class SubFileParameterBuilder {
 	long indexStartAddress;
 	long startAddress;
 	long subFileSize;
+	byte subFileId;
 	byte zoomLevelMax;
 	byte zoomLevelMin;
 	int tileSize;
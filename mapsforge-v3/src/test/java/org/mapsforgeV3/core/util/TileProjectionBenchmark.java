@@ -0,0 +1,77 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforgeV3.core.util;
+
+import java.util.Random;
+
+/**
+ * Plain JVM benchmark of the projection of latitudes by {@link TileProjection} compared to
+ * {@link MercatorProjection#latitudeToPixelY(double, long)}. Usage:
+ * <pre>
+ * TileProjectionBenchmark [zoom level] [rounds]
+ * </pre>
+ */
+public class TileProjectionBenchmark {
+	private static final int TILE_SIZE = 256;
+	private static final int NODES = 1 << 20;
+
+	public static void main(String[] args) {
+		byte zoomLevel = args.length > 0 ? Byte.parseByte(args[0]) : 14;
+		int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+		// nodes spread over the tile and its neighbours around Prague
+		long mapSize = MercatorProjection.getMapSize(zoomLevel, TILE_SIZE);
+		long tileY = MercatorProjection.latitudeToTileY(50.08, zoomLevel, TILE_SIZE);
+		long pixelY = tileY * TILE_SIZE;
+		double top = MercatorProjection.pixelYToLatitude(pixelY - TILE_SIZE, zoomLevel, TILE_SIZE, true);
+		double bottom = MercatorProjection.pixelYToLatitude(pixelY + 2 * TILE_SIZE, zoomLevel,
+				TILE_SIZE, true);
+		int[] latitudesE6 = new int[NODES];
+		Random random = new Random(1);
+		for (int i = 0; i < NODES; i++) {
+			latitudesE6[i] = (int) ((bottom + (top - bottom) * random.nextDouble()) * 1000000);
+		}
+
+		long bestExact = Long.MAX_VALUE;
+		long bestTable = Long.MAX_VALUE;
+		long bestCreate = Long.MAX_VALUE;
+		double sum = 0;
+		double maxDifference = 0;
+		for (int round = 0; round < rounds; round++) {
+			long time = System.nanoTime();
+			for (int i = 0; i < NODES; i++) {
+				sum += MercatorProjection.latitudeToPixelY(latitudesE6[i] / 1000000.0, mapSize) - pixelY;
+			}
+			bestExact = Math.min(bestExact, System.nanoTime() - time);
+
+			time = System.nanoTime();
+			TileProjection projection = new TileProjection(mapSize, 0, pixelY, TILE_SIZE, TILE_SIZE / 4);
+			bestCreate = Math.min(bestCreate, System.nanoTime() - time);
+			for (int i = 0; i < NODES; i++) {
+				sum += projection.projectY(latitudesE6[i]);
+			}
+			bestTable = Math.min(bestTable, System.nanoTime() - time);
+
+			for (int i = 0; i < NODES; i += 64) {
+				double exact = MercatorProjection.latitudeToPixelY(latitudesE6[i] / 1000000.0, mapSize)
+						- pixelY;
+				maxDifference = Math.max(maxDifference, Math.abs(exact - projection.projectY(latitudesE6[i])));
+			}
+		}
+		System.out.printf("z%d exact %.2f ns/node, table %.2f ns/node, creation %.1f us, "
+						+ "max difference %.4f px (%s)%n", zoomLevel, (double) bestExact / NODES,
+				(double) bestTable / NODES, bestCreate / 1000.0, maxDifference, sum > 0 ? "+" : "-");
+	}
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforgeV3.core.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks the interpolated projection of tiles against the exact Mercator projection.
+ */
+public class TileProjectionTest {
+	private static final int TILE_SIZE = 256;
+	// tiles large enough to reach the maximal size of the table
+	private static final int LARGE_TILE_SIZE = 4096;
+	// number of sampled latitudes inside of a single table
+	private static final int SAMPLES = 5000;
+	// latitudes close to the limits of the projection
+	private static final double[] LIMIT_LATITUDES = {85.05, -85.05};
+
+	@Test
+	public void errorBoundOfAllZoomLevels() {
+		checkErrorBound(TILE_SIZE);
+	}
+
+	@Test
+	public void errorBoundOfLargeTiles() {
+		checkErrorBound(LARGE_TILE_SIZE);
+	}
+
+	@Test
+	public void interpolationOfAllZoomLevels() {
+		checkInterpolation(TILE_SIZE);
+	}
+
+	@Test
+	public void interpolationOfLargeTiles() {
+		checkInterpolation(LARGE_TILE_SIZE);
+	}
+
+	@Test
+	public void projectionOfLongitudes() {
+		for (byte zoomLevel = 0; zoomLevel <= 22; zoomLevel++) {
+			long mapSize = MercatorProjection.getMapSize(zoomLevel, TILE_SIZE);
+			long tileX = (1L << zoomLevel) / 3;
+			TileProjection projection = new TileProjection(mapSize, tileX * TILE_SIZE, 0,
+					TILE_SIZE, TILE_SIZE / 4);
+			for (int longitudeE6 = -180000000; longitudeE6 <= 180000000; longitudeE6 += 999999) {
+				double expected = MercatorProjection.longitudeToPixelX(longitudeE6 / 1000000.0,
+						mapSize) - tileX * TILE_SIZE;
+				assertEquals(expected, projection.projectX(longitudeE6),
+						Math.ulp((float) expected) + 1e-6);
+			}
+		}
+	}
+
+	private static void checkErrorBound(int tileSize) {
+		for (byte zoomLevel = 0; zoomLevel <= 22; zoomLevel++) {
+			for (long tileY : sampleRows(zoomLevel)) {
+				TileProjection projection = create(zoomLevel, tileY, tileSize);
+				assertTrue("z" + zoomLevel + ", y " + tileY + ": " + projection.getMaxError(),
+						projection.getMaxError() <= TileProjection.MAX_ERROR);
+			}
+		}
+	}
+
+	private static void checkInterpolation(int tileSize) {
+		for (byte zoomLevel = 0; zoomLevel <= 22; zoomLevel++) {
+			long mapSize = (long) tileSize << zoomLevel;
+			for (long tileY : sampleRows(zoomLevel)) {
+				TileProjection projection = create(zoomLevel, tileY, tileSize);
+				long pixelY = tileY * tileSize;
+
+				// latitudes of the table with some outside of it
+				int topE6 = toE6(pixelYToLatitude(pixelY - 10L * tileSize, mapSize));
+				int bottomE6 = toE6(pixelYToLatitude(pixelY + 11L * tileSize, mapSize));
+				for (int i = 0; i <= SAMPLES; i++) {
+					int latitudeE6 = (int) (bottomE6 + (long) (topE6 - bottomE6) * i / SAMPLES);
+					assertProjection(projection, latitudeE6, mapSize, pixelY, zoomLevel);
+				}
+
+				// edges of the table and limits of the projection
+				int tableTopE6 = toE6(pixelYToLatitude(pixelY - 8L * tileSize, mapSize));
+				int tableBottomE6 = toE6(pixelYToLatitude(pixelY + 9L * tileSize, mapSize));
+				for (int delta = -2; delta <= 2; delta++) {
+					assertProjection(projection, tableTopE6 + delta, mapSize, pixelY, zoomLevel);
+					assertProjection(projection, tableBottomE6 + delta, mapSize, pixelY, zoomLevel);
+				}
+				for (double latitude : LIMIT_LATITUDES) {
+					assertProjection(projection, toE6(latitude), mapSize, pixelY, zoomLevel);
+				}
+			}
+		}
+	}
+
+	private static void assertProjection(TileProjection projection, int latitudeE6,
+			long mapSize, long pixelY, byte zoomLevel) {
+		double expected = MercatorProjection.latitudeToPixelY(latitudeE6 / 1000000.0, mapSize)
+				- pixelY;
+		// exact projection is clipped to the map, result is limited by precision of floats
+		if (expected <= -pixelY || expected >= mapSize - pixelY) {
+			return;
+		}
+		assertEquals("z" + zoomLevel + ", y " + pixelY + ", lat " + latitudeE6, expected,
+				projection.projectY(latitudeE6),
+				TileProjection.MAX_ERROR + Math.ulp((float) expected));
+	}
+
+	private static TileProjection create(byte zoomLevel, long tileY, int tileSize) {
+		long mapSize = (long) tileSize << zoomLevel;
+		return new TileProjection(mapSize, 0, tileY * tileSize, tileSize, tileSize / 4);
+	}
+
+	/**
+	 * All rows of low zoom levels, otherwise rows at the edges and the equator of the map and
+	 * rows spread over the map.
+	 */
+	private static long[] sampleRows(byte zoomLevel) {
+		long tiles = 1L << zoomLevel;
+		if (tiles <= 256) {
+			long[] rows = new long[(int) tiles];
+			for (int i = 0; i < rows.length; i++) {
+				rows[i] = i;
+			}
+			return rows;
+		}
+		long[] rows = new long[256 + 5];
+		for (int i = 0; i < 256; i++) {
+			rows[i] = tiles * i / 256 + i % 7;
+		}
+		rows[256] = 0;
+		rows[257] = 1;
+		rows[258] = tiles / 2;
+		rows[259] = tiles - 2;
+		rows[260] = tiles - 1;
+		return rows;
+	}
+
+	private static double pixelYToLatitude(double pixelY, long mapSize) {
+		pixelY = Math.min(Math.max(pixelY, 0), mapSize);
+		return Math.toDegrees(Math.atan(Math.sinh(Math.PI * (1 - 2 * pixelY / mapSize))));
+	}
+
+	private static int toE6(double latitude) {
+		return (int) Math.round(latitude * 1000000);
+	}
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforgeV3.map.layer.renderer;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mapsforgeV3.core.model.Tile;
+import org.mapsforgeV3.core.util.MercatorProjection;
+import org.mapsforgeV3.map.reader.MapDatabase;
+import org.mapsforgeV3.map.reader.TestHandler;
+import org.mapsforgeV3.map.reader.TestMapFile;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks selection of databases for tiles by the index of their bounding boxes.
+ */
+public class MapDatabaseIndexTest {
+
+    private static final int TILE_SIZE = 256;
+    private static final int MARGIN = TILE_SIZE / 4;
+
+    private static File file;
+
+    @BeforeClass
+    public static void setUp() throws IOException {
+        TestHandler.install();
+        file = TestMapFile.writeTemp(1);
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void tilesInsideAndOutside() {
+        MapDatabase mapDatabase = open();
+        try {
+            MapDatabaseIndex index = new MapDatabaseIndex();
+            index.rebuild(Collections.singletonList(mapDatabase));
+            List<MapDatabase> result = new ArrayList<>();
+            byte zoomLevel = 12;
+
+            // tile in the middle of the map
+            int tileX = TestMapFile.longitudeToTileX(14.45, zoomLevel);
+            int tileY = TestMapFile.latitudeToTileY(50.05, zoomLevel);
+            index.query(new Tile(tileX, tileY, zoomLevel), TILE_SIZE, MARGIN, result);
+            assertEquals(Collections.singletonList(mapDatabase), result);
+
+            // tile far away
+            index.query(new Tile(tileX + 10, tileY, zoomLevel), TILE_SIZE, MARGIN, result);
+            assertTrue(result.isEmpty());
+        } finally {
+            mapDatabase.closeFile();
+        }
+    }
+
+    @Test
+    public void marginAroundTile() {
+        MapDatabase mapDatabase = open();
+        try {
+            MapDatabaseIndex index = new MapDatabaseIndex();
+            index.rebuild(Collections.singletonList(mapDatabase));
+            List<MapDatabase> result = new ArrayList<>();
+
+            // find a tile right of the map, that is closer to the map than the margin
+            int tested = 0;
+            for (byte zoomLevel = 8; zoomLevel <= 20; zoomLevel++) {
+                long mapSize = MercatorProjection.getMapSize(zoomLevel, TILE_SIZE);
+                double pixelX = MercatorProjection.longitudeToPixelX(
+                        TestMapFile.MAX_LONGITUDE, mapSize);
+                long tileX = (long) Math.floor(pixelX / TILE_SIZE) + 1;
+                double distance = tileX * TILE_SIZE - pixelX;
+                if (distance < 1 || distance > MARGIN - 1) {
+                    continue;
+                }
+                Tile tile = new Tile(tileX, TestMapFile.latitudeToTileY(50.05, zoomLevel),
+                        zoomLevel);
+                index.query(tile, TILE_SIZE, 0, result);
+                assertTrue("z" + zoomLevel, result.isEmpty());
+                index.query(tile, TILE_SIZE, MARGIN, result);
+                assertEquals("z" + zoomLevel, Collections.singletonList(mapDatabase), result);
+                tested++;
+            }
+            assertTrue(tested > 0);
+        } finally {
+            mapDatabase.closeFile();
+        }
+    }
+
+    @Test
+    public void databasesWithoutHeader() {
+        MapDatabase opened = open();
+        MapDatabase closed = new MapDatabase();
+        try {
+            MapDatabaseIndex index = new MapDatabaseIndex();
+            index.rebuild(Arrays.asList(closed, opened));
+            List<MapDatabase> result = new ArrayList<>();
+            byte zoomLevel = 12;
+            int tileX = TestMapFile.longitudeToTileX(14.45, zoomLevel);
+            int tileY = TestMapFile.latitudeToTileY(50.05, zoomLevel);
+
+            // database without a header is returned for all tiles, in the original order
+            index.query(new Tile(tileX, tileY, zoomLevel), TILE_SIZE, MARGIN, result);
+            assertEquals(Arrays.asList(closed, opened), result);
+            index.query(new Tile(tileX + 10, tileY, zoomLevel), TILE_SIZE, MARGIN, result);
+            assertEquals(Collections.singletonList(closed), result);
+
+            // once opened, rebuilt index knows its bounding box
+            assertTrue(closed.openFile(file).isSuccess());
+            index.rebuild(Arrays.asList(closed, opened));
+            index.query(new Tile(tileX + 10, tileY, zoomLevel), TILE_SIZE, MARGIN, result);
+            assertTrue(result.isEmpty());
+        } finally {
+            opened.closeFile();
+            closed.closeFile();
+        }
+    }
+
+    private static MapDatabase open() {
+        MapDatabase mapDatabase = new MapDatabase();
+        assertTrue(mapDatabase.openFile(file).isSuccess());
+        return mapDatabase;
+    }
+}
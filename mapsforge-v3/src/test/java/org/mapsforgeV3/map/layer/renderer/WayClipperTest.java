@@ -0,0 +1,295 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforgeV3.map.layer.renderer;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks clipping of lines and areas to the area of the tile with the margin.
+ */
+public class WayClipperTest {
+
+    private static final float MIN = -64;
+    private static final float MAX = 320;
+    // allowed error of computed intersections in pixels
+    private static final float EPSILON = 0.01f;
+
+    private final WayClipper clipper = new WayClipper();
+    private final CoordinateArena arena = new CoordinateArena();
+
+    /**
+     * Create way from coordinates of its segments.
+     */
+    static ContainerWay createWay(float[]... segments) {
+        int length = 0;
+        for (float[] segment : segments) {
+            length += segment.length;
+        }
+        float[] coordinates = new float[length];
+        int[] segmentOffsets = new int[segments.length + 1];
+        for (int i = 0; i < segments.length; i++) {
+            System.arraycopy(segments[i], 0, coordinates, segmentOffsets[i], segments[i].length);
+            segmentOffsets[i + 1] = segmentOffsets[i] + segments[i].length;
+        }
+        return new ContainerWay(coordinates, segmentOffsets, 0, segments.length);
+    }
+
+    /**
+     * Get coordinates of a single segment of the way.
+     */
+    static float[] getSegment(ContainerWay way, int segment) {
+        float[] result = new float[way.getSegmentLength(segment)];
+        System.arraycopy(way.coordinates, way.getSegmentOffset(segment), result, 0, result.length);
+        return result;
+    }
+
+    @Test
+    public void lineLeavingAndReentering() {
+        ContainerWay way = createWay(new float[]{0, 100, 400, 100, 400, 200, 0, 200});
+        ContainerWay clipped = this.clipper.clipLine(way, MIN, MAX, this.arena);
+        assertEquals(2, clipped.segmentCount);
+        assertArrayEquals(new float[]{0, 100, MAX, 100}, getSegment(clipped, 0), EPSILON);
+        assertArrayEquals(new float[]{MAX, 200, 0, 200}, getSegment(clipped, 1), EPSILON);
+    }
+
+    @Test
+    public void lineOnEdge() {
+        // edge lies exactly on the edge of the clip area
+        ContainerWay way = createWay(new float[]{MIN, -100, MIN, 100, 0, 100});
+        ContainerWay clipped = this.clipper.clipLine(way, MIN, MAX, this.arena);
+        assertEquals(1, clipped.segmentCount);
+        assertArrayEquals(new float[]{MIN, MIN, MIN, 100, 0, 100}, getSegment(clipped, 0),
+                EPSILON);
+
+        // touching the edge from outside keeps no single point
+        way = createWay(new float[]{-100, 0, MIN, 0, -100, 50});
+        assertNull(this.clipper.clipLine(way, MIN, MAX, this.arena));
+    }
+
+    @Test
+    public void wayOutsideAndInside() {
+        ContainerWay outside = createWay(new float[]{400, 0, 500, 100, 400, 200, 400, 0});
+        assertNull(this.clipper.clipLine(outside, MIN, MAX, this.arena));
+        assertNull(this.clipper.clipArea(outside, MIN, MAX, this.arena));
+
+        // bounding box around the clip area, but no part inside
+        ContainerWay around = createWay(new float[]{-100, -100, 400, -100, 400, -80});
+        assertNull(this.clipper.clipLine(around, MIN, MAX, this.arena));
+
+        ContainerWay inside = createWay(new float[]{0, 0, 256, 0, 256, 256, 0, 0});
+        assertSame(inside, this.clipper.clipLine(inside, MIN, MAX, this.arena));
+        assertSame(inside, this.clipper.clipArea(inside, MIN, MAX, this.arena));
+    }
+
+    @Test
+    public void degenerateRings() {
+        ContainerWay way = createWay(
+                new float[]{-100, 0, 100, 0, -100, 0},
+                new float[]{-100, 0, 100, 0},
+                new float[]{-100, 0});
+        assertNull(this.clipper.clipArea(way, MIN, MAX, this.arena));
+
+        // degenerate ring is skipped, valid ring is kept
+        way = createWay(
+                new float[]{-100, 0, 100, 0, -100, 0},
+                new float[]{-100, 0, 100, 0, 100, 100, -100, 0});
+        ContainerWay clipped = this.clipper.clipArea(way, MIN, MAX, this.arena);
+        assertEquals(1, clipped.segmentCount);
+        assertClosed(getSegment(clipped, 0));
+    }
+
+    @Test
+    public void areaWithHoles() {
+        ContainerWay way = createWay(
+                new float[]{-200, -200, 500, -200, 500, 500, -200, 500, -200, -200},
+                new float[]{0, 0, 0, 100, 100, 100, 100, 0, 0, 0},
+                new float[]{330, 300, 330, 400, 400, 400, 400, 300, 330, 300},
+                new float[]{200, 200, 200, 400, 250, 400, 250, 200, 200, 200});
+        ContainerWay clipped = this.clipper.clipArea(way, MIN, MAX, this.arena);
+
+        // outer ring covers the clip area, hole outside of the area disappears
+        assertEquals(3, clipped.segmentCount);
+        float[] outer = getSegment(clipped, 0);
+        assertClosed(outer);
+        assertEquals((MAX - MIN) * (MAX - MIN), Math.abs(getArea(outer)), EPSILON);
+        assertArrayEquals(new float[]{0, 0, 0, 100, 100, 100, 100, 0, 0, 0},
+                getSegment(clipped, 1), 0);
+        float[] cut = getSegment(clipped, 2);
+        assertClosed(cut);
+        assertEquals(50 * (MAX - 200), Math.abs(getArea(cut)), EPSILON);
+        assertCoverage(way, clipped, new Random(1));
+    }
+
+    @Test
+    public void randomLines() {
+        Random random = new Random(2);
+        for (int round = 0; round < 500; round++) {
+            ContainerWay way = createRandomWay(random, false);
+            ContainerWay clipped = this.clipper.clipLine(way, MIN, MAX, this.arena);
+            if (clipped == null) {
+                clipped = createWay();
+            }
+            assertInside(clipped);
+
+            // every visible point of the line is in the result and every point of the result
+            // lies on the line
+            for (int segment = 0; segment < way.segmentCount; segment++) {
+                float[] coordinates = getSegment(way, segment);
+                for (int i = 0; i + 3 < coordinates.length; i += 2) {
+                    for (float t = 0; t <= 1; t += 0.05f) {
+                        float x = coordinates[i] + t * (coordinates[i + 2] - coordinates[i]);
+                        float y = coordinates[i + 1] + t * (coordinates[i + 3] - coordinates[i + 1]);
+                        if (x > MIN + EPSILON && x < MAX - EPSILON
+                                && y > MIN + EPSILON && y < MAX - EPSILON) {
+                            assertTrue("round " + round, getDistance(clipped, x, y) < EPSILON);
+                        }
+                    }
+                }
+            }
+            for (int segment = 0; segment < clipped.segmentCount; segment++) {
+                float[] coordinates = getSegment(clipped, segment);
+                assertTrue(coordinates.length >= 4);
+                for (int i = 0; i + 3 < coordinates.length; i += 2) {
+                    float x = (coordinates[i] + coordinates[i + 2]) / 2;
+                    float y = (coordinates[i + 1] + coordinates[i + 3]) / 2;
+                    assertTrue("round " + round, getDistance(way, x, y) < EPSILON);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void randomAreas() {
+        Random random = new Random(3);
+        for (int round = 0; round < 500; round++) {
+            ContainerWay way = createRandomWay(random, true);
+            ContainerWay clipped = this.clipper.clipArea(way, MIN, MAX, this.arena);
+            if (clipped == null) {
+                clipped = createWay();
+            }
+            assertInside(clipped);
+            for (int segment = 0; segment < clipped.segmentCount; segment++) {
+                float[] ring = getSegment(clipped, segment);
+                assertTrue(ring.length >= 8);
+                assertClosed(ring);
+            }
+            assertCoverage(way, clipped, random);
+        }
+    }
+
+    /**
+     * Random way with up to three segments, that are closed for areas.
+     */
+    private static ContainerWay createRandomWay(Random random, boolean closed) {
+        float[][] segments = new float[1 + random.nextInt(3)][];
+        for (int i = 0; i < segments.length; i++) {
+            int points = 2 + random.nextInt(10);
+            float[] segment = new float[2 * points + (closed ? 2 : 0)];
+            for (int j = 0; j < 2 * points; j++) {
+                segment[j] = random.nextInt(800) - 250;
+            }
+            if (closed) {
+                segment[2 * points] = segment[0];
+                segment[2 * points + 1] = segment[1];
+            }
+            segments[i] = segment;
+        }
+        return createWay(segments);
+    }
+
+    private static void assertInside(ContainerWay way) {
+        for (int i = way.getSegmentOffset(0); i < way.getSegmentOffset(way.segmentCount); i++) {
+            assertTrue(way.coordinates[i] >= MIN - EPSILON && way.coordinates[i] <= MAX + EPSILON);
+        }
+    }
+
+    private static void assertClosed(float[] ring) {
+        assertEquals(ring[0], ring[ring.length - 2], 0);
+        assertEquals(ring[1], ring[ring.length - 1], 0);
+    }
+
+    /**
+     * Check that random points inside of the clip area, not close to any edge, are covered
+     * by the clipped area exactly if they are covered by the original area (even-odd rule).
+     */
+    private static void assertCoverage(ContainerWay way, ContainerWay clipped, Random random) {
+        for (int i = 0; i < 200; i++) {
+            float x = MIN + random.nextFloat() * (MAX - MIN);
+            float y = MIN + random.nextFloat() * (MAX - MIN);
+            if (getDistance(way, x, y) < 0.1f || getDistance(clipped, x, y) < 0.1f
+                    || Math.min(Math.min(x - MIN, MAX - x), Math.min(y - MIN, MAX - y)) < 0.1f) {
+                continue;
+            }
+            assertEquals("point " + x + ", " + y, isCovered(way, x, y), isCovered(clipped, x, y));
+        }
+    }
+
+    private static boolean isCovered(ContainerWay way, float x, float y) {
+        boolean covered = false;
+        for (int segment = 0; segment < way.segmentCount; segment++) {
+            float[] ring = getSegment(way, segment);
+            if (ring.length < 6) {
+                continue;
+            }
+            for (int i = 0, j = ring.length - 2; i < ring.length; j = i, i += 2) {
+                if ((ring[i + 1] > y) != (ring[j + 1] > y) && x < ring[i]
+                        + (y - ring[i + 1]) * (ring[j] - ring[i]) / (ring[j + 1] - ring[i + 1])) {
+                    covered = !covered;
+                }
+            }
+        }
+        return covered;
+    }
+
+    /**
+     * Distance of a point from the nearest edge of the way.
+     */
+    private static float getDistance(ContainerWay way, float x, float y) {
+        double distance = Double.MAX_VALUE;
+        for (int segment = 0; segment < way.segmentCount; segment++) {
+            float[] coordinates = getSegment(way, segment);
+            for (int i = 0; i + 3 < coordinates.length; i += 2) {
+                distance = Math.min(distance, getDistance(x, y, coordinates[i], coordinates[i + 1],
+                        coordinates[i + 2], coordinates[i + 3]));
+            }
+        }
+        return (float) distance;
+    }
+
+    static double getDistance(double x, double y, double x0, double y0, double x1, double y1) {
+        double dx = x1 - x0;
+        double dy = y1 - y0;
+        double lengthSq = dx * dx + dy * dy;
+        double t = lengthSq == 0 ? 0 : ((x - x0) * dx + (y - y0) * dy) / lengthSq;
+        t = Math.max(0, Math.min(1, t));
+        return Math.hypot(x - x0 - t * dx, y - y0 - t * dy);
+    }
+
+    private static float getArea(float[] ring) {
+        float area = 0;
+        for (int i = 0; i + 3 < ring.length; i += 2) {
+            area += ring[i] * ring[i + 3] - ring[i + 2] * ring[i + 1];
+        }
+        return area / 2;
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforgeV3.map.layer.renderer;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mapsforgeV3.map.layer.renderer.WayClipperTest.createWay;
+import static org.mapsforgeV3.map.layer.renderer.WayClipperTest.getSegment;
+
+/**
+ * Checks simplification of projected ways.
+ */
+public class WaySimplifierTest {
+
+    private static final float TOLERANCE = 2;
+
+    private final CoordinateArena arena = new CoordinateArena();
+
+    @Test
+    public void identity() {
+        WaySimplifier simplifier = new WaySimplifier(0, 0);
+        ContainerWay way = createWay(new float[]{0, 0, 10, 0.5f, 20, 0, 30, 0.1f},
+                new float[]{0, 0, 10, 0, 10, 10, 0, 0});
+        assertSame(way, simplifier.simplify(way, this.arena));
+
+        // collinear vertices are kept without the tolerance
+        way = createWay(new float[]{0, 0, 10, 10, 20, 20, 30, 30});
+        assertSame(way, simplifier.simplify(way, this.arena));
+    }
+
+    @Test
+    public void duplicatesAndCollinear() {
+        // repeated vertices are removed even without the tolerance
+        ContainerWay way = createWay(new float[]{0, 0, 0, 0, 10, 10, 10, 10, 10, 10, 20, 0});
+        ContainerWay simplified = new WaySimplifier(0, 0).simplify(way, this.arena);
+        assertArrayEquals(new float[]{0, 0, 10, 10, 20, 0}, getSegment(simplified, 0), 0);
+
+        // vertices snapped to the same point of the grid are merged
+        way = createWay(new float[]{0, 0, 0.2f, 0.3f, 9.8f, 10.1f, 20, 0});
+        simplified = new WaySimplifier(1, 0).simplify(way, this.arena);
+        assertArrayEquals(new float[]{0, 0, 10, 10, 20, 0}, getSegment(simplified, 0), 0);
+
+        // collinear vertices are removed by the tolerance
+        way = createWay(new float[]{0, 0, 10, 10, 20, 20, 20, 20, 30, 30, 40, 0},
+                new float[]{0, 0, 50, 0, 100, 0, 100, 100, 0, 100, 0, 50, 0, 0});
+        simplified = new WaySimplifier(0, TOLERANCE).simplify(way, this.arena);
+        assertArrayEquals(new float[]{0, 0, 30, 30, 40, 0}, getSegment(simplified, 0), 0);
+        assertArrayEquals(new float[]{0, 0, 100, 0, 100, 100, 0, 100, 0, 0},
+                getSegment(simplified, 1), 0);
+    }
+
+    @Test
+    public void minimalVertices() {
+        WaySimplifier simplifier = new WaySimplifier(1, 100);
+
+        // line keeps its end points
+        ContainerWay way = createWay(new float[]{0, 0, 5, 1, 10, 0, 15, 1, 20, 0});
+        ContainerWay simplified = simplifier.simplify(way, this.arena);
+        assertArrayEquals(new float[]{0, 0, 20, 0}, getSegment(simplified, 0), 0);
+
+        // ring smaller than the tolerance keeps three different vertices
+        way = createWay(new float[]{0, 0, 5, 0, 5, 5, 0, 5, 0, 0});
+        simplified = simplifier.simplify(way, this.arena);
+        assertEquals(way.getSegmentLength(0), simplified.getSegmentLength(0));
+
+        // segments collapsing to a single point of the grid are kept without a change
+        way = createWay(new float[]{0.1f, 0.1f, 0.2f, 0.2f},
+                new float[]{0.1f, 0.1f, 0.2f, 0.1f, 0.2f, 0.2f, 0.1f, 0.1f});
+        simplified = simplifier.simplify(way, this.arena);
+        assertArrayEquals(getSegment(way, 0), getSegment(simplified, 0), 0);
+        assertArrayEquals(getSegment(way, 1), getSegment(simplified, 1), 0);
+    }
+
+    @Test
+    public void randomWays() {
+        Random random = new Random(1);
+        WaySimplifier simplifier = new WaySimplifier(0, TOLERANCE);
+        for (int round = 0; round < 500; round++) {
+            boolean closed = random.nextBoolean();
+            ContainerWay way = createRandomWay(random, closed);
+            ContainerWay simplified = simplifier.simplify(way, this.arena);
+            assertEquals(way.segmentCount, simplified.segmentCount);
+            for (int segment = 0; segment < way.segmentCount; segment++) {
+                float[] original = getSegment(way, segment);
+                float[] result = getSegment(simplified, segment);
+                assertTrue(result.length >= (closed ? 8 : 4));
+                assertEquals(original[0], result[0], 0);
+                assertEquals(original[1], result[1], 0);
+                assertEquals(original[original.length - 2], result[result.length - 2], 0);
+                assertEquals(original[original.length - 1], result[result.length - 1], 0);
+
+                // kept vertices are in the original order, dropped ones within the tolerance
+                int kept = 0;
+                for (int i = 0; i < original.length; i += 2) {
+                    if (kept < result.length && original[i] == result[kept]
+                            && original[i + 1] == result[kept + 1]) {
+                        kept += 2;
+                        continue;
+                    }
+                    assertTrue("round " + round, kept > 0);
+                    double distance = WayClipperTest.getDistance(original[i], original[i + 1],
+                            result[kept - 2], result[kept - 1], result[kept], result[kept + 1]);
+                    assertTrue("round " + round, distance <= TOLERANCE + 0.001);
+                }
+                assertEquals(result.length, kept);
+            }
+        }
+    }
+
+    /**
+     * Random walk with small steps, so many vertices are within the tolerance.
+     */
+    private static ContainerWay createRandomWay(Random random, boolean closed) {
+        float[][] segments = new float[1 + random.nextInt(3)][];
+        for (int i = 0; i < segments.length; i++) {
+            int points = 3 + random.nextInt(30);
+            float[] segment = new float[2 * points + (closed ? 2 : 0)];
+            float x = random.nextInt(256);
+            float y = random.nextInt(256);
+            for (int j = 0; j < 2 * points; j += 2) {
+                x += random.nextFloat() * 6 - 2;
+                y += random.nextFloat() * 6 - 3;
+                segment[j] = x;
+                segment[j + 1] = y;
+            }
+            if (closed) {
+                segment[2 * points] = segment[0];
+                segment[2 * points + 1] = segment[1];
+            }
+            segments[i] = segment;
+        }
+        return createWay(segments);
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforgeV3.map.reader;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that ranges read asynchronously by a slow channel are handed to the read buffer in the
+ * order of the plan and with the right content, also if later reads finish first.
+ */
+public class AsyncBlockReadsTest {
+
+    private static final int FILE_SIZE = 1 << 20;
+    // position of the sub-file in the file
+    private static final long START_ADDRESS = 1000;
+    private static final int MAX_GAP = 256;
+    private static final int MAX_SIZE = 16 * 1024;
+
+    private static File file;
+    private static ExecutorService executor;
+
+    private RandomAccessFile input;
+    private FileChannel channel;
+
+    @BeforeClass
+    public static void setUpClass() throws IOException {
+        file = File.createTempFile("blocks", ".bin");
+        byte[] data = new byte[FILE_SIZE];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = getByte(i);
+        }
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(data);
+        }
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        executor.shutdownNow();
+        file.delete();
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        this.input = new RandomAccessFile(file, "r");
+        // reads at the start of the file are the slowest ones
+        this.channel = new DelayedFileChannel(this.input.getChannel(),
+                position -> Math.max(0, 20 - position / 8192));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        this.channel.close();
+    }
+
+    @Test
+    public void rangesInOrderOfPlan() throws IOException {
+        BlockPlan plan = new BlockPlan();
+        DecodedBlock cached = createEmptyBlock();
+        long pointer = 0;
+        for (int i = 0; i < 200; i++) {
+            int size = 1 + (i * 97) % 3000;
+            // gaps between blocks split some ranges, some blocks are already decoded
+            pointer += (i % 5 == 0) ? 2 * MAX_GAP : i % 3;
+            plan.add(i, pointer, size, i % 11 == 3 ? cached : null);
+            pointer += size;
+        }
+
+        AsyncBlockReads reads = new AsyncBlockReads();
+        int ranges = reads.prepare(plan, MAX_GAP, MAX_SIZE);
+        assertTrue(ranges > 10);
+        reads.start(executor, this.channel, START_ADDRESS, plan);
+        ReadBuffer readBuffer = new ReadBuffer(this.channel);
+        try {
+            int rangeEnd = 0;
+            long rangeStart = 0;
+            int readRanges = 0;
+            for (int i = 0; i < plan.size(); i++) {
+                if (plan.getDecodedBlock(i) != null) {
+                    continue;
+                }
+                if (i >= rangeEnd) {
+                    rangeEnd = reads.next(readBuffer, i);
+                    assertTrue("block " + i, rangeEnd > i);
+                    rangeStart = plan.getBlockPointer(i);
+                    readRanges++;
+                }
+                readBuffer.setBlock((int) (plan.getBlockPointer(i) - rangeStart),
+                        plan.getBlockSize(i));
+                assertBlock(readBuffer, plan, i);
+            }
+            assertEquals(ranges, readRanges);
+        } finally {
+            reads.finish();
+        }
+    }
+
+    @Test
+    public void failedRead() throws IOException {
+        BlockPlan plan = new BlockPlan();
+        plan.add(0, 0, 100, null);
+        // block after the end of the file
+        plan.add(1, FILE_SIZE + MAX_GAP * 2, 100, null);
+
+        AsyncBlockReads reads = new AsyncBlockReads();
+        assertEquals(2, reads.prepare(plan, MAX_GAP, MAX_SIZE));
+        reads.start(executor, this.channel, START_ADDRESS, plan);
+        ReadBuffer readBuffer = new ReadBuffer(this.channel);
+        try {
+            // ranges may not be skipped
+            assertEquals(-1, reads.next(readBuffer, 1));
+        } finally {
+            reads.finish();
+        }
+
+        assertEquals(2, reads.prepare(plan, MAX_GAP, MAX_SIZE));
+        reads.start(executor, this.channel, START_ADDRESS, plan);
+        try {
+            assertEquals(1, reads.next(readBuffer, 0));
+            assertEquals(-1, reads.next(readBuffer, 1));
+        } finally {
+            reads.finish();
+        }
+    }
+
+    @Test
+    public void asyncEqualsSequential() throws IOException {
+        TestHandler handler = TestHandler.install();
+        File map = TestMapFile.writeTemp(7);
+        try {
+            for (byte zoomLevel = 8; zoomLevel <= 14; zoomLevel += 2) {
+                assertEquals("z" + zoomLevel, readAll(map, false, zoomLevel),
+                        readAll(map, true, zoomLevel));
+            }
+        } finally {
+            map.delete();
+        }
+        assertEquals(0, handler.problems);
+    }
+
+    private static String readAll(File map, boolean asyncReads, byte zoomLevel) {
+        MapDatabase mapDatabase = new MapDatabase();
+        mapDatabase.setAsyncReads(asyncReads);
+        assertTrue(mapDatabase.openFile(map).isSuccess());
+        try {
+            return RecordingVisitor.readAll(mapDatabase, zoomLevel, false);
+        } finally {
+            mapDatabase.closeFile();
+        }
+    }
+
+    private static void assertBlock(ReadBuffer readBuffer, BlockPlan plan, int block) {
+        long position = START_ADDRESS + plan.getBlockPointer(block);
+        for (int i = 0; i < plan.getBlockSize(block); i++) {
+            assertEquals("block " + block + ", byte " + i, getByte(position + i),
+                    readBuffer.readByte());
+        }
+    }
+
+    private static DecodedBlock createEmptyBlock() {
+        DecodedBlock.Builder builder = new DecodedBlock.Builder();
+        builder.reset(new int[1][2]);
+        return builder.build();
+    }
+
+    private static byte getByte(long position) {
+        return (byte) (position * 7 + position / 251);
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforgeV3.map.reader;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Plain JVM benchmark of sequential and asynchronous reads of planned blocks from a channel,
+ * that delays every read to simulate slow storage. Usage:
+ * <pre>
+ * AsyncReadsBenchmark [delay in ms] [blocks]
+ * </pre>
+ */
+public class AsyncReadsBenchmark {
+
+    private static final int BLOCK_SIZE = 4096;
+    private static final int MAX_GAP = 256;
+    private static final int MAX_SIZE = 4 * BLOCK_SIZE;
+    // number of threads of the executor, same as in the map database
+    private static final int THREADS = 4;
+
+    public static void main(String[] args) throws Exception {
+        final long delay = args.length > 0 ? Long.parseLong(args[0]) : 2;
+        int blocks = args.length > 1 ? Integer.parseInt(args[1]) : 64;
+
+        // blocks separated by gaps, so some of them are read by a single read
+        BlockPlan plan = new BlockPlan();
+        long pointer = 0;
+        for (int i = 0; i < blocks; i++) {
+            pointer += i % 4 == 0 ? 2 * MAX_GAP : 0;
+            plan.add(i, pointer, BLOCK_SIZE, null);
+            pointer += BLOCK_SIZE;
+        }
+        File file = File.createTempFile("blocks", ".bin");
+        file.deleteOnExit();
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[(int) pointer]);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+            FileChannel channel = new DelayedFileChannel(input.getChannel(), position -> delay);
+            AsyncBlockReads reads = new AsyncBlockReads();
+            ReadBuffer readBuffer = new ReadBuffer(channel);
+            for (int round = 0; round < 3; round++) {
+                long time = System.nanoTime();
+                int ranges = readSequential(channel, plan);
+                long sequential = System.nanoTime() - time;
+
+                time = System.nanoTime();
+                reads.prepare(plan, MAX_GAP, MAX_SIZE);
+                reads.start(executor, channel, 0, plan);
+                try {
+                    for (int i = 0; i < plan.size(); ) {
+                        i = reads.next(readBuffer, i);
+                    }
+                } finally {
+                    reads.finish();
+                }
+                long async = System.nanoTime() - time;
+                System.out.printf("%d blocks, %d ranges, delay %d ms: sequential %.1f ms, "
+                                + "async %.1f ms%n", blocks, ranges, delay,
+                        sequential / 1000000.0, async / 1000000.0);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static int readSequential(FileChannel channel, BlockPlan plan) throws IOException {
+        byte[] buffer = new byte[MAX_SIZE];
+        int ranges = 0;
+        for (int i = 0; i < plan.size(); ) {
+            int to = plan.getRangeEnd(i, MAX_GAP, MAX_SIZE);
+            ReadBuffer.readFully(channel, ByteBuffer.wrap(buffer, 0, plan.getRangeSize(i, to)),
+                    plan.getBlockPointer(i));
+            ranges++;
+            i = to;
+        }
+        return ranges;
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforgeV3.map.reader;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that features replayed from the cache of decoded blocks are the same as features
+ * decoded directly from the file.
+ */
+public class DecodedBlockCacheTest {
+
+    private static TestHandler handler;
+    private static File file;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        handler = TestHandler.install();
+        file = TestMapFile.writeTemp(3);
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void replayEqualsDecoding() {
+        for (byte zoomLevel = 10; zoomLevel <= 16; zoomLevel++) {
+            for (boolean projected : new boolean[]{false, true}) {
+                String direct = readAll(0, zoomLevel, projected);
+                // second read is replayed from the cache
+                String cached = readAll(64 * 1024 * 1024, zoomLevel, projected);
+                assertTrue(direct.length() > 0);
+                assertEquals("z" + zoomLevel + ", projected: " + projected, direct, cached);
+            }
+        }
+        assertEquals(0, handler.problems);
+    }
+
+    private static String readAll(long cacheSize, byte zoomLevel, boolean projected) {
+        MapDatabase mapDatabase = new MapDatabase();
+        mapDatabase.setDecodedBlockCacheSize(cacheSize);
+        assertTrue(mapDatabase.openFile(file).isSuccess());
+        try {
+            RecordingVisitor.readAll(mapDatabase, zoomLevel, projected);
+            return RecordingVisitor.readAll(mapDatabase, zoomLevel, projected);
+        } finally {
+            mapDatabase.closeFile();
+        }
+    }
+}
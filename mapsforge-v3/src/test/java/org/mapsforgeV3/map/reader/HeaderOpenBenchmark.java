@@ -0,0 +1,72 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforgeV3.map.reader;
+
+import java.io.File;
+import java.nio.file.Files;
+
+/**
+ * Plain JVM benchmark of opening of a map file with the header parsed from the file (cold)
+ * and loaded from its snapshot (warm). Usage:
+ * <pre>
+ * HeaderOpenBenchmark [map file] [opens per round] [rounds]
+ * </pre>
+ * Without a map file, the synthetic test map is generated. Its header has only a few tags, so
+ * real maps show a larger difference.
+ */
+public class HeaderOpenBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        TestHandler.install();
+        File file = args.length > 0 ? new File(args[0]) : TestMapFile.writeTemp(1);
+        int opens = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+        File snapshotDir = Files.createTempDirectory("snapshots").toFile();
+
+        try {
+            for (int round = 0; round < rounds; round++) {
+                long cold = run(file, null, opens);
+                long warm = run(file, snapshotDir, opens);
+                System.out.println("round " + round + ": cold "
+                        + String.format("%.1f", cold / 1000.0 / opens) + " us/open, warm "
+                        + String.format("%.1f", warm / 1000.0 / opens) + " us/open");
+            }
+        } finally {
+            File[] snapshots = snapshotDir.listFiles();
+            if (snapshots != null) {
+                for (File snapshot : snapshots) {
+                    snapshot.delete();
+                }
+            }
+            snapshotDir.delete();
+        }
+    }
+
+    /**
+     * @return time of all opens in nanoseconds
+     */
+    private static long run(File file, File snapshotDir, int opens) {
+        MapDatabase mapDatabase = new MapDatabase();
+        mapDatabase.setHeaderSnapshotDir(snapshotDir);
+        long start = System.nanoTime();
+        for (int i = 0; i < opens; i++) {
+            if (!mapDatabase.openFile(file).isSuccess()) {
+                throw new IllegalStateException("invalid map file: " + file);
+            }
+            mapDatabase.closeFile();
+        }
+        return System.nanoTime() - start;
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforgeV3.map.reader;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mapsforgeV3.map.reader.header.SubFileParameter;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that a header loaded from its snapshot is the same as the parsed header and that
+ * stale or damaged snapshots are not used.
+ */
+public class HeaderSnapshotTest {
+
+    // time set to snapshots, so their rewriting may be detected
+    private static final long OLD_TIME = 1000000000000L;
+
+    private TestHandler handler;
+    private File file;
+    private File snapshotDir;
+
+    @Before
+    public void setUp() throws Exception {
+        this.handler = TestHandler.install();
+        this.file = TestMapFile.writeTemp(13);
+        this.snapshotDir = Files.createTempDirectory("snapshots").toFile();
+    }
+
+    @After
+    public void tearDown() {
+        File[] snapshots = this.snapshotDir.listFiles();
+        if (snapshots != null) {
+            for (File snapshot : snapshots) {
+                snapshot.delete();
+            }
+        }
+        this.snapshotDir.delete();
+        this.file.delete();
+    }
+
+    @Test
+    public void snapshotEqualsParsedHeader() throws Exception {
+        String parsed = describe(null);
+
+        // first open writes the snapshot, second open loads it
+        assertEquals(parsed, describe(this.snapshotDir));
+        File snapshot = getSnapshot();
+        assertTrue(snapshot.setLastModified(OLD_TIME));
+        assertEquals(parsed, describe(this.snapshotDir));
+        assertEquals("snapshot was rewritten", OLD_TIME, snapshot.lastModified());
+        assertEquals(0, this.handler.problems);
+    }
+
+    @Test
+    public void staleSnapshotIsReplaced() throws Exception {
+        describe(this.snapshotDir);
+        File snapshot = getSnapshot();
+        assertTrue(snapshot.setLastModified(OLD_TIME));
+
+        // same file name with other content
+        TestMapFile.write(this.file, 14, 0);
+        assertTrue(this.file.setLastModified(this.file.lastModified() + 2000));
+        String parsed = describe(null);
+        assertEquals(parsed, describe(this.snapshotDir));
+        assertNotEquals("snapshot was not rewritten", OLD_TIME, snapshot.lastModified());
+        assertEquals(parsed, describe(this.snapshotDir));
+        assertEquals(0, this.handler.problems);
+    }
+
+    @Test
+    public void damagedSnapshotIsReplaced() throws Exception {
+        String parsed = describe(this.snapshotDir);
+        File snapshot = getSnapshot();
+        try (RandomAccessFile output = new RandomAccessFile(snapshot, "rw")) {
+            output.setLength(output.length() / 2);
+        }
+        assertEquals(parsed, describe(this.snapshotDir));
+        assertEquals(1, this.handler.problems);
+        assertEquals(parsed, describe(this.snapshotDir));
+        assertEquals(1, this.handler.problems);
+    }
+
+    private File getSnapshot() {
+        File[] snapshots = this.snapshotDir.listFiles();
+        assertEquals(1, snapshots.length);
+        return snapshots[0];
+    }
+
+    /**
+     * Open the map and describe its header and all read features.
+     *
+     * @param snapshotDir directory of snapshots, or {@code null} to parse the header
+     * @return text with content of the header and features of the map
+     */
+    private String describe(File snapshotDir) throws Exception {
+        MapDatabase mapDatabase = new MapDatabase();
+        mapDatabase.setHeaderSnapshotDir(snapshotDir);
+        assertTrue(mapDatabase.openFile(this.file).isSuccess());
+        try {
+            StringBuilder output = new StringBuilder();
+            appendFields(output, mapDatabase.getMapFileInfo());
+            for (byte zoomLevel = 0; zoomLevel <= 22; zoomLevel++) {
+                SubFileParameter subFile = mapDatabase.getSubFileParameter(
+                        mapDatabase.getQueryZoomLevel(zoomLevel));
+                if (subFile != null) {
+                    appendFields(output, subFile);
+                }
+            }
+            output.append(mapDatabase.getHeaderHash()).append('\n');
+            for (byte zoomLevel = 8; zoomLevel <= 16; zoomLevel += 4) {
+                output.append(RecordingVisitor.readAll(mapDatabase, zoomLevel, false));
+            }
+            return output.toString();
+        } finally {
+            mapDatabase.closeFile();
+        }
+    }
+
+    // append all public fields of the object
+    private static void appendFields(StringBuilder output, Object object) throws Exception {
+        for (Field field : object.getClass().getFields()) {
+            Object value = field.get(object);
+            output.append(field.getName()).append('=').append(value instanceof Object[]
+                    ? Arrays.toString((Object[]) value) : String.valueOf(value)).append('\n');
+        }
+    }
+}
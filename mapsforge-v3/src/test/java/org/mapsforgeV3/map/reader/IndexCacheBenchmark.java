@@ -0,0 +1,96 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforgeV3.map.reader;
+
+import org.mapsforgeV3.map.reader.header.SubFileParameter;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Random;
+
+/**
+ * Plain JVM benchmark of index lookups from 1, 2, 4 and 8 threads at once. Usage:
+ * <pre>
+ * IndexCacheBenchmark [lookups per thread] [rounds]
+ * </pre>
+ * The synthetic test map is generated and the cache holds all its index blocks, so only
+ * lookups of cached entries are measured.
+ */
+public class IndexCacheBenchmark {
+
+    private static final int[] THREADS = {1, 2, 4, 8};
+    private static final int CAPACITY = 64;
+
+    public static void main(String[] args) throws Exception {
+        TestHandler.install();
+        int lookups = args.length > 0 ? Integer.parseInt(args[0]) : 10000000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        File file = TestMapFile.writeTemp(1);
+        final SubFileParameter[] subFiles = IndexCacheTest.loadSubFiles(file);
+
+        try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+            final IndexCache indexCache = new IndexCache(input.getChannel(), CAPACITY);
+            for (int threads : THREADS) {
+                for (int round = 0; round < rounds; round++) {
+                    long time = run(indexCache, subFiles, threads, lookups);
+                    System.out.println("threads: " + threads + ", round " + round + ": "
+                            + String.format("%.1f", (double) time / lookups) + " ns/lookup");
+                }
+            }
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * @return time of the slowest thread in nanoseconds
+     */
+    private static long run(final IndexCache indexCache, final SubFileParameter[] subFiles,
+            int threads, final int lookups) throws InterruptedException {
+        final long[] times = new long[threads];
+        // sums of entries keep lookups from being optimized away
+        final long[] sums = new long[threads];
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            final int worker = t;
+            workers[t] = new Thread(() -> {
+                // random blocks prepared in advance, so the random generator is not measured
+                Random random = new Random(worker);
+                int[] blocks = new int[4096];
+                int[] subFileIndices = new int[blocks.length];
+                for (int i = 0; i < blocks.length; i++) {
+                    subFileIndices[i] = random.nextInt(subFiles.length);
+                    blocks[i] = random.nextInt((int) subFiles[subFileIndices[i]].numberOfBlocks);
+                }
+
+                long start = System.nanoTime();
+                long sum = 0;
+                for (int i = 0; i < lookups; i++) {
+                    int j = i & (blocks.length - 1);
+                    sum += indexCache.getIndexEntry(subFiles[subFileIndices[j]], blocks[j]);
+                }
+                times[worker] = System.nanoTime() - start;
+                sums[worker] = sum;
+            });
+            workers[t].start();
+        }
+        long time = 0;
+        for (int t = 0; t < threads; t++) {
+            workers[t].join();
+            time = Math.max(time, times[t]);
+        }
+        return time;
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforgeV3.map.reader;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mapsforgeV3.map.reader.header.SubFileParameter;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that lookups in the index cache return entries stored in the file, also from many
+ * threads at once and with a cache small enough to replace entries all the time.
+ */
+public class IndexCacheTest {
+
+    // zoom levels of all sub-files of the test map
+    private static final byte[] ZOOM_LEVELS = {5, 12, 18};
+    private static final int THREADS = 8;
+    private static final int LOOKUPS = 200000;
+
+    private static File file;
+    private static SubFileParameter[] subFiles;
+    private static long[][] expected;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        TestHandler.install();
+        file = TestMapFile.writeTemp(11);
+        subFiles = loadSubFiles(file);
+        expected = new long[subFiles.length][];
+        try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+            for (int i = 0; i < subFiles.length; i++) {
+                expected[i] = readIndex(input.getChannel(), subFiles[i]);
+            }
+        }
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        file.delete();
+    }
+
+    /**
+     * @return parameters of all sub-files of the map
+     */
+    static SubFileParameter[] loadSubFiles(File file) {
+        MapDatabase mapDatabase = new MapDatabase();
+        assertTrue(mapDatabase.openFile(file).isSuccess());
+        try {
+            SubFileParameter[] subFiles = new SubFileParameter[ZOOM_LEVELS.length];
+            for (int i = 0; i < ZOOM_LEVELS.length; i++) {
+                subFiles[i] = mapDatabase.getSubFileParameter(ZOOM_LEVELS[i]);
+            }
+            return subFiles;
+        } finally {
+            mapDatabase.closeFile();
+        }
+    }
+
+    // read all index entries of a sub-file directly
+    private static long[] readIndex(FileChannel channel, SubFileParameter subFile)
+            throws Exception {
+        byte[] data = new byte[(int) subFile.numberOfBlocks * SubFileParameter.BYTES_PER_INDEX_ENTRY];
+        assertTrue(ReadBuffer.readFully(channel, ByteBuffer.wrap(data), subFile.indexStartAddress));
+        long[] index = new long[(int) subFile.numberOfBlocks];
+        for (int i = 0; i < index.length; i++) {
+            index[i] = Deserializer.getFiveBytesLong(data, i * SubFileParameter.BYTES_PER_INDEX_ENTRY);
+        }
+        return index;
+    }
+
+    @Test
+    public void lookupsMatchFile() throws Exception {
+        for (int capacity : new int[]{1, 4, 64}) {
+            try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+                IndexCache indexCache = new IndexCache(input.getChannel(), capacity);
+                for (int i = 0; i < subFiles.length; i++) {
+                    for (long block = 0; block < subFiles[i].numberOfBlocks; block++) {
+                        assertEquals(expected[i][(int) block],
+                                indexCache.getIndexEntry(subFiles[i], block));
+                    }
+                    assertEquals(-1, indexCache.getIndexEntry(subFiles[i],
+                            subFiles[i].numberOfBlocks));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void preloadedLookupsMatchFile() throws Exception {
+        try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+            IndexCache indexCache = new IndexCache(input.getChannel(), 1);
+            indexCache.preloadIndexes(subFiles);
+            for (int i = 0; i < subFiles.length; i++) {
+                for (long block = 0; block < subFiles[i].numberOfBlocks; block++) {
+                    assertEquals(expected[i][(int) block],
+                            indexCache.getIndexEntry(subFiles[i], block));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void concurrentLookupsMatchFile() throws Exception {
+        for (int capacity : new int[]{1, 4, 64}) {
+            try (RandomAccessFile input = new RandomAccessFile(file, "r")) {
+                final IndexCache indexCache = new IndexCache(input.getChannel(), capacity);
+                final AtomicReference<String> failure = new AtomicReference<>();
+                Thread[] threads = new Thread[THREADS];
+                for (int t = 0; t < THREADS; t++) {
+                    final long seed = t;
+                    threads[t] = new Thread(() -> {
+                        Random random = new Random(seed);
+                        for (int i = 0; i < LOOKUPS && failure.get() == null; i++) {
+                            int subFile = random.nextInt(subFiles.length);
+                            int block = random.nextInt((int) subFiles[subFile].numberOfBlocks);
+                            long entry = indexCache.getIndexEntry(subFiles[subFile], block);
+                            if (entry != expected[subFile][block]) {
+                                failure.compareAndSet(null, "sub-file " + subFile
+                                        + ", block " + block + ": " + entry);
+                            }
+                        }
+                    });
+                    threads[t].start();
+                }
+                for (Thread thread : threads) {
+                    thread.join();
+                }
+                assertNull("capacity " + capacity, failure.get());
+            }
+        }
+    }
+}
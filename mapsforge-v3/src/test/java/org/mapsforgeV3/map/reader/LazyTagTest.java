@@ -0,0 +1,239 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforgeV3.map.reader;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mapsforgeV3.core.model.Tag;
+import org.mapsforgeV3.core.model.Tile;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that lazily decoded values of tags are the same as values of fully decoded strings,
+ * from loaded and from memory-mapped data, and that names in the preferred language are the
+ * same as extracted by splitting of the multilingual string.
+ */
+public class LazyTagTest {
+
+    private static final byte[] ZOOM_LEVELS = {8, 12, 15};
+    private static final String[] LANGUAGES = {null, "en", "DE", "cs", "zh_py", "zh-min-lan",
+            "zh-TW", "fr"};
+
+    private static TestHandler handler;
+    private static File file;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        handler = TestHandler.install();
+        file = TestMapFile.writeTemp(23);
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void valuesMatchFullDecoding() {
+        List<String> values = new ArrayList<>();
+        for (String name : TestMapFile.NAMES) {
+            values.add(name);
+        }
+        Random random = new Random(1);
+        for (int i = 0; i < 500; i++) {
+            values.add(randomString(random));
+        }
+        TestMapFile.Buffer out = new TestMapFile.Buffer();
+        for (String value : values) {
+            out.writeString(value);
+        }
+        byte[] data = out.toByteArray();
+
+        for (boolean mapped : new boolean[]{false, true}) {
+            ReadBuffer readBuffer = ReadBufferTest.createBuffer(data, mapped);
+            for (String value : values) {
+                int byteCount = readBuffer.readUnsignedInt();
+                int offset = readBuffer.skipUTF8EncodedString(byteCount);
+                assertEquals(value.getBytes(StandardCharsets.UTF_8).length, byteCount);
+
+                // whole string
+                LazyTag tag = readBuffer.newLazyTag("ref", MapDatabase.TAG_KEY_REF, offset,
+                        byteCount, 0, value.length(), LazyTag.hashChars(value.toCharArray(),
+                                0, value.length()));
+                assertEquals(value, tag.getValueAsString());
+                assertEquals(new Tag("ref", value), tag);
+                assertEquals(new Tag("ref", value).hashCode(), tag.hashCode());
+                assertEquals(value, tag.toTag().getValueAsString());
+
+                // part of the string
+                int start = value.length() / 3;
+                int length = value.length() / 2;
+                String part = value.substring(start, start + length);
+                tag = readBuffer.newLazyTag("name", MapDatabase.TAG_KEY_NAME, offset, byteCount,
+                        start, length, part.hashCode());
+                assertEquals(part, tag.getValueAsString());
+                assertEquals(new Tag("name", part), tag);
+            }
+        }
+    }
+
+    @Test
+    public void namesMatchSplit() {
+        for (String language : LANGUAGES) {
+            TreeSet<String> expected = new TreeSet<>();
+            for (String name : TestMapFile.NAMES) {
+                expected.add(extract(name, language));
+            }
+            for (boolean mapped : new boolean[]{false, true}) {
+                MapDatabase mapDatabase = new MapDatabase();
+                mapDatabase.setMemoryMappedFile(mapped);
+                mapDatabase.setPreferredLanguage(language);
+                assertTrue(mapDatabase.openFile(file).isSuccess());
+                try {
+                    NameVisitor visitor = new NameVisitor();
+                    for (byte zoomLevel : ZOOM_LEVELS) {
+                        readAll(mapDatabase, zoomLevel, visitor);
+                    }
+                    assertEquals("language " + language, expected, visitor.names);
+                    assertTrue(visitor.values > 1000);
+                } finally {
+                    mapDatabase.closeFile();
+                }
+            }
+        }
+        assertEquals(0, handler.problems);
+    }
+
+    private static void readAll(MapDatabase mapDatabase, byte zoomLevel, FeatureVisitor visitor) {
+        int left = TestMapFile.longitudeToTileX(TestMapFile.MIN_LONGITUDE, zoomLevel);
+        int right = TestMapFile.longitudeToTileX(TestMapFile.MAX_LONGITUDE, zoomLevel);
+        int top = TestMapFile.latitudeToTileY(TestMapFile.MAX_LATITUDE, zoomLevel);
+        int bottom = TestMapFile.latitudeToTileY(TestMapFile.MIN_LATITUDE, zoomLevel);
+        for (int y = top; y <= bottom; y++) {
+            for (int x = left; x <= right; x++) {
+                mapDatabase.readTile(new Tile(x, y, zoomLevel), visitor, null, null);
+            }
+        }
+    }
+
+    /**
+     * Random string with characters encoded by one to four bytes.
+     */
+    private static String randomString(Random random) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 1 + random.nextInt(40); i > 0; i--) {
+            switch (random.nextInt(4)) {
+                case 0:
+                    builder.append((char) (' ' + random.nextInt(95)));
+                    break;
+                case 1:
+                    builder.append((char) (0x80 + random.nextInt(0x780)));
+                    break;
+                case 2:
+                    builder.append((char) (0x800 + random.nextInt(0xd000)));
+                    break;
+                default:
+                    builder.appendCodePoint(0x10000 + random.nextInt(0x100000));
+                    break;
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Extract name in the preferred language by splitting of the multilingual string, as the
+     * reader did before names were extracted from decoded characters.
+     */
+    private static String extract(String s, String lang) {
+        String[] langNames = s.split("\r", 0);
+        if (lang == null) {
+            String[] langName = langNames[0].split("\b", 0);
+            if (langName.length == 1) {
+                return langName[0];
+            }
+            lang = "en";
+        }
+        String fallback = null;
+        for (int i = 1; i < langNames.length; i++) {
+            String[] langName = langNames[i].split("\b", 0);
+            if (langName.length != 2) {
+                continue;
+            }
+            if (langName[0].equalsIgnoreCase(lang)) {
+                return langName[1];
+            }
+            if (fallback == null && !langName[0].contains("-")
+                    && (lang.contains("-") || lang.contains("_"))
+                    && lang.toLowerCase(Locale.ENGLISH).startsWith(
+                    langName[0].toLowerCase(Locale.ENGLISH))) {
+                fallback = langName[1];
+            }
+        }
+        if (fallback != null && fallback.length() > 0) {
+            return fallback;
+        }
+        String[] langName = langNames[0].split("\b", 0);
+        return langName.length == 2 ? langName[1] : langNames[0];
+    }
+
+    /**
+     * Visitor collecting all names and checking hashes of all text values.
+     */
+    private static class NameVisitor implements FeatureVisitor {
+
+        final TreeSet<String> names = new TreeSet<>();
+        int values;
+
+        @Override
+        public void renderNode(byte layer, Tag[] tags, int latitudeE6, int longitudeE6) {
+            check(tags);
+        }
+
+        @Override
+        public void renderWay(Way way) {
+            check(way.tags);
+        }
+
+        private void check(Tag[] tags) {
+            for (Tag tag : tags) {
+                if (!(tag instanceof LazyTag)) {
+                    continue;
+                }
+                String value = tag.getValueAsString();
+                assertEquals(value.hashCode(), tag.value);
+                if (tag.key == MapDatabase.TAG_KEY_NAME) {
+                    this.names.add(value);
+                } else if (tag.key == MapDatabase.TAG_KEY_HOUSE_NUMBER) {
+                    assertTrue(value, value.matches("[0-9]+a?"));
+                } else {
+                    assertEquals(MapDatabase.TAG_KEY_REF, tag.key);
+                    assertTrue(value, value.matches("E[0-9]+"));
+                }
+                this.values++;
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforgeV3.map.reader;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks releasing of map files over the limit of the pool and their opening again.
+ */
+public class MapDatabasePoolTest {
+
+    private static final byte ZOOM_LEVEL = 13;
+
+    private TestHandler handler;
+    private File first;
+    private File second;
+    private MapDatabase firstDatabase;
+    private MapDatabase secondDatabase;
+
+    @Before
+    public void setUp() throws IOException {
+        this.handler = TestHandler.install();
+        this.first = TestMapFile.writeTemp(11);
+        this.second = TestMapFile.writeTemp(12);
+        this.firstDatabase = new MapDatabase();
+        this.secondDatabase = new MapDatabase();
+        assertTrue(this.firstDatabase.openFile(this.first).isSuccess());
+        assertTrue(this.secondDatabase.openFile(this.second).isSuccess());
+    }
+
+    @After
+    public void tearDown() {
+        this.firstDatabase.closeFile();
+        this.secondDatabase.closeFile();
+        this.first.delete();
+        this.second.delete();
+    }
+
+    @Test
+    public void releaseOverLimit() {
+        String expected = RecordingVisitor.readAll(this.firstDatabase, ZOOM_LEVEL, true);
+        MapDatabasePool pool = new MapDatabasePool(1, true);
+        assertTrue(pool.acquire(this.firstDatabase));
+        assertTrue(pool.acquire(this.secondDatabase));
+        assertEquals(1, pool.getOpenFilesCount());
+
+        // released database keeps its header
+        assertFalse(this.firstDatabase.hasOpenFile());
+        assertTrue(this.firstDatabase.hasFileHeader());
+        assertTrue(this.secondDatabase.hasOpenFile());
+
+        assertTrue(pool.acquire(this.firstDatabase));
+        assertFalse(this.secondDatabase.hasOpenFile());
+        assertEquals(expected, RecordingVisitor.readAll(this.firstDatabase, ZOOM_LEVEL, true));
+
+        // higher limit releases nothing, lower limit releases the least recently used files
+        pool.setMaxOpenFiles(2);
+        assertTrue(pool.acquire(this.secondDatabase));
+        assertEquals(2, pool.getOpenFilesCount());
+        pool.setMaxOpenFiles(1);
+        assertEquals(1, pool.getOpenFilesCount());
+        assertFalse(this.firstDatabase.hasOpenFile());
+        assertTrue(this.secondDatabase.hasOpenFile());
+        assertEquals(0, this.handler.problems);
+    }
+
+    @Test
+    public void reopenModifiedFile() throws IOException {
+        MapDatabasePool pool = new MapDatabasePool(1, true);
+        assertTrue(pool.acquire(this.firstDatabase));
+        assertTrue(pool.acquire(this.secondDatabase));
+        assertEquals("synthetic", this.firstDatabase.getMapFileInfo().comment);
+
+        // file of the released database is changed, but keeps its size
+        byte[] data = Files.readAllBytes(this.first.toPath());
+        byte[] comment = "synthetic".getBytes(StandardCharsets.US_ASCII);
+        int position = indexOf(data, comment);
+        assertTrue(position > 0);
+        byte[] newComment = "SYNTHETIC".getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(newComment, 0, data, position, newComment.length);
+        long lastModified = this.first.lastModified();
+        Files.write(this.first.toPath(), data);
+        assertTrue(this.first.setLastModified(lastModified + 60000));
+
+        // header is parsed again
+        assertTrue(pool.acquire(this.firstDatabase));
+        assertEquals("SYNTHETIC", this.firstDatabase.getMapFileInfo().comment);
+        assertEquals(0, this.handler.problems);
+    }
+
+    private static int indexOf(byte[] data, byte[] value) {
+        for (int i = 0; i + value.length <= data.length; i++) {
+            int j = 0;
+            while (j < value.length && data[i + j] == value[j]) {
+                j++;
+            }
+            if (j == value.length) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
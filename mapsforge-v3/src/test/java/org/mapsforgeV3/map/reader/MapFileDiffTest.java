@@ -0,0 +1,101 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforgeV3.map.reader;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mapsforgeV3.core.model.Tile;
+
+import java.io.File;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the diff of map files reports exactly tiles with a changed input hash.
+ */
+public class MapFileDiffTest {
+
+    private static TestHandler handler;
+    private static File file;
+    private static File sameFile;
+    private static File changedFile;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        handler = TestHandler.install();
+        file = TestMapFile.writeTemp(7);
+        sameFile = TestMapFile.writeTemp(7);
+        changedFile = TestMapFile.write(File.createTempFile("test", ".map"), 7, 5);
+        changedFile.deleteOnExit();
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        file.delete();
+        sameFile.delete();
+        changedFile.delete();
+    }
+
+    @Test
+    public void sameContentHasNoChanges() throws Exception {
+        assertTrue(MapFileDiff.diff(file, sameFile, (byte) 0, (byte) 22).isEmpty());
+        assertEquals(0, handler.problems);
+    }
+
+    @Test
+    public void changedTilesHaveChangedHash() throws Exception {
+        byte zoomLevel = 13;
+        List<MapFileDiff.TileRange> ranges = MapFileDiff.diff(file, changedFile,
+                zoomLevel, zoomLevel);
+        assertFalse(ranges.isEmpty());
+
+        MapDatabase oldDatabase = new MapDatabase();
+        MapDatabase newDatabase = new MapDatabase();
+        assertTrue(oldDatabase.openFile(file).isSuccess());
+        assertTrue(newDatabase.openFile(changedFile).isSuccess());
+        try {
+            int left = TestMapFile.longitudeToTileX(TestMapFile.MIN_LONGITUDE, zoomLevel);
+            int right = TestMapFile.longitudeToTileX(TestMapFile.MAX_LONGITUDE, zoomLevel);
+            int top = TestMapFile.latitudeToTileY(TestMapFile.MAX_LATITUDE, zoomLevel);
+            int bottom = TestMapFile.latitudeToTileY(TestMapFile.MIN_LATITUDE, zoomLevel);
+            for (int y = top; y <= bottom; y++) {
+                for (int x = left; x <= right; x++) {
+                    Tile tile = new Tile(x, y, zoomLevel);
+                    boolean reported = false;
+                    for (MapFileDiff.TileRange range : ranges) {
+                        reported |= x >= range.left && x <= range.right
+                                && y >= range.top && y <= range.bottom;
+                    }
+                    if (reported) {
+                        assertNotEquals(tile.toString(), oldDatabase.getTileInputHash(tile),
+                                newDatabase.getTileInputHash(tile));
+                    } else {
+                        assertEquals(tile.toString(), oldDatabase.getTileInputHash(tile),
+                                newDatabase.getTileInputHash(tile));
+                    }
+                }
+            }
+        } finally {
+            oldDatabase.closeFile();
+            newDatabase.closeFile();
+        }
+        assertEquals(0, handler.problems);
+    }
+}
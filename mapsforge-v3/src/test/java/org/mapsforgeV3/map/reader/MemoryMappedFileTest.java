@@ -0,0 +1,98 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforgeV3.map.reader;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that reading of blocks over the memory-mapped file gives the same features, names
+ * and water flags as reading of blocks from the file channel.
+ */
+public class MemoryMappedFileTest {
+
+    private static final byte[] ZOOM_LEVELS = {5, 8, 11, 14};
+    private static final String[] LANGUAGES = {null, "en", "zh"};
+
+    private static TestHandler handler;
+    private static File file;
+    private static File debugFile;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        handler = TestHandler.install();
+        file = TestMapFile.writeTemp(41);
+        debugFile = TestMapFile.write(File.createTempFile("debug", ".map"), 41, 5, true);
+        debugFile.deleteOnExit();
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        file.delete();
+        debugFile.delete();
+    }
+
+    @Test
+    public void sameAsStreamReads() {
+        check(file, 0);
+        check(debugFile, 0);
+    }
+
+    @Test
+    public void sameAsStreamReadsWithCache() {
+        check(file, 64L * 1024 * 1024);
+        check(debugFile, 64L * 1024 * 1024);
+    }
+
+    private static void check(File file, long cacheSize) {
+        for (String language : LANGUAGES) {
+            for (byte zoomLevel : ZOOM_LEVELS) {
+                for (boolean projected : new boolean[]{false, true}) {
+                    String expected = readAll(file, false, cacheSize, language, zoomLevel,
+                            projected);
+                    String actual = readAll(file, true, cacheSize, language, zoomLevel,
+                            projected);
+                    assertEquals("file: " + file.getName() + ", language: " + language
+                            + ", zoom: " + zoomLevel + ", projected: " + projected,
+                            expected, actual);
+                }
+            }
+        }
+        assertEquals(0, handler.problems);
+    }
+
+    private static String readAll(File file, boolean memoryMapped, long cacheSize,
+            String language, byte zoomLevel, boolean projected) {
+        MapDatabase mapDatabase = new MapDatabase();
+        mapDatabase.setMemoryMappedFile(memoryMapped);
+        mapDatabase.setDecodedBlockCacheSize(cacheSize);
+        mapDatabase.setPreferredLanguage(language);
+        assertTrue(mapDatabase.openFile(file).isSuccess());
+        try {
+            // second pass reads from the warmed up cache
+            String output = RecordingVisitor.readAll(mapDatabase, zoomLevel, projected);
+            assertEquals(output, RecordingVisitor.readAll(mapDatabase, zoomLevel, projected));
+            return output;
+        } finally {
+            mapDatabase.closeFile();
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforgeV3.map.reader;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the cache of names returns only entries of the same string and language, and
+ * that names read after a change of the preferred language are the same as read by a newly
+ * opened database.
+ */
+public class NameCacheTest {
+
+    private static final byte[] ZOOM_LEVELS = {8, 12, 15};
+
+    private static TestHandler handler;
+    private static File file;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        handler = TestHandler.install();
+        file = TestMapFile.writeTemp(29);
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void slotCollisions() {
+        // strings with the same hash and different bytes
+        Text first = new Text("Aa\ren\bAa");
+        Text second = new Text("BB\ren\bAa");
+        assertEquals(first.rawHash, second.rawHash);
+
+        NameCache nameCache = new NameCache();
+        NameCache.Entry entry = nameCache.put(first.readBuffer, first.offset, first.byteCount,
+                first.rawHash, "en", 3, 2, "Aa".hashCode());
+        assertNotNull(entry);
+        assertSame(entry, first.get(nameCache, "en"));
+        assertNull(second.get(nameCache, "en"));
+        assertNull(first.get(nameCache, "de"));
+        assertNull(first.get(nameCache, null));
+
+        // different strings in the same slot replace each other
+        Map<Integer, Text> slots = new HashMap<>();
+        Text colliding = null;
+        for (int i = 0; colliding == null; i++) {
+            Text text = new Text("Name " + i);
+            Text previous = slots.put(text.rawHash & (NameCache.SIZE - 1), text);
+            if (previous != null && previous.rawHash != text.rawHash) {
+                first = previous;
+                colliding = text;
+            }
+        }
+        nameCache.clear();
+        entry = first.put(nameCache, "en");
+        assertSame(entry, first.get(nameCache, "en"));
+        assertNull(colliding.get(nameCache, "en"));
+        NameCache.Entry collidingEntry = colliding.put(nameCache, "en");
+        assertSame(collidingEntry, colliding.get(nameCache, "en"));
+        assertNull(first.get(nameCache, "en"));
+
+        // entries of other slots are not affected
+        List<Text> texts = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            Text text = new Text("Street " + i);
+            if ((text.rawHash & (NameCache.SIZE - 1)) != (colliding.rawHash & (NameCache.SIZE - 1))) {
+                text.put(nameCache, null);
+                texts.add(text);
+            }
+        }
+        assertSame(collidingEntry, colliding.get(nameCache, "en"));
+        nameCache.clear();
+        assertNull(colliding.get(nameCache, "en"));
+        for (Text text : texts) {
+            assertNull(text.get(nameCache, null));
+        }
+    }
+
+    @Test
+    public void entrySizeLimit() {
+        StringBuilder builder = new StringBuilder();
+        while (builder.length() < NameCache.BYTES_MAX) {
+            builder.append('x');
+        }
+        NameCache nameCache = new NameCache();
+        Text longest = new Text(builder.toString());
+        assertEquals(NameCache.BYTES_MAX, longest.byteCount);
+        assertSame(longest.put(nameCache, null), longest.get(nameCache, null));
+
+        // two bytes of a single character over the limit
+        builder.setCharAt(0, 'č');
+        Text tooLong = new Text(builder.toString());
+        assertEquals(NameCache.BYTES_MAX + 1, tooLong.byteCount);
+        assertNull(tooLong.put(nameCache, null));
+        assertNull(tooLong.get(nameCache, null));
+    }
+
+    @Test
+    public void languageChangeEqualsNewDatabase() {
+        String[] languages = {"en", "de", null, "zh-TW", "en"};
+        for (long cacheSize : new long[]{0, 64 * 1024 * 1024}) {
+            MapDatabase mapDatabase = open(cacheSize, languages[0]);
+            try {
+                String previous = null;
+                for (String language : languages) {
+                    mapDatabase.setPreferredLanguage(language);
+                    String output = readAll(mapDatabase);
+                    MapDatabase newDatabase = open(cacheSize, language);
+                    try {
+                        assertEquals("language " + language, readAll(newDatabase), output);
+                    } finally {
+                        newDatabase.closeFile();
+                    }
+                    // names differ for every next language
+                    assertFalse(output.equals(previous));
+                    previous = output;
+                }
+            } finally {
+                mapDatabase.closeFile();
+            }
+        }
+        assertEquals(0, handler.problems);
+    }
+
+    private static MapDatabase open(long cacheSize, String language) {
+        MapDatabase mapDatabase = new MapDatabase();
+        mapDatabase.setDecodedBlockCacheSize(cacheSize);
+        mapDatabase.setPreferredLanguage(language);
+        assertTrue(mapDatabase.openFile(file).isSuccess());
+        return mapDatabase;
+    }
+
+    private static String readAll(MapDatabase mapDatabase) {
+        StringBuilder output = new StringBuilder();
+        for (byte zoomLevel : ZOOM_LEVELS) {
+            output.append(RecordingVisitor.readAll(mapDatabase, zoomLevel, false));
+        }
+        return output.toString();
+    }
+
+    /**
+     * Encoded string in its own read buffer.
+     */
+    private static class Text {
+
+        final ReadBuffer readBuffer;
+        final int offset;
+        final int byteCount;
+        final int rawHash;
+
+        Text(String value) {
+            TestMapFile.Buffer out = new TestMapFile.Buffer();
+            out.writeString(value);
+            this.readBuffer = ReadBufferTest.createBuffer(out.toByteArray(), false);
+            this.byteCount = this.readBuffer.readUnsignedInt();
+            this.offset = this.readBuffer.skipUTF8EncodedString(this.byteCount);
+            this.rawHash = this.readBuffer.hashBytes(this.offset, this.byteCount);
+        }
+
+        NameCache.Entry get(NameCache nameCache, String language) {
+            return nameCache.get(this.readBuffer, this.offset, this.byteCount, this.rawHash,
+                    language);
+        }
+
+        NameCache.Entry put(NameCache nameCache, String language) {
+            return nameCache.put(this.readBuffer, this.offset, this.byteCount, this.rawHash,
+                    language, 0, this.byteCount, 0);
+        }
+    }
+}
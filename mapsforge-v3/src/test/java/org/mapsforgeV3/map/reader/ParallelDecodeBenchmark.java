@@ -0,0 +1,55 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforgeV3.map.reader;
+
+import java.io.File;
+
+/**
+ * Plain JVM benchmark of reading of map tiles with blocks decoded by 1, 2, 4 and 8 threads.
+ * Usage:
+ * <pre>
+ * ParallelDecodeBenchmark [map file] [rounds]
+ * </pre>
+ * Without a map file, the synthetic test map is generated.
+ */
+public class ParallelDecodeBenchmark {
+
+    private static final int[] THREADS = {1, 2, 4, 8};
+
+    public static void main(String[] args) throws Exception {
+        TestHandler.install();
+        File file = args.length > 0 ? new File(args[0]) : TestMapFile.writeTemp(1);
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+        MapDatabase mapDatabase = new MapDatabase();
+        if (!mapDatabase.openFile(file).isSuccess()) {
+            System.err.println("invalid map file: " + file);
+            return;
+        }
+        try {
+            for (int threads : THREADS) {
+                System.out.println("threads: " + threads);
+                mapDatabase.setDecodeThreads(threads);
+                // low zoom levels read most blocks per tile
+                for (byte zoomLevel = 8; zoomLevel <= 12; zoomLevel++) {
+                    ReaderBenchmark.run(mapDatabase, zoomLevel, true, rounds);
+                }
+            }
+        } finally {
+            mapDatabase.setDecodeThreads(1);
+            mapDatabase.closeFile();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforgeV3.map.reader;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that blocks decoded by more threads are sent in the same order and with the same
+ * content as blocks decoded by the calling thread, also with the tag filter.
+ */
+public class ParallelDecodeTest {
+
+    private static final int[] THREADS = {2, 4, 8};
+
+    private static TestHandler handler;
+    private static File file;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        handler = TestHandler.install();
+        file = TestMapFile.writeTemp(5);
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void parallelEqualsSequential() {
+        for (byte zoomLevel = 8; zoomLevel <= 14; zoomLevel++) {
+            for (boolean projected : new boolean[]{false, true}) {
+                String sequential = readAll(1, zoomLevel, projected);
+                for (int threads : THREADS) {
+                    assertEquals("z" + zoomLevel + ", threads: " + threads,
+                            sequential, readAll(threads, zoomLevel, projected));
+                }
+            }
+        }
+        assertEquals(0, handler.problems);
+    }
+
+    @Test
+    public void parallelEqualsSequentialWithFilter() {
+        // blocks decoded only for the query without the cache, complete blocks with it
+        for (long cacheSize : new long[]{0, 64L * 1024 * 1024}) {
+            for (byte zoomLevel = 8; zoomLevel <= 14; zoomLevel++) {
+                for (boolean projected : new boolean[]{false, true}) {
+                    String sequential = readAll(1, cacheSize, true, zoomLevel, projected);
+                    assertEquals("cache: " + cacheSize + ", z" + zoomLevel,
+                            sequential, readAll(4, cacheSize, true, zoomLevel, projected));
+                }
+            }
+        }
+        assertEquals(0, handler.problems);
+    }
+
+    private static String readAll(int threads, byte zoomLevel, boolean projected) {
+        return readAll(threads, 0, false, zoomLevel, projected);
+    }
+
+    private static String readAll(int threads, long cacheSize, boolean filter, byte zoomLevel,
+            boolean projected) {
+        MapDatabase mapDatabase = new MapDatabase();
+        mapDatabase.setDecodeThreads(threads);
+        mapDatabase.setDecodedBlockCacheSize(cacheSize);
+        assertTrue(mapDatabase.openFile(file).isSuccess());
+        try {
+            TagFilter tagFilter = filter
+                    ? new TagFilter(mapDatabase.getMapFileInfo(), TileGroupTest.MATCHER) : null;
+            return RecordingVisitor.readAll(mapDatabase, zoomLevel, tagFilter, projected);
+        } finally {
+            mapDatabase.setDecodeThreads(1);
+            mapDatabase.closeFile();
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforgeV3.map.reader;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mapsforgeV3.core.model.BoundingBox;
+import org.mapsforgeV3.core.model.Tile;
+import org.mapsforgeV3.core.util.MercatorProjection;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that the query of an area returns the same features, as reading of all tiles covering
+ * the area with features outside of the area filtered out. Query uses tile bitmasks of ways also
+ * at zoom levels not above the base zoom level, where reading of tiles does not need them.
+ */
+public class QueryTest {
+
+    private static final int TILE_SIZE = 256;
+    private static final byte[] ZOOM_LEVELS = {5, 8, 10, 11, 12, 14, 15, 17};
+
+    private static TestHandler handler;
+    private static File file;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        handler = TestHandler.install();
+        file = TestMapFile.writeTemp(9);
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void queryEqualsTiles() {
+        Random random = new Random(1);
+        for (long cacheSize : new long[]{0, 64 * 1024 * 1024}) {
+            MapDatabase mapDatabase = new MapDatabase();
+            mapDatabase.setDecodedBlockCacheSize(cacheSize);
+            assertTrue(mapDatabase.openFile(file).isSuccess());
+            try {
+                int features = 0;
+                for (byte zoomLevel : ZOOM_LEVELS) {
+                    byte queryZoomLevel = mapDatabase.getQueryZoomLevel(zoomLevel);
+                    byte baseZoomLevel = mapDatabase.getSubFileParameter(queryZoomLevel).baseZoomLevel;
+                    for (int i = 0; i < 5; i++) {
+                        for (BoundingBox boundingBox : new BoundingBox[]{
+                                getBlocks(random, baseZoomLevel, 1),
+                                getBlocks(random, baseZoomLevel, 2),
+                                getSubTile(random, baseZoomLevel),
+                                getArea(random)}) {
+                            List<String> expected = readTiles(mapDatabase, boundingBox, zoomLevel);
+                            assertEquals("zoom " + zoomLevel + ", " + boundingBox, expected,
+                                    query(mapDatabase, boundingBox, zoomLevel));
+                            features += expected.size();
+                        }
+                    }
+                }
+                assertTrue(features > 1000);
+            } finally {
+                mapDatabase.closeFile();
+            }
+        }
+        assertEquals(0, handler.problems);
+    }
+
+    /**
+     * Area exactly aligned to edges of a square of blocks.
+     */
+    private static BoundingBox getBlocks(Random random, byte baseZoomLevel, int size) {
+        int left = TestMapFile.longitudeToTileX(TestMapFile.MIN_LONGITUDE, baseZoomLevel);
+        int right = TestMapFile.longitudeToTileX(TestMapFile.MAX_LONGITUDE, baseZoomLevel);
+        int top = TestMapFile.latitudeToTileY(TestMapFile.MAX_LATITUDE, baseZoomLevel);
+        int bottom = TestMapFile.latitudeToTileY(TestMapFile.MIN_LATITUDE, baseZoomLevel);
+        int x = left + random.nextInt(Math.max(right - left + 2 - size, 1));
+        int y = top + random.nextInt(Math.max(bottom - top + 2 - size, 1));
+        return getTileArea(x, y, size, baseZoomLevel);
+    }
+
+    /**
+     * Area inside of a single sub-tile of the tile bitmask.
+     */
+    private static BoundingBox getSubTile(Random random, byte baseZoomLevel) {
+        byte subZoomLevel = (byte) (baseZoomLevel + 2);
+        int left = TestMapFile.longitudeToTileX(TestMapFile.MIN_LONGITUDE, subZoomLevel);
+        int right = TestMapFile.longitudeToTileX(TestMapFile.MAX_LONGITUDE, subZoomLevel);
+        int top = TestMapFile.latitudeToTileY(TestMapFile.MAX_LATITUDE, subZoomLevel);
+        int bottom = TestMapFile.latitudeToTileY(TestMapFile.MIN_LATITUDE, subZoomLevel);
+        BoundingBox subTile = getTileArea(left + random.nextInt(right - left + 1),
+                top + random.nextInt(bottom - top + 1), 1, subZoomLevel);
+        int height = subTile.maxLatitudeE6 - subTile.minLatitudeE6;
+        int width = subTile.maxLongitudeE6 - subTile.minLongitudeE6;
+        return new BoundingBox(subTile.minLatitudeE6 + height / 4,
+                subTile.minLongitudeE6 + width / 4, subTile.maxLatitudeE6 - height / 4,
+                subTile.maxLongitudeE6 - width / 4);
+    }
+
+    /**
+     * Random area spanning usually several blocks, not aligned to any tiles.
+     */
+    private static BoundingBox getArea(Random random) {
+        int minLatitude = (int) (TestMapFile.MIN_LATITUDE * 1000000);
+        int minLongitude = (int) (TestMapFile.MIN_LONGITUDE * 1000000);
+        int height = (int) ((TestMapFile.MAX_LATITUDE - TestMapFile.MIN_LATITUDE) * 1000000);
+        int width = (int) ((TestMapFile.MAX_LONGITUDE - TestMapFile.MIN_LONGITUDE) * 1000000);
+        int[] latitudes = {minLatitude + random.nextInt(height), minLatitude + random.nextInt(height)};
+        int[] longitudes = {minLongitude + random.nextInt(width), minLongitude + random.nextInt(width)};
+        Arrays.sort(latitudes);
+        Arrays.sort(longitudes);
+        return new BoundingBox(latitudes[0], longitudes[0], latitudes[1], longitudes[1]);
+    }
+
+    private static BoundingBox getTileArea(long tileX, long tileY, int size, byte zoomLevel) {
+        return new BoundingBox(
+                (int) (MercatorProjection.tileYToLatitude(tileY + size, zoomLevel, TILE_SIZE) * 1000000),
+                (int) (MercatorProjection.tileXToLongitude(tileX, zoomLevel, TILE_SIZE) * 1000000),
+                (int) (MercatorProjection.tileYToLatitude(tileY, zoomLevel, TILE_SIZE) * 1000000),
+                (int) (MercatorProjection.tileXToLongitude(tileX + size, zoomLevel, TILE_SIZE) * 1000000));
+    }
+
+    private static List<String> query(MapDatabase mapDatabase, BoundingBox boundingBox,
+            byte zoomLevel) {
+        RecordingVisitor visitor = new RecordingVisitor();
+        mapDatabase.query(boundingBox, zoomLevel, visitor);
+        List<String> features = new ArrayList<>();
+        Collections.addAll(features, visitor.toString().split("\n"));
+        features.remove("");
+        Collections.sort(features);
+        return features;
+    }
+
+    /**
+     * Read features of all tiles covering the area, without duplicates from tiles of one block.
+     */
+    private static List<String> readTiles(MapDatabase mapDatabase, BoundingBox boundingBox,
+            byte zoomLevel) {
+        RecordingVisitor visitor = new RecordingVisitor();
+        BoundingBoxFilter filter = new BoundingBoxFilter(boundingBox, visitor);
+        long left = MercatorProjection.longitudeToTileX(
+                boundingBox.minLongitudeE6 / 1000000.0, zoomLevel, TILE_SIZE);
+        long right = MercatorProjection.longitudeToTileX(
+                boundingBox.maxLongitudeE6 / 1000000.0, zoomLevel, TILE_SIZE);
+        long top = MercatorProjection.latitudeToTileY(
+                boundingBox.maxLatitudeE6 / 1000000.0, zoomLevel, TILE_SIZE);
+        long bottom = MercatorProjection.latitudeToTileY(
+                boundingBox.minLatitudeE6 / 1000000.0, zoomLevel, TILE_SIZE);
+        for (long y = top; y <= bottom; y++) {
+            for (long x = left; x <= right; x++) {
+                mapDatabase.readTile(new Tile(x, y, zoomLevel), filter, null, null);
+            }
+        }
+        TreeSet<String> features = new TreeSet<>(Arrays.asList(visitor.toString().split("\n")));
+        features.remove("");
+        return new ArrayList<>(features);
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforgeV3.map.reader;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that bulk decoding of variable byte encoded values gives the same results as decoding
+ * of single values, from the byte array and from mapped data. Texts decoded from both sources
+ * have to be the same too.
+ */
+public class ReadBufferTest {
+
+    // values on the boundaries of encoded lengths
+    private static final int[] EDGE_VALUES = {0, 1, -1, 63, -63, 64, -64, 8191, -8191, 8192,
+            -8192, 1048575, -1048576, 134217727, -134217728, 1 << 30, -(1 << 30)};
+
+    // offset of mapped data, so absolute positions are tested
+    private static final int MAPPED_OFFSET = 7;
+
+    @Test
+    public void signedIntsMatchSingleReads() {
+        Random random = new Random(1);
+        int[] values = new int[EDGE_VALUES.length + 1000];
+        System.arraycopy(EDGE_VALUES, 0, values, 0, EDGE_VALUES.length);
+        for (int i = EDGE_VALUES.length; i < values.length; i++) {
+            values[i] = randomValue(random);
+        }
+        TestMapFile.Buffer out = new TestMapFile.Buffer();
+        for (int value : values) {
+            out.writeSigned(value);
+        }
+        byte[] data = out.toByteArray();
+
+        for (boolean mapped : new boolean[]{false, true}) {
+            ReadBuffer single = createBuffer(data, mapped);
+            int[] expected = new int[values.length];
+            for (int i = 0; i < values.length; i++) {
+                expected[i] = single.readSignedInt();
+            }
+            assertArrayEquals(values, expected);
+
+            // bulk reads of different lengths into an offset of the array
+            ReadBuffer bulk = createBuffer(data, mapped);
+            int[] actual = new int[values.length + 3];
+            for (int i = 0; i < values.length; ) {
+                int count = Math.min(values.length - i, 1 + random.nextInt(20));
+                bulk.readSignedInts(actual, i + 3, count);
+                i += count;
+            }
+            for (int i = 0; i < values.length; i++) {
+                assertEquals("mapped: " + mapped + ", value " + i, values[i], actual[i + 3]);
+            }
+            assertEquals(single.getBufferPosition(), bulk.getBufferPosition());
+        }
+    }
+
+    @Test
+    public void deltaCoordinatesMatchSingleReads() {
+        Random random = new Random(2);
+        for (boolean doubleDelta : new boolean[]{false, true}) {
+            for (int round = 0; round < 200; round++) {
+                int count = 1 + random.nextInt(50);
+                TestMapFile.Buffer out = new TestMapFile.Buffer();
+                for (int i = 0; i < count * 2; i++) {
+                    out.writeSigned(round < EDGE_VALUES.length
+                            ? EDGE_VALUES[(round + i) % EDGE_VALUES.length]
+                            : random.nextInt(20001) - 10000);
+                }
+                byte[] data = out.toByteArray();
+                int latitude = random.nextInt(180000000) - 90000000;
+                int longitude = random.nextInt(360000000) - 180000000;
+
+                for (boolean mapped : new boolean[]{false, true}) {
+                    ReadBuffer single = createBuffer(data, mapped);
+                    int[] expected = new int[count * 2];
+                    decodeSingle(single, expected, count, latitude, longitude, doubleDelta);
+
+                    ReadBuffer bulk = createBuffer(data, mapped);
+                    int[] actual = new int[count * 2 + 5];
+                    bulk.readDeltaCoordinates(actual, 5, count, latitude, longitude, doubleDelta);
+                    for (int i = 0; i < count * 2; i++) {
+                        assertEquals("double delta: " + doubleDelta + ", mapped: " + mapped
+                                + ", value " + i, expected[i], actual[i + 5]);
+                    }
+                    assertEquals(single.getBufferPosition(), bulk.getBufferPosition());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void textsMatchForBothSources() {
+        Random random = new Random(3);
+        for (int round = 0; round < 3000; round++) {
+            String text = null;
+            byte[] data;
+            if (round % 3 == 2) {
+                // random bytes, mostly invalid sequences
+                data = new byte[1 + random.nextInt(20)];
+                random.nextBytes(data);
+            } else {
+                StringBuilder builder = new StringBuilder();
+                int length = 1 + random.nextInt(20);
+                for (int i = 0; i < length; i++) {
+                    builder.appendCodePoint(randomCodePoint(random));
+                }
+                text = builder.toString();
+                data = text.getBytes(StandardCharsets.UTF_8);
+                if (round % 3 == 1) {
+                    // broken sequences: replaced bytes and a truncated end
+                    data[random.nextInt(data.length)] = (byte) random.nextInt(256);
+                    data = Arrays.copyOf(data, 1 + random.nextInt(data.length));
+                    text = null;
+                }
+            }
+
+            char[][] decoded = new char[2][];
+            for (int i = 0; i < 2; i++) {
+                ReadBuffer readBuffer = createBuffer(data, i == 1);
+                int offset = readBuffer.skipUTF8EncodedString(data.length);
+                char[] chars = new char[data.length];
+                decoded[i] = Arrays.copyOf(chars,
+                        readBuffer.decodeUTF8EncodedString(offset, data.length, chars));
+            }
+            assertArrayEquals("round " + round, decoded[0], decoded[1]);
+            if (text != null) {
+                assertEquals(text, new String(decoded[0]));
+            }
+        }
+    }
+
+    // code points of all encoded lengths, without surrogates
+    private static int randomCodePoint(Random random) {
+        switch (random.nextInt(4)) {
+            case 0:
+                return random.nextInt(0x80);
+            case 1:
+                return 0x80 + random.nextInt(0x800 - 0x80);
+            case 2:
+                int value = 0x800 + random.nextInt(0x10000 - 0x800);
+                return value >= 0xd800 && value <= 0xdfff ? value - 0x1000 : value;
+            default:
+                return 0x10000 + random.nextInt(0x110000 - 0x10000);
+        }
+    }
+
+    // values of all lengths, shorter encodings more often
+    private static int randomValue(Random random) {
+        int value = random.nextInt(1 << (1 + random.nextInt(30)));
+        return random.nextBoolean() ? -value : value;
+    }
+
+    static ReadBuffer createBuffer(byte[] data, boolean mapped) {
+        ReadBuffer readBuffer = new ReadBuffer(null);
+        if (mapped) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(MAPPED_OFFSET + data.length);
+            for (int i = 0; i < data.length; i++) {
+                buffer.put(MAPPED_OFFSET + i, data[i]);
+            }
+            readBuffer.setMappedData(buffer, MAPPED_OFFSET, data.length);
+        } else {
+            readBuffer.setLoadedData(data, data.length);
+        }
+        return readBuffer;
+    }
+
+    /**
+     * Decode way nodes by single reads, same as the reader before bulk decoding.
+     */
+    static void decodeSingle(ReadBuffer readBuffer, int[] coordinates, int count, int latitude,
+            int longitude, boolean doubleDelta) {
+        int previousDeltaLatitude = 0;
+        int previousDeltaLongitude = 0;
+        for (int i = 0; i < count; i++) {
+            int deltaLatitude = readBuffer.readSignedInt();
+            int deltaLongitude = readBuffer.readSignedInt();
+            if (doubleDelta && i > 0) {
+                deltaLatitude += previousDeltaLatitude;
+                deltaLongitude += previousDeltaLongitude;
+                previousDeltaLatitude = deltaLatitude;
+                previousDeltaLongitude = deltaLongitude;
+            }
+            latitude += deltaLatitude;
+            longitude += deltaLongitude;
+            coordinates[2 * i] = longitude;
+            coordinates[2 * i + 1] = latitude;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforgeV3.map.reader;
+
+import org.mapsforgeV3.core.model.BoundingBox;
+import org.mapsforgeV3.core.model.Tag;
+import org.mapsforgeV3.core.model.Tile;
+import org.mapsforgeV3.core.util.MercatorProjection;
+import org.mapsforgeV3.core.util.TileProjection;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+
+/**
+ * Plain JVM benchmark of reading of map tiles.
+ * <p>
+ * Reads all tiles of the map area at zoom levels 10 to 14 and prints time and memory allocated
+ * per tile, with ways in microdegrees and projected to pixels. Number of sent ways and of ways
+ * culled as not visible in projected tiles is printed for every round. Usage:
+ * <pre>
+ * ReaderBenchmark [map file] [rounds]
+ * </pre>
+ * Without a map file, the synthetic test map is generated.
+ */
+public class ReaderBenchmark {
+
+    private static final int TILE_SIZE = 256;
+
+    public static void main(String[] args) throws Exception {
+        TestHandler.install();
+        File file = args.length > 0 ? new File(args[0]) : TestMapFile.writeTemp(1);
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+        MapDatabase mapDatabase = new MapDatabase();
+        if (!mapDatabase.openFile(file).isSuccess()) {
+            System.err.println("invalid map file: " + file);
+            return;
+        }
+        try {
+            for (byte zoomLevel = 10; zoomLevel <= 14; zoomLevel++) {
+                for (boolean projected : new boolean[]{false, true}) {
+                    run(mapDatabase, zoomLevel, projected, rounds);
+                }
+            }
+        } finally {
+            mapDatabase.closeFile();
+        }
+    }
+
+    /**
+     * Read all tiles of the map at the zoom level repeatedly and print results of the best round.
+     */
+    static void run(MapDatabase mapDatabase, byte zoomLevel, boolean projected, int rounds) {
+        com.sun.management.ThreadMXBean threadBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        CountingVisitor visitor = new CountingVisitor();
+        long culledWays = mapDatabase.getCulledWayCount();
+        int tiles = 0;
+        long bestTime = Long.MAX_VALUE;
+        long bestBytes = Long.MAX_VALUE;
+        for (int i = -rounds / 2; i < rounds; i++) {
+            long bytes = threadBean.getThreadAllocatedBytes(threadId);
+            long time = System.nanoTime();
+            tiles = readAll(mapDatabase, zoomLevel, projected, visitor);
+            time = System.nanoTime() - time;
+            bytes = threadBean.getThreadAllocatedBytes(threadId) - bytes;
+            // first half of rounds is warm-up
+            if (i >= 0) {
+                bestTime = Math.min(bestTime, time);
+                bestBytes = Math.min(bestBytes, bytes);
+            }
+        }
+        culledWays = mapDatabase.getCulledWayCount() - culledWays;
+        System.out.printf("z%d %-9s %5d tiles  %8.1f us/tile  %8d B/tile  %6d ways/round"
+                        + "  %6d culled/round%n",
+                zoomLevel, projected ? "projected" : "E6", tiles, bestTime / 1000.0 / tiles,
+                bestBytes / tiles, visitor.ways / (rounds + rounds / 2),
+                culledWays / (rounds + rounds / 2));
+    }
+
+    private static int readAll(MapDatabase mapDatabase, byte zoomLevel, boolean projected,
+            FeatureVisitor visitor) {
+        long mapSize = MercatorProjection.getMapSize(zoomLevel, TILE_SIZE);
+        TileArea area = new TileArea(mapDatabase, zoomLevel);
+        int tiles = 0;
+        for (long y = area.top; y <= area.bottom; y++) {
+            for (long x = area.left; x <= area.right; x++) {
+                TileProjection tileProjection = null;
+                if (projected) {
+                    tileProjection = new TileProjection(mapSize, x * TILE_SIZE, y * TILE_SIZE,
+                            TILE_SIZE, TILE_SIZE / 4);
+                }
+                mapDatabase.readTile(new Tile(x, y, zoomLevel), visitor, null, tileProjection);
+                tiles++;
+            }
+        }
+        return tiles;
+    }
+
+    /**
+     * Tiles covering the bounding box of the opened map.
+     */
+    private static class TileArea {
+
+        private final long left;
+        private final long right;
+        private final long top;
+        private final long bottom;
+
+        TileArea(MapDatabase mapDatabase, byte zoomLevel) {
+            BoundingBox bbox = mapDatabase.getMapFileInfo().boundingBox;
+            this.left = MercatorProjection.longitudeToTileX(bbox.getMinLongitude(), zoomLevel, TILE_SIZE);
+            this.right = MercatorProjection.longitudeToTileX(bbox.getMaxLongitude(), zoomLevel, TILE_SIZE);
+            this.top = MercatorProjection.latitudeToTileY(bbox.getMaxLatitude(), zoomLevel, TILE_SIZE);
+            this.bottom = MercatorProjection.latitudeToTileY(bbox.getMinLatitude(), zoomLevel, TILE_SIZE);
+        }
+    }
+
+    /**
+     * Visitor that only counts received features.
+     */
+    private static class CountingVisitor implements FeatureVisitor {
+
+        private long ways;
+
+        @Override
+        public void renderNode(byte layer, Tag[] tags, int latitudeE6, int longitudeE6) {
+        }
+
+        @Override
+        public void renderWay(Way way) {
+            this.ways++;
+        }
+    }
+}
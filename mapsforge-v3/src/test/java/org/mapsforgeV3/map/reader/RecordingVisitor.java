@@ -0,0 +1,108 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforgeV3.map.reader;
+
+import org.mapsforgeV3.core.model.Tag;
+import org.mapsforgeV3.core.model.Tile;
+import org.mapsforgeV3.core.util.MercatorProjection;
+import org.mapsforgeV3.core.util.TileProjection;
+
+import java.util.Arrays;
+
+/**
+ * Visitor that writes all received data into a text, so results of different ways of reading
+ * may be compared.
+ */
+class RecordingVisitor implements FeatureVisitor {
+
+    private static final int TILE_SIZE = 256;
+
+    private final StringBuilder output = new StringBuilder();
+
+    /**
+     * Read all tiles of the test map at a certain zoom level.
+     *
+     * @param mapDatabase database with opened test map
+     * @param projected   {@code true} to project ways to pixels of tiles
+     * @return text with all read features and water flags of tiles
+     */
+    static String readAll(MapDatabase mapDatabase, byte zoomLevel, boolean projected) {
+        return readAll(mapDatabase, zoomLevel, null, projected);
+    }
+
+    /**
+     * Read all tiles of the test map at a certain zoom level, with a tag filter.
+     *
+     * @param mapDatabase database with opened test map
+     * @param tagFilter   filter of features by tags, or {@code null} to read all features
+     * @param projected   {@code true} to project ways to pixels of tiles
+     * @return text with all read features and water flags of tiles
+     */
+    static String readAll(MapDatabase mapDatabase, byte zoomLevel, TagFilter tagFilter,
+            boolean projected) {
+        RecordingVisitor visitor = new RecordingVisitor();
+        long mapSize = MercatorProjection.getMapSize(zoomLevel, TILE_SIZE);
+        int left = TestMapFile.longitudeToTileX(TestMapFile.MIN_LONGITUDE, zoomLevel);
+        int right = TestMapFile.longitudeToTileX(TestMapFile.MAX_LONGITUDE, zoomLevel);
+        int top = TestMapFile.latitudeToTileY(TestMapFile.MAX_LATITUDE, zoomLevel);
+        int bottom = TestMapFile.latitudeToTileY(TestMapFile.MIN_LATITUDE, zoomLevel);
+        for (int y = top; y <= bottom; y++) {
+            for (int x = left; x <= right; x++) {
+                TileProjection tileProjection = null;
+                if (projected) {
+                    tileProjection = new TileProjection(mapSize, (long) x * TILE_SIZE,
+                            (long) y * TILE_SIZE, TILE_SIZE, TILE_SIZE / 4);
+                }
+                boolean water = mapDatabase.readTile(new Tile(x, y, zoomLevel), visitor,
+                        tagFilter, tileProjection);
+                visitor.output.append(x).append('/').append(y).append(' ')
+                        .append(water).append('\n');
+            }
+        }
+        return visitor.output.toString();
+    }
+
+    /**
+     * @return text with all received features
+     */
+    @Override
+    public String toString() {
+        return this.output.toString();
+    }
+
+    @Override
+    public void renderNode(byte layer, Tag[] tags, int latitudeE6, int longitudeE6) {
+        this.output.append("poi ").append(layer).append(' ').append(Arrays.toString(tags))
+                .append(' ').append(latitudeE6).append(' ').append(longitudeE6).append('\n');
+    }
+
+    @Override
+    public void renderWay(Way way) {
+        this.output.append("way ").append(way.layer).append(' ')
+                .append(Arrays.toString(way.tags)).append(' ')
+                .append(way.latitudeE6).append(' ').append(way.longitudeE6).append(' ')
+                .append(way.bboxTopE6).append(' ').append(way.bboxBottomE6).append(' ')
+                .append(way.bboxLeftE6).append(' ').append(way.bboxRightE6).append(' ')
+                .append(way.isFillBackground).append(' ').append(way.isProjected);
+        for (int segment = 0; segment < way.segmentCount; segment++) {
+            int offset = way.getSegmentOffset(segment);
+            this.output.append(" |");
+            for (int i = 0; i < way.getSegmentLength(segment); i++) {
+                this.output.append(' ').append(way.coordinates[offset + i]);
+            }
+        }
+        this.output.append('\n');
+    }
+}
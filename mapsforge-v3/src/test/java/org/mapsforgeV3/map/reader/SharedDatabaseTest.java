@@ -0,0 +1,167 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforgeV3.map.reader;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mapsforgeV3.core.model.Tile;
+import org.mapsforgeV3.core.util.MercatorProjection;
+import org.mapsforgeV3.core.util.TileProjection;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that many threads reading tiles from a single shared database get the same features
+ * and water flags as sequential reading, with all combinations of ways of reading blocks.
+ */
+public class SharedDatabaseTest {
+
+    private static final int TILE_SIZE = 256;
+    private static final byte[] ZOOM_LEVELS = {8, 12, 14};
+    private static final int THREADS = 8;
+    private static final int ROUNDS = 3;
+
+    private static TestHandler handler;
+    private static File file;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        handler = TestHandler.install();
+        file = TestMapFile.writeTemp(31);
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void plain() throws Exception {
+        check(false, 0, 1, false);
+    }
+
+    @Test
+    public void memoryMapped() throws Exception {
+        check(true, 0, 1, false);
+    }
+
+    @Test
+    public void decodedBlockCache() throws Exception {
+        // small cache, so blocks are replaced while other threads replay them
+        check(false, 256 * 1024, 1, false);
+    }
+
+    @Test
+    public void parallelDecoding() throws Exception {
+        check(false, 0, 4, false);
+    }
+
+    @Test
+    public void combined() throws Exception {
+        check(true, 256 * 1024, 4, false);
+        check(false, 256 * 1024, 4, true);
+    }
+
+    private static void check(boolean memoryMapped, long cacheSize, int decodeThreads,
+            boolean asyncReads) throws Exception {
+        final List<Tile> tiles = new ArrayList<>();
+        for (byte zoomLevel : ZOOM_LEVELS) {
+            int left = TestMapFile.longitudeToTileX(TestMapFile.MIN_LONGITUDE, zoomLevel);
+            int right = TestMapFile.longitudeToTileX(TestMapFile.MAX_LONGITUDE, zoomLevel);
+            int top = TestMapFile.latitudeToTileY(TestMapFile.MAX_LATITUDE, zoomLevel);
+            int bottom = TestMapFile.latitudeToTileY(TestMapFile.MIN_LATITUDE, zoomLevel);
+            for (int y = top; y <= bottom; y++) {
+                for (int x = left; x <= right; x++) {
+                    tiles.add(new Tile(x, y, zoomLevel));
+                }
+            }
+        }
+
+        // expected output of every tile from a sequential reader
+        final List<String> expected = new ArrayList<>();
+        MapDatabase sequential = new MapDatabase();
+        assertTrue(sequential.openFile(file).isSuccess());
+        try {
+            for (int i = 0; i < tiles.size(); i++) {
+                expected.add(readTile(sequential, tiles.get(i), i % 2 == 0));
+            }
+        } finally {
+            sequential.closeFile();
+        }
+
+        final MapDatabase shared = new MapDatabase();
+        shared.setMemoryMappedFile(memoryMapped);
+        shared.setDecodedBlockCacheSize(cacheSize);
+        shared.setDecodeThreads(decodeThreads);
+        shared.setAsyncReads(asyncReads);
+        assertTrue(shared.openFile(file).isSuccess());
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int thread = 0; thread < THREADS; thread++) {
+                final long seed = thread;
+                results.add(executor.submit(() -> {
+                    // every thread reads all tiles in its own order
+                    List<Integer> order = new ArrayList<>();
+                    for (int i = 0; i < tiles.size(); i++) {
+                        order.add(i);
+                    }
+                    Random random = new Random(seed);
+                    int read = 0;
+                    for (int round = 0; round < ROUNDS; round++) {
+                        Collections.shuffle(order, random);
+                        for (int i : order) {
+                            assertEquals(tiles.get(i).toString(), expected.get(i),
+                                    readTile(shared, tiles.get(i), i % 2 == 0));
+                            read++;
+                        }
+                    }
+                    return read;
+                }));
+            }
+            for (Future<Integer> result : results) {
+                assertEquals(ROUNDS * tiles.size(), (int) result.get());
+            }
+        } finally {
+            executor.shutdown();
+            shared.setDecodeThreads(1);
+            shared.closeFile();
+        }
+        assertEquals(0, handler.problems);
+    }
+
+    private static String readTile(MapDatabase mapDatabase, Tile tile, boolean projected) {
+        TileProjection tileProjection = null;
+        if (projected) {
+            tileProjection = new TileProjection(
+                    MercatorProjection.getMapSize(tile.zoomLevel, TILE_SIZE),
+                    tile.tileX * TILE_SIZE, tile.tileY * TILE_SIZE, TILE_SIZE, TILE_SIZE / 4);
+        }
+        RecordingVisitor visitor = new RecordingVisitor();
+        boolean water = mapDatabase.readTile(tile, visitor, null, tileProjection);
+        return visitor + "water " + water;
+    }
+}
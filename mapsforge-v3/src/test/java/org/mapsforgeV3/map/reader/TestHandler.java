@@ -0,0 +1,105 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforgeV3.map.reader;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+
+import com.asamm.locus.mapsforge.utils.MapsForgeHandler;
+import com.asamm.locus.mapsforge.utils.Utils;
+
+import org.mapsforgeV3.android.maps.mapgenerator.RenderThemeDefinition;
+import org.mapsforgeV3.android.maps.rendertheme.RenderTheme;
+
+import java.io.InputStream;
+
+/**
+ * Handler for tests, that only collects warnings and errors of the reader.
+ */
+public class TestHandler implements MapsForgeHandler {
+
+    // number of logged warnings and errors
+    public volatile int problems;
+
+    /**
+     * Register a new handler.
+     *
+     * @return registered handler
+     */
+    public static TestHandler install() {
+        TestHandler handler = new TestHandler();
+        Utils.registerHandler(handler);
+        return handler;
+    }
+
+    @Override
+    public Bitmap getEmptyImage() {
+        return null;
+    }
+
+    @Override
+    public Bitmap getValidImage(Bitmap bitmap, int pixelSizeX, int pixelSizeY) {
+        return bitmap;
+    }
+
+    @Override
+    public Context getContext() {
+        return null;
+    }
+
+    @Override
+    public int getScreenCategory() {
+        return 1;
+    }
+
+    @Override
+    public float getDpPixels(float parseFloat, boolean roundDensity) {
+        return parseFloat;
+    }
+
+    @Override
+    public RenderTheme getRenderTheme(RenderThemeDefinition jobTheme) {
+        return null;
+    }
+
+    @Override
+    public Bitmap createSVGBitmap(InputStream inputStream, float scale,
+            float requestedWidth, float requestedHeight, int color) {
+        return null;
+    }
+
+    @Override
+    public void logI(String tag, String msg) {
+    }
+
+    @Override
+    public void logD(String tag, String msg) {
+    }
+
+    @Override
+    public void logW(String tag, String msg) {
+        problems++;
+        System.err.println(tag + ": " + msg);
+    }
+
+    @Override
+    public void logE(String tag, String msg, Exception e) {
+        problems++;
+        System.err.println(tag + ": " + msg);
+        if (e != null) {
+            e.printStackTrace();
+        }
+    }
+}
@@ -0,0 +1,514 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforgeV3.map.reader;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Writer of small synthetic map files for tests.
+ * <p>
+ * Map covers the area around Prague by three sub-files with random POIs and ways, including
+ * multilingual names, empty and water blocks and double-delta encoded ways. Empty blocks contain
+ * only the zoom table with zero counts, some of them followed by an unused byte. Like in real maps,
+ * ways lie inside of the tile of their block and their tile bitmasks cover sub-tiles of the
+ * bounding box of their nodes, so bitmasks may be used for queries of any area. Content is fully
+ * defined by the seed. Structure of features and their coordinates use separate random
+ * generators, so maps that differ only by the number of way nodes have the same features.
+ */
+public class TestMapFile {
+
+    public static final double MIN_LATITUDE = 49.9;
+    public static final double MIN_LONGITUDE = 14.2;
+    public static final double MAX_LATITUDE = 50.2;
+    public static final double MAX_LONGITUDE = 14.7;
+
+    private static final String[] POI_TAGS = {"amenity=restaurant", "shop=bakery",
+            "place=city", "natural=peak", "tourism=hotel"};
+    private static final String[] WAY_TAGS = {"highway=primary", "highway=residential",
+            "building=yes", "natural=water", "landuse=forest", "natural=sea", "natural=nosea",
+            "waterway=river"};
+    static final String[] NAMES = {"Praha", "Nádraží\ren\bStation\rde\bBahnhof",
+            "Karlův most\ren\bCharles Bridge", "Ulice", "日本\rzh_py\bRiben",
+            "Vltava\rcs\bVltava\ren\bMoldau", "Peking\rzh\b北京\rzh-min-lan\bPak-kiaⁿ\ren\bBeijing",
+            "Kavárna 😀\ren\bCafé 😀"};
+    // base, minimal and maximal zoom level of sub-files
+    private static final byte[][] SUB_FILES = {{8, 0, 10}, {12, 11, 14}, {15, 15, 21}};
+
+    private final Random random;
+    private final Random geometryRandom;
+    // fixed number of nodes of every way segment, or '0' for a random number
+    private final int wayNodes;
+    // flag if debug signatures are written
+    private final boolean debug;
+    // bounding box of nodes of the currently written way
+    private int wayTop;
+    private int wayBottom;
+    private int wayLeft;
+    private int wayRight;
+
+    private TestMapFile(long seed, int wayNodes, boolean debug) {
+        this.random = new Random(seed);
+        this.geometryRandom = new Random(seed * 31 + 7);
+        this.wayNodes = wayNodes;
+        this.debug = debug;
+    }
+
+    /**
+     * Write a new map into a file.
+     *
+     * @param file     target file
+     * @param seed     seed of generated content
+     * @param wayNodes fixed number of nodes of every way segment, or '0' for random segments
+     *                 with 2 to 12 nodes
+     * @return the target file
+     * @throws IOException if writing fails
+     */
+    public static File write(File file, long seed, int wayNodes) throws IOException {
+        return write(file, seed, wayNodes, false);
+    }
+
+    /**
+     * Write a new map into a file, optionally as a debug file with signatures of blocks, POIs
+     * and ways. Both variants have the same features.
+     *
+     * @param file     target file
+     * @param seed     seed of generated content
+     * @param wayNodes fixed number of nodes of every way segment, or '0' for random segments
+     * @param debug    {@code true} to write a debug file
+     * @return the target file
+     * @throws IOException if writing fails
+     */
+    public static File write(File file, long seed, int wayNodes, boolean debug)
+            throws IOException {
+        TestMapFile map = new TestMapFile(seed, wayNodes, debug);
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(map.build());
+        }
+        return file;
+    }
+
+    /**
+     * Write a new map with random segments into a temporary file, deleted on exit.
+     */
+    public static File writeTemp(long seed) throws IOException {
+        File file = File.createTempFile("test", ".map");
+        file.deleteOnExit();
+        return write(file, seed, 0);
+    }
+
+    private byte[] build() throws IOException {
+        List<byte[]> subFiles = new ArrayList<>();
+        for (byte[] subFile : SUB_FILES) {
+            subFiles.add(buildSubFile(subFile[0], subFile[1], subFile[2]));
+        }
+
+        // header has the same size for any addresses
+        byte[] magic = "mapsforge binary OSM".getBytes(StandardCharsets.US_ASCII);
+        int headerLength = buildHeader(subFiles, new long[subFiles.size()], 0, this.debug).length;
+        long position = magic.length + 4 + headerLength;
+        long[] startAddresses = new long[subFiles.size()];
+        for (int i = 0; i < subFiles.size(); i++) {
+            startAddresses[i] = position;
+            position += subFiles.get(i).length;
+        }
+
+        Buffer out = new Buffer();
+        out.writeBytes(magic);
+        out.writeInt(headerLength);
+        out.writeBytes(buildHeader(subFiles, startAddresses, position, this.debug));
+        for (byte[] subFile : subFiles) {
+            out.writeBytes(subFile);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] buildHeader(List<byte[]> subFiles, long[] startAddresses, long fileSize,
+            boolean debug) {
+        Buffer out = new Buffer();
+        out.writeInt(3);
+        out.writeLong(fileSize);
+        out.writeLong(1500000000000L);
+        out.writeInt((int) (MIN_LATITUDE * 1000000));
+        out.writeInt((int) (MIN_LONGITUDE * 1000000));
+        out.writeInt((int) (MAX_LATITUDE * 1000000));
+        out.writeInt((int) (MAX_LONGITUDE * 1000000));
+        out.writeShort(256);
+        out.writeString("Mercator");
+        // debug flag, comment and created by
+        out.write((debug ? 0x80 : 0) | 0x08 | 0x04);
+        out.writeString("synthetic");
+        out.writeString("test");
+        out.writeShort(POI_TAGS.length);
+        for (String tag : POI_TAGS) {
+            out.writeString(tag);
+        }
+        out.writeShort(WAY_TAGS.length);
+        for (String tag : WAY_TAGS) {
+            out.writeString(tag);
+        }
+        out.write(SUB_FILES.length);
+        for (int i = 0; i < SUB_FILES.length; i++) {
+            out.writeBytes(SUB_FILES[i]);
+            out.writeLong(startAddresses[i]);
+            out.writeLong(subFiles.get(i).length);
+        }
+        return out.toByteArray();
+    }
+
+    private byte[] buildSubFile(byte baseZoomLevel, byte zoomLevelMin, byte zoomLevelMax) {
+        int left = longitudeToTileX(MIN_LONGITUDE, baseZoomLevel);
+        int right = longitudeToTileX(MAX_LONGITUDE, baseZoomLevel);
+        int top = latitudeToTileY(MAX_LATITUDE, baseZoomLevel);
+        int bottom = latitudeToTileY(MIN_LATITUDE, baseZoomLevel);
+        int rows = zoomLevelMax - zoomLevelMin + 1;
+
+        Buffer index = new Buffer();
+        Buffer data = new Buffer();
+        int blocks = (right - left + 1) * (bottom - top + 1);
+        if (this.debug) {
+            index.writeBytes("+++IndexStart+++".getBytes(StandardCharsets.US_ASCII));
+        }
+        long offset = index.size() + 5L * blocks;
+        for (int y = top; y <= bottom; y++) {
+            for (int x = left; x <= right; x++) {
+                boolean water;
+                byte[] block;
+                if (this.random.nextDouble() < 0.15) {
+                    water = this.random.nextDouble() < 0.5;
+                    block = buildEmptyBlock(x, y, rows, this.random.nextDouble() < 0.3);
+                } else {
+                    water = this.random.nextDouble() < 0.2;
+                    block = buildBlock(x, y, baseZoomLevel, rows);
+                }
+                long entry = offset | (water ? 0x8000000000L : 0);
+                for (int shift = 32; shift >= 0; shift -= 8) {
+                    index.write((int) (entry >>> shift));
+                }
+                data.writeBytes(block);
+                offset += block.length;
+            }
+        }
+        index.writeBytes(data.toByteArray());
+        return index.toByteArray();
+    }
+
+    /**
+     * Build block without features, with the size of the zoom table and the first way offset.
+     *
+     * @param padding {@code true} to add an unused byte, so the size does not tell it is empty
+     */
+    private byte[] buildEmptyBlock(int tileX, int tileY, int rows, boolean padding) {
+        Buffer block = new Buffer();
+        writeSignature(block, "###TileStart" + tileX + "," + tileY + "###");
+        for (int row = 0; row < rows; row++) {
+            block.writeUnsigned(0);
+            block.writeUnsigned(0);
+        }
+        block.writeUnsigned(0);
+        if (padding) {
+            block.write(0);
+        }
+        return block.toByteArray();
+    }
+
+    private byte[] buildBlock(int tileX, int tileY, byte zoomLevel, int rows) {
+        int latitudeTop = (int) (tileYToLatitude(tileY, zoomLevel) * 1000000);
+        int latitudeBottom = (int) (tileYToLatitude(tileY + 1, zoomLevel) * 1000000);
+        int longitudeLeft = (int) (tileXToLongitude(tileX, zoomLevel) * 1000000);
+        int longitudeRight = (int) (tileXToLongitude(tileX + 1, zoomLevel) * 1000000);
+
+        // zoom table
+        Buffer block = new Buffer();
+        writeSignature(block, "###TileStart" + tileX + "," + tileY + "###");
+        int[] rowPois = new int[rows];
+        int[] rowWays = new int[rows];
+        int pois = 0;
+        int ways = 0;
+        for (int row = 0; row < rows; row++) {
+            rowPois[row] = this.random.nextInt(4);
+            pois += rowPois[row];
+        }
+        for (int row = 0; row < rows; row++) {
+            rowWays[row] = this.random.nextInt(5);
+            ways += rowWays[row];
+        }
+        for (int row = 0; row < rows; row++) {
+            block.writeUnsigned(rowPois[row]);
+            block.writeUnsigned(rowWays[row]);
+        }
+
+        // POIs
+        Buffer poiData = new Buffer();
+        for (int i = 0; i < pois; i++) {
+            writeSignature(poiData, "***POIStart" + i + "***");
+            poiData.writeSigned(randomBetween(latitudeBottom, latitudeTop) - latitudeTop);
+            poiData.writeSigned(randomBetween(longitudeLeft, longitudeRight) - longitudeLeft);
+            int tags = this.random.nextInt(3);
+            poiData.write((this.random.nextInt(11) << 4) | tags);
+            for (int tag = 0; tag < tags; tag++) {
+                poiData.writeUnsigned(this.random.nextInt(POI_TAGS.length));
+            }
+            boolean name = this.random.nextDouble() < 0.5;
+            boolean houseNumber = this.random.nextDouble() < 0.3;
+            boolean elevation = this.random.nextDouble() < 0.3;
+            poiData.write((name ? 0x80 : 0) | (houseNumber ? 0x40 : 0) | (elevation ? 0x20 : 0));
+            if (name) {
+                poiData.writeString(NAMES[this.random.nextInt(NAMES.length)]);
+            }
+            if (houseNumber) {
+                poiData.writeString(String.valueOf(1 + this.random.nextInt(200)));
+            }
+            if (elevation) {
+                poiData.writeSigned(this.random.nextInt(3050) - 50);
+            }
+        }
+        block.writeUnsigned(poiData.size());
+        block.writeBytes(poiData.toByteArray());
+
+        // ways
+        for (int i = 0; i < ways; i++) {
+            byte[] way = buildWay(tileX, tileY, zoomLevel, latitudeTop, latitudeBottom,
+                    longitudeLeft, longitudeRight);
+            writeSignature(block, "---WayStart" + i + "---");
+            block.writeUnsigned(way.length);
+            block.writeBytes(way);
+        }
+        return block.toByteArray();
+    }
+
+    private byte[] buildWay(int tileX, int tileY, byte zoomLevel, int latitudeTop,
+            int latitudeBottom, int longitudeLeft, int longitudeRight) {
+        this.wayTop = Integer.MIN_VALUE;
+        this.wayBottom = Integer.MAX_VALUE;
+        this.wayLeft = Integer.MAX_VALUE;
+        this.wayRight = Integer.MIN_VALUE;
+        Buffer way = new Buffer();
+        int tags = 1 + this.random.nextInt(3);
+        way.write((this.random.nextInt(11) << 4) | tags);
+        for (int tag = 0; tag < tags; tag++) {
+            way.writeUnsigned(this.random.nextInt(WAY_TAGS.length));
+        }
+        boolean name = this.random.nextDouble() < 0.5;
+        boolean houseNumber = this.random.nextDouble() < 0.2;
+        boolean ref = this.random.nextDouble() < 0.3;
+        boolean labelPosition = this.random.nextDouble() < 0.3;
+        int dataBlocks = this.random.nextInt(3) == 2 ? 2 : 1;
+        boolean doubleDelta = this.random.nextDouble() < 0.5;
+        way.write((name ? 0x80 : 0) | (houseNumber ? 0x40 : 0) | (ref ? 0x20 : 0)
+                | (labelPosition ? 0x10 : 0) | (dataBlocks > 1 ? 0x08 : 0) | (doubleDelta ? 0x04 : 0));
+        if (name) {
+            way.writeString(NAMES[this.random.nextInt(NAMES.length)]);
+        }
+        if (houseNumber) {
+            way.writeString((1 + this.random.nextInt(200)) + "a");
+        }
+        if (ref) {
+            way.writeString("E" + (1 + this.random.nextInt(99)));
+        }
+        if (labelPosition) {
+            way.writeSigned(randomBetween(latitudeBottom, latitudeTop) - latitudeTop);
+            way.writeSigned(randomBetween(longitudeLeft, longitudeRight) - longitudeLeft);
+        }
+        if (dataBlocks > 1) {
+            way.writeUnsigned(dataBlocks);
+        }
+        for (int dataBlock = 0; dataBlock < dataBlocks; dataBlock++) {
+            int[] segmentCounts = {1, 1, 2, 3};
+            int segments = segmentCounts[this.random.nextInt(segmentCounts.length)];
+            way.writeUnsigned(segments);
+            for (int segment = 0; segment < segments; segment++) {
+                writeSegment(way, doubleDelta, latitudeTop, latitudeBottom,
+                        longitudeLeft, longitudeRight);
+            }
+        }
+
+        // tile bitmask precedes the rest of the way
+        Buffer result = new Buffer();
+        result.writeShort(getTileBitmask(tileX, tileY, zoomLevel, this.wayTop, this.wayBottom,
+                this.wayLeft, this.wayRight));
+        result.writeBytes(way.toByteArray());
+        return result.toByteArray();
+    }
+
+    /**
+     * Compute the tile bitmask of sub-tiles covered by a bounding box inside of a tile.
+     */
+    private static int getTileBitmask(int tileX, int tileY, byte zoomLevel, int top, int bottom,
+            int left, int right) {
+        byte subZoomLevel = (byte) (zoomLevel + 2);
+        int fromX = getSubTile(longitudeToTileX(left / 1000000.0, subZoomLevel) - 4 * tileX);
+        int toX = getSubTile(longitudeToTileX(right / 1000000.0, subZoomLevel) - 4 * tileX);
+        int fromY = getSubTile(latitudeToTileY(top / 1000000.0, subZoomLevel) - 4 * tileY);
+        int toY = getSubTile(latitudeToTileY(bottom / 1000000.0, subZoomLevel) - 4 * tileY);
+        int bitmask = 0;
+        for (int y = fromY; y <= toY; y++) {
+            for (int x = fromX; x <= toX; x++) {
+                bitmask |= 0x8000 >>> (y * 4 + x);
+            }
+        }
+        return bitmask;
+    }
+
+    // edges of tiles in microdegrees may be rounded into neighbouring tiles
+    private static int getSubTile(int index) {
+        return Math.min(Math.max(index, 0), 3);
+    }
+
+    private void writeSegment(Buffer way, boolean doubleDelta, int latitudeTop,
+            int latitudeBottom, int longitudeLeft, int longitudeRight) {
+        // extent of the segment is a part of the structure, so it does not depend on nodes
+        int latitude1 = randomBetween(latitudeBottom, latitudeTop);
+        int latitude2 = randomBetween(latitudeBottom, latitudeTop);
+        int longitude1 = randomBetween(longitudeLeft, longitudeRight);
+        int longitude2 = randomBetween(longitudeLeft, longitudeRight);
+        int bottom = Math.min(latitude1, latitude2);
+        int top = Math.max(latitude1, latitude2);
+        int left = Math.min(longitude1, longitude2);
+        int right = Math.max(longitude1, longitude2);
+
+        Random random = this.geometryRandom;
+        int nodes = this.wayNodes > 0 ? this.wayNodes : 2 + random.nextInt(11);
+        boolean closed = random.nextDouble() < 0.4 && nodes > 3;
+        int[] latitudes = new int[nodes];
+        int[] longitudes = new int[nodes];
+        for (int i = 0; i < nodes; i++) {
+            latitudes[i] = bottom + random.nextInt(top - bottom + 1);
+            longitudes[i] = left + random.nextInt(right - left + 1);
+        }
+        // opposite corners of the extent, the second one is never replaced by closing node
+        latitudes[0] = bottom;
+        longitudes[0] = left;
+        latitudes[nodes / 2] = top;
+        longitudes[nodes / 2] = right;
+        if (closed) {
+            latitudes[nodes - 1] = latitudes[0];
+            longitudes[nodes - 1] = longitudes[0];
+        }
+        for (int i = 0; i < nodes; i++) {
+            this.wayTop = Math.max(this.wayTop, latitudes[i]);
+            this.wayBottom = Math.min(this.wayBottom, latitudes[i]);
+            this.wayLeft = Math.min(this.wayLeft, longitudes[i]);
+            this.wayRight = Math.max(this.wayRight, longitudes[i]);
+        }
+
+        way.writeUnsigned(nodes);
+        way.writeSigned(latitudes[0] - latitudeTop);
+        way.writeSigned(longitudes[0] - longitudeLeft);
+        int previousLatitude = 0;
+        int previousLongitude = 0;
+        for (int i = 1; i < nodes; i++) {
+            int deltaLatitude = latitudes[i] - latitudes[i - 1];
+            int deltaLongitude = longitudes[i] - longitudes[i - 1];
+            if (doubleDelta) {
+                way.writeSigned(deltaLatitude - previousLatitude);
+                way.writeSigned(deltaLongitude - previousLongitude);
+                previousLatitude = deltaLatitude;
+                previousLongitude = deltaLongitude;
+            } else {
+                way.writeSigned(deltaLatitude);
+                way.writeSigned(deltaLongitude);
+            }
+        }
+    }
+
+    // signatures of debug files have a fixed length and are padded by spaces
+    private void writeSignature(Buffer out, String signature) {
+        if (this.debug) {
+            StringBuilder builder = new StringBuilder(signature);
+            while (builder.length() < 32) {
+                builder.append(' ');
+            }
+            out.writeBytes(builder.toString().getBytes(StandardCharsets.US_ASCII));
+        }
+    }
+
+    private int randomBetween(int min, int max) {
+        return min + this.random.nextInt(max - min + 1);
+    }
+
+    public static int longitudeToTileX(double longitude, byte zoomLevel) {
+        return (int) Math.min(Math.max((longitude + 180) / 360 * (1 << zoomLevel), 0),
+                (1 << zoomLevel) - 1);
+    }
+
+    public static int latitudeToTileY(double latitude, byte zoomLevel) {
+        double sinLatitude = Math.sin(Math.toRadians(latitude));
+        double y = (0.5 - Math.log((1 + sinLatitude) / (1 - sinLatitude)) / (4 * Math.PI))
+                * (1 << zoomLevel);
+        return (int) Math.min(Math.max(y, 0), (1 << zoomLevel) - 1);
+    }
+
+    private static double tileXToLongitude(int tileX, byte zoomLevel) {
+        return 360.0 * ((double) tileX / (1 << zoomLevel) - 0.5);
+    }
+
+    private static double tileYToLatitude(int tileY, byte zoomLevel) {
+        double y = 0.5 - (double) tileY / (1 << zoomLevel);
+        return 90.0 - 360.0 * Math.atan(Math.exp(-y * 2 * Math.PI)) / Math.PI;
+    }
+
+    /**
+     * Output buffer with encodings of the map format.
+     */
+    static class Buffer extends ByteArrayOutputStream {
+
+        void writeShort(int value) {
+            write(value >>> 8);
+            write(value);
+        }
+
+        void writeInt(int value) {
+            writeShort(value >>> 16);
+            writeShort(value);
+        }
+
+        void writeLong(long value) {
+            writeInt((int) (value >>> 32));
+            writeInt((int) value);
+        }
+
+        void writeUnsigned(int value) {
+            while (value >= 0x80) {
+                write((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            write(value);
+        }
+
+        void writeSigned(int value) {
+            boolean negative = value < 0;
+            value = Math.abs(value);
+            while (value >= 0x40) {
+                write((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            write(value | (negative ? 0x40 : 0));
+        }
+
+        void writeString(String value) {
+            byte[] data = value.getBytes(StandardCharsets.UTF_8);
+            writeUnsigned(data.length);
+            writeBytes(data);
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforgeV3.map.reader;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mapsforgeV3.core.model.Tag;
+import org.mapsforgeV3.core.model.Tile;
+import org.mapsforgeV3.core.util.MercatorProjection;
+import org.mapsforgeV3.core.util.TileProjection;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that reading of a group of tiles sends every tile the same features and water flag,
+ * as reading of the tile alone, also with the tag filter and projections of tiles.
+ */
+public class TileGroupTest {
+
+    private static final int TILE_SIZE = 256;
+
+    // accepts only amenity POIs and highways or named ways
+    static final TagFilter.Matcher MATCHER = new TagFilter.Matcher() {
+        @Override
+        public boolean mayMatchWithoutTags(boolean way) {
+            return false;
+        }
+
+        @Override
+        public boolean mayMatchTag(boolean way, int key, int value, boolean anyValue) {
+            if (way) {
+                return key == new Tag("highway=primary").key
+                        || key == MapDatabase.TAG_KEY_NAME;
+            }
+            return key == new Tag("amenity=restaurant").key;
+        }
+    };
+
+    private static TestHandler handler;
+    private static File file;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        handler = TestHandler.install();
+        file = TestMapFile.writeTemp(5);
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void groupEqualsSingleTiles() {
+        for (long cacheSize : new long[]{0, 64 * 1024 * 1024}) {
+            MapDatabase mapDatabase = new MapDatabase();
+            mapDatabase.setDecodedBlockCacheSize(cacheSize);
+            assertTrue(mapDatabase.openFile(file).isSuccess());
+            try {
+                TagFilter tagFilter = new TagFilter(mapDatabase.getMapFileInfo(), MATCHER);
+                for (byte zoomLevel = 10; zoomLevel <= 16; zoomLevel++) {
+                    for (TagFilter filter : new TagFilter[]{null, tagFilter}) {
+                        for (boolean projected : new boolean[]{false, true}) {
+                            compare(mapDatabase, zoomLevel, filter, projected,
+                                    "cache: " + cacheSize + ", z" + zoomLevel
+                                            + ", filter: " + (filter != null)
+                                            + ", projected: " + projected);
+                        }
+                    }
+                }
+            } finally {
+                mapDatabase.closeFile();
+            }
+        }
+        assertEquals(0, handler.problems);
+    }
+
+    private static void compare(MapDatabase mapDatabase, byte zoomLevel, TagFilter tagFilter,
+            boolean projected, String message) {
+        long mapSize = MercatorProjection.getMapSize(zoomLevel, TILE_SIZE);
+        int left = TestMapFile.longitudeToTileX(TestMapFile.MIN_LONGITUDE, zoomLevel);
+        int right = TestMapFile.longitudeToTileX(TestMapFile.MAX_LONGITUDE, zoomLevel);
+        int top = TestMapFile.latitudeToTileY(TestMapFile.MAX_LATITUDE, zoomLevel);
+        int bottom = TestMapFile.latitudeToTileY(TestMapFile.MIN_LATITUDE, zoomLevel);
+
+        // groups of 2x2 tiles, same as metatiles, also over the edge of the map
+        for (int y = top - 1; y <= bottom; y += 2) {
+            for (int x = left - 1; x <= right; x += 2) {
+                List<Tile> tiles = new ArrayList<>();
+                List<TileProjection> tileProjections = projected ? new ArrayList<>() : null;
+                List<RecordingVisitor> group = new ArrayList<>();
+                for (int i = 0; i < 4; i++) {
+                    int tileX = x + i % 2;
+                    int tileY = y + i / 2;
+                    tiles.add(new Tile(tileX, tileY, zoomLevel));
+                    if (projected) {
+                        tileProjections.add(new TileProjection(mapSize, (long) tileX * TILE_SIZE,
+                                (long) tileY * TILE_SIZE, TILE_SIZE, TILE_SIZE / 4));
+                    }
+                    group.add(new RecordingVisitor());
+                }
+                boolean[] water = mapDatabase.readTiles(tiles, group, tagFilter, tileProjections);
+
+                for (int i = 0; i < 4; i++) {
+                    RecordingVisitor single = new RecordingVisitor();
+                    boolean singleWater = mapDatabase.readTile(tiles.get(i), single, tagFilter,
+                            projected ? tileProjections.get(i) : null);
+                    String tile = message + ", tile: " + tiles.get(i);
+                    assertEquals(tile, single.toString(), group.get(i).toString());
+                    assertEquals(tile, singleWater, water[i]);
+                }
+            }
+        }
+    }
+}
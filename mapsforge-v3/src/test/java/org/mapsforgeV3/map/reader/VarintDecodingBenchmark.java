@@ -0,0 +1,71 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforgeV3.map.reader;
+
+import java.util.Random;
+
+/**
+ * Plain JVM benchmark of decoding of way nodes by single reads and by the bulk decoding.
+ * Usage:
+ * <pre>
+ * VarintDecodingBenchmark [nodes per way] [rounds]
+ * </pre>
+ * Double-delta offsets of a few metres are used, same as in usual map files.
+ */
+public class VarintDecodingBenchmark {
+
+    private static final int WAYS = 10000;
+
+    public static void main(String[] args) {
+        int nodes = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 30;
+
+        // ways stored one after another
+        Random random = new Random(1);
+        TestMapFile.Buffer out = new TestMapFile.Buffer();
+        for (int i = 0; i < WAYS * nodes * 2; i++) {
+            out.writeSigned(random.nextInt(201) - 100);
+        }
+        byte[] data = out.toByteArray();
+        ReadBuffer readBuffer = new ReadBuffer(null);
+        int[] coordinates = new int[nodes * 2];
+
+        for (int round = 0; round < rounds; round++) {
+            long sum = 0;
+            long start = System.nanoTime();
+            readBuffer.setLoadedData(data, data.length);
+            for (int way = 0; way < WAYS; way++) {
+                ReadBufferTest.decodeSingle(readBuffer, coordinates, nodes,
+                        50000000, 14000000, true);
+                sum += coordinates[coordinates.length - 1];
+            }
+            long single = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            readBuffer.setLoadedData(data, data.length);
+            for (int way = 0; way < WAYS; way++) {
+                readBuffer.readDeltaCoordinates(coordinates, 0, nodes, 50000000, 14000000, true);
+                sum -= coordinates[coordinates.length - 1];
+            }
+            long bulk = System.nanoTime() - start;
+
+            // sum is zero, if both ways decode the same values
+            System.out.println("round " + round + ": single "
+                    + String.format("%.1f", (double) single / (WAYS * nodes)) + " ns/node, bulk "
+                    + String.format("%.1f", (double) bulk / (WAYS * nodes)) + " ns/node"
+                    + (sum != 0 ? ", results differ" : ""));
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforgeV3.map.reader;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mapsforgeV3.core.model.Tile;
+import org.mapsforgeV3.map.reader.header.SubFileParameter;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that tiles covered only by empty water blocks are answered from the index without
+ * reading of blocks, with the same features and water flags as reading of all blocks.
+ * <p>
+ * Blocks up to the size of the zoom table with zero counts and the first way offset are empty,
+ * blocks of debug files contain also the block signature. Test map contains also empty blocks
+ * with an unused byte, that are just above the limit and have to be read.
+ */
+public class WaterTileTest {
+
+    private static final byte[] ZOOM_LEVELS = {5, 8, 10, 12, 14, 16};
+    private static final int SIGNATURE_LENGTH_BLOCK = 32;
+
+    private static TestHandler handler;
+    private static File file;
+    private static File debugFile;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        handler = TestHandler.install();
+        file = TestMapFile.writeTemp(21);
+        debugFile = File.createTempFile("debug", ".map");
+        TestMapFile.write(debugFile, 21, 0, true);
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        file.delete();
+        debugFile.delete();
+    }
+
+    @Test
+    public void fastPathEqualsFullRead() throws Exception {
+        for (File map : new File[]{file, debugFile}) {
+            boolean debug = map == debugFile;
+            for (long cacheSize : new long[]{0, 64 * 1024 * 1024}) {
+                MapDatabase fullRead = open(map, cacheSize, false);
+                MapDatabase fastPath = open(map, cacheSize, true);
+                try (RandomAccessFile input = new RandomAccessFile(map, "r")) {
+                    IndexCache index = new IndexCache(input.getChannel(), 64);
+                    int[] tiles = new int[2];
+                    long expectedHits = 0;
+                    for (byte zoomLevel : ZOOM_LEVELS) {
+                        assertEquals(RecordingVisitor.readAll(fullRead, zoomLevel, false),
+                                RecordingVisitor.readAll(fastPath, zoomLevel, false));
+                        expectedHits += countWaterTiles(fastPath, index, zoomLevel, debug, tiles);
+                    }
+                    assertEquals(0, fullRead.getWaterTileHitCount());
+                    assertEquals(expectedHits, fastPath.getWaterTileHitCount());
+                    // both kinds of all-water tiles are present
+                    assertTrue(tiles[0] > 10);
+                    assertTrue(tiles[1] > 10);
+
+                    // groups of tiles use the same fast path
+                    for (byte zoomLevel : ZOOM_LEVELS) {
+                        assertArrayEquals(readGroup(fullRead, zoomLevel),
+                                readGroup(fastPath, zoomLevel));
+                        expectedHits += countWaterTiles(fastPath, index, zoomLevel, debug, tiles);
+                    }
+                    assertEquals(0, fullRead.getWaterTileHitCount());
+                    assertEquals(expectedHits, fastPath.getWaterTileHitCount());
+                } finally {
+                    fullRead.closeFile();
+                    fastPath.closeFile();
+                }
+            }
+        }
+        assertEquals(0, handler.problems);
+    }
+
+    private static MapDatabase open(File map, long cacheSize, boolean skipEmptyBlocks) {
+        MapDatabase mapDatabase = new MapDatabase();
+        mapDatabase.setDecodedBlockCacheSize(cacheSize);
+        mapDatabase.setSkipEmptyBlocks(skipEmptyBlocks);
+        assertTrue(mapDatabase.openFile(map).isSuccess());
+        return mapDatabase;
+    }
+
+    /**
+     * Count tiles of the test map covered only by water blocks. Tiles with all blocks empty are
+     * expected to be answered from the index.
+     *
+     * @param tiles counters of tiles with all blocks empty and tiles with a non-empty block
+     * @return number of tiles with all blocks empty
+     */
+    private static long countWaterTiles(MapDatabase mapDatabase, IndexCache index,
+            byte zoomLevel, boolean debug, int[] tiles) throws Exception {
+        SubFileParameter subFile = mapDatabase.getSubFileParameter(
+                mapDatabase.getQueryZoomLevel(zoomLevel));
+        int emptyBlockSize = 2 * (subFile.zoomLevelMax - subFile.zoomLevelMin + 1) + 1
+                + (debug ? SIGNATURE_LENGTH_BLOCK : 0);
+        long hits = 0;
+        for (Tile tile : getTiles(zoomLevel)) {
+            QueryParameters queryParameters = new QueryParameters();
+            queryParameters.queryZoomLevel = mapDatabase.getQueryZoomLevel(zoomLevel);
+            QueryCalculations.calculateBaseTiles(queryParameters, tile, subFile);
+            QueryCalculations.calculateBlocks(queryParameters, subFile);
+            boolean water = true;
+            boolean empty = true;
+            for (long row = queryParameters.fromBlockY; row <= queryParameters.toBlockY; row++) {
+                for (long column = queryParameters.fromBlockX; column <= queryParameters.toBlockX; column++) {
+                    long block = row * subFile.blocksWidth + column;
+                    long entry = index.getIndexEntry(subFile, block);
+                    long next = block + 1 == subFile.numberOfBlocks ? subFile.subFileSize
+                            : index.getIndexEntry(subFile, block + 1) & 0x7FFFFFFFFFL;
+                    water &= (entry & 0x8000000000L) != 0;
+                    empty &= next - (entry & 0x7FFFFFFFFFL) <= emptyBlockSize;
+                }
+            }
+            if (water) {
+                tiles[empty ? 0 : 1]++;
+                if (empty) {
+                    hits++;
+                }
+            }
+        }
+        return hits;
+    }
+
+    /**
+     * Read water flags of all tiles of a zoom level by groups of tiles in a single row.
+     */
+    private static boolean[] readGroup(MapDatabase mapDatabase, byte zoomLevel) {
+        List<Tile> tiles = getTiles(zoomLevel);
+        List<RecordingVisitor> visitors = new ArrayList<>();
+        for (int i = 0; i < tiles.size(); i++) {
+            visitors.add(new RecordingVisitor());
+        }
+        boolean[] water = new boolean[tiles.size()];
+        for (int from = 0; from < tiles.size(); ) {
+            int to = from + 1;
+            while (to < tiles.size() && tiles.get(to).tileY == tiles.get(from).tileY) {
+                to++;
+            }
+            boolean[] rowWater = mapDatabase.readTiles(tiles.subList(from, to),
+                    visitors.subList(from, to), null, null);
+            System.arraycopy(rowWater, 0, water, from, to - from);
+            from = to;
+        }
+        return water;
+    }
+
+    private static List<Tile> getTiles(byte zoomLevel) {
+        int left = TestMapFile.longitudeToTileX(TestMapFile.MIN_LONGITUDE, zoomLevel);
+        int right = TestMapFile.longitudeToTileX(TestMapFile.MAX_LONGITUDE, zoomLevel);
+        int top = TestMapFile.latitudeToTileY(TestMapFile.MAX_LATITUDE, zoomLevel);
+        int bottom = TestMapFile.latitudeToTileY(TestMapFile.MIN_LATITUDE, zoomLevel);
+        List<Tile> tiles = new ArrayList<>();
+        for (int y = top; y <= bottom; y++) {
+            for (int x = left; x <= right; x++) {
+                tiles.add(new Tile(x, y, zoomLevel));
+            }
+        }
+        return tiles;
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforgeV3.map.reader;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mapsforgeV3.core.model.Tag;
+import org.mapsforgeV3.core.model.Tile;
+import org.mapsforgeV3.core.util.MercatorProjection;
+import org.mapsforgeV3.core.util.TileProjection;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that ways culled before projection are only ways, whose exactly projected bounding
+ * box lies outside of the tile extended by the margin, and that all other ways are sent.
+ */
+public class WayCullingTest {
+
+    private static final int TILE_SIZE = 256;
+    private static final int MARGIN = TILE_SIZE / 4;
+
+    private static TestHandler handler;
+    private static File file;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        handler = TestHandler.install();
+        file = TestMapFile.writeTemp(17);
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        file.delete();
+    }
+
+    @Test
+    public void culledWaysAreNotVisible() {
+        for (long cacheSize : new long[]{0, 64 * 1024 * 1024}) {
+            MapDatabase mapDatabase = new MapDatabase();
+            mapDatabase.setDecodedBlockCacheSize(cacheSize);
+            assertTrue(mapDatabase.openFile(file).isSuccess());
+            try {
+                long culled = 0;
+                for (byte zoomLevel = 10; zoomLevel <= 16; zoomLevel++) {
+                    culled += checkZoomLevel(mapDatabase, zoomLevel);
+                }
+                // the test map has ways outside of most tiles
+                assertTrue(culled > 0);
+            } finally {
+                mapDatabase.closeFile();
+            }
+        }
+        assertEquals(0, handler.problems);
+    }
+
+    /**
+     * @return number of culled ways
+     */
+    private static long checkZoomLevel(MapDatabase mapDatabase, byte zoomLevel) {
+        long mapSize = MercatorProjection.getMapSize(zoomLevel, TILE_SIZE);
+        int left = TestMapFile.longitudeToTileX(TestMapFile.MIN_LONGITUDE, zoomLevel);
+        int right = TestMapFile.longitudeToTileX(TestMapFile.MAX_LONGITUDE, zoomLevel);
+        int top = TestMapFile.latitudeToTileY(TestMapFile.MAX_LATITUDE, zoomLevel);
+        int bottom = TestMapFile.latitudeToTileY(TestMapFile.MIN_LATITUDE, zoomLevel);
+        long culled = 0;
+        for (int y = top; y <= bottom; y++) {
+            for (int x = left; x <= right; x++) {
+                Tile tile = new Tile(x, y, zoomLevel);
+                long pixelX = (long) x * TILE_SIZE;
+                long pixelY = (long) y * TILE_SIZE;
+                String message = tile.toString();
+
+                // all ways in microdegrees
+                CollectingVisitor all = new CollectingVisitor();
+                mapDatabase.readTile(tile, all, null, null);
+
+                // ways projected to pixels of the tile
+                TileProjection tileProjection = new TileProjection(mapSize, pixelX, pixelY,
+                        TILE_SIZE, MARGIN);
+                CollectingVisitor projected = new CollectingVisitor();
+                long culledBefore = mapDatabase.getCulledWayCount();
+                mapDatabase.readTile(tile, projected, null, tileProjection);
+                long culledWays = mapDatabase.getCulledWayCount() - culledBefore;
+                culled += culledWays;
+
+                // every way is either sent or culled
+                assertEquals(message, all.ways.size(), projected.ways.size() + culledWays);
+
+                // every visible way is sent
+                Map<String, Integer> sent = new HashMap<>();
+                for (String way : projected.ways) {
+                    Integer count = sent.get(way);
+                    sent.put(way, count == null ? 1 : count + 1);
+                }
+                for (int i = 0; i < all.ways.size(); i++) {
+                    if (!isVisible(all.bboxes.get(i), mapSize, pixelX, pixelY)) {
+                        continue;
+                    }
+                    String way = all.ways.get(i);
+                    Integer count = sent.get(way);
+                    assertTrue(message + ", way not sent: " + way, count != null && count > 0);
+                    sent.put(way, count - 1);
+                }
+            }
+        }
+        return culled;
+    }
+
+    // check if the exactly projected bounding box intersects the tile with the margin
+    private static boolean isVisible(int[] bbox, long mapSize, long pixelX, long pixelY) {
+        double topY = MercatorProjection.latitudeToPixelY(bbox[0] / 1000000.0, mapSize) - pixelY;
+        double bottomY = MercatorProjection.latitudeToPixelY(bbox[1] / 1000000.0, mapSize) - pixelY;
+        double leftX = MercatorProjection.longitudeToPixelX(bbox[2] / 1000000.0, mapSize) - pixelX;
+        double rightX = MercatorProjection.longitudeToPixelX(bbox[3] / 1000000.0, mapSize) - pixelX;
+        return bottomY >= -MARGIN && topY <= TILE_SIZE + MARGIN
+                && rightX >= -MARGIN && leftX <= TILE_SIZE + MARGIN;
+    }
+
+    /**
+     * Visitor that keeps identity and bounding box of every received way.
+     */
+    private static class CollectingVisitor implements FeatureVisitor {
+
+        private final List<String> ways = new ArrayList<>();
+        private final List<int[]> bboxes = new ArrayList<>();
+
+        @Override
+        public void renderNode(byte layer, Tag[] tags, int latitudeE6, int longitudeE6) {
+        }
+
+        @Override
+        public void renderWay(Way way) {
+            this.ways.add(way.layer + " " + Arrays.toString(way.tags) + " " + way.latitudeE6
+                    + " " + way.longitudeE6 + " " + way.bboxTopE6 + " " + way.bboxBottomE6
+                    + " " + way.bboxLeftE6 + " " + way.bboxRightE6);
+            this.bboxes.add(new int[]{way.bboxTopE6, way.bboxBottomE6,
+                    way.bboxLeftE6, way.bboxRightE6});
+        }
+    }
+}
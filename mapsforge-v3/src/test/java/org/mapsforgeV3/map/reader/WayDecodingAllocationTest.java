@@ -0,0 +1,187 @@
+/*
+ * Copyright 2010, 2011, 2012 mapsforge.org
+ *
+ * This program is free software: you can redistribute it and/or modify it under the
+ * terms of the GNU Lesser General Public License as published by the Free Software
+ * Foundation, either version 3 of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT ANY
+ * WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License along with
+ * this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.mapsforgeV3.map.reader;
+
+import org.junit.AfterClass;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.mapsforgeV3.core.model.Tag;
+import org.mapsforgeV3.core.model.Tile;
+import org.mapsforgeV3.core.util.MercatorProjection;
+import org.mapsforgeV3.core.util.TileProjection;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks that decoding of way coordinates into the reused buffers of the query cursor does not
+ * allocate per node.
+ * <p>
+ * Two maps with the same features, that differ only by number of nodes of every way segment,
+ * are read repeatedly. Memory allocated by a warmed-up query has to be the same for both maps.
+ */
+public class WayDecodingAllocationTest {
+
+    private static final byte ZOOM_LEVEL = 14;
+    private static final int TILE_SIZE = 256;
+    private static final int ROUNDS = 20;
+    // tolerated difference of allocated bytes per query
+    private static final long TOLERANCE = 1024;
+
+    private static TestHandler handler;
+    private static File shortWays;
+    private static File longWays;
+
+    @BeforeClass
+    public static void setUp() throws Exception {
+        handler = TestHandler.install();
+        shortWays = File.createTempFile("short", ".map");
+        longWays = File.createTempFile("long", ".map");
+        TestMapFile.write(shortWays, 1, 2);
+        TestMapFile.write(longWays, 1, 40);
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        shortWays.delete();
+        longWays.delete();
+    }
+
+    @Test
+    public void allocationDoesNotDependOnNodes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threadBean = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+
+        for (boolean projected : new boolean[]{false, true}) {
+            Reader shortReader = new Reader(shortWays, projected);
+            Reader longReader = new Reader(longWays, projected);
+            try {
+                // same features, only with more nodes
+                assertEquals(shortReader.readAll(), longReader.readAll());
+                if (!projected) {
+                    // projected ways are culled by their geometry
+                    assertEquals(shortReader.visitor.ways, longReader.visitor.ways);
+                }
+                assertTrue(longReader.visitor.nodes > 10 * shortReader.visitor.nodes);
+
+                long shortBytes = shortReader.measure(threadBean);
+                long longBytes = longReader.measure(threadBean);
+                assertTrue("projected: " + projected + ", short: " + shortBytes
+                                + ", long: " + longBytes,
+                        Math.abs(longBytes - shortBytes) <= TOLERANCE);
+            } finally {
+                shortReader.close();
+                longReader.close();
+            }
+        }
+        assertEquals(0, handler.problems);
+    }
+
+    /**
+     * Reader of all tiles of the test map at a single zoom level.
+     */
+    private static class Reader {
+
+        private final MapDatabase mapDatabase = new MapDatabase();
+        private final CountingVisitor visitor = new CountingVisitor();
+        private final boolean projected;
+        private final long mapSize = MercatorProjection.getMapSize(ZOOM_LEVEL, TILE_SIZE);
+        private final int left = TestMapFile.longitudeToTileX(TestMapFile.MIN_LONGITUDE, ZOOM_LEVEL);
+        private final int right = TestMapFile.longitudeToTileX(TestMapFile.MAX_LONGITUDE, ZOOM_LEVEL);
+        private final int top = TestMapFile.latitudeToTileY(TestMapFile.MAX_LATITUDE, ZOOM_LEVEL);
+        private final int bottom = TestMapFile.latitudeToTileY(TestMapFile.MIN_LATITUDE, ZOOM_LEVEL);
+
+        Reader(File file, boolean projected) {
+            assertTrue(this.mapDatabase.openFile(file).isSuccess());
+            this.projected = projected;
+        }
+
+        /**
+         * Read all tiles once.
+         *
+         * @return number of tiles covered by water
+         */
+        int readAll() {
+            int water = 0;
+            for (int y = this.top; y <= this.bottom; y++) {
+                for (int x = this.left; x <= this.right; x++) {
+                    TileProjection tileProjection = null;
+                    if (this.projected) {
+                        tileProjection = new TileProjection(this.mapSize, (long) x * TILE_SIZE,
+                                (long) y * TILE_SIZE, TILE_SIZE, TILE_SIZE / 4);
+                    }
+                    if (this.mapDatabase.readTile(new Tile(x, y, ZOOM_LEVEL), this.visitor,
+                            null, tileProjection)) {
+                        water++;
+                    }
+                }
+            }
+            return water;
+        }
+
+        /**
+         * Measure bytes allocated by the current thread for reading of all tiles.
+         */
+        long measure(com.sun.management.ThreadMXBean threadBean) {
+            // warm up buffers of the cursor and caches
+            for (int i = 0; i < 3; i++) {
+                readAll();
+            }
+            long min = Long.MAX_VALUE;
+            long threadId = Thread.currentThread().getId();
+            for (int i = 0; i < ROUNDS; i++) {
+                long start = threadBean.getThreadAllocatedBytes(threadId);
+                readAll();
+                min = Math.min(min, threadBean.getThreadAllocatedBytes(threadId) - start);
+            }
+            return min;
+        }
+
+        void close() {
+            this.mapDatabase.closeFile();
+        }
+    }
+
+    /**
+     * Visitor that only counts received features.
+     */
+    private static class CountingVisitor implements FeatureVisitor {
+
+        private long pois;
+        private long ways;
+        private long nodes;
+
+        @Override
+        public void renderNode(byte layer, Tag[] tags, int latitudeE6, int longitudeE6) {
+            this.pois++;
+        }
+
+        @Override
+        public void renderWay(Way way) {
+            this.ways++;
+            for (int i = 0; i < way.segmentCount; i++) {
+                this.nodes += way.getSegmentLength(i);
+            }
+        }
+    }
+}